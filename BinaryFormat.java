@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 行列をバイナリ形式でファイルに読み書きします。<br>
+ * <br>
+ * ファイルは32バイトのヘッダと，それに続く成分の並びから成ります。ヘッダの整数は全てリトルエンディアンです。
+ *
+ * <pre>
+ * 位置  大きさ  内容
+ *  0     4     マジックナンバー "DMAT"
+ *  4     4     バージョン (1)
+ *  8     1     成分のバイト順 (0: リトルエンディアン, 1: ビッグエンディアン)
+ *  9     1     書き込み時の行列の形式 (DoubleMatrix.Layoutの序数)
+ * 10     2     予約 (0)
+ * 12     4     行数
+ * 16     4     列数
+ * 20    12     予約 (0)
+ * 32           成分 (行優先，行数 * 列数個のIEEE 754倍精度浮動小数点数)
+ * </pre>
+ *
+ * 書き込む成分は常にリトルエンディアンです。成分の先頭は8バイト境界に揃っているため，<br>
+ * マップした領域をそのままdoubleの並びとして参照できます。
+ */
+final class BinaryFormat {
+
+  /** マジックナンバーです。 */
+  private static final int MAGIC = ('D') | ('M' << 8) | ('A' << 16) | ('T' << 24);
+
+  /** 形式のバージョンです。 */
+  private static final int VERSION = 1;
+
+  /** ヘッダの大きさ(バイト数)です。 */
+  static final int HEADER_SIZE = 32;
+
+  /** 入出力に使用するバッファの大きさ(バイト数)です。 */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /** インスタンスは生成しません。 */
+  private BinaryFormat() {}
+
+  /** ファイルのヘッダから読み取った情報です。 */
+  private static final class Header {
+    /** 成分のバイト順です。 */
+    final ByteOrder order;
+
+    /** 書き込み時の行列の形式です。 */
+    final DoubleMatrix.Layout layout;
+
+    /** 行数です。 */
+    final int rows;
+
+    /** 列数です。 */
+    final int columns;
+
+    Header(ByteOrder order, DoubleMatrix.Layout layout, int rows, int columns) {
+      this.order = order;
+      this.layout = layout;
+      this.rows = rows;
+      this.columns = columns;
+    }
+  }
+
+  /**
+   * storageの内容をバイナリ形式でfilenameのファイルに書き込みます。
+   *
+   * @param storage 書き込む記憶域
+   * @param filename ファイル名
+   * @throws IOException 入出力エラーが発生した場合
+   */
+  static void write(DoubleStorage storage, String filename) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            Paths.get(filename),
+            StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.put((byte) 0);
+      buffer.put((byte) storage.layout().ordinal());
+      buffer.putShort((short) 0);
+      buffer.putInt(storage.rows);
+      buffer.putInt(storage.columns);
+      buffer.put(new byte[HEADER_SIZE - buffer.position()]);
+
+      for (int i = 0; i < storage.rows; i++) {
+        for (int j = 0; j < storage.columns; ) {
+          if (!buffer.hasRemaining()) {
+            flush(channel, buffer);
+          }
+          int n = Math.min(storage.columns - j, buffer.remaining() / Double.BYTES);
+          DoubleBuffer view = buffer.asDoubleBuffer();
+          if (storage.hasRowArrays()) {
+            view.put(storage.rowArray(i), storage.rowOffset(i) + j, n);
+          } else {
+            for (int k = 0; k < n; k++) {
+              view.put(storage.get(i, j + k));
+            }
+          }
+          buffer.position(buffer.position() + n * Double.BYTES);
+          j += n;
+        }
+      }
+      flush(channel, buffer);
+    }
+  }
+
+  /**
+   * bufferに蓄えた内容をchannelに書き込み，bufferを空にします。
+   *
+   * @param channel 書き込み先
+   * @param buffer 書き込む内容
+   * @throws IOException 入出力エラーが発生した場合
+   */
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * バイナリ形式のファイルを読み込み，書き込み時と同じ形式の記憶域に成分をコピーして返します。
+   *
+   * @param filename ファイル名
+   * @return 読み込んだ記憶域
+   * @throws IOException 入出力エラーが発生した場合，またはファイルがバイナリ形式でない場合
+   */
+  static DoubleStorage read(String filename) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      Header header = readHeader(channel, filename);
+      DoubleStorage result = DoubleMatrix.allocate(header.layout, header.rows, header.columns);
+      double[] buffered = result.hasRowArrays() ? null : new double[header.columns];
+
+      channel.position(HEADER_SIZE);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(header.order);
+      buffer.flip();
+      for (int i = 0; i < header.rows; i++) {
+        double[] row = (buffered == null) ? result.rowArray(i) : buffered;
+        int offset = (buffered == null) ? result.rowOffset(i) : 0;
+        for (int j = 0; j < header.columns; ) {
+          if (buffer.remaining() < Double.BYTES) {
+            buffer.compact();
+            while (buffer.position() < Double.BYTES) {
+              if (channel.read(buffer) < 0) {
+                throw (new IOException(String.format("%s: ファイルが途中で終わっています", filename)));
+              }
+            }
+            buffer.flip();
+          }
+          int n = Math.min(header.columns - j, buffer.remaining() / Double.BYTES);
+          buffer.asDoubleBuffer().get(row, offset + j, n);
+          buffer.position(buffer.position() + n * Double.BYTES);
+          j += n;
+        }
+        if (buffered != null) {
+          ((BufferStorage) result).setRow(i, buffered, 0);
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * バイナリ形式のファイルの成分の領域をmodeでメモリマップし，その領域を直接参照する記憶域を返します。
+   *
+   * @param filename ファイル名
+   * @param mode マップのモード
+   * @return マップした領域を参照する記憶域
+   * @throws IOException 入出力エラーが発生した場合，またはファイルがバイナリ形式でない場合
+   */
+  static DoubleStorage map(String filename, FileChannel.MapMode mode) throws IOException {
+    StandardOpenOption[] options =
+        (mode == FileChannel.MapMode.READ_ONLY)
+            ? new StandardOpenOption[] {StandardOpenOption.READ}
+            : new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE};
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), options)) {
+      Header header = readHeader(channel, filename);
+      int rowsPerSegment = BufferStorage.rowsPerSegment(header.columns);
+      DoubleBuffer[] segments =
+          new DoubleBuffer[BufferStorage.segmentCount(header.rows, rowsPerSegment)];
+      for (int s = 0; s < segments.length; s++) {
+        long rows = Math.min(rowsPerSegment, header.rows - (long) s * rowsPerSegment);
+        long position = HEADER_SIZE + (long) s * rowsPerSegment * header.columns * Double.BYTES;
+        segments[s] =
+            channel
+                .map(mode, position, rows * header.columns * Double.BYTES)
+                .order(header.order)
+                .asDoubleBuffer();
+      }
+      return (new MappedStorage(segments, rowsPerSegment, header.rows, header.columns));
+    }
+  }
+
+  /**
+   * ヘッダを読み込んで検証します。
+   *
+   * @param channel ファイル
+   * @param filename エラーメッセージに含めるファイル名
+   * @return ヘッダの内容
+   * @throws IOException 入出力エラーが発生した場合，またはヘッダが不正な場合
+   */
+  private static Header readHeader(FileChannel channel, String filename) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, buffer.position()) < 0) {
+        break;
+      }
+    }
+    if (buffer.hasRemaining() || buffer.getInt(0) != MAGIC) {
+      throw (new IOException(String.format("%s: 行列のバイナリ形式ではありません", filename)));
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw (new IOException(
+          String.format("%s: 対応していないバージョンです: %d", filename, buffer.getInt(4))));
+    }
+
+    int order = buffer.get(8);
+    int layout = buffer.get(9);
+    int rows = buffer.getInt(12);
+    int columns = buffer.getInt(16);
+    if (order < 0
+        || order > 1
+        || layout < 0
+        || layout >= DoubleMatrix.Layout.values().length
+        || rows < 1
+        || columns < 1) {
+      throw (new IOException(String.format("%s: ヘッダが不正です", filename)));
+    }
+    if (channel.size() < HEADER_SIZE + (long) rows * columns * Double.BYTES) {
+      throw (new IOException(String.format("%s: ファイルが途中で終わっています", filename)));
+    }
+
+    return (new Header(
+        (order == 0) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN,
+        DoubleMatrix.Layout.values()[layout],
+        rows,
+        columns));
+  }
+}
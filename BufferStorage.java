@@ -0,0 +1,141 @@
+import java.nio.DoubleBuffer;
+
+/**
+ * ヒープの外の領域を参照するDoubleBufferに，行優先(row-major)で成分を保持する記憶域の基底クラスです。<br>
+ * <br>
+ * 1つのバッファで扱える大きさには上限があるため，領域は行の境界で複数のセグメントに分割されます。<br>
+ * 第i行は第(i / rowsPerSegment)セグメントの中の，(i % rowsPerSegment) * columnsの位置から始まります。<br>
+ * 各セグメントの中の位置はintに収まりますが，セグメントの数に制限はないため，<br>
+ * 成分の総数はInteger.MAX_VALUEを超えても構いません。<br>
+ * 行単位の配列を持たないため，演算は成分ごとの読み書きによる経路で行われます。
+ */
+abstract class BufferStorage extends DoubleStorage {
+
+  /** 成分を保持するセグメントです。記憶域を解放した後はnullです。 */
+  private DoubleBuffer[] segments;
+
+  /** 1つのセグメントに含まれる行数です(最後のセグメントを除く)。 */
+  private final int rowsPerSegment;
+
+  /**
+   * セグメントの並びを記憶域として使用します。
+   *
+   * @param segments 成分を保持するセグメント
+   * @param rowsPerSegment 1つのセグメントに含まれる行数
+   * @param rows 行数
+   * @param columns 列数
+   */
+  BufferStorage(DoubleBuffer[] segments, int rowsPerSegment, int rows, int columns) {
+    super(rows, columns);
+    this.segments = segments;
+    this.rowsPerSegment = rowsPerSegment;
+  }
+
+  /**
+   * 1つのセグメントに収める行数を返します。各セグメントの大きさが1つのバッファの上限を超えないように決定されます。
+   *
+   * @param columns 列数
+   * @return 1つのセグメントに含まれる行数
+   */
+  static int rowsPerSegment(int columns) {
+    return Math.max(1, Integer.MAX_VALUE / Double.BYTES / columns);
+  }
+
+  /**
+   * rows行を保持するために必要なセグメントの数を返します。
+   *
+   * @param rows 行数
+   * @param rowsPerSegment 1つのセグメントに含まれる行数
+   * @return セグメントの数
+   */
+  static int segmentCount(int rows, int rowsPerSegment) {
+    return ((rows + rowsPerSegment - 1) / rowsPerSegment);
+  }
+
+  /**
+   * (i, j)が添え字の範囲内にあり，記憶域が解放されていないことを確認し，第i行を含むセグメントを返します。<br>
+   * segmentsは1度だけ読み出し，確認に使用した参照をそのままアクセスに使用します。
+   *
+   * @param i i
+   * @param j j
+   * @return 第i行を含むセグメント
+   * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+   * @throws IllegalStateException 記憶域が既に解放されている場合
+   */
+  private DoubleBuffer segment(int i, int j) {
+    if (i < 0 || i >= this.rows || j < 0 || j >= this.columns) {
+      throw (new ArrayIndexOutOfBoundsException(String.format("添え字が範囲外です: (%d,%d)", i, j)));
+    }
+    DoubleBuffer[] segments = this.segments;
+    if (segments == null) {
+      throw (new IllegalStateException("記憶域は既に解放されています"));
+    }
+    return segments[i / this.rowsPerSegment];
+  }
+
+  @Override
+  double get(int i, int j) {
+    return segment(i, j).get((i % this.rowsPerSegment) * this.columns + j);
+  }
+
+  @Override
+  void set(int i, int j, double entry) {
+    segment(i, j).put((i % this.rowsPerSegment) * this.columns + j, entry);
+  }
+
+  @Override
+  void swapRows(int i1, int i2) {
+    for (int j = 0; j < this.columns; j++) {
+      double tmp = get(i1, j);
+      set(i1, j, get(i2, j));
+      set(i2, j, tmp);
+    }
+  }
+
+  /**
+   * 第i行の成分をdestの指定された位置へまとめてコピーします。
+   *
+   * @param i 行番号
+   * @param dest コピー先
+   * @param offset コピー先の位置
+   */
+  void getRow(int i, double[] dest, int offset) {
+    segment(i, 0).get((i % this.rowsPerSegment) * this.columns, dest, offset, this.columns);
+  }
+
+  /**
+   * srcの指定された位置から1行分の成分を，第i行へまとめてコピーします。
+   *
+   * @param i 行番号
+   * @param src コピー元
+   * @param offset コピー元の位置
+   */
+  void setRow(int i, double[] src, int offset) {
+    segment(i, 0).put((i % this.rowsPerSegment) * this.columns, src, offset, this.columns);
+  }
+
+  @Override
+  DoubleStorage copy() {
+    DoubleStorage result = allocate(this.rows, this.columns);
+    if (result.hasRowArrays()) {
+      for (int i = 0; i < this.rows; i++) {
+        getRow(i, result.rowArray(i), result.rowOffset(i));
+      }
+    } else {
+      double[] row = new double[this.columns];
+      for (int i = 0; i < this.rows; i++) {
+        getRow(i, row, 0);
+        ((BufferStorage) result).setRow(i, row, 0);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 記憶域を使用できない状態にします。以降の成分へのアクセスはIllegalStateExceptionをスローします。<br>
+   * 他のスレッドが成分へアクセスしている最中に呼び出した場合の動作は保証されません。
+   */
+  void release() {
+    this.segments = null;
+  }
+}
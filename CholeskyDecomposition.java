@@ -0,0 +1,372 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 対称正定値行列Aを，ブロック化したコレスキー分解でA = L * t^Lに分解した結果です。Lは下三角行列です。<br>
+ * <br>
+ * 分解は右方向(right-looking)にBLOCK列ずつ進みます(UNBLOCKED_ORDER以下の次数ではブロック化しません)。<br>
+ * 対角ブロックL11と，その下のブロックL21 = A21 * t^L11^-1は，同じ行の中で連続した成分同士の内積で求めます。トレイリング行列の更新A22 -= L21 * t^L21は，<br>
+ * 対称性を利用して下三角部分だけをBLOCK行ずつの帯に分けて計算し，各帯は部分行列のビューに対するGemmで計算されます。<br>
+ * ForkJoinPoolを指定した場合，L21の各行とトレイリング行列の各帯は互いに素な行だけを更新するため，それぞれ並列に計算されます。<br>
+ * <br>
+ * ピボット選択は行わないため，LU分解の約半分の計算量で分解できます。<br>
+ * 対角成分の計算で0d以下の値(またはNaN)が現れた時点で，正定値ではないと判定して分解を打ち切ります。<br>
+ * ブロック化した分解で使用するのは下三角部分(対角成分を含む)だけで，上三角部分は参照しません。
+ */
+final class CholeskyDecomposition {
+
+  /** パネルの列数(ブロックの大きさ)です。トレイリング行列を更新する帯の行数も同じ値とします。 */
+  static final int BLOCK = 128;
+
+  /**
+   * 次数がこの値以下の行列は，ブロック化せずにfactorUnblockedで分解します。<br>
+   * 行列全体がキャッシュに収まる大きさでは，行ごとのaxpyで消去する方がGemmの準備の分だけ高速です。
+   */
+  static final int UNBLOCKED_ORDER = LuDecomposition.UNBLOCKED_ORDER;
+
+  /** 分解の結果です。下三角部分(対角成分を含む)にLを保持します。 */
+  private final DoubleStorage l;
+
+  /**
+   * 分解の結果を保持します。
+   *
+   * @param l 分解の結果
+   */
+  private CholeskyDecomposition(DoubleStorage l) {
+    this.l = l;
+  }
+
+  /**
+   * 行単位でアクセスできる対称行列の記憶域aを，その場でコレスキー分解します。<br>
+   * aの下三角部分は分解の結果で上書きされます。上三角部分は参照しませんが，計算の途中で一部が変更されます。
+   *
+   * @param a 対称行列の記憶域
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return 分解の結果
+   * @throws ArithmeticException aが正定値ではない場合
+   */
+  static CholeskyDecomposition factor(DoubleStorage a, ForkJoinPool pool) {
+    final int n = a.rows;
+    if (n <= UNBLOCKED_ORDER) {
+      factorUnblocked(a);
+      return (new CholeskyDecomposition(a));
+    }
+
+    for (int k0 = 0; k0 < n; k0 += BLOCK) {
+      final int k1 = Math.min(k0 + BLOCK, n);
+      factorRows(a, k0, k1, k0, k1);
+      if (k1 == n) {
+        break;
+      }
+
+      // L21 = A21 * t^L11^-1
+      final int c0 = k0;
+      long work = (long) (n - k1) * (k1 - k0) * (k1 - k0);
+      if (pool == null || work < RowPartition.PARALLEL_THRESHOLD) {
+        solveRows(a, k1, n, k0, k1);
+      } else {
+        RowPartition.run(
+            pool,
+            RowPartition.byRows(n - k1, RowPartition.parts(pool)),
+            (r0, r1) -> solveRows(a, k1 + r0, k1 + r1, c0, k1));
+      }
+
+      updateTrailing(a, k0, k1, pool);
+    }
+    return (new CholeskyDecomposition(a));
+  }
+
+  /**
+   * aを，ブロック化せずに行ごとの消去で分解します。<br>
+   * 上三角部分をt^Lとして右方向に消去します。第j行の成分で下の各行を更新する処理が行の中で連続したaxpyになるため，<br>
+   * LU分解と同じ速さで消去できます。最後に上三角部分を下三角部分へ転置してコピーします。
+   *
+   * @param a 分解中の記憶域
+   * @throws ArithmeticException 対角成分が正の値にならない(正定値ではない)場合
+   */
+  private static void factorUnblocked(DoubleStorage a) {
+    final int n = a.rows;
+    for (int j = 0; j < n; j++) {
+      double[] jr = a.rowArray(j);
+      int jo = a.rowOffset(j);
+      double s = jr[jo + j];
+      if (!(s > 0)) {
+        throw (new ArithmeticException(
+            String.format("正定値ではないため，計算できません: 第%d対角成分が%sになりました", j, s)));
+      }
+      double d = Math.sqrt(s);
+      jr[jo + j] = d;
+      for (int k = j + 1; k < n; k++) {
+        jr[jo + k] /= d;
+      }
+      for (int i = j + 1; i < n; i++) {
+        double[] ir = a.rowArray(i);
+        int io = a.rowOffset(i);
+        ScalarKernels.axpy(-jr[jo + i], jr, jo + i, ir, io + i, n - i);
+      }
+    }
+
+    for (int i = 1; i < n; i++) {
+      double[] ir = a.rowArray(i);
+      int io = a.rowOffset(i);
+      for (int j = 0; j < i; j++) {
+        ir[io + j] = a.rowArray(j)[a.rowOffset(j) + i];
+      }
+    }
+  }
+
+  /**
+   * 第i0行から第(i1 - 1)行までについて，第k0列から第(k1 - 1)列までのLの成分を求めます。対角ブロックの分解に使用します。<br>
+   * 各成分は，第k0列より前の列の寄与を引いた後のaの成分から，同じ行のLの成分との内積を引いて求めます。<br>
+   * 対角成分(i == j)は平方根を取り，それ以外はLの対角成分で割ります。<br>
+   * 第k0行から第(k1 - 1)行までの対角ブロックは，それより下の行よりも先に求めておく必要があります。
+   *
+   * @param a 分解中の記憶域
+   * @param i0 計算する最初の行
+   * @param i1 計算する最後の行の次の行
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   * @throws ArithmeticException 対角成分が正の値にならない(正定値ではない)場合
+   */
+  private static void factorRows(DoubleStorage a, int i0, int i1, int k0, int k1) {
+    for (int i = i0; i < i1; i++) {
+      double[] ir = a.rowArray(i);
+      int io = a.rowOffset(i);
+      int last = Math.min(i, k1 - 1);
+      for (int j = k0; j <= last; j++) {
+        double[] jr = a.rowArray(j);
+        int jo = a.rowOffset(j);
+        double s = ir[io + j] - ScalarKernels.dot(ir, io + k0, jr, jo + k0, j - k0);
+        if (j < i) {
+          ir[io + j] = s / jr[jo + j];
+        } else if (s > 0) {
+          ir[io + j] = Math.sqrt(s);
+        } else {
+          throw (new ArithmeticException(
+              String.format("正定値ではないため，計算できません: 第%d対角成分が%sになりました", i, s)));
+        }
+      }
+    }
+  }
+
+  /**
+   * 対角ブロックより下の第i0行から第(i1 - 1)行までについて，第k0列から第(k1 - 1)列までのL21の成分を求めます。<br>
+   * factorRowsと同じ計算ですが，4行ずつまとめて同じ対角ブロックの行との内積を求め，対角ブロックの成分の読み込みを共有します。<br>
+   * 各行の内積は偶数番目と奇数番目の2つの部分和に分けて足し込むため，まとめる行の組み合わせによらず計算結果は同じです。
+   *
+   * @param a 分解中の記憶域
+   * @param i0 計算する最初の行(k1以上)
+   * @param i1 計算する最後の行の次の行
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   */
+  private static void solveRows(DoubleStorage a, int i0, int i1, int k0, int k1) {
+    int i = i0;
+    for (; i + 4 <= i1; i += 4) {
+      double[] r0 = a.rowArray(i);
+      double[] r1 = a.rowArray(i + 1);
+      double[] r2 = a.rowArray(i + 2);
+      double[] r3 = a.rowArray(i + 3);
+      int o0 = a.rowOffset(i);
+      int o1 = a.rowOffset(i + 1);
+      int o2 = a.rowOffset(i + 2);
+      int o3 = a.rowOffset(i + 3);
+      for (int j = k0; j < k1; j++) {
+        double[] jr = a.rowArray(j);
+        int jo = a.rowOffset(j);
+        double e0 = 0;
+        double e1 = 0;
+        double e2 = 0;
+        double e3 = 0;
+        double f0 = 0;
+        double f1 = 0;
+        double f2 = 0;
+        double f3 = 0;
+        int p = k0;
+        for (; p + 2 <= j; p += 2) {
+          double y0 = jr[jo + p];
+          double y1 = jr[jo + p + 1];
+          e0 += r0[o0 + p] * y0;
+          f0 += r0[o0 + p + 1] * y1;
+          e1 += r1[o1 + p] * y0;
+          f1 += r1[o1 + p + 1] * y1;
+          e2 += r2[o2 + p] * y0;
+          f2 += r2[o2 + p + 1] * y1;
+          e3 += r3[o3 + p] * y0;
+          f3 += r3[o3 + p + 1] * y1;
+        }
+        if (p < j) {
+          double y0 = jr[jo + p];
+          e0 += r0[o0 + p] * y0;
+          e1 += r1[o1 + p] * y0;
+          e2 += r2[o2 + p] * y0;
+          e3 += r3[o3 + p] * y0;
+        }
+        double d = jr[jo + j];
+        r0[o0 + j] = (r0[o0 + j] - (e0 + f0)) / d;
+        r1[o1 + j] = (r1[o1 + j] - (e1 + f1)) / d;
+        r2[o2 + j] = (r2[o2 + j] - (e2 + f2)) / d;
+        r3[o3 + j] = (r3[o3 + j] - (e3 + f3)) / d;
+      }
+    }
+
+    for (; i < i1; i++) {
+      double[] ir = a.rowArray(i);
+      int io = a.rowOffset(i);
+      for (int j = k0; j < k1; j++) {
+        double[] jr = a.rowArray(j);
+        int jo = a.rowOffset(j);
+        double e = 0;
+        double f = 0;
+        int p = k0;
+        for (; p + 2 <= j; p += 2) {
+          e += ir[io + p] * jr[jo + p];
+          f += ir[io + p + 1] * jr[jo + p + 1];
+        }
+        if (p < j) {
+          e += ir[io + p] * jr[jo + p];
+        }
+        ir[io + j] = (ir[io + j] - (e + f)) / jr[jo + j];
+      }
+    }
+  }
+
+  /**
+   * トレイリング行列(第k1行・第k1列以降)の下三角部分について，A22 -= L21 * t^L21を計算します。<br>
+   * BLOCK行ずつの帯ごとに，その帯の対角ブロックまでの列をGemmで更新します。<br>
+   * 帯の対角ブロックの上三角部分も更新されますが，分解では参照しません。
+   *
+   * @param a 分解中の記憶域
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   */
+  private static void updateTrailing(DoubleStorage a, int k0, int k1, ForkJoinPool pool) {
+    final int n = a.rows;
+    final int bands = (n - k1 + BLOCK - 1) / BLOCK;
+    long work = (long) (n - k1) * (n - k1) * (k1 - k0) / 2;
+    if (pool == null || bands == 1 || work < Gemm.PARALLEL_THRESHOLD) {
+      updateBands(a, k0, k1, 0, bands);
+      return;
+    }
+
+    // 第t帯の計算量は(t + 1)に比例する
+    int[] prefix = new int[bands + 1];
+    for (int t = 0; t < bands; t++) {
+      prefix[t + 1] = prefix[t] + t + 1;
+    }
+    RowPartition.run(
+        pool,
+        RowPartition.byWeight(prefix, RowPartition.parts(pool)),
+        (t0, t1) -> updateBands(a, k0, k1, t0, t1));
+  }
+
+  /**
+   * トレイリング行列の第t0帯から第(t1 - 1)帯までについて，A22 -= L21 * t^L21を計算します。
+   *
+   * @param a 分解中の記憶域
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   * @param t0 計算する最初の帯
+   * @param t1 計算する最後の帯の次の帯
+   */
+  private static void updateBands(DoubleStorage a, int k0, int k1, int t0, int t1) {
+    final int n = a.rows;
+    final int kb = k1 - k0;
+    for (int t = t0; t < t1; t++) {
+      int i0 = k1 + t * BLOCK;
+      int i1 = Math.min(i0 + BLOCK, n);
+      Gemm.multiply(
+          -1,
+          new SubmatrixStorage(a, i0, k0, i1 - i0, kb),
+          new TransposedStorage(new SubmatrixStorage(a, k1, k0, i1 - k1, kb)),
+          new SubmatrixStorage(a, i0, k1, i1 - i0, i1 - k1),
+          0,
+          i1 - i0);
+    }
+  }
+
+  /**
+   * 下三角行列Lを，cに格納します。cは成分が全て0dの記憶域でなければなりません。
+   *
+   * @param c 格納先
+   */
+  void copyLower(DoubleStorage c) {
+    for (int i = 0; i < c.rows; i++) {
+      double[] lr = this.l.rowArray(i);
+      int lo = this.l.rowOffset(i);
+      if (c.hasRowArrays()) {
+        System.arraycopy(lr, lo, c.rowArray(i), c.rowOffset(i), i + 1);
+      } else {
+        for (int j = 0; j <= i; j++) {
+          c.set(i, j, lr[lo + j]);
+        }
+      }
+    }
+  }
+
+  /**
+   * 右辺xについて，L * t^L * X = xを解き，xをXで上書きします。<br>
+   * 前進代入と後退代入はBLOCK行ずつ行い，ブロックの外側への寄与はGemmで計算します。
+   *
+   * @param x 右辺(行単位でアクセスできる記憶域)
+   */
+  void solve(DoubleStorage x) {
+    final int n = this.l.rows;
+    final int m = x.columns;
+    final DoubleStorage a = this.l;
+
+    // L * Y = x
+    for (int k0 = 0; k0 < n; k0 += BLOCK) {
+      final int k1 = Math.min(k0 + BLOCK, n);
+      for (int i = k0; i < k1; i++) {
+        double[] ar = a.rowArray(i);
+        int ao = a.rowOffset(i);
+        double[] xr = x.rowArray(i);
+        int xo = x.rowOffset(i);
+        for (int p = k0; p < i; p++) {
+          ScalarKernels.axpy(-ar[ao + p], x.rowArray(p), x.rowOffset(p), xr, xo, m);
+        }
+        double d = ar[ao + i];
+        for (int j = 0; j < m; j++) {
+          xr[xo + j] /= d;
+        }
+      }
+      if (k1 < n) {
+        Gemm.multiply(
+            -1,
+            new SubmatrixStorage(a, k1, k0, n - k1, k1 - k0),
+            new SubmatrixStorage(x, k0, 0, k1 - k0, m),
+            new SubmatrixStorage(x, k1, 0, n - k1, m),
+            0,
+            n - k1);
+      }
+    }
+
+    // t^L * X = Y (t^Lの第i行はLの第i列なので，Lの第i行を使って上の行へ寄与を引く)
+    for (int k0 = (n - 1) / BLOCK * BLOCK; k0 >= 0; k0 -= BLOCK) {
+      final int k1 = Math.min(k0 + BLOCK, n);
+      for (int i = k1 - 1; i >= k0; i--) {
+        double[] ar = a.rowArray(i);
+        int ao = a.rowOffset(i);
+        double[] xr = x.rowArray(i);
+        int xo = x.rowOffset(i);
+        double d = ar[ao + i];
+        for (int j = 0; j < m; j++) {
+          xr[xo + j] /= d;
+        }
+        for (int p = k0; p < i; p++) {
+          ScalarKernels.axpy(-ar[ao + p], xr, xo, x.rowArray(p), x.rowOffset(p), m);
+        }
+      }
+      if (k0 > 0) {
+        Gemm.multiply(
+            -1,
+            new TransposedStorage(new SubmatrixStorage(a, k0, 0, k1 - k0, k0)),
+            new SubmatrixStorage(x, k0, 0, k1 - k0, m),
+            new SubmatrixStorage(x, 0, 0, k0, m),
+            0,
+            k0);
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * 対角成分だけを保持する記憶域です。対角成分以外の成分は全て0dとして扱います。<br>
+ * 単位行列や対角行列を，n * nの配列を確保せずにO(n)の領域で表します。<br>
+ * <br>
+ * 対角成分以外の成分に0d以外の値が格納されるか，行の入れ替えが行われると，<br>
+ * その時点でJAGGED形式の密な記憶域に変換され，以降の読み書きは全てそちらに対して行われます。<br>
+ * 変換は記憶域の内部で行われるため，この記憶域を共有しているビューからも変換後の成分が見えます。<br>
+ * 演算結果はJAGGED形式の記憶域に格納されます(対角行列同士の和，差，積などを除く)。<br>
+ * 行列積は対角成分以外の0dとの乗算を省略して計算されます。そのため，無限大やNaNを含む行列との積では，<br>
+ * 密な行列として計算した結果と異なる場合があります。
+ */
+final class DiagonalStorage extends DoubleStorage {
+
+  /** 対角成分です。密な記憶域に変換した後はnullです。 */
+  private double[] diagonal;
+
+  /** 密な記憶域に変換した後の成分です。変換するまではnullです。 */
+  private DoubleStorage dense;
+
+  /**
+   * 指定された配列をそのまま対角成分として使用します。
+   *
+   * @param diagonal 対角成分。長さはrowsとcolumnsの小さい方でなければなりません
+   * @param rows 行数
+   * @param columns 列数
+   */
+  DiagonalStorage(double[] diagonal, int rows, int columns) {
+    super(rows, columns);
+    this.diagonal = diagonal;
+  }
+
+  /**
+   * 型がrows * columnsで成分の値が全て0dの記憶域を生成します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   */
+  DiagonalStorage(int rows, int columns) {
+    this(new double[Math.min(rows, columns)], rows, columns);
+  }
+
+  /**
+   * storageが密な記憶域に変換されていないDiagonalStorageならtrueを返します。
+   *
+   * @param storage 任意の記憶域
+   * @return 対角成分だけを保持しているならtrue
+   */
+  static boolean isDiagonal(DoubleStorage storage) {
+    return (storage instanceof DiagonalStorage && ((DiagonalStorage) storage).diagonal != null);
+  }
+
+  /**
+   * 対角成分を保持している配列を返します。isDiagonal(this)がtrueの場合に限り使用できます。
+   *
+   * @return 対角成分
+   */
+  double[] diagonal() {
+    return this.diagonal;
+  }
+
+  /**
+   * 対角成分を書き込んだ密な記憶域に変換し，それを返します。
+   *
+   * @return 変換後の記憶域
+   */
+  private DoubleStorage densify() {
+    double[][] matrix = new double[this.rows][this.columns];
+    for (int i = 0; i < this.diagonal.length; i++) {
+      matrix[i][i] = this.diagonal[i];
+    }
+    this.dense = new JaggedStorage(matrix);
+    this.diagonal = null;
+    return this.dense;
+  }
+
+  /**
+   * (i, j)が添え字の範囲内にあることを確認します。
+   *
+   * @param i i
+   * @param j j
+   * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+   */
+  private void checkIndex(int i, int j) {
+    if (i < 0 || i >= this.rows || j < 0 || j >= this.columns) {
+      throw (new ArrayIndexOutOfBoundsException(
+          String.format("添え字が範囲外です: (%d,%d)", i, j)));
+    }
+  }
+
+  @Override
+  double get(int i, int j) {
+    if (this.dense != null) {
+      return this.dense.get(i, j);
+    }
+    checkIndex(i, j);
+    return (i == j ? this.diagonal[i] : 0);
+  }
+
+  @Override
+  void set(int i, int j, double entry) {
+    if (this.dense != null) {
+      this.dense.set(i, j, entry);
+      return;
+    }
+    checkIndex(i, j);
+    if (i == j) {
+      this.diagonal[i] = entry;
+    } else if (Double.doubleToRawLongBits(entry) != 0L) {
+      // -0dも0dとは区別できる(文字列表現が異なる)ため，密な記憶域に変換する
+      densify().set(i, j, entry);
+    }
+  }
+
+  @Override
+  void swapRows(int i1, int i2) {
+    if (this.dense != null) {
+      this.dense.swapRows(i1, i2);
+      return;
+    }
+    checkIndex(i1, 0);
+    checkIndex(i2, 0);
+    if (i1 != i2) {
+      densify().swapRows(i1, i2);
+    }
+  }
+
+  @Override
+  DoubleStorage copy() {
+    if (this.dense != null) {
+      return this.dense.copy();
+    }
+    return (new DiagonalStorage(this.diagonal.clone(), this.rows, this.columns));
+  }
+
+  @Override
+  DoubleStorage allocate(int rows, int columns) {
+    return (new JaggedStorage(new double[rows][columns]));
+  }
+
+  @Override
+  DoubleMatrix.Layout layout() {
+    return DoubleMatrix.Layout.JAGGED;
+  }
+
+  @Override
+  boolean hasRowArrays() {
+    return (this.dense != null);
+  }
+
+  @Override
+  double[] rowArray(int i) {
+    if (this.dense == null) {
+      throw (new UnsupportedOperationException());
+    }
+    return this.dense.rowArray(i);
+  }
+
+  @Override
+  int rowOffset(int i) {
+    if (this.dense == null) {
+      throw (new UnsupportedOperationException());
+    }
+    return this.dense.rowOffset(i);
+  }
+}
@@ -0,0 +1,419 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * doubleの値を10進表記の文字列に変換し，文字バッファへ直接書き込みます。<br>
+ * <br>
+ * 既定では，元の値に正確に戻すことができる最短の10進表記を，GiuliettiのSchubfachアルゴリズムで求めます。<br>
+ * 出力の形式はDouble.toString()と同じです。すなわち，絶対値が10^-3以上10^7未満の値は"123.45"のような通常の表記で，<br>
+ * それ以外の値は"1.2345E-7"のような指数表記で，いずれも小数点以下を少なくとも1桁含みます。<br>
+ * (JDK 18以前のDouble.toString()は最短でない表記を返すことがあるため，その場合は桁数が少なくなります。)<br>
+ * <br>
+ * 有効桁数を指定した場合は，元の値(2進数の正確な値)を指定された桁数に四捨五入して出力します。<br>
+ * 最短の10進表記を丸めると二重丸めになる場合があるため，最短の10進表記の切り捨てる桁が丸めの境界(5, 50, ...)に<br>
+ * 元の値との誤差の範囲まで近い場合だけは，BigDecimalで元の値から丸め直します<br>
+ * (有効桁数が16の場合は，doubleの精度に近いためほとんどの値で丸め直します)。<br>
+ * この場合，出力から元の値に正確に戻せるとは限りません。<br>
+ * <br>
+ * 変換の途中でオブジェクトを生成しないため，大量の成分を出力する場合でもヒープへの割り当てが発生しません<br>
+ * (有効桁数を指定した場合の，上記の丸め直しを除きます)。
+ */
+final class DoubleFormatter {
+
+  /** 最短の10進表記を出力する場合の有効桁数の指定です。 */
+  static final int SHORTEST = 17;
+
+  /** doubleの仮数部の精度(ビット数)です。 */
+  private static final int P = 53;
+
+  /** 2進指数の最小値です。 */
+  private static final int Q_MIN = -1074;
+
+  /** 正規化数の仮数部の最小値です。 */
+  private static final long C_MIN = 1L << (P - 1);
+
+  /** これより小さな仮数部の非正規化数は，1桁多く計算する必要があります。 */
+  private static final long C_TINY = 3;
+
+  /** 10の累乗の近似値の表の指数の最小値です。 */
+  private static final int K_MIN = -324;
+
+  /** 10の累乗の近似値の表の指数の最大値です。 */
+  private static final int K_MAX = 292;
+
+  /** 最短の10進表記の最大の桁数です。 */
+  private static final int H = 17;
+
+  private static final long MASK_63 = 0x7FFF_FFFF_FFFF_FFFFL;
+
+  private static final int MASK_28 = (1 << 28) - 1;
+
+  /** 10^0から10^17までの値です。 */
+  private static final long[] POW10 = new long[H + 1];
+
+  /**
+   * 10^(-k)を2^rの倍数として近似した126ビットの値gの上位63ビットと下位63ビットです。<br>
+   * g = floor(10^(-k) * 2^(-r)) + 1，r = floor(log2(10^(-k))) - 125です。添え字は(k - K_MIN) * 2とその次です。
+   */
+  private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+  static {
+    POW10[0] = 1;
+    for (int i = 1; i <= H; i++) {
+      POW10[i] = POW10[i - 1] * 10;
+    }
+
+    for (int k = K_MIN; k <= K_MAX; k++) {
+      int shift = 125 - flog2pow10(-k);
+      BigInteger g;
+      if (k <= 0) {
+        BigInteger pow10 = BigInteger.TEN.pow(-k);
+        g = (shift >= 0) ? pow10.shiftLeft(shift) : pow10.shiftRight(-shift);
+      } else {
+        g = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+      }
+      g = g.add(BigInteger.ONE);
+      G[(k - K_MIN) << 1] = g.shiftRight(63).longValue();
+      G[(k - K_MIN) << 1 | 1] = g.longValue() & MASK_63;
+    }
+  }
+
+  /** 書き込み先の文字バッファです。 */
+  private char[] chars;
+
+  /** 最後に書き込んだ文字の位置です。 */
+  private int index;
+
+  /** 出力する有効桁数です。 */
+  private final int precision;
+
+  /** 出力中の値の絶対値です(有効桁数を指定した場合の丸め直しに使用します)。 */
+  private double value;
+
+  /** 最短の10進表記を出力するフォーマッタを生成します。 */
+  DoubleFormatter() {
+    this(SHORTEST);
+  }
+
+  /**
+   * 有効桁数がprecisionの10進表記を出力するフォーマッタを生成します。
+   *
+   * @param precision 有効桁数(1以上17以下。17の場合は最短の10進表記)
+   * @throws IllegalArgumentException precisionが範囲外の場合
+   */
+  DoubleFormatter(int precision) {
+    if (precision < 1 || precision > SHORTEST) {
+      throw (new IllegalArgumentException("有効桁数が範囲外です: " + precision));
+    }
+    this.precision = precision;
+  }
+
+  /**
+   * vの10進表記をchars[pos]から書き込みます。charsにはpos以降に少なくとも24文字の空きが必要です。
+   *
+   * @param v 値
+   * @param chars 書き込み先
+   * @param pos 書き込みを始める位置
+   * @return 書き込んだ最後の文字の次の位置
+   */
+  int format(double v, char[] chars, int pos) {
+    this.chars = chars;
+    this.index = pos - 1;
+    this.value = Math.abs(v);
+
+    long bits = Double.doubleToRawLongBits(v);
+    long t = bits & (C_MIN - 1);
+    int bq = (int) (bits >>> (P - 1)) & 0x7FF;
+    if (bq == 0x7FF) {
+      append((t != 0) ? "NaN" : (bits > 0) ? "Infinity" : "-Infinity");
+    } else {
+      if (bits < 0) {
+        append('-');
+      }
+      if (bq != 0) {
+        // 正規化数
+        int mq = -Q_MIN + 1 - bq;
+        long c = C_MIN | t;
+        long f = c >> mq;
+        if (0 < mq && mq < P && f << mq == c) {
+          // 整数
+          toChars(f, 0);
+        } else {
+          toDecimal(-mq, c, 0);
+        }
+      } else if (t != 0) {
+        // 非正規化数
+        if (t < C_TINY) {
+          toDecimal(Q_MIN, 10 * t, -1);
+        } else {
+          toDecimal(Q_MIN, t, 0);
+        }
+      } else {
+        append("0.0");
+      }
+    }
+
+    this.chars = null;
+    return this.index + 1;
+  }
+
+  /**
+   * c * 2^qを丸めの区間に含む最短の10進数f * 10^eを求め，出力します。
+   *
+   * @param q 2進指数
+   * @param c 仮数部
+   * @param dk 10進指数の補正
+   */
+  private void toDecimal(int q, long c, int dk) {
+    int out = (int) c & 0x1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != C_MIN || q == Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+
+    long g1 = G[(k - K_MIN) << 1];
+    long g0 = G[(k - K_MIN) << 1 | 1];
+
+    long vb = rop(g1, g0, cb << h);
+    long vbl = rop(g1, g0, cbl << h);
+    long vbr = rop(g1, g0, cbr << h);
+
+    long s = vb >> 2;
+    if (s >= 100) {
+      // 1桁少ない候補が区間に含まれるかを先に調べる
+      long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        toChars(upin ? sp10 : tp10, k);
+        return;
+      }
+    }
+
+    long t = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      toChars(uin ? s : t, k + dk);
+      return;
+    }
+    long cmp = vb - (s + t << 1);
+    toChars((cmp < 0 || cmp == 0 && (s & 0x1) == 0) ? s : t, k + dk);
+  }
+
+  /**
+   * (g1 * 2^63 + g0) * cpを2^127で割った値を，丸めの方向が分かるように最下位ビットを調整して返します。
+   *
+   * @param g1 10の累乗の近似値の上位63ビット
+   * @param g0 10の累乗の近似値の下位63ビット
+   * @param cp 仮数部を左にずらした値
+   * @return 積の上位ビット(端数があれば最下位ビットが1)
+   */
+  private static long rop(long g1, long g0, long cp) {
+    long x1 = Math.multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = Math.multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+  }
+
+  /**
+   * 10進数f * 10^eを出力します。有効桁数が指定されている場合は，元の値をその桁数に四捨五入します。<br>
+   * fは元の値の最短の10進表記で，元の値との差はulpの半分以下です。fをprecision桁に揃えたときに，<br>
+   * 切り捨てる部分と丸めの境界(precision桁目の0.5)との差がこの誤差より十分に大きければ，<br>
+   * fを丸めた結果は元の値を丸めた結果と一致します。そうでない場合は，BigDecimalで元の値から丸め直します。<br>
+   * fの桁数がprecision以下の場合も，precision桁の境界が誤差の範囲にあれば(precisionが16の場合に起こります)丸め直します。
+   *
+   * @param f 10進数の仮数部
+   * @param e 10進指数
+   */
+  private void toChars(long f, int e) {
+    int len = length(f);
+    if (this.precision < SHORTEST) {
+      int drop = len - this.precision;
+      long unit = (drop > 0) ? POW10[drop] : 1;
+      long rest = f % unit;
+      // 切り捨てる部分と丸めの境界との差と，元の値とfの差の上限(2倍の余裕を持たせる)。単位はprecision桁目の1
+      double distance = (drop > 0) ? Math.abs(rest - unit / 2) / (double) unit : 0.5;
+      double error = f * (Math.ulp(this.value) / this.value) / unit * POW10[Math.max(0, -drop)];
+      if (distance <= error) {
+        BigDecimal exact = new BigDecimal(this.value)
+            .round(new MathContext(this.precision, RoundingMode.HALF_UP));
+        f = exact.unscaledValue().longValue();
+        e = -exact.scale();
+        len = length(f);
+      } else if (drop > 0) {
+        f = f / unit + ((rest > unit / 2) ? 1 : 0);
+        e += drop;
+        len = this.precision;
+        if (f == POW10[len]) {
+          f /= 10;
+          e += 1;
+        }
+      }
+    }
+
+    // 10^(H - 1) <= f < 10^Hとなるように桁を揃え，f * 10^eを0.f * 10^eと見なす
+    f *= POW10[H - len];
+    e += len;
+
+    // 17桁を最上位の1桁h，続く8桁m，最下位の8桁lに分ける
+    long hm = Math.multiplyHigh(f, 193_428_131_138_340_668L) >>> 20;
+    int l = (int) (f - 100_000_000 * hm);
+    int h = (int) (hm * 1_441_151_881 >>> 57);
+    int m = (int) (hm - 100_000_000 * h);
+    if (0 < e && e <= 7) {
+      // 先頭に0が付かない通常の表記
+      appendDigit(h);
+      int y = y(m);
+      int i = 1;
+      for (; i < e; ++i) {
+        int d = 10 * y;
+        appendDigit(d >>> 28);
+        y = d & MASK_28;
+      }
+      append('.');
+      for (; i <= 8; ++i) {
+        int d = 10 * y;
+        appendDigit(d >>> 28);
+        y = d & MASK_28;
+      }
+      lowDigits(l);
+    } else if (-3 < e && e <= 0) {
+      // 先頭に0が付く通常の表記
+      appendDigit(0);
+      append('.');
+      for (; e < 0; ++e) {
+        appendDigit(0);
+      }
+      appendDigit(h);
+      append8Digits(m);
+      lowDigits(l);
+    } else {
+      // 指数表記
+      appendDigit(h);
+      append('.');
+      append8Digits(m);
+      lowDigits(l);
+      exponent(e - 1);
+    }
+  }
+
+  /**
+   * 最下位の8桁を出力し，末尾の0を取り除きます。ただし，小数点の直後の0は残します。
+   *
+   * @param l 最下位の8桁
+   */
+  private void lowDigits(int l) {
+    if (l != 0) {
+      append8Digits(l);
+    }
+    while (this.chars[this.index] == '0') {
+      --this.index;
+    }
+    if (this.chars[this.index] == '.') {
+      ++this.index;
+    }
+  }
+
+  /**
+   * 0以上10^8未満のmを，先頭の0を含めて8桁で出力します。
+   *
+   * @param m 値
+   */
+  private void append8Digits(int m) {
+    int y = y(m);
+    for (int i = 0; i < 8; ++i) {
+      int d = 10 * y;
+      appendDigit(d >>> 28);
+      y = d & MASK_28;
+    }
+  }
+
+  /**
+   * 左から順に桁を取り出すための初期値floor((a + 1) * 2^28 / 10^8) - 1を返します。
+   *
+   * @param a 0以上10^8未満の値
+   * @return 初期値
+   */
+  private static int y(int a) {
+    return (int) (Math.multiplyHigh((long) (a + 1) << 28, 193_428_131_138_340_668L) >>> 20) - 1;
+  }
+
+  /**
+   * 指数部"E"と10進指数eを出力します。
+   *
+   * @param e 10進指数
+   */
+  private void exponent(int e) {
+    append('E');
+    if (e < 0) {
+      append('-');
+      e = -e;
+    }
+    if (e < 10) {
+      appendDigit(e);
+      return;
+    }
+    int d;
+    if (e >= 100) {
+      d = e * 1_311 >>> 17;
+      appendDigit(d);
+      e -= 100 * d;
+    }
+    d = e * 103 >>> 10;
+    appendDigit(d);
+    appendDigit(e - 10 * d);
+  }
+
+  private void append(char c) {
+    this.chars[++this.index] = c;
+  }
+
+  private void append(String s) {
+    s.getChars(0, s.length(), this.chars, this.index + 1);
+    this.index += s.length();
+  }
+
+  private void appendDigit(int d) {
+    this.chars[++this.index] = (char) ('0' + d);
+  }
+
+  /**
+   * 10^(len - 1) &lt;= f &lt; 10^lenとなるlen(fの桁数)を返します。
+   *
+   * @param f 1以上10^17以下の値
+   * @return 桁数
+   */
+  private static int length(long f) {
+    int len = flog10pow2(Long.SIZE - Long.numberOfLeadingZeros(f));
+    return (f >= POW10[len]) ? len + 1 : len;
+  }
+
+  /** floor(log10(2^e))を返します。 */
+  private static int flog10pow2(int e) {
+    return (int) (e * 661_971_961_083L >> 41);
+  }
+
+  /** floor(log10(3/4 * 2^e))を返します。 */
+  private static int flog10threeQuartersPow2(int e) {
+    return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+  }
+
+  /** floor(log2(10^e))を返します。 */
+  private static int flog2pow10(int e) {
+    return (int) (e * 913_124_641_741L >> 38);
+  }
+}
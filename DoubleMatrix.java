@@ -1,10 +1,17 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * double型2次元配列をラップし，行列として扱えるようにするクラスです。<br>
@@ -16,7 +23,7 @@ import java.util.Objects;
  *
  * @author mpp
  */
-public class DoubleMatrix {
+public class DoubleMatrix implements AutoCloseable {
 
   /**
    * この行列を文字列として表現するとき(オーバライドされたtoString()の呼び出し時)に各成分の間に挿入される区切り文字を表します。<br>
@@ -27,8 +34,76 @@ public class DoubleMatrix {
    */
   private static final String DEFAULT_DELIM = " ";
 
+  /**
+   * 転置や対称性の判定を行うときに一度に処理する正方形のタイルの一辺の長さです。<br>
+   * 転置元と転置先のタイル(それぞれ32 * 32成分 = 8KB)が同時にL1キャッシュに収まる大きさにしています。
+   */
+  private static final int TRANSPOSE_TILE = 32;
+
+  /**
+   * 行単位でアクセスできない記憶域へ行列積を格納するときに，ヒープ上の作業領域で一度に計算する成分の数の目安です。<br>
+   * 作業領域は左辺と結果のそれぞれについてこの数(32MB)までの大きさになります。
+   */
+  private static final int STRIP_ENTRIES = 1 << 22;
+
+  /**
+   * randomizedSvdで，求める特異対の数に追加して乱数の行列Ωに含める列の数です。<br>
+   * 追加の列によって，k番目付近の特異ベクトルの方向も十分に含む部分空間が得られます。
+   */
+  private static final int RANDOMIZED_OVERSAMPLING = 10;
+
+  /**
+   * 行列の成分を保持する記憶域の形式を表します。<br>
+   * 形式の違いは行列の振る舞いには影響せず，メモリ上の配置と各演算の性能特性のみが異なります。<br>
+   * 演算結果の行列は，原則としてレシーバ(this)と同じ形式で生成されます。
+   *
+   * @see #layout()
+   */
+  public enum Layout {
+    /**
+     * 行ごとに独立したdouble型配列で成分を保持する形式です。<br>
+     * 行の入れ替えが配列への参照の交換のみで完了します。既定の形式です。
+     */
+    JAGGED,
+
+    /**
+     * 1つの連続したdouble型配列に行優先(row-major)で成分を保持する形式です。<br>
+     * 全ての行がメモリ上で隣接するため，行列全体を走査する演算でキャッシュの局所性が高くなります。<br>
+     * ただし，行の入れ替えには成分のコピーが必要になります。
+     */
+    FLAT,
+
+    /**
+     * ヒープの外に確保した領域に，行優先(row-major)で成分を保持する形式です。<br>
+     * 成分がGCの対象とならないため，巨大な行列を扱ってもGCの停止時間に影響しません。<br>
+     * 成分の総数がInteger.MAX_VALUEを超える行列も保持できます。<br>
+     * 演算は成分ごとの読み書きによる経路で行われるため，JAGGEDやFLATより低速です。<br>
+     * 使い終わった行列はclose()で領域を解放してください。<br>
+     * openMapped()でメモリマップしたファイルの領域を参照する行列も，この形式になります。
+     *
+     * @see DoubleMatrix#close()
+     * @see DoubleMatrix#openMapped(String, FileChannel.MapMode)
+     */
+    OFF_HEAP,
+  }
+
+  /**
+   * 正方行列の三角部分を表します。対称行列や三角行列を圧縮形式で生成するときに，元の行列のどちら側を使用するかを指定します。
+   *
+   * @see #createSymmetricMatrix(DoubleMatrix, Triangle)
+   * @see #createTriangularMatrix(DoubleMatrix, Triangle)
+   */
+  public enum Triangle {
+    /** 対角成分とそれより上の成分(i &lt;= j)です。 */
+    UPPER,
+
+    /** 対角成分とそれより下の成分(i &gt;= j)です。 */
+    LOWER,
+  }
+
   /**
    * 行列の文字列表現を指定された区切り文字を使用してファイルに書き込みます。<br>
+   * 行列全体の文字列表現を生成せずに，一定の大きさのバッファを介して先頭から順次書き込みます。<br>
    * 以下は，行列をCSVファイルとして書き出す例です。
    *
    * <pre>{@code
@@ -50,13 +125,32 @@ public class DoubleMatrix {
   public static void writeToFile(DoubleMatrix matrix, String filename, String delim)
       throws IOException {
     try (BufferedWriter file = Files.newBufferedWriter(Paths.get(filename))) {
-      file.write(matrix.toString(delim));
+      matrix.toString(file, delim);
       file.flush();
     } catch (IOException ioe) {
       throw ioe;
     }
   }
 
+  /**
+   * 各成分を有効桁数precisionに丸めた行列の文字列表現を，指定された区切り文字を使用してファイルに書き込みます。
+   *
+   * @param matrix 行列
+   * @param filename ファイル名
+   * @param delim 各要素間の区切り文字
+   * @param precision 有効桁数(1以上17以下)
+   * @throws IOException 入出力エラーが発生した場合
+   * @throws IllegalArgumentException 区切り文字が不正な場合，またはprecisionが範囲外の場合
+   * @see #toString(Appendable, String, int)
+   */
+  public static void writeToFile(DoubleMatrix matrix, String filename, String delim, int precision)
+      throws IOException {
+    try (BufferedWriter file = Files.newBufferedWriter(Paths.get(filename))) {
+      matrix.toString(file, delim, precision);
+      file.flush();
+    }
+  }
+
   /**
    * 行列の文字列表現(toString()の実行結果)をファイルに書き込みます。
    *
@@ -71,6 +165,8 @@ public class DoubleMatrix {
 
   /**
    * 行列の文字列表現が書き込まれたファイルを，各成分の間の区切り（正規表現）を指定して読み込み，行列を生成します。<br>
+   * regexが正規表現として特別な意味を持たない1文字(" "，","，"\t"など)の場合は，<br>
+   * 正規表現による分割を行わずに，読み込んだバイト列から直接成分を解析します。結果は正規表現で分割した場合と同じです。<br>
    * 以下は，CSVファイルに書き込まれた行列を読み込む例です。
    *
    * <pre>{@code
@@ -88,6 +184,16 @@ public class DoubleMatrix {
    * @throws IllegalArgumentException ファイルの内容を行列として解釈できない場合
    */
   public static DoubleMatrix readFromFile(String filename, String regex) throws IOException {
+    if (MatrixTextParser.isLiteralDelimiter(regex)) {
+      ArrayList<double[]> rows;
+      try (InputStream file = Files.newInputStream(Paths.get(filename))) {
+        rows = new MatrixTextParser(regex.charAt(0)).read(file, filename);
+      }
+
+      double[][] result = rows.toArray(new double[rows.size()][]);
+      return (new DoubleMatrix(result, true, false));
+    }
+
     ArrayList<double[]> rows = new ArrayList<double[]>();
     String line = null;
 
@@ -113,6 +219,38 @@ public class DoubleMatrix {
     return (new DoubleMatrix(result, true, false));
   }
 
+  /**
+   * 行列の文字列表現が書き込まれたファイルを，指定されたForkJoinPoolを使用して並列に読み込み，行列を生成します。<br>
+   * ファイルはメモリマップされ，改行の位置で分割された各部分がpool上のタスクとして解析されます。<br>
+   * 行数を先に数えてから行の配列を確保するため，読み込んだ行を一時的なリストに蓄えることはありません。<br>
+   * 読み込み結果と例外の内容はreadFromFile(String, String)と同じです。<br>
+   * ただし，並列に解析できるのはregexが正規表現として特別な意味を持たない1文字の場合だけです。<br>
+   * それ以外の場合は，readFromFile(String, String)と同様に逐次的に読み込みます。<br>
+   * 以下は，数GBのCSVファイルを専用のForkJoinPoolで読み込む例です。
+   *
+   * <pre>{@code
+   * ForkJoinPool pool = new ForkJoinPool(8);
+   * DoubleMatrix a = DoubleMatrix.readFromFile("mat.csv", ",", pool);
+   * }</pre>
+   *
+   * @param filename ファイル名
+   * @param regex 正規表現の区切り
+   * @param pool 解析に使用するForkJoinPool
+   * @return ファイルから読み込んだ行列
+   * @throws IOException 入出力エラーが発生した場合
+   * @throws IllegalArgumentException ファイルの内容を行列として解釈できない場合
+   * @see #readFromFile(String, String)
+   */
+  public static DoubleMatrix readFromFile(String filename, String regex, ForkJoinPool pool)
+      throws IOException {
+    if (!MatrixTextParser.isLiteralDelimiter(regex)) {
+      return readFromFile(filename, regex);
+    }
+
+    double[][] result = MappedMatrixLoader.load(filename, regex.charAt(0), pool);
+    return (new DoubleMatrix(result, true, false));
+  }
+
   /**
    * 行列の文字列表現(toString()の実行結果)が書き込まれたファイルを読み込み，行列を生成します。<br>
    *
@@ -126,6 +264,76 @@ public class DoubleMatrix {
     return readFromFile(filename, DEFAULT_DELIM);
   }
 
+  /**
+   * 行列をバイナリ形式でファイルに書き込みます。<br>
+   * バイナリ形式は，行数，列数，成分のバイト順，行列の形式を記録した32バイトのヘッダと，<br>
+   * それに続く行優先のリトルエンディアンのdoubleの並びから成ります。<br>
+   * 文字列への変換を行わないため，writeToFile()よりも高速で，成分の値は完全に保存されます。
+   *
+   * @param matrix 行列
+   * @param filename ファイル名
+   * @throws IOException 入出力エラーが発生した場合
+   * @see #readBinary(String)
+   * @see #openMapped(String)
+   */
+  public static void writeBinary(DoubleMatrix matrix, String filename) throws IOException {
+    BinaryFormat.write(matrix.storage, filename);
+  }
+
+  /**
+   * writeBinary()で書き込まれたファイルを読み込み，行列を生成します。<br>
+   * 生成される行列は，書き込み時の行列と同じ形式(Layout)になります。
+   *
+   * @param filename ファイル名
+   * @return ファイルから読み込んだ行列
+   * @throws IOException 入出力エラーが発生した場合，またはファイルがバイナリ形式でない場合
+   * @see #writeBinary(DoubleMatrix, String)
+   */
+  public static DoubleMatrix readBinary(String filename) throws IOException {
+    return (new DoubleMatrix(BinaryFormat.read(filename)));
+  }
+
+  /**
+   * writeBinary()で書き込まれたファイルを読み取り専用でメモリマップし，その領域を直接参照する行列を返します。<br>
+   * 成分はヒープにコピーされないため，ファイルの大きさによらず即座に開くことができます。<br>
+   * 返された行列の成分を変更する操作は，ReadOnlyBufferExceptionをスローします。
+   *
+   * @param filename ファイル名
+   * @return ファイルの領域を参照する行列
+   * @throws IOException 入出力エラーが発生した場合，またはファイルがバイナリ形式でない場合
+   * @see #openMapped(String, FileChannel.MapMode)
+   */
+  public static DoubleMatrix openMapped(String filename) throws IOException {
+    return openMapped(filename, FileChannel.MapMode.READ_ONLY);
+  }
+
+  /**
+   * writeBinary()で書き込まれたファイルを指定されたモードでメモリマップし，その領域を直接参照する行列を返します。<br>
+   * 成分の変更の扱いはモードによって異なります。
+   *
+   * <ul>
+   *   <li>READ_ONLY: 成分を変更する操作はReadOnlyBufferExceptionをスローします。
+   *   <li>READ_WRITE: 成分の変更はファイルに書き戻されます。
+   *   <li>PRIVATE: 成分の変更はこの行列だけに反映され，ファイルには書き戻されません。
+   * </ul>
+   *
+   * 返された行列は行の配列を持たず，ヒープの外の領域を参照するため，layout()はOFF_HEAPを返します。<br>
+   * 演算結果はヒープ上のFLAT形式の行列として返されます。
+   * ただし，結果の成分の総数がInteger.MAX_VALUEを超える場合はOFF_HEAP形式の行列として返されるため，<br>
+   * 使い終わった結果はclose()で領域を解放してください。<br>
+   * close()はマップした領域を解放しません。領域は返された行列がGCで回収されたときに解放されます。
+   *
+   * @param filename ファイル名
+   * @param mode マップのモード
+   * @return ファイルの領域を参照する行列
+   * @throws IOException 入出力エラーが発生した場合，またはファイルがバイナリ形式でない場合
+   * @see #writeBinary(DoubleMatrix, String)
+   */
+  public static DoubleMatrix openMapped(String filename, FileChannel.MapMode mode)
+      throws IOException {
+    return (new DoubleMatrix(BinaryFormat.map(filename, mode)));
+  }
+
   /**
    * 任意の個数の行列を水平方向に連結した行列を生成し，それを返します。<br>
    * 以下は列ベクトルを並べて行列を生成する例です。
@@ -153,18 +361,14 @@ public class DoubleMatrix {
       columns += matrices[k].columns;
     }
 
-    double[][] result = new double[rows][columns];
+    DoubleStorage result = matrices[0].storage.allocate(rows, columns);
     int pos = 0;
     for (int k = 0; k < matrices.length; k++) {
-      for (int i = 0; i < rows; i++) {
-        for (int j = 0; j < matrices[k].columns; j++) {
-          result[i][j + pos] = matrices[k].get(i, j);
-        }
-      }
+      copy(matrices[k].storage, result, 0, pos);
       pos += matrices[k].columns;
     }
 
-    return (new DoubleMatrix(result, false, false));
+    return (new DoubleMatrix(result));
   }
 
   /**
@@ -194,18 +398,118 @@ public class DoubleMatrix {
       rows += matrices[k].rows;
     }
 
-    double[][] result = new double[rows][columns];
+    DoubleStorage result = matrices[0].storage.allocate(rows, columns);
     int pos = 0;
     for (int k = 0; k < matrices.length; k++) {
-      for (int i = 0; i < matrices[k].rows; i++) {
-        for (int j = 0; j < columns; j++) {
-          result[i + pos][j] = matrices[k].get(i, j);
-        }
-      }
+      copy(matrices[k].storage, result, pos, 0);
       pos += matrices[k].rows;
     }
 
-    return (new DoubleMatrix(result, false, false));
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * dest = a * bを計算し，destを返します。<br>
+   * 結果を新しい行列に格納するtimes(DoubleMatrix)とは異なり，呼び出し側が用意した行列destに結果を上書きします。<br>
+   * 作業領域を再利用するため，同じスレッドでの2回目以降の呼び出しではヒープへの割り当てを行いません。<br>
+   * 以下は反復計算の中で同じ行列を使い回す例です。
+   *
+   * <pre>{@code
+   * DoubleMatrix x = DoubleMatrix.createZeroMatrix(a.rows(), b.columns());
+   * for (int it = 0; it < 1000; it++) {
+   *   DoubleMatrix.multiplyInto(a, b, x);
+   *   // ...
+   * }
+   * }</pre>
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @param dest 結果の格納先
+   * @return dest
+   * @throws ArithmeticException aの列数とbの行数が異なる場合，またはdestの型が計算結果の型と異なる場合
+   * @throws IllegalArgumentException destがaまたはbと成分を共有している場合
+   * @see #times(DoubleMatrix)
+   */
+  public static DoubleMatrix multiplyInto(DoubleMatrix a, DoubleMatrix b, DoubleMatrix dest) {
+    return multiplyInto(1, a, b, 0, dest);
+  }
+
+  /**
+   * dest = alpha * a * b + beta * destを計算し，destを返します。<br>
+   * beta == 0dの場合，destの元の成分は参照されません(NaNや無限大が含まれていても結果に影響しません)。<br>
+   * 作業領域を再利用するため，同じスレッドでの2回目以降の呼び出しではヒープへの割り当てを行いません。
+   *
+   * @param alpha a * bに乗算する値
+   * @param a 左辺
+   * @param b 右辺
+   * @param beta destに乗算する値
+   * @param dest 結果の格納先
+   * @return dest
+   * @throws ArithmeticException aの列数とbの行数が異なる場合，またはdestの型が計算結果の型と異なる場合
+   * @throws IllegalArgumentException destがaまたはbと成分を共有している場合
+   */
+  public static DoubleMatrix multiplyInto(
+      double alpha, DoubleMatrix a, DoubleMatrix b, double beta, DoubleMatrix dest) {
+    if (a.columns != b.rows) {
+      throw (new ArithmeticException(
+          String.format("列数と行数が異なるため，計算できません: %d != %d", a.columns, b.rows)));
+    }
+    if (dest.rows != a.rows || dest.columns != b.columns) {
+      throw (new ArithmeticException(
+          String.format(
+              "格納先の行列の型が異なるため，計算できません: (%d,%d) != (%d,%d)",
+              dest.rows, dest.columns, a.rows, b.columns)));
+    }
+    if (dest.storage.overlaps(a.storage) || dest.storage.overlaps(b.storage)) {
+      throw (new IllegalArgumentException("格納先の行列が入力の行列と成分を共有しています"));
+    }
+
+    if (beta == 0) {
+      fill(dest.storage, 0);
+    } else if (beta != 1) {
+      times(beta, dest.storage, dest.storage);
+    }
+    multiply(alpha, a.storage, b.storage, dest.storage);
+
+    return dest;
+  }
+
+  /**
+   * dest = alpha * a * t^a + beta * destを計算し，destを返します(対称行列のランクk更新)。<br>
+   * destが対称行列の圧縮形式(createSymmetricMatrix(int)など)であれば，a * t^aが対称行列であることを利用して<br>
+   * 下三角部分だけを計算するため，計算量はmultiplyIntoのほぼ半分です。下三角部分の計算結果は，<br>
+   * multiplyInto(alpha, a, a.trsView(), beta, dest)の対応する成分と一致します。<br>
+   * それ以外の場合はmultiplyInto(alpha, a, a.trsView(), beta, dest)と同じ計算を行います。<br>
+   * beta == 0dの場合，destの元の成分は参照されません(NaNや無限大が含まれていても結果に影響しません)。
+   *
+   * @param alpha a * t^aに乗算する値
+   * @param a 行列
+   * @param beta destに乗算する値
+   * @param dest 結果の格納先
+   * @return dest
+   * @throws ArithmeticException destの型が(aの行数) * (aの行数)でない場合
+   * @throws IllegalArgumentException destがaと成分を共有している場合
+   */
+  public static DoubleMatrix rankUpdate(
+      double alpha, DoubleMatrix a, double beta, DoubleMatrix dest) {
+    if (dest.rows != a.rows || dest.columns != a.rows) {
+      throw (new ArithmeticException(
+          String.format(
+              "格納先の行列の型が異なるため，計算できません: (%d,%d) != (%d,%d)",
+              dest.rows, dest.columns, a.rows, a.rows)));
+    }
+    if (dest.storage.overlaps(a.storage)) {
+      throw (new IllegalArgumentException("格納先の行列が入力の行列と成分を共有しています"));
+    }
+
+    if (beta == 0) {
+      fill(dest.storage, 0);
+    } else if (beta != 1) {
+      times(beta, dest.storage, dest.storage);
+    }
+    rankUpdate(alpha, a.storage, dest.storage);
+
+    return dest;
   }
 
   /**
@@ -231,29 +535,135 @@ public class DoubleMatrix {
   /**
    * 対角行列を生成して，それを返します。
    *
+   * 対角成分だけを保持するため，必要な領域はO(n)です。<br>
+   * 対角成分以外の成分に0d以外の値が格納されると，その時点で通常の行列と同じ形式に変換されます。
+   *
    * @param entries 対角成分
    * @return 対角行列
+   * @throws IllegalArgumentException 対角成分が1つも指定されていない場合
    */
   public static DoubleMatrix createDiagonalMatrix(double... entries) {
-    double[][] result = new double[entries.length][entries.length];
-    for (int i = 0; i < entries.length; i++) {
-      result[i][i] = entries[i];
+    if (entries.length < 1) {
+      throw (new IllegalArgumentException(
+          String.format("次数は1以上でなければなりません: %d", entries.length)));
     }
-    return (new DoubleMatrix(result, false, false));
+    return (new DoubleMatrix(
+        new DiagonalStorage(entries.clone(), entries.length, entries.length)));
   }
 
   /**
    * 単位行列を生成して，それを返します。
    *
+   * 対角成分だけを保持するため，必要な領域はO(n)です。<br>
+   * 対角成分以外の成分に0d以外の値が格納されると，その時点で通常の行列と同じ形式に変換されます。
+   *
    * @param n 行列の次数
    * @return 単位行列
+   * @throws IllegalArgumentException nが1未満の場合
    */
   public static DoubleMatrix createIdentityMatrix(int n) {
-    double[][] result = new double[n][n];
-    for (int i = 0; i < n; i++) {
-      result[i][i] = 1;
+    if (n < 1) {
+      throw (new IllegalArgumentException(String.format("次数は1以上でなければなりません: %d", n)));
+    }
+    double[] diagonal = new double[n];
+    Arrays.fill(diagonal, 1);
+    return (new DoubleMatrix(new DiagonalStorage(diagonal, n, n)));
+  }
+
+  /**
+   * 次数がnで成分の値が全て0dの対称行列を，圧縮形式で生成します。<br>
+   * 対称行列の一方の三角部分だけを保持するため，必要な領域は通常の行列のほぼ半分です。<br>
+   * rankUpdate(double, DoubleMatrix, double, DoubleMatrix)の結果の格納先として使用できます。
+   *
+   * @param n 行列の次数
+   * @return 対称行列
+   * @throws IllegalArgumentException nが1未満の場合，または圧縮形式で保持できないほど大きい場合
+   * @see #createSymmetricMatrix(DoubleMatrix, Triangle)
+   */
+  public static DoubleMatrix createSymmetricMatrix(int n) {
+    checkOrder(n);
+    return (new DoubleMatrix(new PackedStorage(PackedStorage.Kind.SYMMETRIC, n)));
+  }
+
+  /**
+   * 正方行列matrixの指定された三角部分を，対角線で折り返した対称行列を圧縮形式で生成します。<br>
+   * 対称行列の一方の三角部分だけを保持するため，必要な領域は通常の行列のほぼ半分です。<br>
+   * 生成した行列のisSymmetric()はO(1)でtrueを返し，行列ベクトル積は詰めた配列を1度走査するだけで計算されます。<br>
+   * (i, j)成分と(j, i)成分を異なる値にする変更を行うと，その時点で通常の行列と同じ形式に変換されます。
+   *
+   * @param matrix 正方行列
+   * @param triangle 使用する三角部分
+   * @return 対称行列
+   * @throws ArithmeticException matrixが正方行列でない場合
+   * @throws IllegalArgumentException matrixが圧縮形式で保持できないほど大きい場合
+   */
+  public static DoubleMatrix createSymmetricMatrix(DoubleMatrix matrix, Triangle triangle) {
+    return (new DoubleMatrix(pack(matrix, triangle, PackedStorage.Kind.SYMMETRIC)));
+  }
+
+  /**
+   * 正方行列matrixの指定された三角部分だけを取り出した三角行列を，圧縮形式で生成します。<br>
+   * 反対側の三角部分の成分は0dになります。必要な領域は通常の行列のほぼ半分です。<br>
+   * 反対側の三角部分に0d以外の値を格納すると，その時点で通常の行列と同じ形式に変換されます。
+   *
+   * @param matrix 正方行列
+   * @param triangle 使用する三角部分
+   * @return 三角行列
+   * @throws ArithmeticException matrixが正方行列でない場合
+   * @throws IllegalArgumentException matrixが圧縮形式で保持できないほど大きい場合
+   */
+  public static DoubleMatrix createTriangularMatrix(DoubleMatrix matrix, Triangle triangle) {
+    PackedStorage.Kind kind =
+        (triangle == Triangle.UPPER ? PackedStorage.Kind.UPPER : PackedStorage.Kind.LOWER);
+    return (new DoubleMatrix(pack(matrix, triangle, kind)));
+  }
+
+  /**
+   * 正方行列matrixの指定された三角部分を，圧縮形式の記憶域に詰めます。
+   *
+   * @param matrix 正方行列
+   * @param triangle 使用する三角部分
+   * @param kind 生成する記憶域の種類
+   * @return 記憶域
+   * @throws ArithmeticException matrixが正方行列でない場合
+   * @throws IllegalArgumentException matrixが圧縮形式で保持できないほど大きい場合
+   */
+  private static PackedStorage pack(
+      DoubleMatrix matrix, Triangle triangle, PackedStorage.Kind kind) {
+    if (matrix.rows != matrix.columns) {
+      throw (new ArithmeticException(
+          String.format(
+              "正方行列ではないため，圧縮形式で保持できません: %d != %d", matrix.rows, matrix.columns)));
+    }
+    checkOrder(matrix.rows);
+
+    PackedStorage result = new PackedStorage(kind, matrix.rows);
+    double[] packed = result.packed();
+    DoubleStorage storage = matrix.storage;
+    int index = 0;
+    for (int k = 0; k < matrix.rows; k++) {
+      // 配列の第k区間は，下三角部分の第k行または上三角部分の第k列
+      for (int m = 0; m <= k; m++) {
+        packed[index++] = (triangle == Triangle.LOWER ? storage.get(k, m) : storage.get(m, k));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 圧縮形式で保持する行列の次数として正しいことを確認します。
+   *
+   * @param n 行列の次数
+   * @throws IllegalArgumentException nが1未満の場合，または圧縮形式で保持できないほど大きい場合
+   */
+  private static void checkOrder(int n) {
+    if (n < 1) {
+      throw (new IllegalArgumentException(String.format("次数は1以上でなければなりません: %d", n)));
+    }
+    if (n > PackedStorage.MAX_ORDER) {
+      throw (new IllegalArgumentException(
+          String.format("次数が大きすぎるため，圧縮形式で保持できません: %d", n)));
     }
-    return (new DoubleMatrix(result, false, false));
   }
 
   /**
@@ -267,6 +677,19 @@ public class DoubleMatrix {
     return (new DoubleMatrix(rows, columns));
   }
 
+  /**
+   * 型がrows * columnsで成分の値が全て0dの行列（零行列）を，指定された形式の記憶域を使用して生成します。
+   *
+   * @param rows 行列の行数
+   * @param columns 行列の列数
+   * @param layout 記憶域の形式
+   * @return 零行列
+   * @throws IllegalArgumentException 指定された形式で成分を保持できない場合
+   */
+  public static DoubleMatrix createZeroMatrix(int rows, int columns, Layout layout) {
+    return (new DoubleMatrix(allocate(layout, rows, columns)));
+  }
+
   /**
    * 引数で渡されたdouble型2次元配列の内容で行列を生成します。
    *
@@ -278,6 +701,18 @@ public class DoubleMatrix {
     return (new DoubleMatrix(matrix));
   }
 
+  /**
+   * 引数で渡されたdouble型2次元配列の内容で，指定された形式の記憶域を使用して行列を生成します。
+   *
+   * @param matrix 行列を表すdouble型2次元配列
+   * @param layout 記憶域の形式
+   * @return 行列
+   * @throws IllegalArgumentException matrixを行列として解釈できない場合
+   */
+  public static DoubleMatrix from(double[][] matrix, Layout layout) {
+    return copyOf(new DoubleMatrix(matrix, true, false), layout);
+  }
+
   /**
    * 行列のコピーを生成します。
    *
@@ -288,6 +723,21 @@ public class DoubleMatrix {
     return (new DoubleMatrix(matrix));
   }
 
+  /**
+   * 行列のコピーを，指定された形式の記憶域を使用して生成します。<br>
+   * 記憶域の形式を変換する目的でも使用できます。
+   *
+   * @param matrix コピー元の行列
+   * @param layout 記憶域の形式
+   * @return コピーされた行列
+   * @throws IllegalArgumentException 指定された形式で成分を保持できない場合
+   */
+  public static DoubleMatrix copyOf(DoubleMatrix matrix, Layout layout) {
+    DoubleStorage result = allocate(layout, matrix.rows, matrix.columns);
+    copy(matrix.storage, result);
+    return (new DoubleMatrix(result));
+  }
+
   /**
    * 型がrows * columnsの行列を生成し，各成分の値を左上から右下にかけて順に初期化します。
    *
@@ -301,8 +751,8 @@ public class DoubleMatrix {
     return (new DoubleMatrix(rows, columns, entries));
   }
 
-  /** 行列を表すdouble型2次元配列です。 */
-  private final double[][] matrix;
+  /** 行列の成分を保持する記憶域です。 */
+  private final DoubleStorage storage;
 
   /** この行列の行数を表します。 */
   private final int rows;
@@ -311,7 +761,7 @@ public class DoubleMatrix {
   private final int columns;
 
   /** この行列のサイズ(rows * columnsの計算結果)を表します。 */
-  private final int size;
+  private final long size;
 
   /**
    * このクラスのコードを直接触るプログラマのために用意された，privateなコンストラクタです。<br>
@@ -320,8 +770,8 @@ public class DoubleMatrix {
    *
    * @param matrix ラップ元のdouble型2次元配列への参照。
    * @param doValidate trueなら検証を行います。
-   * @param doCopy trueならmatrixの完全なコピーを作成し，それをthis.matrixに保持します。
-   *     falseの場合はmatrixへの参照をそのままthis.matrixに保持します。
+   * @param doCopy trueならmatrixの完全なコピーを作成し，それを記憶域として保持します。
+   *     falseの場合はmatrixへの参照をそのまま記憶域として保持します。
    * @throws IllegalArgumentException 検証した結果，matrixを行列として解釈できない場合
    */
   private DoubleMatrix(double[][] matrix, boolean doValidate, boolean doCopy) {
@@ -335,18 +785,52 @@ public class DoubleMatrix {
 
     this.rows = matrix.length;
     this.columns = matrix[0].length;
-    this.size = matrix.length * matrix[0].length;
+    this.size = (long) matrix.length * matrix[0].length;
 
     if (doCopy) {
-      this.matrix = new double[this.rows][this.columns];
+      double[][] copy = new double[this.rows][this.columns];
       for (int i = 0; i < this.rows; i++) {
-        System.arraycopy(matrix[i], 0, this.matrix[i], 0, this.columns);
+        System.arraycopy(matrix[i], 0, copy[i], 0, this.columns);
       }
+      this.storage = new JaggedStorage(copy);
     } else {
-      this.matrix = matrix;
+      this.storage = new JaggedStorage(matrix);
     }
   }
 
+  /**
+   * 指定された記憶域をそのまま使用して行列を生成します。
+   *
+   * @param storage 行列の成分を保持する記憶域
+   */
+  private DoubleMatrix(DoubleStorage storage) {
+    this.storage = storage;
+    this.rows = storage.rows;
+    this.columns = storage.columns;
+    this.size = (long) storage.rows * storage.columns;
+  }
+
+  /**
+   * 指定された記憶域をそのまま使用して行列を生成します。<br>
+   * 同じパッケージの行列クラスが，演算結果を格納した記憶域を行列として返すために使用します。
+   *
+   * @param storage 行列の成分を保持する記憶域
+   * @return 行列
+   */
+  static DoubleMatrix wrap(DoubleStorage storage) {
+    return (new DoubleMatrix(storage));
+  }
+
+  /**
+   * この行列の成分を保持している記憶域を返します。<br>
+   * 同じパッケージの行列クラスが，記憶域に直接アクセスして演算を行うために使用します。
+   *
+   * @return 記憶域
+   */
+  DoubleStorage storage() {
+    return this.storage;
+  }
+
   /**
    * 引数で渡されたdouble型2次元配列の内容で行列を生成します。
    *
@@ -386,7 +870,7 @@ public class DoubleMatrix {
 
     for (int i = 0; i < this.rows; i++) {
       for (int j = 0; j < this.columns; j++) {
-        this.matrix[i][j] = entries[i * this.columns + j];
+        this.storage.set(i, j, entries[i * this.columns + j]);
       }
     }
   }
@@ -397,7 +881,41 @@ public class DoubleMatrix {
    * @param matrix コピー元の行列
    */
   private DoubleMatrix(DoubleMatrix matrix) {
-    this(matrix.matrix, false, true);
+    this(matrix.storage.copy());
+  }
+
+  /**
+   * この行列の成分を保持している記憶域の形式を返します。
+   *
+   * @return 記憶域の形式
+   */
+  public Layout layout() {
+    return this.storage.layout();
+  }
+
+  /**
+   * この行列がOFF_HEAP形式の場合，成分を保持しているヒープの外の領域を解放します。<br>
+   * 解放した後にこの行列(およびtrsView()で得たビュー)の成分へアクセスすると，IllegalStateExceptionがスローされます。<br>
+   * それ以外の形式の行列や，openMapped()で開いた行列，転置ビューに対しては何もしません。複数回呼び出しても構いません。<br>
+   * 領域は即座に解放されるため，他のスレッドがこの行列やそのビューの成分を読み書きしている間
+   * (ForkJoinPoolを指定した演算の実行中を含みます)に呼び出してはなりません。<br>
+   * 以下は，try-with-resources文で領域を確実に解放する例です。
+   *
+   * <pre>{@code
+   * try (DoubleMatrix a = DoubleMatrix.createZeroMatrix(m, n, DoubleMatrix.Layout.OFF_HEAP);
+   *     DoubleMatrix b = a.trs();
+   *     DoubleMatrix c = a.times(b)) {
+   *   DoubleMatrix.writeBinary(c, "c.bin");
+   * }
+   * }</pre>
+   *
+   * @see Layout#OFF_HEAP
+   */
+  @Override
+  public void close() {
+    if (this.storage instanceof OffHeapStorage) {
+      ((OffHeapStorage) this.storage).close();
+    }
   }
 
   /**
@@ -419,11 +937,30 @@ public class DoubleMatrix {
   }
 
   /**
-   * この行列のサイズ(rows * columnsの計算結果)を返します。
+   * この行列のサイズ(rows * columnsの計算結果)を返します。<br>
+   * OFF_HEAP形式の行列やメモリマップした行列では，サイズがintの範囲を超えることがあります。<br>
+   * そのような行列に対しては，このメソッドの代わりにlongSize()を使用してください。
    *
    * @return サイズ
+   * @throws ArithmeticException サイズがintの範囲を超える場合
+   * @see #longSize()
    */
   public int size() {
+    if (this.size > Integer.MAX_VALUE) {
+      throw (new ArithmeticException(
+          String.format("サイズがintの範囲を超えています: %d * %d", this.rows, this.columns)));
+    }
+    return (int) this.size;
+  }
+
+  /**
+   * この行列のサイズ(rows * columnsの計算結果)をlongで返します。<br>
+   * 成分の総数がInteger.MAX_VALUEを超える行列でも，正しいサイズを返します。
+   *
+   * @return サイズ
+   * @see #size()
+   */
+  public long longSize() {
     return this.size;
   }
 
@@ -452,9 +989,26 @@ public class DoubleMatrix {
       return false;
     }
 
+    DoubleStorage a = this.storage;
+    DoubleStorage b = that.storage;
+    if (a.hasRowArrays() && b.hasRowArrays()) {
+      for (int i = 0; i < this.rows; i++) {
+        double[] ar = a.rowArray(i);
+        double[] br = b.rowArray(i);
+        int ao = a.rowOffset(i);
+        int bo = b.rowOffset(i);
+        for (int j = 0; j < this.columns; j++) {
+          if (ar[ao + j] != br[bo + j]) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
     for (int i = 0; i < this.rows; i++) {
       for (int j = 0; j < this.columns; j++) {
-        if (this.get(i, j) != that.get(i, j)) {
+        if (a.get(i, j) != b.get(i, j)) {
           return false;
         }
       }
@@ -464,36 +1018,110 @@ public class DoubleMatrix {
   }
 
   /**
-   * この行列が対称かどうか判定して，結果の真偽値を返します。
+   * この行列が対称かどうか判定して，結果の真偽値を返します。<br>
+   * 対角線より上のタイルとそれに向かい合う下のタイルをTRANSPOSE_TILE四方ずつ比較し，<br>
+   * 対称でない成分の組が見つかった時点で判定を打ち切ります。
    *
    * @return 対称行列なら，true
+   * @see #isSymmetric(double)
    */
   public boolean isSymmetric() {
-    if (this.rows != this.columns) {
+    return isSymmetric(0);
+  }
+
+  /**
+   * この行列が許容誤差epsの範囲で対称かどうか判定して，結果の真偽値を返します。<br>
+   * 全てのi, jについて，(i, j)成分と(j, i)成分が等しいか，差の絶対値がeps以下であれば対称とみなします。<br>
+   * NaNを含む成分の組は対称とみなしません。isSymmetric(0)はisSymmetric()と同じです。
+   *
+   * @param eps 許容誤差
+   * @return 許容誤差の範囲で対称行列なら，true
+   * @throws IllegalArgumentException epsが負の値またはNaNの場合
+   */
+  public boolean isSymmetric(double eps) {
+    DoubleStorage a = symmetryTarget(eps);
+    if (a == null) {
       return false;
     }
+    if (DiagonalStorage.isDiagonal(a) || PackedStorage.isSymmetric(a)) {
+      return true;
+    }
 
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.columns; j++) {
-        if (i == j) {
-          continue;
-        }
+    return isSymmetric(a, eps, 0, symmetryBands(), new AtomicBoolean());
+  }
 
-        if (this.get(i, j) != this.get(j, i)) {
-          return false;
-        }
-      }
+  /**
+   * この行列が許容誤差epsの範囲で対称かどうか，ForkJoinPoolを使用して並列に判定し，結果の真偽値を返します。<br>
+   * 対角線より上のタイルの帯を，比較する成分の数がほぼ等しくなるように分割して並列に比較します。<br>
+   * いずれかの範囲で対称でない成分の組が見つかると，他の範囲の比較も打ち切られます。<br>
+   * 成分の数が少ない行列は，呼び出したスレッドで判定します。
+   *
+   * @param eps 許容誤差
+   * @param pool 判定に使用するForkJoinPool
+   * @return 許容誤差の範囲で対称行列なら，true
+   * @throws IllegalArgumentException epsが負の値またはNaNの場合
+   * @see #isSymmetric(double)
+   */
+  public boolean isSymmetric(double eps, ForkJoinPool pool) {
+    DoubleStorage a = symmetryTarget(eps);
+    if (a == null) {
+      return false;
+    }
+    if (DiagonalStorage.isDiagonal(a) || PackedStorage.isSymmetric(a)) {
+      return true;
     }
 
-    return true;
+    int bands = symmetryBands();
+    if (this.size < RowPartition.PARALLEL_THRESHOLD) {
+      return isSymmetric(a, eps, 0, bands, new AtomicBoolean());
+    }
+
+    // 第t帯が比較するタイルの数はbands - t
+    int[] prefix = new int[bands + 1];
+    for (int t = 0; t < bands; t++) {
+      prefix[t + 1] = prefix[t] + (bands - t);
+    }
+    AtomicBoolean asymmetric = new AtomicBoolean();
+    int[] bounds = RowPartition.byWeight(prefix, RowPartition.parts(pool));
+    RowPartition.run(pool, bounds, (t0, t1) -> isSymmetric(a, eps, t0, t1, asymmetric));
+    return !asymmetric.get();
   }
 
   /**
-   * この行列の文字列表現を返します。<br>
-   * <br>
-   * 実行例
+   * 対称性の判定の対象とする記憶域を返します。<br>
+   * 転置しても対称性は変わらないため，転置ビューであれば元の記憶域を返します。
    *
-   * <pre>{@code
+   * @param eps 許容誤差
+   * @return 判定の対象とする記憶域。正方行列でない場合はnull
+   * @throws IllegalArgumentException epsが負の値またはNaNの場合
+   */
+  private DoubleStorage symmetryTarget(double eps) {
+    if (!(eps >= 0)) {
+      throw (new IllegalArgumentException("許容誤差は0以上でなければなりません: " + eps));
+    }
+    if (this.rows != this.columns) {
+      return null;
+    }
+    return (this.storage instanceof TransposedStorage
+        ? ((TransposedStorage) this.storage).base
+        : this.storage);
+  }
+
+  /**
+   * 対称性の判定で，行をTRANSPOSE_TILE行ずつに分けた帯の数を返します。
+   *
+   * @return 帯の数
+   */
+  private int symmetryBands() {
+    return ((this.rows + TRANSPOSE_TILE - 1) / TRANSPOSE_TILE);
+  }
+
+  /**
+   * この行列の文字列表現を返します。<br>
+   * <br>
+   * 実行例
+   *
+   * <pre>{@code
    * DoubleMatrix a = DoubleMatrix.createZeroMatrix(3, 4);
    * System.out.print(a);
    * }</pre>
@@ -536,24 +1164,71 @@ public class DoubleMatrix {
    * @return この行列の文字列表現
    */
   public String toString(String delim) {
-    if (delim.isEmpty() || delim.contains(".") || delim.matches(".*\\d.*")) {
-      throw (new IllegalArgumentException("区切り文字が不正です: " + delim));
+    StringBuilder result = new StringBuilder();
+    try {
+      toString(result, delim);
+    } catch (IOException ioe) {
+      // StringBuilderへの追加では発生しない
+      throw (new UncheckedIOException(ioe));
     }
 
-    StringBuilder result = new StringBuilder();
+    return result.toString();
+  }
 
-    for (int i = 0; i < this.rows; i++) {
-      result.append(this.matrix[i][0]);
-      for (int j = 1; j < this.columns; j++) {
-        result.append(delim);
-        result.append(this.matrix[i][j]);
-      }
-      if (i < this.rows - 1) {
-        result.append(System.lineSeparator());
-      }
+  /**
+   * この行列の文字列表現を，指定された区切り文字を使用してoutへ順次書き出します。<br>
+   * 書き出される内容はtoString(String)の戻り値と同じですが，行列全体の文字列表現を一度に生成しないため，<br>
+   * 大きな行列でも一定の大きさのバッファだけでファイルやネットワークなどへ出力できます。<br>
+   * <br>
+   * 実行例
+   *
+   * <pre>{@code
+   * DoubleMatrix a = DoubleMatrix.createZeroMatrix(3, 4);
+   * a.toString(System.out, "|");
+   * }</pre>
+   *
+   * @param out 出力先
+   * @param delim 各要素間の区切り文字
+   * @throws IOException 出力先への書き込みで入出力エラーが発生した場合
+   * @throws IllegalArgumentException 区切り文字が不正な場合
+   * @see #toString(String)
+   */
+  public void toString(Appendable out, String delim) throws IOException {
+    toString(out, delim, DoubleFormatter.SHORTEST);
+  }
+
+  /**
+   * この行列の文字列表現を，各成分を有効桁数precisionに丸めてoutへ順次書き出します。<br>
+   * 各成分は，元の値(2進数の正確な値)をprecision桁に四捨五入した値で出力されます(末尾の0は出力しません)。<br>
+   * 値を正確に復元する必要がない出力(レポートなど)で，出力の大きさを抑えるために使用します。<br>
+   * precisionが17の場合はtoString(Appendable, String)と同じ結果になります。<br>
+   * <br>
+   * 実行例
+   *
+   * <pre>{@code
+   * DoubleMatrix a = DoubleMatrix.from(new double[][] {{Math.PI, 1234567, 1e-10 / 3}});
+   * a.toString(System.out, " ", 3);
+   * }</pre>
+   *
+   * 実行結果
+   *
+   * <pre>{@code
+   * 3.14 1230000.0 3.33E-11
+   * }</pre>
+   *
+   * @param out 出力先
+   * @param delim 各要素間の区切り文字
+   * @param precision 有効桁数(1以上17以下)
+   * @throws IOException 出力先への書き込みで入出力エラーが発生した場合
+   * @throws IllegalArgumentException 区切り文字が不正な場合，またはprecisionが範囲外の場合
+   * @see #toString(Appendable, String)
+   */
+  public void toString(Appendable out, String delim, int precision) throws IOException {
+    if (delim.isEmpty() || delim.contains(".") || delim.matches(".*\\d.*")) {
+      throw (new IllegalArgumentException("区切り文字が不正です: " + delim));
     }
 
-    return result.toString();
+    new MatrixTextWriter(precision).write(this.storage, out, delim);
   }
 
   /**
@@ -565,7 +1240,7 @@ public class DoubleMatrix {
    * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
    */
   public double get(int i, int j) {
-    return this.matrix[i][j];
+    return this.storage.get(i, j);
   }
 
   /**
@@ -578,7 +1253,7 @@ public class DoubleMatrix {
    * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
    */
   public DoubleMatrix set(int i, int j, double entry) {
-    this.matrix[i][j] = entry;
+    this.storage.set(i, j, entry);
     return this;
   }
 
@@ -601,9 +1276,7 @@ public class DoubleMatrix {
       }
     }
 
-    double[] tmp = this.matrix[i1];
-    this.matrix[i1] = this.matrix[i2];
-    this.matrix[i2] = tmp;
+    this.storage.swapRows(i1, i2);
 
     return this;
   }
@@ -628,9 +1301,9 @@ public class DoubleMatrix {
     }
 
     for (int i = 0; i < this.rows; i++) {
-      double tmp = this.matrix[i][j1];
-      this.matrix[i][j1] = this.matrix[i][j2];
-      this.matrix[i][j2] = tmp;
+      double tmp = this.storage.get(i, j1);
+      this.storage.set(i, j1, this.storage.get(i, j2));
+      this.storage.set(i, j2, tmp);
     }
 
     return this;
@@ -652,14 +1325,10 @@ public class DoubleMatrix {
               this.rows, this.columns, that.rows, that.columns)));
     }
 
-    double[][] result = new double[this.rows][this.columns];
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.columns; j++) {
-        result[i][j] = this.get(i, j) + that.get(i, j);
-      }
-    }
+    DoubleStorage result = allocateSum(this.storage, that.storage);
+    plus(this.storage, that.storage, result);
 
-    return (new DoubleMatrix(result, false, false));
+    return (new DoubleMatrix(result));
   }
 
   /**
@@ -678,11 +1347,7 @@ public class DoubleMatrix {
               this.rows, this.columns, that.rows, that.columns)));
     }
 
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.columns; j++) {
-        this.matrix[i][j] += that.get(i, j);
-      }
-    }
+    plus(this.storage, that.storage, this.storage);
 
     return this;
   }
@@ -703,14 +1368,10 @@ public class DoubleMatrix {
               this.rows, this.columns, that.rows, that.columns)));
     }
 
-    double[][] result = new double[this.rows][this.columns];
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.columns; j++) {
-        result[i][j] = this.get(i, j) - that.get(i, j);
-      }
-    }
+    DoubleStorage result = allocateSum(this.storage, that.storage);
+    minus(this.storage, that.storage, result);
 
-    return (new DoubleMatrix(result, false, false));
+    return (new DoubleMatrix(result));
   }
 
   /**
@@ -729,11 +1390,7 @@ public class DoubleMatrix {
               this.rows, this.columns, that.rows, that.columns)));
     }
 
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.columns; j++) {
-        this.matrix[i][j] -= that.get(i, j);
-      }
-    }
+    minus(this.storage, that.storage, this.storage);
 
     return this;
   }
@@ -745,14 +1402,18 @@ public class DoubleMatrix {
    * @return this * k
    */
   public DoubleMatrix times(double k) {
-    double[][] result = new double[this.rows][this.columns];
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.columns; j++) {
-        result[i][j] = k * this.get(i, j);
-      }
+    DoubleStorage result;
+    if (DiagonalStorage.isDiagonal(this.storage) && isZeroPreserving(k)) {
+      result = new DiagonalStorage(this.rows, this.columns);
+    } else if (PackedStorage.isSymmetric(this.storage)
+        || (PackedStorage.isPacked(this.storage) && isZeroPreserving(k))) {
+      result = new PackedStorage(((PackedStorage) this.storage).kind(), this.rows);
+    } else {
+      result = this.storage.allocate(this.rows, this.columns);
     }
+    times(k, this.storage, result);
 
-    return (new DoubleMatrix(result, false, false));
+    return (new DoubleMatrix(result));
   }
 
   /**
@@ -769,16 +1430,134 @@ public class DoubleMatrix {
           String.format("列数と行数が異なるため，計算できません: %d != %d", this.columns, that.rows)));
     }
 
-    double[][] result = new double[this.rows][that.columns];
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < that.columns; j++) {
-        for (int k = 0; k < this.columns; k++) { // or (k < that.rows)
-          result[i][j] += this.get(i, k) * that.get(k, j);
-        }
-      }
+    DoubleStorage result = allocateProduct(this.storage, that.storage);
+    multiply(1, this.storage, that.storage, result);
+
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * y = this * xを計算し，yを返します。xとyは列ベクトルの成分を並べた配列です。<br>
+   * createColumnVector()で生成した行列との積と同じ結果を，行列を生成せずに求めます。<br>
+   * 結果はyの内容を全て上書きして格納されるため，反復計算では同じ配列を格納先として再利用できます。<br>
+   * この計算はヒープへの割り当てを行いません。
+   *
+   * @param x この行列に乗算するベクトル(長さはこの行列の列数)
+   * @param y 結果の格納先(長さはこの行列の行数)
+   * @return y
+   * @throws ArithmeticException xまたはyの長さが行列の型と合わない場合
+   * @throws IllegalArgumentException xとyが同じ配列の場合
+   */
+  public double[] timesVector(double[] x, double[] y) {
+    checkVectors(x, y);
+    multiplyVector(this.storage, x, y, 0, this.rows);
+    return y;
+  }
+
+  /**
+   * y = this * xを，指定されたForkJoinPoolを使用して並列に計算し，yを返します。<br>
+   * 行は連続した範囲に等分され，各範囲がpool上のタスクとして計算されます。<br>
+   * 並列化に見合わない小さな行列は，呼び出したスレッドで直列に計算します。<br>
+   * 計算結果はtimesVector(double[], double[])の結果と完全に一致します。
+   *
+   * @param x この行列に乗算するベクトル(長さはこの行列の列数)
+   * @param y 結果の格納先(長さはこの行列の行数)
+   * @param pool 計算に使用するForkJoinPool
+   * @return y
+   * @throws ArithmeticException xまたはyの長さが行列の型と合わない場合
+   * @throws IllegalArgumentException xとyが同じ配列の場合
+   * @see #timesVector(double[], double[])
+   */
+  public double[] timesVector(double[] x, double[] y, ForkJoinPool pool) {
+    checkVectors(x, y);
+    if (this.size < RowPartition.PARALLEL_THRESHOLD || PackedStorage.isPacked(this.storage)) {
+      // 圧縮形式の記憶域は詰めた配列を先頭から1度だけ走査するため，行ごとに分割しない
+      multiplyVector(this.storage, x, y, 0, this.rows);
+      return y;
+    }
+
+    int[] bounds = RowPartition.byRows(this.rows, RowPartition.parts(pool));
+    RowPartition.run(pool, bounds, (i0, i1) -> multiplyVector(this.storage, x, y, i0, i1));
+    return y;
+  }
+
+  /**
+   * y = this * xの計算に使用するベクトルの長さを検証します。
+   *
+   * @param x この行列に乗算するベクトル
+   * @param y 結果の格納先
+   * @throws ArithmeticException xまたはyの長さが行列の型と合わない場合
+   * @throws IllegalArgumentException xとyが同じ配列の場合
+   */
+  private void checkVectors(double[] x, double[] y) {
+    if (x.length != this.columns) {
+      throw (new ArithmeticException(
+          String.format("列数とベクトルの長さが異なるため，計算できません: %d != %d", this.columns, x.length)));
+    }
+    if (y.length != this.rows) {
+      throw (new ArithmeticException(
+          String.format("格納先のベクトルの長さが行数と異なるため，計算できません: %d != %d", this.rows, y.length)));
+    }
+    if (x == y) {
+      throw (new IllegalArgumentException("格納先のベクトルが入力のベクトルと同じ配列です"));
+    }
+  }
+
+  /**
+   * this * thatを計算し，結果の行列を返します。thatは疎行列です。<br>
+   * thisの0でない成分(i, k)ごとにthatの第k行の0でない成分を足し込むため，<br>
+   * 計算量はO(thisの0でない成分の数 * thatの1行あたりの0でない成分の数)です。<br>
+   * 結果の行列はthisと同じ形式で生成されます。
+   *
+   * @param that この行列に乗算する疎行列
+   * @return this * that
+   * @throws ArithmeticException thisの列数とthatの行数が異なり，計算を実行できない場合
+   * @see SparseDoubleMatrix#times(DoubleMatrix)
+   */
+  public DoubleMatrix times(SparseDoubleMatrix that) {
+    if (this.columns != that.rows()) {
+      throw (new ArithmeticException(
+          String.format("列数と行数が異なるため，計算できません: %d != %d", this.columns, that.rows())));
+    }
+
+    DoubleStorage result = this.storage.allocate(this.rows, that.columns());
+    that.multiplyLeft(this.storage, result);
+
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * this * thatを，指定されたForkJoinPoolを使用して並列に計算し，結果の行列を返します。<br>
+   * 結果の行列は行ブロックに分割され，各ブロックがpool上のタスクとして計算されます。<br>
+   * 並列化に見合わない小さな行列積は，呼び出したスレッドで直列に計算します。<br>
+   * 計算結果はtimes(DoubleMatrix)の結果と完全に一致します。<br>
+   * 以下は，他の処理と競合しないように専用のForkJoinPoolで計算する例です。
+   *
+   * <pre>{@code
+   * ForkJoinPool pool = new ForkJoinPool(8);
+   * DoubleMatrix c = a.times(b, pool);
+   * }</pre>
+   *
+   * @param that この行列に乗算する行列。
+   * @param pool 計算に使用するForkJoinPool
+   * @return this * that
+   * @throws ArithmeticException thisの列数とthatの行数が異なり，計算を実行できない場合
+   * @see #times(DoubleMatrix)
+   */
+  public DoubleMatrix times(DoubleMatrix that, ForkJoinPool pool) {
+    if (this.columns != that.rows) {
+      throw (new ArithmeticException(
+          String.format("列数と行数が異なるため，計算できません: %d != %d", this.columns, that.rows)));
+    }
+
+    DoubleStorage result = allocateProduct(this.storage, that.storage);
+    if (result.hasRowArrays() && !isDiagonalProduct(this.storage, that.storage)) {
+      Gemm.multiply(1, this.storage, that.storage, result, pool);
+    } else {
+      multiply(1, this.storage, that.storage, result);
     }
 
-    return (new DoubleMatrix(result, false, false));
+    return (new DoubleMatrix(result));
   }
 
   /**
@@ -788,11 +1567,7 @@ public class DoubleMatrix {
    * @return this
    */
   public DoubleMatrix mul(double k) {
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.columns; j++) {
-        this.matrix[i][j] *= k;
-      }
-    }
+    times(k, this.storage, this.storage);
     return this;
   }
 
@@ -802,13 +1577,1491 @@ public class DoubleMatrix {
    * @return t^this
    */
   public DoubleMatrix trs() {
-    double[][] result = new double[this.columns][this.rows];
-    for (int i = 0; i < this.rows; i++) {
-      for (int j = 0; j < this.columns; j++) {
-        result[j][i] = this.matrix[i][j];
-      }
+    if (this.storage instanceof TransposedStorage) {
+      return (new DoubleMatrix(((TransposedStorage) this.storage).base.copy()));
+    }
+    if (DiagonalStorage.isDiagonal(this.storage)) {
+      double[] diagonal = ((DiagonalStorage) this.storage).diagonal();
+      return (new DoubleMatrix(new DiagonalStorage(diagonal.clone(), this.columns, this.rows)));
+    }
+    if (PackedStorage.isPacked(this.storage)) {
+      return (new DoubleMatrix(((PackedStorage) this.storage).transpose()));
+    }
+
+    DoubleStorage result = this.storage.allocate(this.columns, this.rows);
+    transpose(this.storage, result);
+
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * 正方行列であるthisを，新たな記憶域を確保せずにその場で転置し，thisを返します。<br>
+   * 対角線を挟んで向かい合うタイル同士の成分を交換するため，大きな行列でもキャッシュの局所性が保たれます。<br>
+   * ただし，thisが正方行列でない場合は，例外をスローします。
+   *
+   * @return this
+   * @throws ArithmeticException thisが正方行列でない場合
+   */
+  public DoubleMatrix transposeInPlace() {
+    if (this.rows != this.columns) {
+      throw (new ArithmeticException(
+          String.format("正方行列ではないため，その場で転置できません: %d != %d", this.rows, this.columns)));
+    }
+
+    transposeInPlace(this.storage);
+    return this;
+  }
+
+  /**
+   * thisを転置した行列を，成分をコピーせずに返します。<br>
+   * 返される行列はthisと成分を共有するビューです。一方の成分を変更すると，他方の対応する成分も変更されます。<br>
+   * ビューを演算に渡すと，行列積は転置された配置のまま，キャッシュの局所性の高い順序で計算されます。<br>
+   * 例えば，a.trsView().times(b)はt^a * bを，a.times(b.trsView())はa * t^bを，転置を実体化せずに計算します。<br>
+   * 演算の結果として返される行列は，ビューではない通常の行列です。
+   *
+   * @return t^thisを表すビュー
+   * @see #trs()
+   */
+  public DoubleMatrix trsView() {
+    if (this.storage instanceof TransposedStorage) {
+      return (new DoubleMatrix(((TransposedStorage) this.storage).base));
+    }
+    return (new DoubleMatrix(new TransposedStorage(this.storage)));
+  }
+
+  /**
+   * this * x = bを満たす行列xを求め，それを返します。bの各列をそれぞれ右辺とする連立一次方程式を一度に解きます。<br>
+   * thisを部分ピボット選択付きのLU分解で分解してから，前進代入と後退代入を行います(thisの成分は変更されません)。<br>
+   * 分解はJAGGED形式の作業用の記憶域で行うため，ピボット選択による行の交換は行の参照を交換するだけで完了します。<br>
+   * 計算量の大部分を占める部分行列の更新は，times(DoubleMatrix)と同じブロック化した行列積で計算されます。
+   *
+   * @param b 右辺(行数はthisの行数と等しくなければなりません)
+   * @return this^-1 * b
+   * @throws ArithmeticException thisが正方行列でない場合，thisとbの行数が異なる場合，またはthisが特異行列の場合
+   * @see LuDecomposition
+   */
+  public DoubleMatrix solve(DoubleMatrix b) {
+    checkSquare();
+    if (b.rows != this.rows) {
+      throw (new ArithmeticException(
+          String.format("行数が異なるため，計算できません: %d != %d", this.rows, b.rows)));
+    }
+
+    LuDecomposition lu = decompose();
+    checkNonsingular(lu);
+    DoubleStorage result = this.storage.allocate(b.rows, b.columns);
+    DoubleStorage x = result.hasRowArrays() ? result : new FlatStorage(b.rows, b.columns);
+    lu.permute(b.storage, x);
+    lu.solve(x);
+    if (x != result) {
+      copy(x, result);
+    }
+
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * thisの行列式を返します。thisが特異行列の場合は0dを返します。<br>
+   * 行列式は部分ピボット選択付きのLU分解で求めたUの対角成分の積なので，<br>
+   * 次数が大きい場合は，行列式の値が表現できる範囲を超えて無限大や0dに丸められることがあります。
+   *
+   * @return 行列式
+   * @throws ArithmeticException thisが正方行列でない場合
+   * @see #solve(DoubleMatrix)
+   */
+  public double determinant() {
+    checkSquare();
+    return decompose().determinant();
+  }
+
+  /**
+   * thisの逆行列を返します。<br>
+   * solve(DoubleMatrix)で単位行列を右辺として解くのと同じ計算を，右辺の単位行列を生成せずに行います。
+   *
+   * @return this^-1
+   * @throws ArithmeticException thisが正方行列でない場合，またはthisが特異行列の場合
+   * @see #solve(DoubleMatrix)
+   */
+  public DoubleMatrix inverse() {
+    checkSquare();
+
+    LuDecomposition lu = decompose();
+    checkNonsingular(lu);
+    DoubleStorage result = this.storage.allocate(this.rows, this.rows);
+    DoubleStorage x = result.hasRowArrays() ? result : new FlatStorage(this.rows, this.rows);
+    lu.permuteIdentity(x);
+    lu.solve(x);
+    if (x != result) {
+      copy(x, result);
+    }
+
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * thisが正方行列であることを確認します。
+   *
+   * @throws ArithmeticException thisが正方行列でない場合
+   */
+  private void checkSquare() {
+    if (this.rows != this.columns) {
+      throw (new ArithmeticException(
+          String.format("正方行列ではないため，計算できません: %d != %d", this.rows, this.columns)));
+    }
+  }
+
+  /**
+   * thisの成分をJAGGED形式の作業用の記憶域にコピーし，それをLU分解します。
+   *
+   * @return 分解の結果
+   */
+  private LuDecomposition decompose() {
+    return LuDecomposition.factor(workingCopy());
+  }
+
+  /**
+   * 分解に使用するために，thisの成分をJAGGED形式の新しい記憶域にコピーして返します。
+   *
+   * @return 作業用の記憶域
+   */
+  private DoubleStorage workingCopy() {
+    DoubleStorage work = new JaggedStorage(new double[this.rows][this.columns]);
+    if (this.storage instanceof TransposedStorage) {
+      transpose(((TransposedStorage) this.storage).base, work);
+    } else {
+      copy(this.storage, work);
+    }
+    return work;
+  }
+
+  /**
+   * 対称正定値行列であるthisをコレスキー分解し，this = L * t^Lを満たす下三角行列Lを返します。<br>
+   * 分解はブロック化されており，計算量の大部分を占める部分行列の更新は，下三角部分だけをGemmで計算します。
+   *
+   * @return 下三角行列L(上三角部分の成分は0d)
+   * @throws ArithmeticException thisが対称行列でない場合，または正定値ではない場合
+   * @see CholeskyDecomposition
+   */
+  public DoubleMatrix cholesky() {
+    return cholesky(null);
+  }
+
+  /**
+   * 対称正定値行列であるthisをコレスキー分解し，this = L * t^Lを満たす下三角行列Lを返します。<br>
+   * 次数が大きい場合，部分行列の更新を指定されたForkJoinPool上で並列に計算します。
+   *
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return 下三角行列L(上三角部分の成分は0d)
+   * @throws ArithmeticException thisが対称行列でない場合，または正定値ではない場合
+   * @see CholeskyDecomposition
+   */
+  public DoubleMatrix cholesky(ForkJoinPool pool) {
+    CholeskyDecomposition cholesky = decomposeCholesky(pool);
+    DoubleStorage result = this.storage.allocate(this.rows, this.columns);
+    cholesky.copyLower(result);
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * 対称正定値行列であるthisについて，this * x = bを満たす行列xを求め，それを返します。<br>
+   * thisをコレスキー分解してから前進代入と後退代入を行います。ピボット選択を行わず，分解の計算量は<br>
+   * solve(DoubleMatrix)のLU分解の約半分です。thisが正定値ではないことは分解の途中で検出され，その時点で例外をスローします。
+   *
+   * @param b 右辺(行数はthisの行数と等しくなければなりません)
+   * @return this^-1 * b
+   * @throws ArithmeticException thisが対称行列でない場合，正定値ではない場合，またはthisとbの行数が異なる場合
+   * @see #solve(DoubleMatrix)
+   */
+  public DoubleMatrix solvePositiveDefinite(DoubleMatrix b) {
+    return solvePositiveDefinite(b, null);
+  }
+
+  /**
+   * 対称正定値行列であるthisについて，this * x = bを満たす行列xを求め，それを返します。<br>
+   * 次数が大きい場合，分解における部分行列の更新を指定されたForkJoinPool上で並列に計算します。
+   *
+   * @param b 右辺(行数はthisの行数と等しくなければなりません)
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return this^-1 * b
+   * @throws ArithmeticException thisが対称行列でない場合，正定値ではない場合，またはthisとbの行数が異なる場合
+   * @see #solvePositiveDefinite(DoubleMatrix)
+   */
+  public DoubleMatrix solvePositiveDefinite(DoubleMatrix b, ForkJoinPool pool) {
+    if (b.rows != this.rows) {
+      throw (new ArithmeticException(
+          String.format("行数が異なるため，計算できません: %d != %d", this.rows, b.rows)));
+    }
+
+    CholeskyDecomposition cholesky = decomposeCholesky(pool);
+    DoubleStorage result = this.storage.allocate(b.rows, b.columns);
+    DoubleStorage x = result.hasRowArrays() ? result : new FlatStorage(b.rows, b.columns);
+    copy(b.storage, x);
+    cholesky.solve(x);
+    if (x != result) {
+      copy(x, result);
     }
 
-    return (new DoubleMatrix(result, false, false));
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * thisが対称行列であることを確認してから，thisの成分をJAGGED形式の作業用の記憶域にコピーし，それをコレスキー分解します。
+   * poolを指定した場合は，対称性の判定もisSymmetric(double, ForkJoinPool)で並列に行います。
+   *
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return 分解の結果
+   * @throws ArithmeticException thisが対称行列でない場合，または正定値ではない場合
+   */
+  private CholeskyDecomposition decomposeCholesky(ForkJoinPool pool) {
+    checkSquare();
+    if (!(pool == null ? isSymmetric() : isSymmetric(0, pool))) {
+      throw (new ArithmeticException("対称行列ではないため，計算できません"));
+    }
+    return CholeskyDecomposition.factor(workingCopy(), pool);
+  }
+
+  /**
+   * ||this * x - b||(フロベニウスノルム)を最小にする行列xを求め，それを返します(最小二乗法)。<br>
+   * bの各列をそれぞれ右辺とする最小二乗問題を一度に解きます。thisの行数は列数以上でなければなりません。<br>
+   * thisをブロック化したハウスホルダーQR分解で分解し，bにt^Qを掛けてからR * x = (t^Q * b)の先頭の行を後退代入で解きます。<br>
+   * Qは行列として生成しません。t^this * thisを計算して正規方程式を解く方法と比べて，<br>
+   * 条件数が2乗にならないため精度が高く，計算量も同程度です。<br>
+   * 行数が列数より十分に大きい場合は，キャッシュに収まる行のブロックごとに分解してから，<br>
+   * 各ブロックのRを縦に並べた行列をもう一度分解します(TSQR)。
+   *
+   * @param b 右辺(行数はthisの行数と等しくなければなりません)
+   * @return 最小二乗解(型はthisの列数 * bの列数)
+   * @throws ArithmeticException thisの行数が列数より少ない場合，thisとbの行数が異なる場合，<br>
+   *     またはthisの列が一次従属である(階数が列数より小さい)場合
+   * @see QrDecomposition
+   */
+  public DoubleMatrix leastSquares(DoubleMatrix b) {
+    return leastSquares(b, null);
+  }
+
+  /**
+   * ||this * x - b||(フロベニウスノルム)を最小にする行列xを求め，それを返します(最小二乗法)。<br>
+   * 行数が列数より十分に大きい場合は，行のブロックごとのQR分解(TSQR)を指定されたForkJoinPool上で並列に計算します。<br>
+   * 並列度に応じて行のブロックの数が変わるため，結果は丸め誤差の範囲でleastSquares(DoubleMatrix)と一致しますが，<br>
+   * ビット単位では一致しないことがあります。
+   *
+   * @param b 右辺(行数はthisの行数と等しくなければなりません)
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return 最小二乗解(型はthisの列数 * bの列数)
+   * @throws ArithmeticException thisの行数が列数より少ない場合，thisとbの行数が異なる場合，<br>
+   *     またはthisの列が一次従属である(階数が列数より小さい)場合
+   * @see #leastSquares(DoubleMatrix)
+   */
+  public DoubleMatrix leastSquares(DoubleMatrix b, ForkJoinPool pool) {
+    checkTall();
+    if (b.rows != this.rows) {
+      throw (new ArithmeticException(
+          String.format("行数が異なるため，計算できません: %d != %d", this.rows, b.rows)));
+    }
+
+    DoubleStorage x = new FlatStorage(b.rows, b.columns);
+    copy(b.storage, x);
+    int blocks = QrDecomposition.tallSkinnyBlocks(this.rows, this.columns, pool);
+    QrDecomposition qr;
+    if (blocks > 1) {
+      qr = QrDecomposition.factorTallSkinny(workingCopy(), x, blocks, pool);
+    } else {
+      qr = QrDecomposition.factor(workingCopy());
+      qr.applyQt(x);
+    }
+    if (qr.isRankDeficient(this.rows)) {
+      throw (new ArithmeticException("列が一次従属であるため，計算できません"));
+    }
+    qr.solveUpper(x);
+
+    DoubleStorage result = this.storage.allocate(this.columns, b.columns);
+    copy(new SubmatrixStorage(x, 0, 0, this.columns, b.columns), result);
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * thisをQR分解し，this = Q * Rを満たす行列QとRを返します。<br>
+   * Qは列が正規直交する型がthisと等しい行列，Rは上三角行列(型はthisの列数 * thisの列数)です(thin QR分解)。<br>
+   * Qは分解で保持しているハウスホルダー変換を単位行列の先頭の列に適用して生成するため，<br>
+   * 最小二乗解だけが必要な場合は，Qを生成しないleastSquares(DoubleMatrix)を使用してください。
+   *
+   * @return Q(添え字0)とR(添え字1)
+   * @throws ArithmeticException thisの行数が列数より少ない場合
+   * @see #leastSquares(DoubleMatrix)
+   */
+  public DoubleMatrix[] qr() {
+    checkTall();
+    QrDecomposition qr = QrDecomposition.factor(workingCopy());
+
+    DoubleStorage q = thinQ(qr, this.rows, this.columns);
+    DoubleStorage resultQ = this.storage.allocate(this.rows, this.columns);
+    copy(q, resultQ);
+    DoubleStorage resultR = this.storage.allocate(this.columns, this.columns);
+    qr.copyUpper(resultR);
+
+    return (new DoubleMatrix[] {new DoubleMatrix(resultQ), new DoubleMatrix(resultR)});
+  }
+
+  /**
+   * QR分解の結果から，列が正規直交する行列Q(rows * columns)を生成します(thin QR分解のQ)。<br>
+   * 分解で保持しているハウスホルダー変換を，単位行列の先頭の列に適用して生成します。
+   *
+   * @param qr 分解の結果
+   * @param rows 分解した行列の行数
+   * @param columns 分解した行列の列数
+   * @return Q
+   */
+  private static DoubleStorage thinQ(QrDecomposition qr, int rows, int columns) {
+    DoubleStorage q = new FlatStorage(rows, columns);
+    for (int i = 0; i < columns; i++) {
+      q.set(i, i, 1);
+    }
+    qr.applyQ(q);
+    return q;
+  }
+
+  /**
+   * 対称行列であるthisの全ての固有値を，降順に並べた列ベクトルとして返します。<br>
+   * thisを三重対角化してから，固有ベクトルを求めずにQL法で固有値だけを求めます。
+   *
+   * @return 固有値を降順に並べた列ベクトル
+   * @throws ArithmeticException thisが対称行列でない場合，またはQL法が収束しなかった場合
+   * @see SymmetricEigenDecomposition
+   */
+  public DoubleMatrix eigenvalues() {
+    return createColumnVector(decomposeSymmetric().eigenvalues());
+  }
+
+  /**
+   * 対称行列であるthisの全ての固有値と固有ベクトルを求めます(this = Z * Λ * t^Z)。<br>
+   * thisを三重対角化してから，陰的シフト付きのQL法で回転を累積して固有ベクトルを求めます。<br>
+   * 固有値は降順に並べ，各固有ベクトルは絶対値が最大の成分が正になるように符号を揃えます。<br>
+   * 対称性は厳密に判定するため，丸め誤差でわずかに非対称になった行列は，<br>
+   * createSymmetricMatrix(DoubleMatrix, Triangle)で一方の三角部分から対称行列を作ってから渡してください。
+   *
+   * @return 固有値を降順に並べた列ベクトル(添え字0)と，対応する固有ベクトルを同じ順に列として並べた行列Z(添え字1)
+   * @throws ArithmeticException thisが対称行列でない場合，またはQL法が収束しなかった場合
+   * @see #eigen(int)
+   * @see SymmetricEigenDecomposition
+   */
+  public DoubleMatrix[] eigen() {
+    SymmetricEigenDecomposition eigen = decomposeSymmetric();
+    DoubleStorage vectors = this.storage.allocate(this.rows, this.rows);
+    double[] values = eigen.decompose(vectors);
+    return (new DoubleMatrix[] {createColumnVector(values), new DoubleMatrix(vectors)});
+  }
+
+  /**
+   * 対称行列であるthisの固有値のうち大きい方からk個と，それらに対応する固有ベクトルを求めます。<br>
+   * thisを三重対角化してから固有値だけをQL法で求め，k個の固有ベクトルだけを三重対角行列に対する逆反復法で求めます。<br>
+   * 三重対角化の後の計算量はO(n^2 * k)なので，kが小さい場合はeigen()よりも高速です。<br>
+   * 小さい方からk個の固有対が必要な場合(グラフラプラシアンなど)は，this.times(-1)の固有対を求めて固有値の符号を反転してください。
+   *
+   * @param k 求める固有対の数
+   * @return 固有値を降順に並べた列ベクトル(添え字0)と，対応する固有ベクトルを同じ順に列として並べた行列(添え字1)
+   * @throws IllegalArgumentException kが1未満またはthisの次数より大きい場合
+   * @throws ArithmeticException thisが対称行列でない場合，またはQL法が収束しなかった場合
+   * @see #eigen()
+   */
+  public DoubleMatrix[] eigen(int k) {
+    checkSquare();
+    if (k < 1 || k > this.rows) {
+      throw (new IllegalArgumentException(
+          String.format("固有対の数は1以上%d以下でなければなりません: %d", this.rows, k)));
+    }
+    SymmetricEigenDecomposition eigen = decomposeSymmetric();
+    double[] values = eigen.eigenvalues();
+    DoubleStorage vectors = this.storage.allocate(this.rows, k);
+    eigen.eigenvectors(values, k, vectors);
+    return (new DoubleMatrix[] {
+        createColumnVector(Arrays.copyOf(values, k)), new DoubleMatrix(vectors)});
+  }
+
+  /**
+   * thisを特異値分解し(this = U * Σ * t^V)，U，特異値，Vを返します。<br>
+   * rをthisの行数と列数の小さい方とすると，Uは列が正規直交する行列(thisの行数 * r)，<br>
+   * Vは列が正規直交する行列(thisの列数 * r)，Σは特異値を降順に並べた対角行列(r * r)です。<br>
+   * thisをQR分解してから，Rの転置に片側ヤコビ法を適用します。小さい特異値も相対誤差の小さい精度で求まります。<br>
+   * 行数が列数より少ない場合はthisの転置を分解し，UとVを入れ替えます。<br>
+   * 各右特異ベクトルは絶対値が最大の成分が正になるように符号を揃えます。<br>
+   * 大きい行列の大きい方から少数の特異対だけが必要な場合は，randomizedSvd(int, int, Random)を使用してください。
+   *
+   * @return U(添え字0)，特異値を降順に並べた列ベクトル(添え字1)，V(添え字2)
+   * @throws ArithmeticException 片側ヤコビ法が収束しなかった場合
+   * @see #randomizedSvd(int, int, Random)
+   * @see SingularValueDecomposition
+   */
+  public DoubleMatrix[] svd() {
+    final boolean wide = this.rows < this.columns;
+    DoubleStorage work;
+    if (!wide) {
+      work = workingCopy();
+    } else {
+      work = new JaggedStorage(new double[this.columns][this.rows]);
+      if (this.storage instanceof TransposedStorage) {
+        copy(((TransposedStorage) this.storage).base, work);
+      } else {
+        transpose(this.storage, work);
+      }
+    }
+    final int m = work.rows;
+    final int r = work.columns;
+    SingularValueDecomposition svd = SingularValueDecomposition.factor(work);
+
+    DoubleStorage u = new FlatStorage(m, r);
+    svd.copyLeft(u);
+    DoubleStorage right = this.storage.allocate(r, r);
+    svd.copyRight(right);
+    if (wide) {
+      // 転置を分解したため，左特異ベクトルuがthisの右特異ベクトルになる
+      alignSigns(u, right);
+    }
+    DoubleStorage left = this.storage.allocate(m, r);
+    copy(u, left);
+    DoubleMatrix values = createColumnVector(svd.singularValues());
+
+    return wide
+        ? (new DoubleMatrix[] {new DoubleMatrix(right), values, new DoubleMatrix(left)})
+        : (new DoubleMatrix[] {new DoubleMatrix(left), values, new DoubleMatrix(right)});
+  }
+
+  /**
+   * thisの特異値のうち大きい方からk個と，それらに対応する特異ベクトルを乱択アルゴリズムで近似的に求めます。<br>
+   * 正規分布に従う乱数の行列Ω(thisの列数 * l，l = k + RANDOMIZED_OVERSAMPLING)について，<br>
+   * this * Ωの列空間の正規直交基底Qを求めます。powerIterations回のべき乗反復では，<br>
+   * Q = orth(this * orth(t^this * Q))として，小さい特異値の成分を減衰させます。<br>
+   * 最後にt^this * Q(thisの列数 * l)をsvd()と同じ方法で分解し，this ≒ Q * t^Q * thisの特異対を求めます。<br>
+   * thisに対する計算はthisおよびt^thisのビューとの行列積だけで，thisを読む回数は2 * (powerIterations + 1)回です。<br>
+   * 途中の結果はthisの形式によらずヒープ上に確保するため，OFF_HEAP形式のthisでも直接バッファは結果の分だけ確保されます。<br>
+   * 分解する行列はthisの行数または列数 * lの大きさなので，kが小さければsvd()よりはるかに高速です。<br>
+   * 特異値の減衰が緩やかな行列では，powerIterationsを1から3程度にすると精度が改善します。<br>
+   * 特異ベクトルの符号はsvd()と同じ規則で揃えます。
+   *
+   * @param k 求める特異対の数
+   * @param powerIterations べき乗反復の回数
+   * @param random 乱数の行列Ωの生成に使用する乱数生成器
+   * @return U(thisの行数 * k，添え字0)，特異値を降順に並べた列ベクトル(添え字1)，V(thisの列数 * k，添え字2)
+   * @throws IllegalArgumentException kが1未満またはthisの行数と列数の小さい方より大きい場合，<br>
+   *     またはpowerIterationsが負の場合
+   * @throws ArithmeticException 片側ヤコビ法が収束しなかった場合
+   * @see #svd()
+   */
+  public DoubleMatrix[] randomizedSvd(int k, int powerIterations, Random random) {
+    return randomizedSvd(k, powerIterations, random, null);
+  }
+
+  /**
+   * thisの特異値のうち大きい方からk個と，それらに対応する特異ベクトルを乱択アルゴリズムで近似的に求めます。<br>
+   * thisとの行列積を，指定されたForkJoinPool上で並列に計算します。
+   *
+   * @param k 求める特異対の数
+   * @param powerIterations べき乗反復の回数
+   * @param random 乱数の行列Ωの生成に使用する乱数生成器
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return U(thisの行数 * k，添え字0)，特異値を降順に並べた列ベクトル(添え字1)，V(thisの列数 * k，添え字2)
+   * @throws IllegalArgumentException kが1未満またはthisの行数と列数の小さい方より大きい場合，<br>
+   *     またはpowerIterationsが負の場合
+   * @throws ArithmeticException 片側ヤコビ法が収束しなかった場合
+   * @see #randomizedSvd(int, int, Random)
+   */
+  public DoubleMatrix[] randomizedSvd(
+      int k, int powerIterations, Random random, ForkJoinPool pool) {
+    final int r = Math.min(this.rows, this.columns);
+    if (k < 1 || k > r) {
+      throw (new IllegalArgumentException(
+          String.format("特異対の数は1以上%d以下でなければなりません: %d", r, k)));
+    }
+    if (powerIterations < 0) {
+      throw (new IllegalArgumentException(
+          String.format("べき乗反復の回数は0以上でなければなりません: %d", powerIterations)));
+    }
+
+    final int l = Math.min(r, k + RANDOMIZED_OVERSAMPLING);
+    DoubleStorage omega = new FlatStorage(this.columns, l);
+    for (int i = 0; i < this.columns; i++) {
+      for (int j = 0; j < l; j++) {
+        omega.set(i, j, random.nextGaussian());
+      }
+    }
+    DoubleMatrix t = trsView();
+    DoubleMatrix q = orthonormalBasis(product(this, new DoubleMatrix(omega), pool));
+    for (int p = 0; p < powerIterations; p++) {
+      q = orthonormalBasis(product(this, orthonormalBasis(product(t, q, pool)), pool));
+    }
+
+    // t^this * Q = Uc * Σ * t^Vcなので，this ≒ Q * t^Q * this = (Q * Vc) * Σ * t^Uc
+    DoubleMatrix c = product(t, q, pool);
+    SingularValueDecomposition svd = SingularValueDecomposition.factor(c.workingCopy());
+    DoubleStorage uc = new FlatStorage(this.columns, l);
+    svd.copyLeft(uc);
+    DoubleStorage vc = new FlatStorage(l, l);
+    svd.copyRight(vc);
+    DoubleMatrix u = product(q, new DoubleMatrix(new SubmatrixStorage(vc, 0, 0, l, k)), pool);
+    DoubleStorage v = new SubmatrixStorage(uc, 0, 0, this.columns, k);
+    alignSigns(v, u.storage);
+
+    DoubleStorage left = this.storage.allocate(this.rows, k);
+    copy(u.storage, left);
+    DoubleStorage right = this.storage.allocate(this.columns, k);
+    copy(v, right);
+    DoubleMatrix values = createColumnVector(Arrays.copyOf(svd.singularValues(), k));
+    return (new DoubleMatrix[] {new DoubleMatrix(left), values, new DoubleMatrix(right)});
+  }
+
+  /**
+   * thisが対称行列であることを確認してから，thisの成分をJAGGED形式の作業用の記憶域にコピーし，それを三重対角化します。
+   *
+   * @return 三重対角化の結果
+   * @throws ArithmeticException thisが対称行列でない場合
+   */
+  private SymmetricEigenDecomposition decomposeSymmetric() {
+    checkSquare();
+    if (!isSymmetric()) {
+      throw (new ArithmeticException("対称行列ではないため，計算できません"));
+    }
+    return SymmetricEigenDecomposition.factor(workingCopy());
+  }
+
+  /**
+   * thisの行数が列数以上であることを確認します。
+   *
+   * @throws ArithmeticException thisの行数が列数より少ない場合
+   */
+  private void checkTall() {
+    if (this.rows < this.columns) {
+      throw (new ArithmeticException(
+          String.format("行数が列数より少ないため，計算できません: %d < %d", this.rows, this.columns)));
+    }
+  }
+
+  /**
+   * aの列空間の正規直交基底を，aをQR分解したthin QR分解のQとして返します(型はaと等しい)。<br>
+   * aの列が一次従属であっても，ハウスホルダー変換の積から生成するQの列は正規直交します。
+   *
+   * @param a 行数が列数以上の行列
+   * @return aの列空間を含む，列が正規直交する行列
+   */
+  private static DoubleMatrix orthonormalBasis(DoubleMatrix a) {
+    QrDecomposition qr = QrDecomposition.factor(a.workingCopy());
+    return (new DoubleMatrix(thinQ(qr, a.rows, a.columns)));
+  }
+
+  /**
+   * vの各列を，絶対値が最大の成分(複数ある場合は最初の成分)が正になるように符号を揃え，uの同じ列の符号も合わせます。
+   *
+   * @param v 右特異ベクトルを列に持つ記憶域
+   * @param u 左特異ベクトルを列に持つ記憶域(列数はvと等しい)
+   */
+  private static void alignSigns(DoubleStorage v, DoubleStorage u) {
+    for (int j = 0; j < v.columns; j++) {
+      int max = 0;
+      for (int i = 1; i < v.rows; i++) {
+        if (Math.abs(v.get(i, j)) > Math.abs(v.get(max, j))) {
+          max = i;
+        }
+      }
+      if (v.get(max, j) < 0) {
+        for (int i = 0; i < v.rows; i++) {
+          v.set(i, j, -v.get(i, j));
+        }
+        for (int i = 0; i < u.rows; i++) {
+          u.set(i, j, -u.get(i, j));
+        }
+      }
+    }
+  }
+
+  /**
+   * a * bを計算します。poolがnullでなければ，times(DoubleMatrix, ForkJoinPool)と同じくGemmで並列に計算します。<br>
+   * 結果はa，bの形式によらずヒープ上のFLAT形式の記憶域に格納します。分解の途中の結果として使用するため，<br>
+   * aがOFF_HEAP形式でも，解放されない直接バッファを中間結果として確保しないようにしています。
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return a * b(FLAT形式)
+   */
+  private static DoubleMatrix product(DoubleMatrix a, DoubleMatrix b, ForkJoinPool pool) {
+    DoubleStorage result = new FlatStorage(a.rows, b.columns);
+    if (pool != null && !isDiagonalProduct(a.storage, b.storage)) {
+      Gemm.multiply(1, a.storage, b.storage, result, pool);
+    } else {
+      multiply(1, a.storage, b.storage, result);
+    }
+    return (new DoubleMatrix(result));
+  }
+
+  /**
+   * 分解した行列が特異行列でないことを確認します。
+   *
+   * @param lu 分解の結果
+   * @throws ArithmeticException 特異行列の場合
+   */
+  private static void checkNonsingular(LuDecomposition lu) {
+    if (lu.isSingular()) {
+      throw (new ArithmeticException("特異行列のため，計算できません"));
+    }
+  }
+
+  /**
+   * aとbの演算結果を格納する，型がrows * columnsの記憶域を確保します。<br>
+   * aとbがともに対角成分だけを保持している場合は，結果も対角成分だけを保持する記憶域とします。<br>
+   * それ以外の場合はaと同じ形式の記憶域とします。
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @param rows 行数
+   * @param columns 列数
+   * @return 記憶域
+   */
+  private static DoubleStorage allocateResult(
+      DoubleStorage a, DoubleStorage b, int rows, int columns) {
+    if (DiagonalStorage.isDiagonal(a) && DiagonalStorage.isDiagonal(b)) {
+      return (new DiagonalStorage(rows, columns));
+    }
+    return a.allocate(rows, columns);
+  }
+
+  /**
+   * a * bの結果を格納する記憶域を確保します。<br>
+   * aとbがともに対角成分だけを保持していても，isDiagonalProduct(a, b)がfalseの場合は，<br>
+   * 対角成分以外にNaNが現れるため，aと同じ形式の通常の記憶域とします。
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @return 記憶域
+   */
+  private static DoubleStorage allocateProduct(DoubleStorage a, DoubleStorage b) {
+    if (!isDiagonalProduct(a, b)) {
+      return a.allocate(a.rows, b.columns);
+    }
+    return allocateResult(a, b, a.rows, b.columns);
+  }
+
+  /**
+   * a * bを，対角成分だけを保持する記憶域の対角成分以外の0dとの積を省略して計算できる場合にtrueを返します。<br>
+   * 省略する積0d * xは，xが有限の値なら0dですが，NaNまたは無限大ならNaNになります。<br>
+   * そのため，aとbの少なくとも一方が対角成分だけを保持していて，かつaとbの成分が全て有限の値の場合に限ります。
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @return 対角行列との積として計算できる場合，true
+   */
+  private static boolean isDiagonalProduct(DoubleStorage a, DoubleStorage b) {
+    return ((DiagonalStorage.isDiagonal(a) || DiagonalStorage.isDiagonal(b))
+        && isFinite(a)
+        && isFinite(b));
+  }
+
+  /**
+   * aの成分が全て有限の値(NaNでも無限大でもない値)ならtrueを返します。
+   *
+   * @param a 記憶域
+   * @return 成分が全て有限の値なら，true
+   */
+  private static boolean isFinite(DoubleStorage a) {
+    if (DiagonalStorage.isDiagonal(a)) {
+      return isFinite(((DiagonalStorage) a).diagonal());
+    }
+    for (int i = 0; i < a.rows; i++) {
+      if (a.hasRowArrays()) {
+        double[] ar = a.rowArray(i);
+        int ao = a.rowOffset(i);
+        for (int j = 0; j < a.columns; j++) {
+          if (!Double.isFinite(ar[ao + j])) {
+            return false;
+          }
+        }
+      } else {
+        for (int j = 0; j < a.columns; j++) {
+          if (!Double.isFinite(a.get(i, j))) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * xの成分が全て有限の値(NaNでも無限大でもない値)ならtrueを返します。
+   *
+   * @param x 配列
+   * @return 成分が全て有限の値なら，true
+   */
+  private static boolean isFinite(double[] x) {
+    for (double v : x) {
+      if (!Double.isFinite(v)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * a + bまたはa - bの結果を格納する記憶域を確保します。<br>
+   * aとbが同じ種類の圧縮形式の記憶域であれば，結果も同じ種類の圧縮形式とします。
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @return 記憶域
+   */
+  private static DoubleStorage allocateSum(DoubleStorage a, DoubleStorage b) {
+    if (isSamePacked(a, b, a)) {
+      return (new PackedStorage(((PackedStorage) a).kind(), a.rows));
+    }
+    return allocateResult(a, b, a.rows, a.columns);
+  }
+
+  /**
+   * a，b，cがいずれも同じ種類の圧縮形式の記憶域ならtrueを返します。<br>
+   * この場合，成分ごとの演算は詰めた配列同士の演算として計算できます。
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   * @return 同じ種類の圧縮形式ならtrue
+   */
+  private static boolean isSamePacked(DoubleStorage a, DoubleStorage b, DoubleStorage c) {
+    if (!PackedStorage.isPacked(a) || !PackedStorage.isPacked(b) || !PackedStorage.isPacked(c)) {
+      return false;
+    }
+    PackedStorage.Kind kind = ((PackedStorage) a).kind();
+    return (((PackedStorage) b).kind() == kind && ((PackedStorage) c).kind() == kind);
+  }
+
+  /**
+   * k * 0dが0dになる(-0dやNaNにならない)ならtrueを返します。<br>
+   * この場合に限り，対角行列をk倍した結果の対角成分以外の成分は0dのままです。
+   *
+   * @param k 乗算する値
+   * @return k * 0dが0dならtrue
+   */
+  private static boolean isZeroPreserving(double k) {
+    return (Double.doubleToRawLongBits(k * 0d) == 0L);
+  }
+
+  /**
+   * 指定された形式で，型がrows * columnsの成分が全て0dの記憶域を生成します。
+   *
+   * @param layout 記憶域の形式
+   * @param rows 行数
+   * @param columns 列数
+   * @return 記憶域
+   * @throws IllegalArgumentException 指定された形式で成分を保持できない場合
+   */
+  static DoubleStorage allocate(Layout layout, int rows, int columns) {
+    switch (layout) {
+      case FLAT:
+        return (new FlatStorage(rows, columns));
+      case OFF_HEAP:
+        return (new OffHeapStorage(rows, columns));
+      case JAGGED:
+      default:
+        return (new JaggedStorage(new double[rows][columns]));
+    }
+  }
+
+  /**
+   * srcの全成分をdestにコピーします。srcとdestの型は等しくなければなりません。
+   *
+   * @param src コピー元
+   * @param dest コピー先
+   */
+  private static void copy(DoubleStorage src, DoubleStorage dest) {
+    copy(src, dest, 0, 0);
+  }
+
+  /**
+   * srcの全成分を，destの(i0, j0)成分を左上とする領域にコピーします。
+   *
+   * @param src コピー元
+   * @param dest コピー先
+   * @param i0 コピー先の領域の先頭行
+   * @param j0 コピー先の領域の先頭列
+   */
+  private static void copy(DoubleStorage src, DoubleStorage dest, int i0, int j0) {
+    if (src.hasRowArrays() && dest.hasRowArrays()) {
+      for (int i = 0; i < src.rows; i++) {
+        System.arraycopy(
+            src.rowArray(i),
+            src.rowOffset(i),
+            dest.rowArray(i0 + i),
+            dest.rowOffset(i0 + i) + j0,
+            src.columns);
+      }
+      return;
+    }
+
+    for (int i = 0; i < src.rows; i++) {
+      for (int j = 0; j < src.columns; j++) {
+        dest.set(i0 + i, j0 + j, src.get(i, j));
+      }
+    }
+  }
+
+  /**
+   * c += alpha * a * t^aを計算します。cはaとは重ならない記憶域でなければなりません。<br>
+   * cが対称行列の圧縮形式であれば，下三角部分(i &gt;= j)だけをPackedStorageの経路で計算します。<br>
+   * それ以外の場合はmultiply(alpha, a, t^a, c)で計算します。
+   *
+   * @param alpha a * t^aに乗算する値
+   * @param a 行列
+   * @param c 結果の格納先
+   */
+  private static void rankUpdate(double alpha, DoubleStorage a, DoubleStorage c) {
+    if (!PackedStorage.isSymmetric(c)) {
+      multiply(alpha, a, new TransposedStorage(a), c);
+      return;
+    }
+
+    DoubleStorage x = a;
+    if (!x.hasRowArrays()) {
+      // 行の内積を配列上で計算するため，行単位でアクセスできる記憶域へコピーする
+      x = new FlatStorage(a.rows, a.columns);
+      for (int i = 0; i < a.rows; i++) {
+        for (int k = 0; k < a.columns; k++) {
+          x.set(i, k, a.get(i, k));
+        }
+      }
+    }
+    ((PackedStorage) c).rankUpdate(alpha, x);
+  }
+
+  /**
+   * cの全成分をvalueで置き換えます。
+   *
+   * @param c 記憶域
+   * @param value 格納される値
+   */
+  private static void fill(DoubleStorage c, double value) {
+    if (PackedStorage.isSymmetric(c)
+        || (PackedStorage.isPacked(c) && Double.doubleToRawLongBits(value) == 0L)) {
+      Arrays.fill(((PackedStorage) c).packed(), value);
+      return;
+    }
+
+    if (c.hasRowArrays()) {
+      for (int i = 0; i < c.rows; i++) {
+        int co = c.rowOffset(i);
+        Arrays.fill(c.rowArray(i), co, co + c.columns, value);
+      }
+      return;
+    }
+
+    for (int i = 0; i < c.rows; i++) {
+      for (int j = 0; j < c.columns; j++) {
+        c.set(i, j, value);
+      }
+    }
+  }
+
+  /**
+   * c = a + bを計算します。cはaまたはbと同一の記憶域でも構いません。
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   */
+  private static void plus(DoubleStorage a, DoubleStorage b, DoubleStorage c) {
+    if (isSamePacked(a, b, c)) {
+      double[] ap = ((PackedStorage) a).packed();
+      double[] bp = ((PackedStorage) b).packed();
+      double[] cp = ((PackedStorage) c).packed();
+      RowKernels.plus(ap, 0, bp, 0, cp, 0, cp.length);
+      return;
+    }
+
+    if (DiagonalStorage.isDiagonal(a)
+        && DiagonalStorage.isDiagonal(b)
+        && DiagonalStorage.isDiagonal(c)) {
+      double[] ad = ((DiagonalStorage) a).diagonal();
+      double[] bd = ((DiagonalStorage) b).diagonal();
+      double[] cd = ((DiagonalStorage) c).diagonal();
+      for (int i = 0; i < cd.length; i++) {
+        cd[i] = ad[i] + bd[i];
+      }
+      return;
+    }
+
+    if (DiagonalStorage.isDiagonal(a) && b.hasRowArrays() && c.hasRowArrays()) {
+      plusDiagonal(((DiagonalStorage) a).diagonal(), b, c);
+      return;
+    }
+
+    if (a.hasRowArrays() && DiagonalStorage.isDiagonal(b) && c.hasRowArrays()) {
+      plusDiagonal(((DiagonalStorage) b).diagonal(), a, c);
+      return;
+    }
+
+    if (a.hasRowArrays() && b.hasRowArrays() && c.hasRowArrays()) {
+      for (int i = 0; i < a.rows; i++) {
+        double[] ar = a.rowArray(i);
+        double[] br = b.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int ao = a.rowOffset(i);
+        int bo = b.rowOffset(i);
+        int co = c.rowOffset(i);
+        RowKernels.plus(ar, ao, br, bo, cr, co, a.columns);
+      }
+      return;
+    }
+
+    for (int i = 0; i < a.rows; i++) {
+      for (int j = 0; j < a.columns; j++) {
+        c.set(i, j, a.get(i, j) + b.get(i, j));
+      }
+    }
+  }
+
+  /**
+   * 対角成分がdの対角行列と，行単位でアクセスできる記憶域bについて，c = d + bを計算します。<br>
+   * 対角成分以外も0d + b(i, j)として計算するため，-0dの扱いを含めて成分ごとに加算した結果と一致します。
+   *
+   * @param d 対角成分
+   * @param b 行列
+   * @param c 結果の格納先
+   */
+  private static void plusDiagonal(double[] d, DoubleStorage b, DoubleStorage c) {
+    for (int i = 0; i < b.rows; i++) {
+      double[] br = b.rowArray(i);
+      double[] cr = c.rowArray(i);
+      int bo = b.rowOffset(i);
+      int co = c.rowOffset(i);
+      // cがbと同一の記憶域の場合に備え，b(i, i)を上書きする前に対角成分を計算する
+      double diagonal = (i < d.length ? d[i] + br[bo + i] : 0);
+      for (int j = 0; j < b.columns; j++) {
+        cr[co + j] = 0 + br[bo + j];
+      }
+      if (i < d.length) {
+        cr[co + i] = diagonal;
+      }
+    }
+  }
+
+  /**
+   * c = a - bを計算します。cはaまたはbと同一の記憶域でも構いません。
+   *
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   */
+  private static void minus(DoubleStorage a, DoubleStorage b, DoubleStorage c) {
+    if (isSamePacked(a, b, c)) {
+      double[] ap = ((PackedStorage) a).packed();
+      double[] bp = ((PackedStorage) b).packed();
+      double[] cp = ((PackedStorage) c).packed();
+      RowKernels.minus(ap, 0, bp, 0, cp, 0, cp.length);
+      return;
+    }
+
+    if (DiagonalStorage.isDiagonal(a)
+        && DiagonalStorage.isDiagonal(b)
+        && DiagonalStorage.isDiagonal(c)) {
+      double[] ad = ((DiagonalStorage) a).diagonal();
+      double[] bd = ((DiagonalStorage) b).diagonal();
+      double[] cd = ((DiagonalStorage) c).diagonal();
+      for (int i = 0; i < cd.length; i++) {
+        cd[i] = ad[i] - bd[i];
+      }
+      return;
+    }
+
+    if (DiagonalStorage.isDiagonal(a) && b.hasRowArrays() && c.hasRowArrays()) {
+      // 対角成分以外は0d - b(i, j)
+      double[] ad = ((DiagonalStorage) a).diagonal();
+      for (int i = 0; i < b.rows; i++) {
+        double[] br = b.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int bo = b.rowOffset(i);
+        int co = c.rowOffset(i);
+        double diagonal = (i < ad.length ? ad[i] - br[bo + i] : 0);
+        for (int j = 0; j < b.columns; j++) {
+          cr[co + j] = 0 - br[bo + j];
+        }
+        if (i < ad.length) {
+          cr[co + i] = diagonal;
+        }
+      }
+      return;
+    }
+
+    if (a.hasRowArrays() && DiagonalStorage.isDiagonal(b) && c.hasRowArrays()) {
+      // 対角成分以外はa(i, j) - 0d = a(i, j)
+      double[] bd = ((DiagonalStorage) b).diagonal();
+      for (int i = 0; i < a.rows; i++) {
+        double[] ar = a.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int ao = a.rowOffset(i);
+        int co = c.rowOffset(i);
+        System.arraycopy(ar, ao, cr, co, a.columns);
+        if (i < bd.length) {
+          cr[co + i] = ar[ao + i] - bd[i];
+        }
+      }
+      return;
+    }
+
+    if (a.hasRowArrays() && b.hasRowArrays() && c.hasRowArrays()) {
+      for (int i = 0; i < a.rows; i++) {
+        double[] ar = a.rowArray(i);
+        double[] br = b.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int ao = a.rowOffset(i);
+        int bo = b.rowOffset(i);
+        int co = c.rowOffset(i);
+        RowKernels.minus(ar, ao, br, bo, cr, co, a.columns);
+      }
+      return;
+    }
+
+    for (int i = 0; i < a.rows; i++) {
+      for (int j = 0; j < a.columns; j++) {
+        c.set(i, j, a.get(i, j) - b.get(i, j));
+      }
+    }
+  }
+
+  /**
+   * c = k * aを計算します。cはaと同一の記憶域でも構いません。
+   *
+   * @param k 乗算する値
+   * @param a 行列
+   * @param c 結果の格納先
+   */
+  private static void times(double k, DoubleStorage a, DoubleStorage c) {
+    if (isSamePacked(a, a, c) && (PackedStorage.isSymmetric(a) || isZeroPreserving(k))) {
+      double[] ap = ((PackedStorage) a).packed();
+      double[] cp = ((PackedStorage) c).packed();
+      RowKernels.scale(k, ap, 0, cp, 0, cp.length);
+      return;
+    }
+
+    if (DiagonalStorage.isDiagonal(a) && DiagonalStorage.isDiagonal(c) && isZeroPreserving(k)) {
+      double[] ad = ((DiagonalStorage) a).diagonal();
+      double[] cd = ((DiagonalStorage) c).diagonal();
+      for (int i = 0; i < cd.length; i++) {
+        cd[i] = k * ad[i];
+      }
+      return;
+    }
+
+    if (a.hasRowArrays() && c.hasRowArrays()) {
+      for (int i = 0; i < a.rows; i++) {
+        double[] ar = a.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int ao = a.rowOffset(i);
+        int co = c.rowOffset(i);
+        RowKernels.scale(k, ar, ao, cr, co, a.columns);
+      }
+      return;
+    }
+
+    for (int i = 0; i < a.rows; i++) {
+      for (int j = 0; j < a.columns; j++) {
+        c.set(i, j, k * a.get(i, j));
+      }
+    }
+  }
+
+  /**
+   * c += alpha * a * bを計算します。cはaおよびbとは重ならない記憶域でなければなりません。<br>
+   * 十分に大きな行列積はキャッシュブロッキングを行うGemmで計算します。<br>
+   * cがヒープの外の記憶域の場合も，行方向の帯ごとにヒープ上の作業領域へコピーしてGemmで計算します。<br>
+   * 小さな行列積のうち，行単位でアクセスできる記憶域同士のものは，bとcを行方向に走査するi-k-jの順序で計算します。<br>
+   * 小さな行列積のうち，aまたはbが対称行列・三角行列の圧縮形式のものは，詰めた配列を順に走査する経路で計算します。<br>
+   * aが転置ビューの場合(t^x * b)はxとbを行方向に走査するk-i-jの順序で，<br>
+   * bが転置ビューの場合(a * t^y)はaとyの行同士の内積として計算します。<br>
+   * いずれの場合も各成分への加算はkの昇順に(alpha * a(i, k)) * b(k, j)を足し込む順序で行われるため，<br>
+   * 計算結果は経路によらず一致します。alpha = 1の場合はi-j-kの順序の三重ループで計算した結果とも一致します。<br>
+   * この計算は作業領域の再利用により，ヒープへの割り当てを行いません。
+   *
+   * @param alpha a * bに乗算する値
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   * @see Gemm
+   */
+  private static void multiply(double alpha, DoubleStorage a, DoubleStorage b, DoubleStorage c) {
+    if (isDiagonalProduct(a, b)) {
+      multiplyDiagonal(alpha, a, b, c);
+      return;
+    }
+
+    if (c.hasRowArrays() && Gemm.isWorthBlocking(a.rows, b.columns, a.columns)) {
+      Gemm.multiply(alpha, a, b, c, 0, a.rows);
+      return;
+    }
+
+    if (c instanceof BufferStorage && Gemm.isWorthBlocking(a.rows, b.columns, a.columns)) {
+      multiplyByStrips(alpha, a, b, (BufferStorage) c);
+      return;
+    }
+
+    if (PackedStorage.isPacked(a) && b.hasRowArrays() && c.hasRowArrays()) {
+      ((PackedStorage) a).multiplyLeft(alpha, b, c);
+      return;
+    }
+
+    if (a.hasRowArrays() && PackedStorage.isPacked(b) && c.hasRowArrays()) {
+      ((PackedStorage) b).multiplyRight(alpha, a, c);
+      return;
+    }
+
+    if (a.hasRowArrays() && b.hasRowArrays() && c.hasRowArrays()) {
+      for (int i = 0; i < a.rows; i++) {
+        double[] ar = a.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int ao = a.rowOffset(i);
+        int co = c.rowOffset(i);
+        for (int k = 0; k < a.columns; k++) {
+          RowKernels.axpy(alpha * ar[ao + k], b.rowArray(k), b.rowOffset(k), cr, co, b.columns);
+        }
+      }
+      return;
+    }
+
+    if (TransposedStorage.isTransposedRows(a) && b.hasRowArrays() && c.hasRowArrays()) {
+      DoubleStorage x = ((TransposedStorage) a).base;
+      for (int k = 0; k < x.rows; k++) {
+        double[] xr = x.rowArray(k);
+        double[] br = b.rowArray(k);
+        int xo = x.rowOffset(k);
+        int bo = b.rowOffset(k);
+        for (int i = 0; i < x.columns; i++) {
+          RowKernels.axpy(alpha * xr[xo + i], br, bo, c.rowArray(i), c.rowOffset(i), b.columns);
+        }
+      }
+      return;
+    }
+
+    if (a.hasRowArrays() && TransposedStorage.isTransposedRows(b) && c.hasRowArrays()) {
+      DoubleStorage y = ((TransposedStorage) b).base;
+      for (int i = 0; i < a.rows; i++) {
+        double[] ar = a.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int ao = a.rowOffset(i);
+        int co = c.rowOffset(i);
+        for (int j = 0; j < y.rows; j++) {
+          double[] yr = y.rowArray(j);
+          int yo = y.rowOffset(j);
+          double sum = cr[co + j];
+          for (int k = 0; k < a.columns; k++) {
+            sum += (alpha * ar[ao + k]) * yr[yo + k];
+          }
+          cr[co + j] = sum;
+        }
+      }
+      return;
+    }
+
+    for (int i = 0; i < a.rows; i++) {
+      for (int j = 0; j < b.columns; j++) {
+        double sum = c.get(i, j);
+        for (int k = 0; k < a.columns; k++) {
+          sum += (alpha * a.get(i, k)) * b.get(k, j);
+        }
+        c.set(i, j, sum);
+      }
+    }
+  }
+
+  /**
+   * aとbの少なくとも一方が対角成分だけを保持している場合について，c += alpha * a * bを計算します。<br>
+   * 対角行列との積は，相手の行(左から掛ける場合)または列(右から掛ける場合)を対角成分で拡大するだけなので，<br>
+   * 対角行列同士ならO(n)，それ以外ならO(n^2)で計算できます。<br>
+   * 各成分に足し込む値は(alpha * a(i, k)) * b(k, j)で，対角行列の0dの成分との積を省略することを除けばmultiplyと同じです。<br>
+   * 省略した積は全て0dになる必要があるため，isDiagonalProduct(a, b)がtrueの場合に限り使用できます。
+   *
+   * @param alpha a * bに乗算する値
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   */
+  private static void multiplyDiagonal(
+      double alpha, DoubleStorage a, DoubleStorage b, DoubleStorage c) {
+    if (DiagonalStorage.isDiagonal(a) && DiagonalStorage.isDiagonal(b)) {
+      double[] ad = ((DiagonalStorage) a).diagonal();
+      double[] bd = ((DiagonalStorage) b).diagonal();
+      int n = Math.min(ad.length, bd.length);
+      for (int i = 0; i < n; i++) {
+        c.set(i, i, c.get(i, i) + (alpha * ad[i]) * bd[i]);
+      }
+      return;
+    }
+
+    if (DiagonalStorage.isDiagonal(a)) {
+      // 第i行はbの第i行をalpha * a(i, i)倍したもの
+      double[] ad = ((DiagonalStorage) a).diagonal();
+      boolean rowArrays = b.hasRowArrays() && c.hasRowArrays();
+      for (int i = 0; i < ad.length; i++) {
+        double s = alpha * ad[i];
+        if (rowArrays) {
+          RowKernels.axpy(
+              s, b.rowArray(i), b.rowOffset(i), c.rowArray(i), c.rowOffset(i), b.columns);
+        } else {
+          for (int j = 0; j < b.columns; j++) {
+            c.set(i, j, c.get(i, j) + s * b.get(i, j));
+          }
+        }
+      }
+      return;
+    }
+
+    // 第j列はaの第j列をb(j, j)倍したもの
+    double[] bd = ((DiagonalStorage) b).diagonal();
+    boolean rowArrays = a.hasRowArrays() && c.hasRowArrays();
+    for (int i = 0; i < a.rows; i++) {
+      if (rowArrays) {
+        double[] ar = a.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int ao = a.rowOffset(i);
+        int co = c.rowOffset(i);
+        for (int j = 0; j < bd.length; j++) {
+          cr[co + j] += (alpha * ar[ao + j]) * bd[j];
+        }
+      } else {
+        for (int j = 0; j < bd.length; j++) {
+          c.set(i, j, c.get(i, j) + (alpha * a.get(i, j)) * bd[j]);
+        }
+      }
+    }
+  }
+
+  /**
+   * c += alpha * a * bを，cを行方向の帯に分けて計算します。<br>
+   * 各帯についてaとcの対応する行をヒープ上の作業領域にまとめてコピーし，Gemmで計算してからcへ書き戻します。<br>
+   * Gemmは格納先に行単位でアクセスする必要があるため，成分ごとの読み書きでcを更新するよりも大幅に高速です。<br>
+   * 計算結果はGemmで直接計算した場合と一致します。
+   *
+   * @param alpha a * bに乗算する値
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   */
+  private static void multiplyByStrips(
+      double alpha, DoubleStorage a, DoubleStorage b, BufferStorage c) {
+    int height = Math.max(1, Math.min(a.rows, STRIP_ENTRIES / Math.max(a.columns, c.columns)));
+    FlatStorage as = new FlatStorage(height, a.columns);
+    FlatStorage cs = new FlatStorage(height, c.columns);
+    for (int i0 = 0; i0 < a.rows; i0 += height) {
+      int mb = Math.min(height, a.rows - i0);
+      for (int i = 0; i < mb; i++) {
+        if (a instanceof BufferStorage) {
+          ((BufferStorage) a).getRow(i0 + i, as.rowArray(i), as.rowOffset(i));
+        } else {
+          for (int k = 0; k < a.columns; k++) {
+            as.set(i, k, a.get(i0 + i, k));
+          }
+        }
+        c.getRow(i0 + i, cs.rowArray(i), cs.rowOffset(i));
+      }
+      Gemm.multiply(alpha, as, b, cs, 0, mb);
+      for (int i = 0; i < mb; i++) {
+        c.setRow(i0 + i, cs.rowArray(i), cs.rowOffset(i));
+      }
+    }
+  }
+
+  /**
+   * aの第i0行から第(i1 - 1)行までについて，y = a * xを計算します。<br>
+   * 各成分はkの昇順に足し込むため，計算結果はxを列ベクトルとした行列積の結果と一致します。
+   *
+   * @param a 行列
+   * @param x aに乗算するベクトル
+   * @param y 結果の格納先
+   * @param i0 計算する最初の行
+   * @param i1 計算する最後の行の次の行
+   */
+  private static void multiplyVector(DoubleStorage a, double[] x, double[] y, int i0, int i1) {
+    if (PackedStorage.isPacked(a) && i0 == 0 && i1 == a.rows) {
+      ((PackedStorage) a).multiplyVector(x, y);
+      return;
+    }
+
+    if (DiagonalStorage.isDiagonal(a) && isFinite(x)) {
+      double[] ad = ((DiagonalStorage) a).diagonal();
+      for (int i = i0; i < i1; i++) {
+        y[i] = (i < ad.length ? 0 + ad[i] * x[i] : 0);
+      }
+      return;
+    }
+
+    if (a.hasRowArrays()) {
+      for (int i = i0; i < i1; i++) {
+        double[] ar = a.rowArray(i);
+        int ao = a.rowOffset(i);
+        double sum = 0;
+        for (int k = 0; k < a.columns; k++) {
+          sum += ar[ao + k] * x[k];
+        }
+        y[i] = sum;
+      }
+      return;
+    }
+
+    for (int i = i0; i < i1; i++) {
+      double sum = 0;
+      for (int k = 0; k < a.columns; k++) {
+        sum += a.get(i, k) * x[k];
+      }
+      y[i] = sum;
+    }
+  }
+
+  /**
+   * aを転置した結果をcに格納します。cの型はaの型を転置したものでなければなりません。<br>
+   * 行単位でアクセスできる記憶域同士では，TRANSPOSE_TILE四方のタイルごとに転置します。<br>
+   * 単純に行ごとに転置すると，cへの書き込みが1成分ごとに異なる行(キャッシュライン)に分散しますが，<br>
+   * タイル内のcの行はキャッシュに留まるため，書き込んだキャッシュラインが追い出される前に再利用されます。
+   *
+   * @param a 行列
+   * @param c 結果の格納先
+   */
+  private static void transpose(DoubleStorage a, DoubleStorage c) {
+    if (a.hasRowArrays() && c.hasRowArrays()) {
+      for (int i0 = 0; i0 < a.rows; i0 += TRANSPOSE_TILE) {
+        int i1 = Math.min(i0 + TRANSPOSE_TILE, a.rows);
+        for (int j0 = 0; j0 < a.columns; j0 += TRANSPOSE_TILE) {
+          int j1 = Math.min(j0 + TRANSPOSE_TILE, a.columns);
+          for (int i = i0; i < i1; i++) {
+            double[] ar = a.rowArray(i);
+            int ao = a.rowOffset(i);
+            for (int j = j0; j < j1; j++) {
+              c.rowArray(j)[c.rowOffset(j) + i] = ar[ao + j];
+            }
+          }
+        }
+      }
+      return;
+    }
+
+    for (int i = 0; i < a.rows; i++) {
+      for (int j = 0; j < a.columns; j++) {
+        c.set(j, i, a.get(i, j));
+      }
+    }
+  }
+
+  /**
+   * 正方行列aの第t0帯から第(t1 - 1)帯まで(第t帯はt * TRANSPOSE_TILE行目からのTRANSPOSE_TILE行)について，<br>
+   * 対角線より上のタイルとそれに向かい合う下のタイルの成分が，許容誤差epsの範囲で等しいか判定します。<br>
+   * 対称でない成分の組が見つかるとasymmetricをtrueにします。asymmetricが既にtrueであれば，判定を打ち切ります。
+   *
+   * @param a 正方行列
+   * @param eps 許容誤差
+   * @param t0 判定する最初の帯
+   * @param t1 判定する最後の帯の次の帯
+   * @param asymmetric 対称でない成分の組が見つかったかどうか(並列に判定する範囲の間で共有します)
+   * @return 判定した範囲が対称ならtrue
+   */
+  private static boolean isSymmetric(
+      DoubleStorage a, double eps, int t0, int t1, AtomicBoolean asymmetric) {
+    int n = a.rows;
+    for (int t = t0; t < t1; t++) {
+      int i0 = t * TRANSPOSE_TILE;
+      int i1 = Math.min(i0 + TRANSPOSE_TILE, n);
+      for (int j0 = i0; j0 < n; j0 += TRANSPOSE_TILE) {
+        if (asymmetric.get()) {
+          return false;
+        }
+        int j1 = Math.min(j0 + TRANSPOSE_TILE, n);
+        if (!isSymmetricTile(a, eps, i0, i1, j0, j1)) {
+          asymmetric.set(true);
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 正方行列aの第i0行から第(i1 - 1)行，第j0列から第(j1 - 1)列のタイルのうち対角線より上の成分(i &lt; j)が，<br>
+   * それぞれ(j, i)成分と許容誤差epsの範囲で等しいか判定します。<br>
+   * 行単位でアクセスできる記憶域では，タイルの行を連続して読みながら，向かい合うタイルの列を読みます。<br>
+   * 向かい合うタイルの行(TRANSPOSE_TILE行)はタイルを処理する間キャッシュに留まります。
+   *
+   * @param a 正方行列
+   * @param eps 許容誤差
+   * @param i0 タイルの最初の行
+   * @param i1 タイルの最後の行の次の行
+   * @param j0 タイルの最初の列
+   * @param j1 タイルの最後の列の次の列
+   * @return タイルの成分が対称ならtrue
+   */
+  private static boolean isSymmetricTile(
+      DoubleStorage a, double eps, int i0, int i1, int j0, int j1) {
+    if (a.hasRowArrays()) {
+      for (int i = i0; i < i1; i++) {
+        double[] ar = a.rowArray(i);
+        int ao = a.rowOffset(i);
+        for (int j = Math.max(j0, i + 1); j < j1; j++) {
+          double x = ar[ao + j];
+          double y = a.rowArray(j)[a.rowOffset(j) + i];
+          if (x != y && !(Math.abs(x - y) <= eps)) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    for (int i = i0; i < i1; i++) {
+      for (int j = Math.max(j0, i + 1); j < j1; j++) {
+        double x = a.get(i, j);
+        double y = a.get(j, i);
+        if (x != y && !(Math.abs(x - y) <= eps)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 正方行列aをその場で転置します。<br>
+   * 行単位でアクセスできる記憶域では，対角線より上のタイルとそれに向かい合う下のタイルをTRANSPOSE_TILE四方ずつ交換します。
+   *
+   * @param a 正方行列
+   */
+  private static void transposeInPlace(DoubleStorage a) {
+    if (DiagonalStorage.isDiagonal(a)) {
+      // 対角行列は転置しても変わらない
+      return;
+    }
+    if (PackedStorage.isPacked(a)) {
+      ((PackedStorage) a).transposeInPlace();
+      return;
+    }
+
+    int n = a.rows;
+    if (a.hasRowArrays()) {
+      for (int i0 = 0; i0 < n; i0 += TRANSPOSE_TILE) {
+        int i1 = Math.min(i0 + TRANSPOSE_TILE, n);
+        for (int j0 = i0; j0 < n; j0 += TRANSPOSE_TILE) {
+          int j1 = Math.min(j0 + TRANSPOSE_TILE, n);
+          for (int i = i0; i < i1; i++) {
+            double[] ar = a.rowArray(i);
+            int ao = a.rowOffset(i);
+            for (int j = Math.max(j0, i + 1); j < j1; j++) {
+              double[] br = a.rowArray(j);
+              int bo = a.rowOffset(j) + i;
+              double tmp = ar[ao + j];
+              ar[ao + j] = br[bo];
+              br[bo] = tmp;
+            }
+          }
+        }
+      }
+      return;
+    }
+
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        double tmp = a.get(i, j);
+        a.set(i, j, a.get(j, i));
+        a.set(j, i, tmp);
+      }
+    }
   }
 }
@@ -0,0 +1,505 @@
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Usage: java [--add-modules jdk.incubator.vector] DoubleMatrixBenchmark [filter]
+//   -Dbench.warmup=ミリ秒 (既定値 500), -Dbench.time=ミリ秒 (既定値 1000)
+//   -Dbench.sizes=カンマ区切りの次数 (既定値 8,64,512,4096)
+// 各ベンチマークの1回あたりの実行時間からops/sを，スレッドの割り当てバイト数からB/opを求めます。
+// B/opはJMHのGCプロファイラ(-prof gc)が報告するgc.alloc.rate.normと同じ量です。
+public class DoubleMatrixBenchmark {
+
+  @FunctionalInterface
+  interface Benchmark {
+    Object run() throws Exception;
+  }
+
+  /** 行列の形状です。次数nから演算対象の行列とその右から掛ける行列の型を決めます。 */
+  enum Shape {
+    /** n * nの正方行列にn * nの行列を掛けます。 */
+    SQUARE {
+      @Override
+      int[] dimensions(int n) {
+        return (new int[] {n, n, n});
+      }
+    },
+
+    /** n * 8の縦長の行列に8 * 8の行列を掛けます。 */
+    TALL_SKINNY {
+      @Override
+      int[] dimensions(int n) {
+        int k = Math.min(n, 8);
+        return (new int[] {n, k, k});
+      }
+    },
+
+    /** 1 * nの行ベクトルにn * 1の列ベクトルを掛けます(内積)。 */
+    VECTOR {
+      @Override
+      int[] dimensions(int n) {
+        return (new int[] {1, n, 1});
+      }
+    };
+
+    /**
+     * 演算対象の行列の行数と列数，右から掛ける行列の列数を返します。
+     *
+     * @param n 次数
+     * @return {行数, 列数, 右から掛ける行列の列数}
+     */
+    abstract int[] dimensions(int n);
+  }
+
+  /** ウォームアップに費やす時間(ミリ秒)です。 */
+  private static final long WARMUP_MILLIS = Long.getLong("bench.warmup", 500);
+
+  /** 計測に費やす時間(ミリ秒)です。 */
+  private static final long MEASURE_MILLIS = Long.getLong("bench.time", 1000);
+
+  /** スレッドごとの割り当てバイト数を取得するためのMXBeanです。 */
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /** ベンチマークの戻り値を捨てずに保持し，JITによる計算の除去を防ぎます。 */
+  private static volatile Object sink;
+
+  /** ベンチマークに使用する行列の次数です。 */
+  private static final int[] SIZES =
+      Arrays.stream(System.getProperty("bench.sizes", "8,64,512,4096").split(","))
+          .mapToInt(Integer::parseInt)
+          .toArray();
+
+  /** 実行するベンチマークの名前に含まれる文字列です。 */
+  private static String filter = "";
+
+  private static double[] randomArray(Random random, int n) {
+    return random.doubles(n).toArray();
+  }
+
+  private static double[][] randomMatrix(Random random, int rows, int columns) {
+    double[][] result = new double[rows][];
+    for (int i = 0; i < rows; i++) {
+      result[i] = randomArray(random, columns);
+    }
+    return result;
+  }
+
+  private static void measure(String name, Benchmark benchmark) throws Exception {
+    if (!name.contains(filter)) {
+      return;
+    }
+
+    long deadline = System.nanoTime() + WARMUP_MILLIS * 1_000_000;
+    while (System.nanoTime() < deadline) {
+      sink = benchmark.run();
+    }
+
+    long thread = Thread.currentThread().getId();
+    long ops = 0;
+    long bytes = THREADS.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    deadline = start + MEASURE_MILLIS * 1_000_000;
+    long now;
+    do {
+      sink = benchmark.run();
+      ops++;
+    } while ((now = System.nanoTime()) < deadline);
+    bytes = THREADS.getThreadAllocatedBytes(thread) - bytes;
+
+    System.out.printf(
+        "%-48s %14.1f ops/s %14.1f B/op%n", name, ops * 1e9 / (now - start), (double) bytes / ops);
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0) {
+      filter = args[0];
+    }
+
+    Random random = new Random(1);
+    System.out.printf("RowKernels.VECTORIZED = %b%n", RowKernels.VECTORIZED);
+
+    // 行単位の演算カーネルのスカラー版とベクトル版の比較
+    for (int n : new int[] {7, 64, 1000, 100_000}) {
+      double[] a = randomArray(random, n);
+      double[] b = randomArray(random, n);
+      double[] c = new double[n];
+
+      measure(
+          "kernel.plus.scalar n=" + n,
+          () -> {
+            RowKernels.scalarPlus(a, 0, b, 0, c, 0, n);
+            return c;
+          });
+      measure(
+          "kernel.plus.dispatch n=" + n,
+          () -> {
+            RowKernels.plus(a, 0, b, 0, c, 0, n);
+            return c;
+          });
+      measure(
+          "kernel.minus.scalar n=" + n,
+          () -> {
+            RowKernels.scalarMinus(a, 0, b, 0, c, 0, n);
+            return c;
+          });
+      measure(
+          "kernel.minus.dispatch n=" + n,
+          () -> {
+            RowKernels.minus(a, 0, b, 0, c, 0, n);
+            return c;
+          });
+      measure(
+          "kernel.scale.scalar n=" + n,
+          () -> {
+            RowKernels.scalarScale(1.0001, a, 0, c, 0, n);
+            return c;
+          });
+      measure(
+          "kernel.scale.dispatch n=" + n,
+          () -> {
+            RowKernels.scale(1.0001, a, 0, c, 0, n);
+            return c;
+          });
+      measure(
+          "kernel.axpy.scalar n=" + n,
+          () -> {
+            RowKernels.scalarAxpy(1e-9, a, 0, c, 0, n);
+            return c;
+          });
+      measure(
+          "kernel.axpy.dispatch n=" + n,
+          () -> {
+            RowKernels.axpy(1e-9, a, 0, c, 0, n);
+            return c;
+          });
+    }
+
+    // DoubleMatrixの公開されている演算(VECTORIZEDの値に応じた経路)
+    Path file = Files.createTempFile("bench", ".dat");
+    try {
+      for (int n : SIZES) {
+        for (Shape shape : Shape.values()) {
+          for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+            matrixBenchmarks(random, n, shape, layout, file.toString());
+          }
+        }
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+
+    // 成分の1%が0でない疎行列の演算と，同じ行列を密な行列として計算した場合の比較
+    for (int n : SIZES) {
+      sparseBenchmarks(random, n);
+    }
+
+    // 対角行列・単位行列の構造化表現と，同じ行列を密な行列として計算した場合の比較
+    for (int n : SIZES) {
+      diagonalBenchmarks(random, n);
+    }
+
+    // 対称行列の圧縮形式と，同じ行列を密な行列として計算した場合の比較
+    for (int n : SIZES) {
+      packedBenchmarks(random, n);
+    }
+
+    // LU分解による連立一次方程式の求解と，get/setによるガウスの消去法の比較
+    for (int n : SIZES) {
+      for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+        luBenchmarks(random, n, layout);
+      }
+    }
+
+    // 対称正定値行列のコレスキー分解による求解と，LU分解による求解の比較
+    for (int n : SIZES) {
+      choleskyBenchmarks(random, n);
+    }
+
+    // QR分解による最小二乗解と，正規方程式による最小二乗解の比較
+    for (int n : SIZES) {
+      leastSquaresBenchmarks(random, n);
+    }
+
+    // 対称行列の固有値分解(固有値だけ，全ての固有対，大きい方から10個の固有対の比較)
+    for (int n : SIZES) {
+      eigenBenchmarks(random, n);
+    }
+
+    // 特異値分解(全ての特異対と，乱択アルゴリズムによる大きい方から10個の特異対の比較)
+    for (int n : SIZES) {
+      svdBenchmarks(random, n);
+    }
+  }
+
+  private static void svdBenchmarks(Random random, int n) throws Exception {
+    // 次元削減の対象のような縦長の行列(4n * n)
+    DoubleMatrix a = DoubleMatrix.from(randomMatrix(random, 4 * n, n));
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    int k = Math.min(n, 10);
+    String suffix = " " + (4 * n) + "x" + n;
+
+    measure("svd()" + suffix, () -> a.svd());
+    measure("randomizedSvd(" + k + ", 2)" + suffix, () -> a.randomizedSvd(k, 2, new Random(1)));
+    measure(
+        "randomizedSvd(" + k + ", 2, pool)" + suffix,
+        () -> a.randomizedSvd(k, 2, new Random(1), pool));
+  }
+
+  private static void eigenBenchmarks(Random random, int n) throws Exception {
+    DoubleMatrix m = DoubleMatrix.from(randomMatrix(random, n, n));
+    DoubleMatrix a = DoubleMatrix.createSymmetricMatrix(m, DoubleMatrix.Triangle.LOWER);
+    DoubleMatrix d = DoubleMatrix.copyOf(a, DoubleMatrix.Layout.JAGGED);
+    int k = Math.min(n, 10);
+    String suffix = " n=" + n;
+
+    measure("symmetric.eigenvalues()" + suffix, () -> d.eigenvalues());
+    measure("symmetric.eigen()" + suffix, () -> d.eigen());
+    measure("symmetric.eigen(" + k + ")" + suffix, () -> d.eigen(k));
+  }
+
+  private static void leastSquaresBenchmarks(Random random, int n) throws Exception {
+    // 回帰分析の計画行列のような縦長の行列(64n * 16)と，列数が行数の半分の行列(n * n/2)
+    for (int[] shape : new int[][] {{64 * n, 16}, {n, Math.max(1, n / 2)}}) {
+      DoubleMatrix a = DoubleMatrix.from(randomMatrix(random, shape[0], shape[1]));
+      DoubleMatrix b = DoubleMatrix.from(randomMatrix(random, shape[0], 1));
+      ForkJoinPool pool = ForkJoinPool.commonPool();
+      String suffix = " " + shape[0] + "x" + shape[1];
+
+      measure(
+          "normalEquations(trs)" + suffix,
+          () -> a.trs().times(a).solvePositiveDefinite(a.trs().times(b)));
+      measure(
+          "normalEquations(trsView)" + suffix,
+          () -> a.trsView().times(a).solvePositiveDefinite(a.trsView().times(b)));
+      measure("leastSquares(column)" + suffix, () -> a.leastSquares(b));
+      measure("leastSquares(column, pool)" + suffix, () -> a.leastSquares(b, pool));
+      measure("qr()" + suffix, () -> a.qr());
+    }
+  }
+
+  private static void choleskyBenchmarks(Random random, int n) throws Exception {
+    DoubleMatrix m = DoubleMatrix.from(randomMatrix(random, n, n));
+    DoubleMatrix a = m.times(m.trsView()).plus(DoubleMatrix.createIdentityMatrix(n).times(n));
+    DoubleMatrix b = DoubleMatrix.from(randomMatrix(random, n, 1));
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    String suffix = " n=" + n;
+
+    measure("spd.solve(column)" + suffix, () -> a.solve(b));
+    measure("spd.solvePositiveDefinite(column)" + suffix, () -> a.solvePositiveDefinite(b));
+    measure(
+        "spd.solvePositiveDefinite(column, pool)" + suffix,
+        () -> a.solvePositiveDefinite(b, pool));
+    measure("spd.cholesky()" + suffix, () -> a.cholesky());
+    measure("spd.cholesky(pool)" + suffix, () -> a.cholesky(pool));
+  }
+
+  private static void luBenchmarks(Random random, int n, DoubleMatrix.Layout layout)
+      throws Exception {
+    DoubleMatrix a = DoubleMatrix.from(randomMatrix(random, n, n), layout);
+    DoubleMatrix b = DoubleMatrix.from(randomMatrix(random, n, 1), layout);
+    DoubleMatrix c = DoubleMatrix.from(randomMatrix(random, n, n), layout);
+    String suffix = " n=" + n + " " + layout;
+
+    measure("gaussianElimination(get/set)" + suffix, () -> gaussianElimination(a, b));
+    measure("solve(column)" + suffix, () -> a.solve(b));
+    measure("solve(DoubleMatrix)" + suffix, () -> a.solve(c));
+    measure("determinant" + suffix, () -> a.determinant());
+    measure("inverse" + suffix, () -> a.inverse());
+    a.close();
+    b.close();
+    c.close();
+  }
+
+  /** solve(DoubleMatrix)の比較対象として，get/setだけを使った部分ピボット選択付きのガウスの消去法でa * x = bを解きます。 */
+  private static DoubleMatrix gaussianElimination(DoubleMatrix a, DoubleMatrix b) {
+    DoubleMatrix u = DoubleMatrix.copyOf(a);
+    DoubleMatrix x = DoubleMatrix.copyOf(b);
+    int n = u.rows();
+    for (int j = 0; j < n; j++) {
+      int p = j;
+      for (int i = j + 1; i < n; i++) {
+        if (Math.abs(u.get(i, j)) > Math.abs(u.get(p, j))) {
+          p = i;
+        }
+      }
+      u.swapRows(p, j);
+      x.swapRows(p, j);
+      for (int i = j + 1; i < n; i++) {
+        double l = u.get(i, j) / u.get(j, j);
+        for (int k = j + 1; k < n; k++) {
+          u.set(i, k, u.get(i, k) - l * u.get(j, k));
+        }
+        for (int k = 0; k < x.columns(); k++) {
+          x.set(i, k, x.get(i, k) - l * x.get(j, k));
+        }
+      }
+    }
+    for (int i = n - 1; i >= 0; i--) {
+      for (int k = 0; k < x.columns(); k++) {
+        double sum = x.get(i, k);
+        for (int p = i + 1; p < n; p++) {
+          sum -= u.get(i, p) * x.get(p, k);
+        }
+        x.set(i, k, sum / u.get(i, i));
+      }
+    }
+    return x;
+  }
+
+  private static void packedBenchmarks(Random random, int n) throws Exception {
+    DoubleMatrix a = DoubleMatrix.from(randomMatrix(random, n, n));
+    DoubleMatrix p = DoubleMatrix.createSymmetricMatrix(a, DoubleMatrix.Triangle.LOWER);
+    DoubleMatrix d = DoubleMatrix.copyOf(p, DoubleMatrix.Layout.JAGGED);
+    DoubleMatrix b = DoubleMatrix.from(randomMatrix(random, n, n));
+    DoubleMatrix dest = DoubleMatrix.createZeroMatrix(n, n);
+    DoubleMatrix packedDest = DoubleMatrix.createSymmetricMatrix(n);
+    double[] x = randomArray(random, n);
+    double[] y = new double[n];
+    String suffix = " n=" + n;
+
+    measure("dense.isSymmetric()" + suffix, () -> d.isSymmetric());
+    measure("packed.isSymmetric()" + suffix, () -> p.isSymmetric());
+    measure("dense.times(DoubleMatrix)" + suffix, () -> d.times(b));
+    measure("packed.times(DoubleMatrix)" + suffix, () -> p.times(b));
+    measure("DoubleMatrix.times(dense)" + suffix, () -> b.times(d));
+    measure("DoubleMatrix.times(packed)" + suffix, () -> b.times(p));
+    measure("dense.timesVector" + suffix, () -> d.timesVector(x, y));
+    measure("packed.timesVector" + suffix, () -> p.timesVector(x, y));
+    measure(
+        "multiplyInto(a, t^a)" + suffix,
+        () -> DoubleMatrix.multiplyInto(1, a, a.trsView(), 0, dest));
+    measure("rankUpdate(a, dense)" + suffix, () -> DoubleMatrix.rankUpdate(1, a, 0, dest));
+    measure("rankUpdate(a, packed)" + suffix, () -> DoubleMatrix.rankUpdate(1, a, 0, packedDest));
+  }
+
+  private static void diagonalBenchmarks(Random random, int n) throws Exception {
+    DoubleMatrix d = DoubleMatrix.createDiagonalMatrix(randomArray(random, n));
+    DoubleMatrix dd = DoubleMatrix.copyOf(d, DoubleMatrix.Layout.JAGGED);
+    DoubleMatrix b = DoubleMatrix.from(randomMatrix(random, n, n));
+    String suffix = " n=" + n;
+
+    measure("createIdentityMatrix" + suffix, () -> DoubleMatrix.createIdentityMatrix(n));
+    measure("dense.times(DoubleMatrix)" + suffix, () -> dd.times(b));
+    measure("diagonal.times(DoubleMatrix)" + suffix, () -> d.times(b));
+    measure("DoubleMatrix.times(diagonal)" + suffix, () -> b.times(d));
+    measure("diagonal.times(diagonal)" + suffix, () -> d.times(d));
+    measure("dense.plus(DoubleMatrix)" + suffix, () -> dd.plus(b));
+    measure("diagonal.plus(DoubleMatrix)" + suffix, () -> d.plus(b));
+    measure("diagonal.plus(diagonal)" + suffix, () -> d.plus(d));
+    measure("dense.trs()" + suffix, () -> dd.trs());
+    measure("diagonal.trs()" + suffix, () -> d.trs());
+  }
+
+  private static void sparseBenchmarks(Random random, int n) throws Exception {
+    SparseDoubleMatrix.Builder builder = SparseDoubleMatrix.builder(n, n);
+    for (int k = 0; k < Math.max(1, n * n / 100); k++) {
+      builder.add(random.nextInt(n), random.nextInt(n), random.nextDouble());
+    }
+    SparseDoubleMatrix s = builder.build();
+    DoubleMatrix d = s.toDense();
+    DoubleMatrix b = DoubleMatrix.from(randomMatrix(random, n, n));
+    String suffix = String.format(" n=%d density=0.01", n);
+
+    measure("dense.times(DoubleMatrix)" + suffix, () -> d.times(b));
+    measure("sparse.times(DoubleMatrix)" + suffix, () -> s.times(b));
+    measure("DoubleMatrix.times(dense)" + suffix, () -> b.times(d));
+    measure("DoubleMatrix.times(sparse)" + suffix, () -> b.times(s));
+    measure("sparse.times(sparse)" + suffix, () -> s.times(s));
+    measure("SparseDoubleMatrix.from" + suffix, () -> SparseDoubleMatrix.from(d));
+
+    double[] x = randomArray(random, n);
+    double[] y = new double[n];
+    DoubleMatrix column = DoubleMatrix.createColumnVector(x);
+    measure("sparse.timesVector" + suffix, () -> s.timesVector(x, y));
+    measure(
+        "sparse.timesVector(pool)" + suffix,
+        () -> s.timesVector(x, y, ForkJoinPool.commonPool()));
+    measure("DoubleMatrix.timesVector n=" + n, () -> b.timesVector(x, y));
+    measure(
+        "DoubleMatrix.timesVector(pool) n=" + n,
+        () -> b.timesVector(x, y, ForkJoinPool.commonPool()));
+    measure("DoubleMatrix.times(createColumnVector) n=" + n, () -> b.times(column));
+  }
+
+  private static void matrixBenchmarks(
+      Random random, int n, Shape shape, DoubleMatrix.Layout layout, String file)
+      throws Exception {
+    int[] dim = shape.dimensions(n);
+    double[][] val = randomMatrix(random, dim[0], dim[1]);
+    if (dim[0] == dim[1]) {
+      // isSymmetric()が途中で打ち切られず，全ての成分を比較するように対称にしておく
+      for (int i = 0; i < dim[0]; i++) {
+        for (int j = 0; j < i; j++) {
+          val[i][j] = val[j][i];
+        }
+      }
+    }
+
+    DoubleMatrix a = DoubleMatrix.from(val, layout);
+    DoubleMatrix b = DoubleMatrix.from(randomMatrix(random, dim[0], dim[1]), layout);
+    DoubleMatrix c = DoubleMatrix.copyOf(a);
+    DoubleMatrix d = DoubleMatrix.copyOf(a);
+    DoubleMatrix r = DoubleMatrix.from(randomMatrix(random, dim[1], dim[2]), layout);
+    String suffix = String.format(" %s n=%d %s", shape, n, layout);
+
+    measure("times(DoubleMatrix)" + suffix, () -> a.times(r));
+    DoubleMatrix ar = DoubleMatrix.createZeroMatrix(dim[0], dim[2], layout);
+    measure("multiplyInto" + suffix, () -> DoubleMatrix.multiplyInto(a, r, ar));
+    measure("times(double)" + suffix, () -> a.times(2));
+    measure("mul" + suffix, () -> a.mul(1));
+    measure("plus" + suffix, () -> a.plus(b));
+    measure("add+sub" + suffix, () -> d.add(b).sub(b));
+    measure("minus" + suffix, () -> a.minus(b));
+    measure("trs" + suffix, () -> a.trs());
+    if (dim[0] == dim[1]) {
+      measure("transposeInPlace" + suffix, () -> d.transposeInPlace());
+    }
+    measure("trsView().times" + suffix, () -> a.trsView().times(b));
+    measure("times(trsView())" + suffix, () -> a.times(b.trsView()));
+    measure("isEqual" + suffix, () -> a.isEqual(c));
+    measure("isSymmetric" + suffix, () -> a.isSymmetric());
+    measure("isSymmetric(1e-9)" + suffix, () -> a.isSymmetric(1e-9));
+    measure(
+        "isSymmetric(1e-9, pool)" + suffix,
+        () -> a.isSymmetric(1e-9, ForkJoinPool.commonPool()));
+    measure("combineHorizontally" + suffix, () -> DoubleMatrix.combineHorizontally(a, b));
+    measure("combineVertically" + suffix, () -> DoubleMatrix.combineVertically(a, b));
+    measure("toString" + suffix, () -> a.toString());
+    measure(
+        "toString(Appendable)" + suffix,
+        () -> {
+          a.toString(Writer.nullWriter(), " ");
+          return a;
+        });
+    measure(
+        "toString(Appendable, 6)" + suffix,
+        () -> {
+          a.toString(Writer.nullWriter(), " ", 6);
+          return a;
+        });
+    measure(
+        "writeToFile" + suffix,
+        () -> {
+          DoubleMatrix.writeToFile(a, file, ",");
+          return file;
+        });
+    DoubleMatrix.writeToFile(a, file, ",");
+    measure("readFromFile" + suffix, () -> DoubleMatrix.readFromFile(file, ","));
+    measure(
+        "readFromFile(pool)" + suffix,
+        () -> DoubleMatrix.readFromFile(file, ",", ForkJoinPool.commonPool()));
+    measure(
+        "writeBinary" + suffix,
+        () -> {
+          DoubleMatrix.writeBinary(a, file);
+          return file;
+        });
+    DoubleMatrix.writeBinary(a, file);
+    measure("readBinary" + suffix, () -> DoubleMatrix.readBinary(file));
+    measure("openMapped" + suffix, () -> DoubleMatrix.openMapped(file));
+  }
+}
@@ -1,7 +1,20 @@
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 // Usage: java -ea DoubleMatrixTest
 public class DoubleMatrixTest {
@@ -506,6 +519,45 @@ public class DoubleMatrixTest {
       assert a.isEqual(b);
     } // end of block
 
+    { // 対角行列との積が，NaNや無限大を含む行列でも通常の行列積と一致することの確認
+      double nan = Double.NaN;
+      double inf = Double.POSITIVE_INFINITY;
+      DoubleMatrix a = DoubleMatrix.createIdentityMatrix(3);
+      DoubleMatrix b = DoubleMatrix.from(new double[][] {{1, nan, 2}, {3, 4, inf}, {5, 6, 7}});
+      DoubleMatrix d = DoubleMatrix.createDiagonalMatrix(2, nan, 1);
+      ForkJoinPool pool = new ForkJoinPool(2);
+      DoubleMatrix[][] operands = {{a, b}, {b, a}, {a, d}, {d, a}, {d, b}, {a, a}};
+      for (DoubleMatrix[] operand : operands) {
+        DoubleMatrix x = operand[0];
+        DoubleMatrix y = operand[1];
+        DoubleMatrix expected =
+            DoubleMatrix.copyOf(x, DoubleMatrix.Layout.FLAT)
+                .times(DoubleMatrix.copyOf(y, DoubleMatrix.Layout.FLAT));
+        DoubleMatrix c = x.times(y);
+        DoubleMatrix e = x.times(y, pool);
+        for (int i = 0; i < 3; i++) {
+          for (int j = 0; j < 3; j++) {
+            long bits = Double.doubleToLongBits(expected.get(i, j));
+            assert Double.doubleToLongBits(c.get(i, j)) == bits;
+            assert Double.doubleToLongBits(e.get(i, j)) == bits;
+          }
+        }
+      }
+      pool.shutdown();
+
+      // 0d * NaN，0d * 無限大はNaNになること
+      DoubleMatrix c = a.times(b);
+      assert Double.isNaN(c.get(2, 1)) && Double.isNaN(c.get(0, 2)) && c.get(1, 2) == inf;
+      assert c.get(2, 0) == 5;
+      assert Double.isNaN(d.times(a).get(1, 0));
+      assert a.times(a).isEqual(a);
+
+      double[] y = a.timesVector(new double[] {1, nan, 2}, new double[3]);
+      assert Double.isNaN(y[0]) && Double.isNaN(y[1]) && Double.isNaN(y[2]);
+      y = a.timesVector(new double[] {1, 3, 2}, new double[3]);
+      assert y[0] == 1 && y[1] == 3 && y[2] == 2;
+    } // end of block
+
     { // 行列の転置の動作確認
       DoubleMatrix a =
           DoubleMatrix.from(
@@ -902,6 +954,1832 @@ public class DoubleMatrixTest {
       assert !a.isEqual(b);
     } // end of block
 
+    { // FLAT形式の記憶域での動作確認
+      double[][] val = {
+        {1, 2, 3},
+        {4, 5, 6},
+      };
+
+      DoubleMatrix a = DoubleMatrix.from(val);
+      DoubleMatrix b = DoubleMatrix.from(val, DoubleMatrix.Layout.FLAT);
+      DoubleMatrix c = DoubleMatrix.createZeroMatrix(2, 3, DoubleMatrix.Layout.FLAT);
+      DoubleMatrix d =
+          DoubleMatrix.from(
+              new double[][] {
+                {1, 0},
+                {0, 1},
+                {1, 1},
+              },
+              DoubleMatrix.Layout.FLAT);
+
+      assert a.layout() == DoubleMatrix.Layout.JAGGED;
+      assert b.layout() == DoubleMatrix.Layout.FLAT;
+      assert b.rows() == 2 && b.columns() == 3 && b.size() == 6;
+
+      // 元の配列の変更の影響を受けないこと
+      val[0][0] = 42;
+      assert b.get(0, 0) == 1;
+      val[0][0] = 1;
+
+      // JAGGED形式との比較と演算結果の形式
+      assert a.isEqual(b);
+      assert b.isEqual(a);
+      assert b.plus(a).isEqual(a.times(2));
+      assert b.plus(a).layout() == DoubleMatrix.Layout.FLAT;
+      assert b.minus(a).isEqual(c);
+      assert b.times(d).isEqual(a.times(d));
+      assert b.times(d).layout() == DoubleMatrix.Layout.FLAT;
+      assert b.trs().isEqual(a.trs());
+      assert b.trs().trs().isEqual(b);
+      assert b.toString(",").equals(a.toString(","));
+      assert DoubleMatrix.combineHorizontally(b, a).isEqual(DoubleMatrix.combineHorizontally(a, a));
+      assert DoubleMatrix.combineVertically(b, a).isEqual(DoubleMatrix.combineVertically(a, a));
+      assert DoubleMatrix.copyOf(b).layout() == DoubleMatrix.Layout.FLAT;
+      assert DoubleMatrix.copyOf(b, DoubleMatrix.Layout.JAGGED).isEqual(b);
+
+      // 範囲外の添え字は隣の行に回り込まずに例外となること
+      Test.assertThrows(ArrayIndexOutOfBoundsException.class, "b.get(0, 3)", () -> b.get(0, 3));
+      Test.assertThrows(ArrayIndexOutOfBoundsException.class, "b.get(-1, 0)", () -> b.get(-1, 0));
+      Test.assertThrows(
+          ArrayIndexOutOfBoundsException.class, "b.swapRows(-1, -1)", () -> b.swapRows(-1, -1));
+      Test.assertThrows(
+          ArrayIndexOutOfBoundsException.class, "b.swapRows(0, 2)", () -> b.swapRows(0, 2));
+
+      // 自分自身に対する演算と行・列の交換
+      assert b.swapRows(0, 1) == b;
+      assert b.isEqual(DoubleMatrix.from(new double[][] {{4, 5, 6}, {1, 2, 3}}));
+      assert b.swapColumns(0, 2) == b;
+      assert b.isEqual(DoubleMatrix.from(new double[][] {{6, 5, 4}, {3, 2, 1}}));
+      b.sub(b);
+      assert b.isEqual(c);
+      c.add(a).mul(3);
+      assert c.isEqual(a.times(3));
+    } // end of block
+
+    { // ブロッキングされる大きさの行列同士の掛け算の動作確認
+      Random random = new Random(1);
+      ForkJoinPool pool = new ForkJoinPool(3);
+      int[][] shapes = {
+        {37, 53, 29}, {70, 300, 45}, {129, 260, 67}, {4, 1030, 4}, {301, 150, 97},
+      };
+
+      for (int[] shape : shapes) {
+        double[][] x = new double[shape[0]][shape[1]];
+        double[][] y = new double[shape[1]][shape[2]];
+        for (double[] row : x) {
+          for (int j = 0; j < row.length; j++) {
+            row[j] = random.nextDouble() - 0.5;
+          }
+        }
+        for (double[] row : y) {
+          for (int j = 0; j < row.length; j++) {
+            row[j] = random.nextDouble() - 0.5;
+          }
+        }
+
+        // 単純な三重ループで計算した結果と一致すること
+        double[][] z = new double[shape[0]][shape[2]];
+        for (int i = 0; i < shape[0]; i++) {
+          for (int j = 0; j < shape[2]; j++) {
+            for (int k = 0; k < shape[1]; k++) {
+              z[i][j] += x[i][k] * y[k][j];
+            }
+          }
+        }
+
+        DoubleMatrix a = DoubleMatrix.from(x);
+        DoubleMatrix b = DoubleMatrix.from(y);
+        DoubleMatrix c = DoubleMatrix.from(z);
+
+        assert a.times(b).isEqual(c);
+        assert DoubleMatrix.from(x, DoubleMatrix.Layout.FLAT)
+            .times(DoubleMatrix.from(y, DoubleMatrix.Layout.FLAT))
+            .isEqual(c);
+
+        // 並列に計算した場合も結果が一致すること
+        assert a.times(b, pool).isEqual(c);
+        assert a.times(b, ForkJoinPool.commonPool()).isEqual(c);
+      }
+
+      pool.shutdown();
+    } // end of block
+
+    { // 行単位の演算カーネル(ベクトル版が使用できる場合はベクトル版)の動作確認
+      System.err.printf("RowKernels.VECTORIZED = %b%n", RowKernels.VECTORIZED);
+
+      Random random = new Random(2);
+      for (int n = 0; n < 40; n++) {
+        // 先頭位置をずらして，端数の処理とオフセットの扱いを確認する
+        double[] a = random.doubles(n + 3).toArray();
+        double[] b = random.doubles(n + 5).toArray();
+        double[] expected = new double[n + 7];
+        double[] actual = new double[n + 7];
+
+        RowKernels.scalarPlus(a, 3, b, 5, expected, 7, n);
+        RowKernels.plus(a, 3, b, 5, actual, 7, n);
+        assert Arrays.equals(expected, actual);
+
+        RowKernels.scalarMinus(a, 3, b, 5, expected, 7, n);
+        RowKernels.minus(a, 3, b, 5, actual, 7, n);
+        assert Arrays.equals(expected, actual);
+
+        RowKernels.scalarScale(-1.5, a, 3, expected, 7, n);
+        RowKernels.scale(-1.5, a, 3, actual, 7, n);
+        assert Arrays.equals(expected, actual);
+
+        RowKernels.scalarAxpy(0.25, b, 5, expected, 7, n);
+        RowKernels.axpy(0.25, b, 5, actual, 7, n);
+        assert Arrays.equals(expected, actual);
+      }
+    } // end of block
+
+    { // multiplyInto() の動作確認
+      Random random = new Random(3);
+      for (int n : new int[] {3, 50}) {
+        double[][] x = new double[n][n + 1];
+        double[][] y = new double[n + 1][n + 2];
+        for (double[] row : x) {
+          Arrays.setAll(row, j -> random.nextInt(9) - 4);
+        }
+        for (double[] row : y) {
+          Arrays.setAll(row, j -> random.nextInt(9) - 4);
+        }
+
+        DoubleMatrix a = DoubleMatrix.from(x);
+        DoubleMatrix b = DoubleMatrix.from(y, DoubleMatrix.Layout.FLAT);
+        DoubleMatrix c = DoubleMatrix.createZeroMatrix(n, n + 2);
+        DoubleMatrix d = DoubleMatrix.createZeroMatrix(n, n + 2, DoubleMatrix.Layout.FLAT);
+
+        // 格納先の元の内容は上書きされること(NaNが残っていても影響しないこと)
+        c.set(0, 0, Double.NaN);
+        assert DoubleMatrix.multiplyInto(a, b, c) == c;
+        assert c.isEqual(a.times(b));
+
+        // d = 2ab + 0.5d (成分は全て整数なので誤差は生じない)
+        DoubleMatrix.multiplyInto(a, b, d);
+        assert DoubleMatrix.multiplyInto(2, a, b, 0.5, d) == d;
+        assert d.isEqual(a.times(b).times(2.5));
+
+        // beta = 1なら足し込まれること
+        DoubleMatrix.multiplyInto(-1, a, b, 1, d);
+        assert d.isEqual(a.times(b).times(1.5));
+
+        // 型が合わない場合
+        Test.assertThrows(
+            ArithmeticException.class,
+            "DoubleMatrix.multiplyInto(b, a, c)",
+            () -> DoubleMatrix.multiplyInto(b, a, c));
+        Test.assertThrows(
+            ArithmeticException.class,
+            "DoubleMatrix.multiplyInto(a, b, a)",
+            () -> DoubleMatrix.multiplyInto(a, b, a));
+      }
+
+      // 格納先が入力と同じ場合
+      DoubleMatrix e = DoubleMatrix.createIdentityMatrix(4);
+      DoubleMatrix f = DoubleMatrix.createIdentityMatrix(4);
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.multiplyInto(e, f, e)",
+          () -> DoubleMatrix.multiplyInto(e, f, e));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.multiplyInto(e, f, f)",
+          () -> DoubleMatrix.multiplyInto(e, f, f));
+    } // end of block
+
+    { // trsView() の動作確認
+      DoubleMatrix a =
+          DoubleMatrix.from(
+              new double[][] {
+                {1, 2, 3},
+                {4, 5, 6},
+              });
+      DoubleMatrix b = a.trsView();
+
+      assert b.rows() == 3;
+      assert b.columns() == 2;
+      assert b.isEqual(a.trs());
+      assert b.trs().isEqual(a);
+
+      // 成分を共有していること
+      b.set(2, 0, 9);
+      assert a.get(0, 2) == 9;
+      a.set(1, 0, 7);
+      assert b.get(0, 1) == 7;
+      b.trsView().set(0, 0, 8);
+      assert b.get(0, 0) == 8;
+
+      // 演算の結果はビューではないこと
+      DoubleMatrix c = b.times(1);
+      c.set(0, 0, 0);
+      assert a.get(0, 0) == 8;
+
+      // 行の入れ替えは元の行列の列の入れ替えになること
+      b.swapRows(0, 2);
+      assert a.isEqual(DoubleMatrix.from(new double[][] {{9, 2, 8}, {6, 5, 7}}));
+
+      // 格納先が入力の転置ビューの場合
+      DoubleMatrix e = DoubleMatrix.createIdentityMatrix(4);
+      DoubleMatrix f =
+          DoubleMatrix.copyOf(DoubleMatrix.createIdentityMatrix(4), DoubleMatrix.Layout.FLAT);
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.multiplyInto(e, f, e.trsView())",
+          () -> DoubleMatrix.multiplyInto(e, f, e.trsView()));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.multiplyInto(e.trsView(), f, f.trsView().trsView())",
+          () -> DoubleMatrix.multiplyInto(e.trsView(), f, f.trsView().trsView()));
+
+      // 転置ビューを含む行列積が，転置を実体化した場合と一致すること
+      Random random = new Random(4);
+      ForkJoinPool pool = new ForkJoinPool(2);
+      int[][] shapes = {{5, 7, 3}, {70, 90, 45}, {129, 33, 67}};
+      for (int[] shape : shapes) {
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          double[][] x = new double[shape[1]][shape[0]];
+          double[][] y = new double[shape[1]][shape[2]];
+          double[][] z = new double[shape[2]][shape[1]];
+          for (double[][] array : new double[][][] {x, y, z}) {
+            for (double[] row : array) {
+              Arrays.setAll(row, j -> random.nextDouble() - 0.5);
+            }
+          }
+
+          DoubleMatrix p = DoubleMatrix.from(x, layout);
+          DoubleMatrix q = DoubleMatrix.from(y, layout);
+          DoubleMatrix r = DoubleMatrix.from(z, layout);
+
+          // t^p * q
+          assert p.trsView().times(q).isEqual(p.trs().times(q));
+          assert p.trsView().times(q, pool).isEqual(p.trs().times(q));
+
+          // t^p * t^r
+          assert p.trsView().times(r.trsView()).isEqual(p.trs().times(r.trs()));
+
+          // t^p(実体化したもの) * t^r, t^q * t^r
+          DoubleMatrix pp = p.trs();
+          assert pp.times(r.trsView()).isEqual(pp.times(r.trs()));
+          assert q.trsView().times(r.trsView(), pool).isEqual(q.trs().times(r.trs()));
+
+          // 格納先と係数を指定した場合
+          DoubleMatrix s = DoubleMatrix.createZeroMatrix(shape[0], shape[2], layout);
+          DoubleMatrix.multiplyInto(0.5, p.trsView(), q, 0, s);
+          assert s.isEqual(p.trs().times(0.5).times(q));
+        }
+      }
+      pool.shutdown();
+    } // end of block
+
+    { // 大きな行列の転置と transposeInPlace() の動作確認
+      Random random = new Random(5);
+      int[][] shapes = {{1, 1}, {1, 40}, {70, 45}, {33, 100}, {64, 64}, {97, 97}};
+      for (int[] shape : shapes) {
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          double[][] x = new double[shape[0]][shape[1]];
+          for (double[] row : x) {
+            Arrays.setAll(row, j -> random.nextDouble());
+          }
+          DoubleMatrix a = DoubleMatrix.from(x, layout);
+
+          DoubleMatrix b = a.trs();
+          assert b.rows() == shape[1];
+          assert b.columns() == shape[0];
+          for (int i = 0; i < shape[0]; i++) {
+            for (int j = 0; j < shape[1]; j++) {
+              assert b.get(j, i) == x[i][j];
+            }
+          }
+
+          if (shape[0] == shape[1]) {
+            DoubleMatrix c = DoubleMatrix.copyOf(a);
+            assert c.transposeInPlace() == c;
+            assert c.isEqual(b);
+            assert c.transposeInPlace().isEqual(a);
+
+            // 転置ビューに対して実行した場合は元の行列が転置されること
+            c.trsView().transposeInPlace();
+            assert c.isEqual(b);
+          } else {
+            Test.assertThrows(
+                ArithmeticException.class, "a.transposeInPlace()", () -> a.transposeInPlace());
+          }
+        }
+      }
+    } // end of block
+
+    { // 1文字の区切り文字でファイルを読み込む場合の動作確認
+      // 改行コード，行末の区切り文字，成分の前後の空白は正規表現で分割した場合と同様に扱われること
+      writeToFile("tmp/tmp4.dat", "1,2.5,-3e2\r\n 4 ,5,6,,\r7,8.,.9\n");
+      writeToFile("tmp/tmp5.dat", "1 -0 1e400\n0x1p3 NaN -Infinity");
+      try {
+        DoubleMatrix a = DoubleMatrix.readFromFile("tmp/tmp4.dat", ",");
+        assert a.isEqual(DoubleMatrix.readFromFile("tmp/tmp4.dat", "[,]"));
+        assert a.isEqual(
+            DoubleMatrix.from(new double[][] {{1, 2.5, -300}, {4, 5, 6}, {7, 8, 0.9}}));
+
+        DoubleMatrix b = DoubleMatrix.readFromFile("tmp/tmp5.dat");
+        assert Double.doubleToRawLongBits(b.get(0, 1)) == Double.doubleToRawLongBits(-0.0);
+        assert b.get(0, 2) == Double.POSITIVE_INFINITY;
+        assert b.get(1, 0) == 8;
+        assert Double.isNaN(b.get(1, 1));
+        assert b.get(1, 2) == Double.NEGATIVE_INFINITY;
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+
+      // 読み込みバッファより長い行
+      DoubleMatrix c = DoubleMatrix.createZeroMatrix(2, 20000);
+      for (int j = 0; j < c.columns(); j++) {
+        c.set(0, j, j * 0.1);
+        c.set(1, j, -j * 1e-300);
+      }
+      try {
+        DoubleMatrix.writeToFile(c, "tmp/tmp6.dat");
+        assert c.isEqual(DoubleMatrix.readFromFile("tmp/tmp6.dat"));
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+
+      // 誤りのある行の位置と内容が例外のメッセージに含まれること
+      writeToFile("tmp/tmpe2.dat", "1,2\n3,x\n");
+      writeToFile("tmp/tmpe3.dat", "1,2\n\n3,4\n");
+      writeToFile("tmp/tmpe4.dat", "1,,2\n");
+      for (String file : new String[] {"tmp/tmpe2.dat", "tmp/tmpe3.dat", "tmp/tmpe4.dat"}) {
+        Test.assertThrows(
+            IOException.class,
+            "DoubleMatrix.readFromFile(\"" + file + "\", \",\")",
+            () -> DoubleMatrix.readFromFile(file, ","));
+      }
+      try {
+        DoubleMatrix.readFromFile("tmp/tmpe2.dat", ",");
+        assert false;
+      } catch (IOException ioe) {
+        assert ioe.getMessage().equals("tmp/tmpe2.dat:2: 3,x");
+        assert ioe.getCause() instanceof NumberFormatException;
+      }
+
+      // 数値の変換結果がDouble.parseDouble()と一致すること
+      Random random = new Random(6);
+      for (int i = 0; i < 100000; i++) {
+        String[] tokens = {
+          Double.toString(Double.longBitsToDouble(random.nextLong())),
+          Double.toString(random.nextDouble()),
+          random.nextInt() + "e" + (random.nextInt(700) - 350),
+          String.format("%.17g", random.nextGaussian()),
+        };
+        for (String token : tokens) {
+          byte[] bytes = token.getBytes();
+          assert Double.doubleToRawLongBits(MatrixTextParser.parseDouble(bytes, 0, bytes.length))
+              == Double.doubleToRawLongBits(Double.parseDouble(token));
+        }
+      }
+    } // end of block
+
+    { // readFromFile(String, String, ForkJoinPool) の動作確認
+      ForkJoinPool pool = new ForkJoinPool(3);
+      Random random = new Random(7);
+
+      // 複数のチャンクに分割される大きさのファイル(改行は"\r\n"と"\n"が混在する)
+      StringBuilder text = new StringBuilder();
+      double[][] x = new double[30000][6];
+      for (int i = 0; i < x.length; i++) {
+        for (int j = 0; j < x[i].length; j++) {
+          x[i][j] = random.nextGaussian();
+          text.append(x[i][j]).append(j + 1 < x[i].length ? "," : "");
+        }
+        text.append(i % 3 == 0 ? "\r\n" : "\n");
+      }
+      text.setLength(text.length() - 1);
+      writeToFile("tmp/tmp7.dat", text.toString());
+      try {
+        DoubleMatrix a = DoubleMatrix.from(x);
+        assert a.isEqual(DoubleMatrix.readFromFile("tmp/tmp7.dat", ",", pool));
+        assert a.isEqual(DoubleMatrix.readFromFile("tmp/tmp7.dat", ",", ForkJoinPool.commonPool()));
+        assert a.isEqual(DoubleMatrix.readFromFile("tmp/tmp7.dat", "[,]", pool));
+
+        // 小さなファイル
+        DoubleMatrix.writeToFile(a.trs(), "tmp/tmp8.dat");
+        assert a.trs().isEqual(DoubleMatrix.readFromFile("tmp/tmp8.dat", " ", pool));
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+
+      // 後方のチャンクにある誤りが，ファイル全体での行番号で報告されること
+      text.append("\n1,2,3,4,5,z\n");
+      writeToFile("tmp/tmpe5.dat", text.toString());
+      try {
+        DoubleMatrix.readFromFile("tmp/tmpe5.dat", ",", pool);
+        assert false;
+      } catch (IOException ioe) {
+        assert ioe.getMessage().equals("tmp/tmpe5.dat:30001: 1,2,3,4,5,z");
+        assert ioe.getCause() instanceof NumberFormatException;
+      }
+
+      // 列数が揃っていない場合
+      text.setLength(text.length() - 3);
+      text.append("\n");
+      writeToFile("tmp/tmpe6.dat", text.toString());
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.readFromFile(\"tmp/tmpe6.dat\", \",\", pool)",
+          () -> DoubleMatrix.readFromFile("tmp/tmpe6.dat", ",", pool));
+
+      pool.shutdown();
+    } // end of block
+
+    { // writeBinary(), readBinary(), openMapped() の動作確認
+      double[][] x = {
+        {1, -0.0, Double.NaN},
+        {Double.MIN_VALUE, Double.MAX_VALUE, Double.NEGATIVE_INFINITY},
+        {0.1, 1e-300, -7},
+        {3, 4, 5},
+      };
+      DoubleMatrix a = DoubleMatrix.from(x);
+      DoubleMatrix b = DoubleMatrix.from(x, DoubleMatrix.Layout.FLAT);
+      try {
+        DoubleMatrix.writeBinary(a, "tmp/tmp1.bin");
+        DoubleMatrix.writeBinary(b.trsView(), "tmp/tmp2.bin");
+
+        // 成分の値(NaNや-0.0を含む)と形式が保存されること
+        DoubleMatrix c = DoubleMatrix.readBinary("tmp/tmp1.bin");
+        DoubleMatrix d = DoubleMatrix.readBinary("tmp/tmp2.bin");
+        assert c.layout() == DoubleMatrix.Layout.JAGGED;
+        assert d.layout() == DoubleMatrix.Layout.FLAT;
+        assert Files.size(Paths.get("tmp/tmp1.bin")) == 32 + 12 * 8;
+        for (int i = 0; i < x.length; i++) {
+          for (int j = 0; j < x[i].length; j++) {
+            assert Double.doubleToRawLongBits(c.get(i, j)) == Double.doubleToRawLongBits(x[i][j]);
+            assert Double.doubleToRawLongBits(d.get(j, i)) == Double.doubleToRawLongBits(x[i][j]);
+          }
+        }
+
+        // メモリマップした行列
+        DoubleMatrix e = DoubleMatrix.openMapped("tmp/tmp1.bin");
+        assert e.rows() == 4 && e.columns() == 3;
+        assert Double.isNaN(e.get(0, 2));
+        assert e.get(3, 2) == 5;
+        assert e.layout() == DoubleMatrix.Layout.OFF_HEAP;
+        e.close();
+        assert e.get(3, 2) == 5;
+        Test.assertThrows(ReadOnlyBufferException.class, "e.set(0, 0, 2)", () -> e.set(0, 0, 2));
+        Test.assertThrows(
+            ArrayIndexOutOfBoundsException.class, "e.get(4, 0)", () -> e.get(4, 0));
+
+        DoubleMatrix y = DoubleMatrix.from(new double[][] {{1, 2}, {3, 4}, {5, 6}});
+        DoubleMatrix.writeBinary(y, "tmp/tmp3.bin");
+        DoubleMatrix f = DoubleMatrix.openMapped("tmp/tmp3.bin");
+        assert f.isEqual(y);
+        assert f.times(y.trs()).isEqual(y.times(y.trs()));
+        assert f.plus(y).isEqual(y.times(2));
+        assert f.trs().isEqual(y.trs());
+        assert DoubleMatrix.copyOf(f).isEqual(y);
+
+        // PRIVATEでは変更がファイルに書き戻されず，READ_WRITEでは書き戻されること
+        DoubleMatrix g = DoubleMatrix.openMapped("tmp/tmp3.bin", FileChannel.MapMode.PRIVATE);
+        g.set(0, 0, 10);
+        assert g.get(0, 0) == 10;
+        assert DoubleMatrix.readBinary("tmp/tmp3.bin").isEqual(y);
+        DoubleMatrix h = DoubleMatrix.openMapped("tmp/tmp3.bin", FileChannel.MapMode.READ_WRITE);
+        h.swapRows(0, 2);
+        assert DoubleMatrix.readBinary("tmp/tmp3.bin")
+            .isEqual(DoubleMatrix.from(new double[][] {{5, 6}, {3, 4}, {1, 2}}));
+
+        // 成分がビッグエンディアンで記録されたファイル
+        ByteBuffer buffer = ByteBuffer.allocate(32 + 2 * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("DMAT".getBytes()).putInt(1).put((byte) 1).put((byte) 0);
+        buffer.putShort((short) 0).putInt(1).putInt(2).put(new byte[12]);
+        buffer.order(ByteOrder.BIG_ENDIAN).putDouble(1.5).putDouble(-2.5);
+        Files.write(Paths.get("tmp/tmp4.bin"), buffer.array());
+        DoubleMatrix z = DoubleMatrix.from(new double[][] {{1.5, -2.5}});
+        assert DoubleMatrix.readBinary("tmp/tmp4.bin").isEqual(z);
+        assert DoubleMatrix.openMapped("tmp/tmp4.bin").isEqual(z);
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+
+      // バイナリ形式でないファイル，途中で終わっているファイル
+      writeToFile("tmp/tmpe7.bin", "1 2 3\n");
+      Test.assertThrows(
+          IOException.class,
+          "DoubleMatrix.readBinary(\"tmp/tmpe7.bin\")",
+          () -> DoubleMatrix.readBinary("tmp/tmpe7.bin"));
+      Test.assertThrows(
+          IOException.class,
+          "DoubleMatrix.openMapped(\"tmp/tmpe7.bin\")",
+          () -> DoubleMatrix.openMapped("tmp/tmpe7.bin"));
+      try {
+        byte[] bytes = Files.readAllBytes(Paths.get("tmp/tmp1.bin"));
+        Files.write(Paths.get("tmp/tmpe8.bin"), Arrays.copyOf(bytes, bytes.length - 1));
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+      Test.assertThrows(
+          IOException.class,
+          "DoubleMatrix.readBinary(\"tmp/tmpe8.bin\")",
+          () -> DoubleMatrix.readBinary("tmp/tmpe8.bin"));
+    } // end of block
+
+    { // toString(Appendable, String) の動作確認
+      DoubleMatrix a =
+          DoubleMatrix.from(
+              new double[][] {
+                {1, -0.0, Double.NaN},
+                {1e-300, 2.5, Double.NEGATIVE_INFINITY},
+              });
+      try {
+        // 出力先の種類によらず，toString(String)と同じ内容が書き出されること
+        StringBuilder sb = new StringBuilder("> ");
+        a.toString(sb, ", ");
+        assert sb.toString().equals("> " + a.toString(", "));
+
+        StringWriter sw = new StringWriter();
+        a.toString(sw, "|");
+        assert sw.toString().equals(a.toString("|"));
+
+        StringBuffer sbf = new StringBuffer();
+        a.toString(sbf, " ");
+        assert sbf.toString().equals(a.toString());
+
+        // バッファより大きな行列と長い区切り文字
+        Random random = new Random(8);
+        DoubleMatrix b = DoubleMatrix.createZeroMatrix(50, 300);
+        for (int i = 0; i < b.rows(); i++) {
+          for (int j = 0; j < b.columns(); j++) {
+            b.set(i, j, random.nextGaussian());
+          }
+        }
+        String delim = String.join("", Collections.nCopies(100, "-"));
+        sw = new StringWriter();
+        b.toString(sw, delim);
+        assert sw.toString().equals(b.toString(delim));
+
+        DoubleMatrix.writeToFile(b, "tmp/tmp9.dat", ",");
+        assert b.isEqual(DoubleMatrix.readFromFile("tmp/tmp9.dat", ","));
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "a.toString(new StringBuilder(), \"1\")",
+          () -> a.toString(new StringBuilder(), "1"));
+    } // end of block
+
+    { // DoubleFormatter の動作確認
+      DoubleFormatter shortest = new DoubleFormatter();
+      char[] chars = new char[24];
+      double[] known = {
+        1e23, Double.MIN_VALUE, Double.MAX_VALUE, Double.MIN_NORMAL, 0.001, 1e7, 9999999.0,
+        -0.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY, 2.82879384806159E17, 123.456, -1.5e-5
+      };
+      String[] expected = {
+        "1.0E23", "4.9E-324", "1.7976931348623157E308", "2.2250738585072014E-308", "0.001",
+        "1.0E7", "9999999.0", "-0.0", "0.0", "NaN", "Infinity", "2.82879384806159E17", "123.456",
+        "-1.5E-5"
+      };
+      for (int k = 0; k < known.length; k++) {
+        assert new String(chars, 0, shortest.format(known[k], chars, 0)).equals(expected[k]);
+      }
+
+      // 元の値に戻ること，およびDouble.toString()より長くならないこと
+      Random random = new Random(13);
+      for (int k = 0; k < 100000; k++) {
+        double v = Double.longBitsToDouble(random.nextLong());
+        String s = new String(chars, 0, shortest.format(v, chars, 0));
+        assert Double.isNaN(v) ? s.equals("NaN") : Double.parseDouble(s) == v;
+        assert s.length() <= Double.toString(v).length();
+      }
+
+      // 有効桁数を指定した場合は，元の値を四捨五入した値になること
+      DoubleFormatter three = new DoubleFormatter(3);
+      double[] values = {Math.PI, 1234567, 9.996, 1.234e-4, 1e-300 / 3, 99.5, -2.5e-5, 12345678};
+      String[] rounded = {
+        "3.14", "1230000.0", "10.0", "1.23E-4", "3.33E-301", "99.5", "-2.5E-5", "1.23E7"
+      };
+      for (int k = 0; k < values.length; k++) {
+        assert new String(chars, 0, three.format(values[k], chars, 0)).equals(rounded[k]);
+      }
+      DoubleFormatter one = new DoubleFormatter(1);
+      assert new String(chars, 0, one.format(9.5, chars, 0)).equals("10.0");
+      // 0.95の正確な値は0.94999...なので，最短の表記"0.95"を丸めた1.0ではなく0.9になる
+      assert new String(chars, 0, one.format(0.95, chars, 0)).equals("0.9");
+      DoubleFormatter twelve = new DoubleFormatter(12);
+      assert new String(chars, 0, twelve.format(5318852.690025, chars, 0)).equals("5318852.69002");
+      // 正しく丸めた値は8.66508454950E-15(末尾の0は出力しない)
+      assert new String(chars, 0, twelve.format(8.665084549505E-15, chars, 0))
+          .equals("8.6650845495E-15");
+
+      // 有効桁数を指定した場合は，元の値を正確に四捨五入した値と一致すること
+      for (int k = 0; k < 200000; k++) {
+        double v = (k % 2 == 0)
+            ? Double.longBitsToDouble(random.nextLong())
+            : Math.round(random.nextDouble() * 1e12) / Math.pow(10, random.nextInt(20));
+        if (Double.isNaN(v) || Double.isInfinite(v) || v == 0) {
+          continue;
+        }
+        int precision = 1 + random.nextInt(16);
+        String s = new String(chars, 0, new DoubleFormatter(precision).format(v, chars, 0));
+        BigDecimal correct =
+            new BigDecimal(v).round(new MathContext(precision, RoundingMode.HALF_UP));
+        assert new BigDecimal(s).compareTo(correct) == 0 : v + " " + precision + " " + s;
+      }
+
+      DoubleMatrix a = DoubleMatrix.from(new double[][] {{Math.PI, 1234567, 1e-10 / 3}});
+      try {
+        StringBuilder sb = new StringBuilder();
+        a.toString(sb, " ", 3);
+        assert sb.toString().equals("3.14 1230000.0 3.33E-11");
+
+        sb = new StringBuilder();
+        a.toString(sb, " ", 17);
+        assert sb.toString().equals(a.toString());
+
+        DoubleMatrix.writeToFile(a, "tmp/tmp10.dat", ",", 5);
+        DoubleMatrix b = DoubleMatrix.readFromFile("tmp/tmp10.dat", ",");
+        assert b.get(0, 0) == 3.1416 && b.get(0, 1) == 1234600 && b.get(0, 2) == 3.3333e-11;
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "a.toString(new StringBuilder(), \" \", 0)",
+          () -> a.toString(new StringBuilder(), " ", 0));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "a.toString(new StringBuilder(), \" \", 18)",
+          () -> a.toString(new StringBuilder(), " ", 18));
+    } // end of block
+
+    { // OFF_HEAP 形式の動作確認
+      Random random = new Random(14);
+      double[][] x = new double[37][23];
+      double[][] y = new double[23][41];
+      for (double[][] array : new double[][][] {x, y}) {
+        for (double[] row : array) {
+          Arrays.setAll(row, j -> random.nextDouble() - 0.5);
+        }
+      }
+
+      try (DoubleMatrix a = DoubleMatrix.from(x, DoubleMatrix.Layout.OFF_HEAP);
+          DoubleMatrix b = DoubleMatrix.from(y, DoubleMatrix.Layout.OFF_HEAP);
+          DoubleMatrix c = a.times(b);
+          DoubleMatrix d = a.trs()) {
+        DoubleMatrix ja = DoubleMatrix.from(x);
+        DoubleMatrix jb = DoubleMatrix.from(y);
+        assert a.layout() == DoubleMatrix.Layout.OFF_HEAP;
+        assert c.layout() == DoubleMatrix.Layout.OFF_HEAP;
+        assert d.layout() == DoubleMatrix.Layout.OFF_HEAP;
+        assert a.isEqual(ja) && ja.isEqual(a);
+        assert c.isEqual(ja.times(jb));
+        assert d.isEqual(ja.trs());
+        assert a.plus(a).isEqual(ja.plus(ja));
+        assert DoubleMatrix.copyOf(a).add(ja).isEqual(ja.times(2));
+        assert a.trsView().times(a).isEqual(ja.trs().times(ja));
+
+        DoubleMatrix.writeBinary(a, "tmp/tmp11.bin");
+        DoubleMatrix e = DoubleMatrix.readBinary("tmp/tmp11.bin");
+        assert e.layout() == DoubleMatrix.Layout.OFF_HEAP;
+        assert e.isEqual(ja);
+        e.close();
+
+        DoubleMatrix.writeToFile(a, "tmp/tmp11.dat", ",");
+        assert DoubleMatrix.readFromFile("tmp/tmp11.dat", ",").isEqual(a);
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+
+      // 複数のセグメントにまたがる記憶域
+      OffHeapStorage storage = new OffHeapStorage(10, 3, 4);
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j < 3; j++) {
+          storage.set(i, j, i * 3 + j);
+        }
+      }
+      storage.swapRows(1, 9);
+      DoubleStorage copy = storage.copy();
+      for (int i = 0; i < 10; i++) {
+        int k = (i == 1) ? 9 : (i == 9) ? 1 : i;
+        for (int j = 0; j < 3; j++) {
+          assert storage.get(i, j) == k * 3 + j;
+          assert copy.get(i, j) == k * 3 + j;
+        }
+      }
+      storage.close();
+      ((OffHeapStorage) copy).close();
+
+      // 解放した後のアクセスは例外となり，close()は何度呼び出してもよいこと
+      DoubleMatrix f = DoubleMatrix.createZeroMatrix(3, 3, DoubleMatrix.Layout.OFF_HEAP);
+      DoubleMatrix g = f.trsView();
+      f.close();
+      f.close();
+      g.close();
+      Test.assertThrows(IllegalStateException.class, "f.get(0, 0)", () -> f.get(0, 0));
+      Test.assertThrows(IllegalStateException.class, "g.set(0, 0, 1)", () -> g.set(0, 0, 1));
+      Test.assertThrows(
+          ArrayIndexOutOfBoundsException.class, "f.get(3, 0)", () -> f.get(3, 0));
+
+      // OFF_HEAP以外の形式では何もしないこと
+      DoubleMatrix h = DoubleMatrix.createIdentityMatrix(2);
+      h.close();
+      assert h.get(1, 1) == 1;
+    } // end of block
+
+    { // 成分の総数がintの範囲を超える行列の動作確認
+      DoubleMatrix a = DoubleMatrix.createZeroMatrix(3, 5, DoubleMatrix.Layout.OFF_HEAP);
+      assert a.size() == 15 && a.longSize() == 15;
+      a.close();
+
+      // 成分の領域を確保しないように，疎なファイルをメモリマップする
+      int rows = 65536;
+      int columns = 32769;
+      long entries = (long) rows * columns;
+      assert entries > Integer.MAX_VALUE;
+      try {
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(Paths.get("tmp/tmp1.bin")), 0, 32);
+        header.order(ByteOrder.LITTLE_ENDIAN).putInt(12, rows).putInt(16, columns);
+        try (FileChannel channel =
+            FileChannel.open(
+                Paths.get("tmp/tmp12.bin"),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+          channel.write(header);
+          channel.write(ByteBuffer.allocate(1), 32 + entries * Double.BYTES - 1);
+        }
+
+        DoubleMatrix b = DoubleMatrix.openMapped("tmp/tmp12.bin", FileChannel.MapMode.PRIVATE);
+        assert b.longSize() == entries;
+        assert b.rows() == rows && b.columns() == columns;
+        b.set(rows - 1, columns - 1, 1.5);
+        b.set(rows / 2, 7, -2);
+        assert b.get(rows - 1, columns - 1) == 1.5;
+        assert b.get(rows / 2, 7) == -2;
+        assert b.get(rows - 1, columns - 2) == 0;
+        assert b.trsView().get(7, rows / 2) == -2;
+        Test.assertThrows(ArithmeticException.class, "b.size()", () -> b.size());
+
+        // 成分の総数がintの範囲を超える演算結果は，OFF_HEAP形式の行列として返されること
+        // (ヒープの外に約16GiBを確保できない環境では，確保に失敗したことだけを確認する)
+        try (DoubleMatrix c = b.trs()) {
+          assert c.layout() == DoubleMatrix.Layout.OFF_HEAP;
+          assert c.rows() == columns && c.columns() == rows;
+          assert c.get(columns - 1, rows - 1) == 1.5;
+          assert c.get(7, rows / 2) == -2;
+          assert c.get(columns - 2, rows - 1) == 0;
+        } catch (OutOfMemoryError oome) {
+          assert oome.getMessage().contains("direct buffer memory");
+        }
+        Files.deleteIfExists(Paths.get("tmp/tmp12.bin"));
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        System.exit(1);
+      }
+    } // end of block
+
+    { // SparseDoubleMatrix の動作確認
+      // 追加する順序によらず，同じ位置の成分は合計され，合計が0の成分は保持されないこと
+      SparseDoubleMatrix a =
+          SparseDoubleMatrix.builder(3, 4)
+              .add(2, 3, 1)
+              .add(0, 1, 2)
+              .add(2, 0, -1)
+              .add(0, 1, 0.5)
+              .add(1, 2, 3)
+              .add(1, 2, -3)
+              .add(0, 0, 0)
+              .build();
+      assert a.rows() == 3 && a.columns() == 4;
+      assert a.nonZeros() == 3;
+      assert a.get(0, 1) == 2.5 && a.get(2, 0) == -1 && a.get(2, 3) == 1;
+      assert a.get(1, 2) == 0 && a.get(0, 0) == 0;
+      DoubleMatrix da =
+          DoubleMatrix.from(new double[][] {{0, 2.5, 0, 0}, {0, 0, 0, 0}, {-1, 0, 0, 1}});
+      assert a.toDense().isEqual(da);
+      assert SparseDoubleMatrix.from(da).isEqual(a);
+      assert !a.isEqual(SparseDoubleMatrix.builder(3, 4).add(0, 1, 2.5).build());
+
+      // 密な行列との積，疎行列同士の積が，密な行列として計算した結果と一致すること
+      Random random = new Random(16);
+      int[][] shapes = {{1, 1, 1}, {7, 5, 3}, {60, 80, 70}, {130, 40, 90}};
+      for (int[] shape : shapes) {
+        SparseDoubleMatrix.Builder xb = SparseDoubleMatrix.builder(shape[0], shape[1]);
+        SparseDoubleMatrix.Builder yb = SparseDoubleMatrix.builder(shape[1], shape[2]);
+        for (int k = 0; k < shape[0] * shape[1] / 10 + 1; k++) {
+          xb.add(random.nextInt(shape[0]), random.nextInt(shape[1]), random.nextDouble() - 0.5);
+        }
+        for (int k = 0; k < shape[1] * shape[2] / 10 + 1; k++) {
+          yb.add(random.nextInt(shape[1]), random.nextInt(shape[2]), random.nextDouble() - 0.5);
+        }
+        SparseDoubleMatrix x = xb.build();
+        SparseDoubleMatrix y = yb.build();
+        DoubleMatrix dx = x.toDense();
+        DoubleMatrix dy = y.toDense();
+        DoubleMatrix expected = dx.times(dy);
+
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          DoubleMatrix fx = DoubleMatrix.copyOf(dx, layout);
+          DoubleMatrix fy = DoubleMatrix.copyOf(dy, layout);
+          DoubleMatrix c = x.times(fy);
+          assert c.layout() == layout;
+          assert c.isEqual(expected);
+          DoubleMatrix d = fx.times(y);
+          assert d.layout() == layout;
+          assert d.isEqual(expected);
+          assert x.toDense(layout).isEqual(dx);
+        }
+        assert x.times(y).isEqual(SparseDoubleMatrix.from(expected));
+        assert x.times(y).toDense().isEqual(expected);
+      }
+
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "SparseDoubleMatrix.builder(0, 3)",
+          () -> SparseDoubleMatrix.builder(0, 3));
+      Test.assertThrows(
+          ArrayIndexOutOfBoundsException.class,
+          "SparseDoubleMatrix.builder(2, 3).add(2, 0, 1)",
+          () -> SparseDoubleMatrix.builder(2, 3).add(2, 0, 1));
+      Test.assertThrows(ArrayIndexOutOfBoundsException.class, "a.get(0, 4)", () -> a.get(0, 4));
+      Test.assertThrows(ArithmeticException.class, "a.times(a)", () -> a.times(a));
+      Test.assertThrows(ArithmeticException.class, "a.times(da)", () -> a.times(da));
+      Test.assertThrows(ArithmeticException.class, "da.times(a)", () -> da.times(a));
+    } // end of block
+
+    { // timesVector() の動作確認
+      // 0でない成分の数が均等になるように行が分割されること
+      int[] prefix = {0, 100, 100, 100, 101, 102, 103, 104, 200};
+      assert Arrays.equals(RowPartition.byWeight(prefix, 4), new int[] {0, 1, 7, 8});
+      assert Arrays.equals(RowPartition.byWeight(prefix, 1), new int[] {0, 8});
+      assert Arrays.equals(RowPartition.byWeight(new int[] {0, 0, 0}, 4), new int[] {0, 2});
+      assert Arrays.equals(RowPartition.byRows(10, 4), new int[] {0, 2, 5, 7, 10});
+      assert Arrays.equals(RowPartition.byRows(2, 8), new int[] {0, 1, 2});
+
+      Random random = new Random(17);
+      ForkJoinPool pool = new ForkJoinPool(3);
+      int[][] shapes = {{1, 1}, {9, 4}, {300, 500}, {1000, 800}};
+      for (int[] shape : shapes) {
+        // 先頭の行に0でない成分が集中している疎行列
+        SparseDoubleMatrix.Builder builder = SparseDoubleMatrix.builder(shape[0], shape[1]);
+        for (int j = 0; j < shape[1]; j++) {
+          builder.add(0, j, random.nextDouble() - 0.5);
+        }
+        for (int k = 0; k < shape[0] * shape[1] / 5; k++) {
+          int i = random.nextInt(shape[0]);
+          builder.add(i, random.nextInt(shape[1]), random.nextDouble() - 0.5);
+        }
+        SparseDoubleMatrix a = builder.build();
+        double[] x = random.doubles(shape[1]).toArray();
+        double[] y = new double[shape[0]];
+        double[] z = new double[shape[0]];
+        DoubleMatrix expected = a.toDense().times(DoubleMatrix.createColumnVector(x));
+
+        assert a.timesVector(x, y) == y;
+        assert DoubleMatrix.createColumnVector(y).isEqual(expected);
+        assert a.timesVector(x, z, pool) == z;
+        assert Arrays.equals(y, z);
+
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          DoubleMatrix b = a.toDense(layout);
+          Arrays.fill(y, Double.NaN);
+          assert b.timesVector(x, y) == y;
+          assert DoubleMatrix.createColumnVector(y).isEqual(expected);
+          Arrays.fill(z, Double.NaN);
+          assert b.timesVector(x, z, pool) == z;
+          assert Arrays.equals(y, z);
+        }
+
+        DoubleMatrix c = a.toDense().trs();
+        double[] w = new double[shape[1]];
+        c.trsView().timesVector(x, y);
+        assert DoubleMatrix.createColumnVector(y).isEqual(expected);
+        c.timesVector(y, w, pool);
+        DoubleMatrix cy = c.times(DoubleMatrix.createColumnVector(y));
+        assert DoubleMatrix.createColumnVector(w).isEqual(cy);
+      }
+      pool.shutdown();
+
+      SparseDoubleMatrix a = SparseDoubleMatrix.builder(2, 3).add(0, 0, 1).build();
+      DoubleMatrix b = a.toDense();
+      double[] v = new double[3];
+      Test.assertThrows(
+          ArithmeticException.class,
+          "a.timesVector(new double[2], new double[2])",
+          () -> a.timesVector(new double[2], new double[2]));
+      Test.assertThrows(
+          ArithmeticException.class,
+          "b.timesVector(new double[3], new double[3])",
+          () -> b.timesVector(new double[3], new double[3]));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.createIdentityMatrix(3).timesVector(v, v)",
+          () -> DoubleMatrix.createIdentityMatrix(3).timesVector(v, v));
+    } // end of block
+
+    { // 対角行列・単位行列の構造化表現の動作確認
+      DoubleMatrix d = DoubleMatrix.createDiagonalMatrix(2, -3, 0.5, 4);
+      DoubleMatrix e = DoubleMatrix.createIdentityMatrix(4);
+      DoubleMatrix dd = DoubleMatrix.copyOf(d, DoubleMatrix.Layout.FLAT);
+      DoubleMatrix ed = DoubleMatrix.copyOf(e, DoubleMatrix.Layout.FLAT);
+      DoubleMatrix b =
+          DoubleMatrix.from(
+              new double[][] {
+                {1, -0.0, 3, 0.1},
+                {-5, 6, 0, 8},
+                {9, 1e300, -11, 12},
+                {0.3, 14, -0.0, 16},
+              });
+
+      assert d.layout() == DoubleMatrix.Layout.JAGGED;
+      assert d.isEqual(dd) && e.isEqual(ed);
+      assert d.isSymmetric() && e.isSymmetric();
+
+      // 構造化表現による経路の結果は，密な行列として計算した結果と一致する
+      assert d.times(b).toString().equals(dd.times(b).toString());
+      assert b.times(d).toString().equals(b.times(dd).toString());
+      assert d.times(e).toString().equals(dd.times(ed).toString());
+      assert d.trsView().times(b).toString().equals(dd.times(b).toString());
+      assert d.plus(b).toString().equals(dd.plus(b).toString());
+      assert b.plus(d).toString().equals(b.plus(dd).toString());
+      assert d.minus(b).toString().equals(dd.minus(b).toString());
+      assert b.minus(d).toString().equals(b.minus(dd).toString());
+      assert d.plus(e).toString().equals(dd.plus(ed).toString());
+      assert d.minus(d).toString().equals(dd.minus(dd).toString());
+      assert d.times(-1).toString().equals(dd.times(-1).toString());
+      assert d.times(3).toString().equals(dd.times(3).toString());
+      assert d.trs().toString().equals(dd.trs().toString());
+      assert DoubleMatrix.multiplyInto(2, d, b, 1, b.plus(b))
+          .isEqual(DoubleMatrix.multiplyInto(2, dd, b, 1, b.plus(b)));
+      assert DoubleMatrix.copyOf(b).add(d).toString().equals(b.plus(dd).toString());
+      assert DoubleMatrix.copyOf(b).sub(d).toString().equals(b.minus(dd).toString());
+      ForkJoinPool pool = new ForkJoinPool(2);
+      assert d.times(b, pool).isEqual(dd.times(b));
+      pool.shutdown();
+
+      double[] x = {1, 2, 3, 4};
+      double[] y = new double[4];
+      double[] z = new double[4];
+      assert Arrays.equals(d.timesVector(x, y), dd.timesVector(x, z));
+
+      // 対角成分の変更は構造化表現のまま行われる
+      DoubleMatrix f = DoubleMatrix.createIdentityMatrix(3);
+      f.set(1, 1, 5).set(0, 2, 0).mul(2).transposeInPlace();
+      assert f.isEqual(DoubleMatrix.createDiagonalMatrix(2, 10, 2));
+      assert f.add(DoubleMatrix.createIdentityMatrix(3)).isEqual(
+          DoubleMatrix.createDiagonalMatrix(3, 11, 3));
+
+      // 対角成分以外の変更で密な形式に変換され，ビューからも変更が見える
+      DoubleMatrix g = DoubleMatrix.createDiagonalMatrix(1, 2, 3);
+      DoubleMatrix gv = g.trsView();
+      g.set(0, 2, 7);
+      assert g.get(0, 2) == 7 && gv.get(2, 0) == 7 && g.get(1, 1) == 2;
+      assert !g.isSymmetric();
+      assert g.layout() == DoubleMatrix.Layout.JAGGED;
+      assert g.times(g).isEqual(DoubleMatrix.copyOf(g, DoubleMatrix.Layout.FLAT).times(g));
+
+      DoubleMatrix h = DoubleMatrix.createIdentityMatrix(2).set(1, 0, -0.0);
+      assert h.toString().equals(DoubleMatrix.copyOf(h, DoubleMatrix.Layout.FLAT).toString());
+      assert Double.doubleToRawLongBits(h.get(1, 0)) == Double.doubleToRawLongBits(-0.0);
+      assert DoubleMatrix.createIdentityMatrix(2).swapRows(0, 1).isEqual(
+          DoubleMatrix.from(new double[][] {{0, 1}, {1, 0}}));
+      assert DoubleMatrix.createIdentityMatrix(2).mul(Double.NaN).get(0, 1) != 0;
+
+      DoubleMatrix k = DoubleMatrix.createIdentityMatrix(2);
+      Test.assertThrows(
+          ArrayIndexOutOfBoundsException.class, "k.get(2, 0)", () -> k.get(2, 0));
+      Test.assertThrows(
+          ArrayIndexOutOfBoundsException.class, "k.set(0, -1, 1)", () -> k.set(0, -1, 1));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.createIdentityMatrix(0)",
+          () -> DoubleMatrix.createIdentityMatrix(0));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.createDiagonalMatrix()",
+          () -> DoubleMatrix.createDiagonalMatrix());
+    } // end of block
+
+    { // 対称行列・三角行列の圧縮形式の動作確認
+      Random random = new Random(19);
+      ForkJoinPool pool = new ForkJoinPool(2);
+      for (int n : new int[] {1, 5, 70}) {
+        double[][] m = new double[n][n];
+        double[][] sym = new double[n][n];
+        double[][] low = new double[n][n];
+        double[][] up = new double[n][n];
+        for (int i = 0; i < n; i++) {
+          for (int j = 0; j < n; j++) {
+            m[i][j] = (i + j) % 7 == 3 ? -0.0 : random.nextDouble() - 0.5;
+          }
+        }
+        for (int i = 0; i < n; i++) {
+          for (int j = 0; j <= i; j++) {
+            sym[i][j] = sym[j][i] = m[i][j];
+            low[i][j] = m[i][j];
+            up[j][i] = m[j][i];
+          }
+        }
+        DoubleMatrix a = DoubleMatrix.from(m);
+        DoubleMatrix s = DoubleMatrix.createSymmetricMatrix(a, DoubleMatrix.Triangle.LOWER);
+        DoubleMatrix l = DoubleMatrix.createTriangularMatrix(a, DoubleMatrix.Triangle.LOWER);
+        DoubleMatrix u = DoubleMatrix.createTriangularMatrix(a, DoubleMatrix.Triangle.UPPER);
+        DoubleMatrix[] packed = {s, l, u};
+        DoubleMatrix[] dense = {
+          DoubleMatrix.from(sym), DoubleMatrix.from(low), DoubleMatrix.from(up),
+        };
+
+        assert s.isSymmetric() && s.layout() == DoubleMatrix.Layout.JAGGED;
+        assert DoubleMatrix.createSymmetricMatrix(a.trs(), DoubleMatrix.Triangle.UPPER).isEqual(s);
+
+        DoubleMatrix b = DoubleMatrix.createZeroMatrix(n, 3);
+        DoubleMatrix c = DoubleMatrix.createZeroMatrix(4, n);
+        DoubleMatrix e = DoubleMatrix.createZeroMatrix(n, 6);
+        for (DoubleMatrix r : new DoubleMatrix[] {b, c, e}) {
+          for (int i = 0; i < r.rows(); i++) {
+            for (int j = 0; j < r.columns(); j++) {
+              r.set(i, j, random.nextDouble() - 0.5);
+            }
+          }
+        }
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+          x[i] = random.nextDouble() - 0.5;
+        }
+        for (int t = 0; t < packed.length; t++) {
+          DoubleMatrix p = packed[t];
+          DoubleMatrix d = dense[t];
+          assert p.toString().equals(d.toString());
+          // 行列積と行列ベクトル積は，密な行列として計算した結果と-0dまで含めて一致する
+          assert p.times(b).toString().equals(d.times(b).toString());
+          assert c.times(p).toString().equals(c.times(d).toString());
+          assert c.times(p, pool).toString().equals(c.times(d).toString());
+          assert p.times(a).toString().equals(d.times(a).toString());
+          assert a.times(p).toString().equals(a.times(d).toString());
+          assert DoubleMatrix.multiplyInto(-2, c, p, 0.5, c.times(d))
+              .toString()
+              .equals(DoubleMatrix.multiplyInto(-2, c, d, 0.5, c.times(d)).toString());
+          double[] y = new double[n];
+          double[] z = new double[n];
+          assert Arrays.equals(p.timesVector(x, y), d.timesVector(x, z));
+          assert Arrays.equals(p.timesVector(x, y, pool), z);
+
+          assert p.trs().toString().equals(d.trs().toString());
+          assert DoubleMatrix.copyOf(p).transposeInPlace().toString().equals(d.trs().toString());
+          assert p.plus(p).toString().equals(d.plus(d).toString());
+          assert p.minus(p.times(3)).toString().equals(d.minus(d.times(3)).toString());
+          assert p.times(-1).toString().equals(d.times(-1).toString());
+          assert p.plus(d).toString().equals(d.plus(d).toString());
+          assert DoubleMatrix.copyOf(p).mul(-2).add(p).toString().equals(
+              DoubleMatrix.copyOf(d).mul(-2).add(d).toString());
+        }
+
+        // 対称行列のランクk更新
+        DoubleMatrix expected =
+            DoubleMatrix.multiplyInto(e, e.trsView(), DoubleMatrix.createZeroMatrix(n, n));
+        DoubleMatrix f = DoubleMatrix.createSymmetricMatrix(n);
+        assert DoubleMatrix.rankUpdate(1, e, 0, f) == f;
+        assert f.isSymmetric() && f.toString().equals(expected.toString());
+        DoubleMatrix g = DoubleMatrix.copyOf(a);
+        DoubleMatrix h = DoubleMatrix.copyOf(a);
+        DoubleMatrix.rankUpdate(-1.5, e, 0.25, g);
+        DoubleMatrix.multiplyInto(-1.5, e, e.trsView(), 0.25, h);
+        assert g.toString().equals(h.toString());
+        DoubleMatrix.multiplyInto(1, e, e.trsView(), 2, expected);
+        DoubleMatrix.rankUpdate(1, e.trs().trsView(), 2, f);
+        assert f.isSymmetric() && f.toString().equals(expected.toString());
+      }
+      pool.shutdown();
+
+      // 種類と矛盾する変更で密な形式に変換される
+      DoubleMatrix a = DoubleMatrix.from(new double[][] {{1, 2}, {3, 4}});
+      DoubleMatrix s = DoubleMatrix.createSymmetricMatrix(a, DoubleMatrix.Triangle.UPPER);
+      DoubleMatrix sv = s.trsView();
+      assert s.isEqual(DoubleMatrix.from(new double[][] {{1, 2}, {2, 4}}));
+      s.set(1, 0, 2).set(1, 1, 5);
+      assert s.isSymmetric();
+      s.set(0, 1, 7);
+      assert !s.isSymmetric() && s.get(1, 0) == 2 && sv.get(1, 0) == 7;
+      DoubleMatrix l = DoubleMatrix.createTriangularMatrix(a, DoubleMatrix.Triangle.LOWER);
+      l.set(0, 1, 0).set(1, 0, 6);
+      assert l.isEqual(DoubleMatrix.from(new double[][] {{1, 0}, {6, 4}}));
+      l.swapRows(0, 1);
+      assert l.isEqual(DoubleMatrix.from(new double[][] {{6, 4}, {1, 0}}));
+      DoubleMatrix u = DoubleMatrix.createTriangularMatrix(a, DoubleMatrix.Triangle.UPPER);
+      assert !u.isSymmetric();
+      u.set(1, 0, -0.0);
+      assert Double.doubleToRawLongBits(u.get(1, 0)) == Double.doubleToRawLongBits(-0.0);
+
+      DoubleMatrix b = DoubleMatrix.createZeroMatrix(2, 3);
+      DoubleMatrix c = DoubleMatrix.createSymmetricMatrix(2);
+      Test.assertThrows(
+          ArithmeticException.class,
+          "DoubleMatrix.createSymmetricMatrix(b, DoubleMatrix.Triangle.LOWER)",
+          () -> DoubleMatrix.createSymmetricMatrix(b, DoubleMatrix.Triangle.LOWER));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.createSymmetricMatrix(0)",
+          () -> DoubleMatrix.createSymmetricMatrix(0));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.createSymmetricMatrix(65536)",
+          () -> DoubleMatrix.createSymmetricMatrix(65536));
+      Test.assertThrows(
+          ArithmeticException.class,
+          "DoubleMatrix.rankUpdate(1, b, 0, b)",
+          () -> DoubleMatrix.rankUpdate(1, b, 0, b));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "DoubleMatrix.rankUpdate(1, c, 0, c)",
+          () -> DoubleMatrix.rankUpdate(1, c, 0, c));
+    } // end of block
+
+    { // isSymmetric(double)とisSymmetric(double, ForkJoinPool)の動作確認
+      Random random = new Random(20);
+      ForkJoinPool pool = new ForkJoinPool(3);
+      for (int n : new int[] {1, 2, 33, 300}) {
+        double[][] m = new double[n][n];
+        for (int i = 0; i < n; i++) {
+          for (int j = 0; j <= i; j++) {
+            m[i][j] = m[j][i] = random.nextDouble() - 0.5;
+          }
+        }
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          DoubleMatrix a = DoubleMatrix.from(m, layout);
+          assert a.isSymmetric() && a.isSymmetric(0) && a.isSymmetric(0, pool);
+          assert a.trsView().isSymmetric(0, pool);
+          if (n == 1) {
+            continue;
+          }
+
+          // 最後のタイルの成分の組だけをわずかにずらす
+          double v = a.get(n - 2, n - 1);
+          a.set(n - 2, n - 1, v + 1e-12);
+          assert !a.isSymmetric() && !a.isSymmetric(1e-13) && !a.isSymmetric(1e-13, pool);
+          assert a.isSymmetric(1e-9) && a.isSymmetric(1e-9, pool);
+          assert !a.trsView().isSymmetric() && a.trsView().isSymmetric(1e-9, pool);
+          a.set(n - 2, n - 1, Double.NaN).set(n - 1, n - 2, Double.NaN);
+          assert !a.isSymmetric(Double.MAX_VALUE) && !a.isSymmetric(Double.MAX_VALUE, pool);
+          a.set(n - 2, n - 1, Double.POSITIVE_INFINITY).set(n - 1, n - 2, Double.POSITIVE_INFINITY);
+          assert a.isSymmetric() && a.isSymmetric(1, pool);
+          a.close();
+        }
+      }
+      pool.shutdown();
+
+      DoubleMatrix b = DoubleMatrix.from(new double[][] {{1, 2, 3}, {2, 1, 2}});
+      assert !b.isSymmetric() && !b.isSymmetric(10);
+      assert !b.isSymmetric(10, ForkJoinPool.commonPool());
+      Test.assertThrows(
+          IllegalArgumentException.class, "b.isSymmetric(-1e-9)", () -> b.isSymmetric(-1e-9));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "b.isSymmetric(Double.NaN, ForkJoinPool.commonPool())",
+          () -> b.isSymmetric(Double.NaN, ForkJoinPool.commonPool()));
+    } // end of block
+
+    { // solve(DoubleMatrix)，determinant()，inverse()の動作確認
+      Random random = new Random(21);
+      // ブロック化して分解する次数(LuDecomposition.UNBLOCKED_ORDERより大きく，BLOCKで割り切れない)を含める
+      for (int n : new int[] {1, 3, 65, 200, 600}) {
+        double[][] m = new double[n][n];
+        double[][] r = new double[n][5];
+        for (int i = 0; i < n; i++) {
+          for (int j = 0; j < n; j++) {
+            m[i][j] = random.nextDouble() - 0.5;
+          }
+          for (int j = 0; j < 5; j++) {
+            r[i][j] = random.nextDouble() - 0.5;
+          }
+        }
+        DoubleMatrix identity = DoubleMatrix.createIdentityMatrix(n);
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          DoubleMatrix a = DoubleMatrix.from(m, layout);
+          DoubleMatrix b = DoubleMatrix.from(r, layout);
+          DoubleMatrix x = a.solve(b);
+          assert x.layout() == layout && x.rows() == n && x.columns() == 5;
+          DoubleMatrix residual = a.times(x).minus(b);
+          for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 5; j++) {
+              assert Math.abs(residual.get(i, j)) < 1e-9;
+            }
+          }
+          assert a.isEqual(DoubleMatrix.from(m));
+
+          DoubleMatrix inverse = a.inverse();
+          assert inverse.layout() == layout;
+          DoubleMatrix product = a.times(inverse).minus(identity);
+          for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+              assert Math.abs(product.get(i, j)) < 1e-9;
+            }
+          }
+
+          // 転置ビューは転置を実体化した行列と同じ結果になる
+          assert a.trsView().solve(b).isEqual(a.trs().solve(b));
+          assert a.trsView().determinant() == a.trs().determinant();
+          a.close();
+          b.close();
+        }
+      }
+
+      // 行列式(ピボット選択による行の交換の符号を含む)
+      assert DoubleMatrix.from(new double[][] {{4, 3}, {6, 3}}).determinant() == -6;
+      assert DoubleMatrix.from(new double[][] {{0, 1}, {1, 0}}).determinant() == -1;
+      assert DoubleMatrix.from(new double[][] {{0, 0, 1}, {1, 0, 0}, {0, 1, 0}}).determinant() == 1;
+      assert DoubleMatrix.of(1, 1, -2.5).determinant() == -2.5;
+      assert DoubleMatrix.createDiagonalMatrix(2, 3, 4).determinant() == 24;
+      assert DoubleMatrix.createIdentityMatrix(100).determinant() == 1;
+      assert DoubleMatrix.createIdentityMatrix(100).inverse().isEqual(
+          DoubleMatrix.createIdentityMatrix(100));
+      assert DoubleMatrix.from(new double[][] {{0, 2}, {4, 0}})
+          .solve(DoubleMatrix.createColumnVector(6, 8))
+          .isEqual(DoubleMatrix.createColumnVector(2, 3));
+      assert DoubleMatrix.from(new double[][] {{0, 2}, {4, 0}})
+          .inverse()
+          .isEqual(DoubleMatrix.from(new double[][] {{0, 0.25}, {0.5, 0}}));
+
+      // 圧縮形式の行列も密な行列と同じ結果になる
+      double[][] m = new double[40][40];
+      for (int i = 0; i < 40; i++) {
+        for (int j = 0; j <= i; j++) {
+          m[i][j] = m[j][i] = random.nextDouble() - 0.5;
+        }
+        m[i][i] += 40;
+      }
+      DoubleMatrix d = DoubleMatrix.from(m);
+      DoubleMatrix s = DoubleMatrix.createSymmetricMatrix(d, DoubleMatrix.Triangle.LOWER);
+      DoubleMatrix l = DoubleMatrix.createTriangularMatrix(d, DoubleMatrix.Triangle.LOWER);
+      assert s.solve(d).isEqual(d.solve(d));
+      assert s.inverse().isEqual(d.inverse());
+      assert s.determinant() == d.determinant();
+      assert l.inverse().isEqual(DoubleMatrix.copyOf(l, DoubleMatrix.Layout.JAGGED).inverse());
+
+      // 特異行列
+      DoubleMatrix singular = DoubleMatrix.from(new double[][] {{1, 2, 3}, {2, 4, 6}, {1, 0, 1}});
+      assert singular.determinant() == 0;
+      assert DoubleMatrix.createZeroMatrix(3, 3).determinant() == 0;
+      Test.assertThrows(
+          ArithmeticException.class,
+          "singular.solve(DoubleMatrix.createColumnVector(1, 2, 3))",
+          () -> singular.solve(DoubleMatrix.createColumnVector(1, 2, 3)));
+      Test.assertThrows(ArithmeticException.class, "singular.inverse()", () -> singular.inverse());
+
+      DoubleMatrix e = DoubleMatrix.createZeroMatrix(2, 3);
+      Test.assertThrows(ArithmeticException.class, "e.determinant()", () -> e.determinant());
+      Test.assertThrows(ArithmeticException.class, "e.inverse()", () -> e.inverse());
+      Test.assertThrows(
+          ArithmeticException.class,
+          "e.solve(DoubleMatrix.createColumnVector(1, 2))",
+          () -> e.solve(DoubleMatrix.createColumnVector(1, 2)));
+      Test.assertThrows(
+          ArithmeticException.class,
+          "singular.solve(DoubleMatrix.createColumnVector(1, 2))",
+          () -> singular.solve(DoubleMatrix.createColumnVector(1, 2)));
+    } // end of block
+
+    { // cholesky()，solvePositiveDefinite(DoubleMatrix)の動作確認
+      Random random = new Random(22);
+      ForkJoinPool pool = new ForkJoinPool(3);
+      // ブロック化して分解する次数(CholeskyDecomposition.UNBLOCKED_ORDERより大きく，BLOCKで割り切れない)を含める
+      for (int n : new int[] {1, 5, 129, 600}) {
+        // m * t^m + n * Iは対称正定値行列
+        double[][] g = new double[n][n];
+        for (int i = 0; i < n; i++) {
+          for (int j = 0; j < n; j++) {
+            g[i][j] = random.nextDouble() - 0.5;
+          }
+        }
+        DoubleMatrix m = DoubleMatrix.from(g);
+        DoubleMatrix spd = m.times(m.trs()).plus(DoubleMatrix.createIdentityMatrix(n).times(n));
+        double[][] r = new double[n][3];
+        for (int i = 0; i < n; i++) {
+          for (int j = 0; j < 3; j++) {
+            r[i][j] = random.nextDouble() - 0.5;
+          }
+        }
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          DoubleMatrix a = DoubleMatrix.copyOf(spd, layout);
+          DoubleMatrix b = DoubleMatrix.from(r, layout);
+          DoubleMatrix l = a.cholesky();
+          assert l.layout() == layout;
+          for (int i = 0; i < n; i++) {
+            assert l.get(i, i) > 0;
+            for (int j = i + 1; j < n; j++) {
+              assert l.get(i, j) == 0;
+            }
+          }
+          DoubleMatrix residual = l.times(l.trs()).minus(a);
+          for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+              assert Math.abs(residual.get(i, j)) < 1e-9 * n;
+            }
+          }
+          // 並列に計算しても各成分の計算順序は変わらない
+          assert a.cholesky(pool).isEqual(l);
+
+          DoubleMatrix x = a.solvePositiveDefinite(b);
+          assert x.layout() == layout;
+          assert a.solvePositiveDefinite(b, pool).isEqual(x);
+          DoubleMatrix lu = a.solve(b);
+          for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 3; j++) {
+              assert Math.abs(x.get(i, j) - lu.get(i, j)) < 1e-12;
+            }
+          }
+          assert a.isEqual(spd);
+          a.close();
+          b.close();
+        }
+        DoubleMatrix s = DoubleMatrix.createSymmetricMatrix(spd, DoubleMatrix.Triangle.LOWER);
+        assert s.cholesky().isEqual(spd.cholesky());
+        assert spd.trsView().cholesky().isEqual(spd.cholesky());
+      }
+      pool.shutdown();
+
+      assert DoubleMatrix.of(1, 1, 4).cholesky().isEqual(DoubleMatrix.of(1, 1, 2));
+      assert DoubleMatrix.from(new double[][] {{4, 2}, {2, 10}})
+          .cholesky()
+          .isEqual(DoubleMatrix.from(new double[][] {{2, 0}, {1, 3}}));
+      assert DoubleMatrix.from(new double[][] {{4, 2}, {2, 10}})
+          .solvePositiveDefinite(DoubleMatrix.createColumnVector(8, 4))
+          .isEqual(DoubleMatrix.createColumnVector(2, 0));
+      assert DoubleMatrix.createDiagonalMatrix(4, 9)
+          .cholesky()
+          .isEqual(DoubleMatrix.createDiagonalMatrix(2, 3));
+
+      // 対称行列でない場合，正定値ではない場合
+      DoubleMatrix indefinite = DoubleMatrix.from(new double[][] {{1, 2}, {2, 1}});
+      DoubleMatrix asymmetric = DoubleMatrix.from(new double[][] {{4, 1}, {2, 4}});
+      DoubleMatrix rectangular = DoubleMatrix.createZeroMatrix(2, 3);
+      Test.assertThrows(
+          ArithmeticException.class, "indefinite.cholesky()", () -> indefinite.cholesky());
+      Test.assertThrows(
+          ArithmeticException.class,
+          "DoubleMatrix.createZeroMatrix(3, 3).cholesky()",
+          () -> DoubleMatrix.createZeroMatrix(3, 3).cholesky());
+      Test.assertThrows(
+          ArithmeticException.class, "asymmetric.cholesky()", () -> asymmetric.cholesky());
+      Test.assertThrows(
+          ArithmeticException.class, "rectangular.cholesky()", () -> rectangular.cholesky());
+      Test.assertThrows(
+          ArithmeticException.class,
+          "indefinite.solvePositiveDefinite(DoubleMatrix.createColumnVector(1, 2))",
+          () -> indefinite.solvePositiveDefinite(DoubleMatrix.createColumnVector(1, 2)));
+      Test.assertThrows(
+          ArithmeticException.class,
+          "indefinite.solvePositiveDefinite(DoubleMatrix.createColumnVector(1, 2, 3))",
+          () -> indefinite.solvePositiveDefinite(DoubleMatrix.createColumnVector(1, 2, 3)));
+    } // end of block
+
+    { // leastSquares(DoubleMatrix)，qr()の動作確認
+      Random random = new Random(23);
+      ForkJoinPool pool = new ForkJoinPool(3);
+      // 複数のパネルに分けて分解する列数(QrDecomposition.BLOCKより大きく，BLOCKで割り切れない)を含める
+      int[][] shapes = {{1, 1}, {7, 3}, {200, 40}, {300, 70}, {70, 70}};
+      for (int[] shape : shapes) {
+        int m = shape[0];
+        int n = shape[1];
+        double[][] g = new double[m][n];
+        for (int i = 0; i < m; i++) {
+          for (int j = 0; j < n; j++) {
+            g[i][j] = random.nextDouble() - 0.5;
+          }
+        }
+        double[][] r = new double[m][2];
+        for (int i = 0; i < m; i++) {
+          for (int j = 0; j < 2; j++) {
+            r[i][j] = random.nextDouble() - 0.5;
+          }
+        }
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          DoubleMatrix a = DoubleMatrix.from(g, layout);
+          DoubleMatrix b = DoubleMatrix.from(r, layout);
+          DoubleMatrix x = a.leastSquares(b);
+          assert x.layout() == layout;
+          assert x.rows() == n && x.columns() == 2;
+
+          // 正規方程式t^a * a * x = t^a * bの解(正方行列ならa * x = bの解)と一致し，残差はaの列と直交する
+          DoubleMatrix expected = (m == n)
+              ? a.solve(b)
+              : a.trs().times(a).solvePositiveDefinite(a.trs().times(b));
+          DoubleMatrix orthogonality = a.trs().times(a.times(x).minus(b));
+          for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 2; j++) {
+              assert Math.abs(x.get(i, j) - expected.get(i, j)) < 1e-9;
+              assert Math.abs(orthogonality.get(i, j)) < 1e-10 * m;
+            }
+          }
+          // 計算量が小さい場合は行のブロックに分けずに分解する
+          assert a.leastSquares(b, pool).isEqual(x);
+
+          DoubleMatrix[] qr = a.qr();
+          DoubleMatrix q = qr[0];
+          DoubleMatrix upper = qr[1];
+          assert q.rows() == m && q.columns() == n;
+          assert upper.rows() == n && upper.columns() == n;
+          DoubleMatrix identity = q.trs().times(q);
+          DoubleMatrix product = q.times(upper);
+          for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+              assert upper.get(i, j) == 0;
+            }
+            for (int j = 0; j < n; j++) {
+              assert Math.abs(identity.get(i, j) - (i == j ? 1 : 0)) < 1e-12 * m;
+            }
+          }
+          for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+              assert Math.abs(product.get(i, j) - a.get(i, j)) < 1e-12 * m;
+            }
+          }
+          assert a.isEqual(DoubleMatrix.from(g));
+          assert a.trs().trsView().leastSquares(b).isEqual(x);
+          a.close();
+          b.close();
+        }
+      }
+
+      // 行のブロックごとに分解する(TSQR)場合も正規方程式の解と一致し，ブロックの数が同じなら並列に計算しても同じ解になる
+      double[][] tall = new double[20000][12];
+      double[] y = new double[tall.length];
+      for (int i = 0; i < tall.length; i++) {
+        for (int j = 0; j < 12; j++) {
+          tall[i][j] = random.nextDouble() - 0.5;
+        }
+        y[i] = random.nextDouble() - 0.5;
+      }
+      DoubleMatrix a = DoubleMatrix.from(tall);
+      DoubleMatrix b = DoubleMatrix.createColumnVector(y);
+      DoubleMatrix x = a.leastSquares(b);
+      DoubleMatrix parallel = a.leastSquares(b, pool);
+      DoubleMatrix normal = a.trs().times(a).solvePositiveDefinite(a.trs().times(b));
+      assert parallel.isEqual(x);
+      for (int i = 0; i < 12; i++) {
+        assert Math.abs(normal.get(i, 0) - x.get(i, 0)) < 1e-12;
+      }
+      pool.shutdown();
+
+      // 誤差のないデータに対する直線の当てはめ(y = 2 + 3 * t)
+      DoubleMatrix t = DoubleMatrix.createColumnVector(0, 1, 2, 3, 4);
+      DoubleMatrix design =
+          DoubleMatrix.combineHorizontally(DoubleMatrix.createColumnVector(1, 1, 1, 1, 1), t);
+      DoubleMatrix line = design.leastSquares(DoubleMatrix.createColumnVector(2, 5, 8, 11, 14));
+      assert Math.abs(line.get(0, 0) - 2) < 1e-12;
+      assert Math.abs(line.get(1, 0) - 3) < 1e-12;
+      DoubleMatrix mean =
+          DoubleMatrix.createColumnVector(1, 1).leastSquares(DoubleMatrix.createColumnVector(1, 3));
+      assert Math.abs(mean.get(0, 0) - 2) < 1e-12;
+
+      // 行数が列数より少ない場合，行数が異なる場合，列が一次従属である場合
+      DoubleMatrix wide = DoubleMatrix.createZeroMatrix(2, 3);
+      DoubleMatrix dependent = DoubleMatrix.from(new double[][] {{1, 0}, {2, 0}, {3, 0}});
+      Test.assertThrows(
+          ArithmeticException.class,
+          "wide.leastSquares(DoubleMatrix.createColumnVector(1, 2))",
+          () -> wide.leastSquares(DoubleMatrix.createColumnVector(1, 2)));
+      Test.assertThrows(ArithmeticException.class, "wide.qr()", () -> wide.qr());
+      Test.assertThrows(
+          ArithmeticException.class,
+          "dependent.leastSquares(DoubleMatrix.createColumnVector(1, 2))",
+          () -> dependent.leastSquares(DoubleMatrix.createColumnVector(1, 2)));
+      Test.assertThrows(
+          ArithmeticException.class,
+          "dependent.leastSquares(DoubleMatrix.createColumnVector(1, 2, 3))",
+          () -> dependent.leastSquares(DoubleMatrix.createColumnVector(1, 2, 3)));
+
+      // 列を複製した行列は，丸め誤差でRの対角成分が0dにならなくても一次従属と判定する(TSQRの場合も含む)
+      for (int m : new int[] {50, 20000}) {
+        double[][] g = new double[m][3];
+        double[] observed = new double[m];
+        for (int i = 0; i < m; i++) {
+          for (int j = 0; j < 3; j++) {
+            g[i][j] = random.nextDouble() - 0.5;
+          }
+          observed[i] = random.nextDouble() - 0.5;
+        }
+        DoubleMatrix base = DoubleMatrix.from(g);
+        DoubleMatrix duplicated =
+            DoubleMatrix.combineHorizontally(base, DoubleMatrix.createZeroMatrix(m, 1));
+        for (int i = 0; i < m; i++) {
+          duplicated.set(i, 2, g[i][0]).set(i, 3, g[i][2]);
+        }
+        DoubleMatrix rhs = DoubleMatrix.createColumnVector(observed);
+        Test.assertThrows(
+            ArithmeticException.class,
+            "duplicated.leastSquares(rhs)",
+            () -> duplicated.leastSquares(rhs));
+        ForkJoinPool tsqr = new ForkJoinPool(3);
+        Test.assertThrows(
+            ArithmeticException.class,
+            "duplicated.leastSquares(rhs, tsqr)",
+            () -> duplicated.leastSquares(rhs, tsqr));
+        tsqr.shutdown();
+        assert base.leastSquares(rhs).rows() == 3;
+      }
+    } // end of block
+
+    { // eigenvalues()，eigen()，eigen(int)の動作確認
+      Random random = new Random(24);
+      for (int n : new int[] {1, 2, 5, 60}) {
+        double[][] g = new double[n][n];
+        for (int i = 0; i < n; i++) {
+          for (int j = 0; j <= i; j++) {
+            g[i][j] = random.nextDouble() - 0.5;
+            g[j][i] = g[i][j];
+          }
+        }
+        DoubleMatrix symmetric = DoubleMatrix.from(g);
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          DoubleMatrix a = DoubleMatrix.copyOf(symmetric, layout);
+          DoubleMatrix[] full = a.eigen();
+          DoubleMatrix values = full[0];
+          DoubleMatrix z = full[1];
+          assert values.rows() == n && values.columns() == 1;
+          assert z.layout() == layout;
+          assert a.eigenvalues().isEqual(values);
+
+          // 固有値は降順，固有ベクトルは正規直交し，絶対値が最大の成分が正
+          double[] lambda = new double[n];
+          for (int i = 0; i < n; i++) {
+            lambda[i] = values.get(i, 0);
+          }
+          DoubleMatrix residual =
+              a.times(z).minus(z.times(DoubleMatrix.createDiagonalMatrix(lambda)));
+          DoubleMatrix identity = z.trs().times(z);
+          for (int j = 0; j < n; j++) {
+            assert j == 0 || values.get(j - 1, 0) >= values.get(j, 0);
+            int max = 0;
+            for (int i = 0; i < n; i++) {
+              assert Math.abs(residual.get(i, j)) < 1e-12 * n;
+              assert Math.abs(identity.get(i, j) - (i == j ? 1 : 0)) < 1e-12 * n;
+              max = Math.abs(z.get(i, j)) > Math.abs(z.get(max, j)) ? i : max;
+            }
+            assert z.get(max, j) > 0;
+          }
+
+          // 大きい方からk個の固有対は，全ての固有対の先頭のk個と一致する
+          int k = Math.max(1, n / 4);
+          DoubleMatrix[] top = a.eigen(k);
+          assert top[0].rows() == k && top[1].rows() == n && top[1].columns() == k;
+          assert top[1].layout() == layout;
+          for (int j = 0; j < k; j++) {
+            assert top[0].get(j, 0) == values.get(j, 0);
+            for (int i = 0; i < n; i++) {
+              assert Math.abs(top[1].get(i, j) - z.get(i, j)) < 1e-10;
+            }
+          }
+          assert a.isEqual(symmetric);
+          a.close();
+        }
+        assert symmetric.trsView().eigen()[1].isEqual(symmetric.eigen()[1]);
+        assert DoubleMatrix.createSymmetricMatrix(symmetric, DoubleMatrix.Triangle.LOWER)
+            .eigenvalues()
+            .isEqual(symmetric.eigenvalues());
+      }
+
+      // 固有値と固有ベクトルが明らかな行列
+      DoubleMatrix[] diagonal = DoubleMatrix.createDiagonalMatrix(1, 3, 2).eigen();
+      assert diagonal[0].isEqual(DoubleMatrix.createColumnVector(3, 2, 1));
+      assert diagonal[1].isEqual(
+          DoubleMatrix.from(new double[][] {{0, 0, 1}, {1, 0, 0}, {0, 1, 0}}));
+      DoubleMatrix[] pair = DoubleMatrix.from(new double[][] {{2, 1}, {1, 2}}).eigen();
+      double h = Math.sqrt(0.5);
+      assert Math.abs(pair[0].get(0, 0) - 3) < 1e-15 && Math.abs(pair[0].get(1, 0) - 1) < 1e-15;
+      assert Math.abs(pair[1].get(0, 0) - h) < 1e-15 && Math.abs(pair[1].get(1, 0) - h) < 1e-15;
+      assert Math.abs(pair[1].get(0, 1) - h) < 1e-15 && Math.abs(pair[1].get(1, 1) + h) < 1e-15;
+
+      // 重複する固有値でも，逆反復法で求めた固有ベクトルは正規直交する
+      DoubleMatrix q = DoubleMatrix.from(new double[][] {
+          {0.5, 0.5, 0.5, 0.5},
+          {0.5, -0.5, 0.5, -0.5},
+          {0.5, 0.5, -0.5, -0.5},
+          {0.5, -0.5, -0.5, 0.5}
+      });
+      DoubleMatrix repeated = DoubleMatrix.createSymmetricMatrix(
+          q.times(DoubleMatrix.createDiagonalMatrix(5, 5, 5, 1)).times(q.trs()),
+          DoubleMatrix.Triangle.LOWER);
+      DoubleMatrix diagonalRepeated = DoubleMatrix.createDiagonalMatrix(5, 5, 5, 1);
+      for (DoubleMatrix a : new DoubleMatrix[] {repeated, diagonalRepeated}) {
+        DoubleMatrix[] top = a.eigen(3);
+        DoubleMatrix identity = top[1].trs().times(top[1]);
+        DoubleMatrix residual = a.times(top[1]).minus(top[1].times(5));
+        for (int j = 0; j < 3; j++) {
+          assert Math.abs(top[0].get(j, 0) - 5) < 1e-14;
+          for (int i = 0; i < 4; i++) {
+            assert Math.abs(residual.get(i, j)) < 1e-13;
+          }
+          for (int i = 0; i < 3; i++) {
+            assert Math.abs(identity.get(i, j) - (i == j ? 1 : 0)) < 1e-13;
+          }
+        }
+      }
+
+      // 対称行列でない場合，正方行列でない場合，固有対の数が範囲外の場合
+      DoubleMatrix asymmetric = DoubleMatrix.from(new double[][] {{4, 1}, {2, 4}});
+      DoubleMatrix rectangular = DoubleMatrix.createZeroMatrix(2, 3);
+      DoubleMatrix square = DoubleMatrix.createIdentityMatrix(3);
+      Test.assertThrows(ArithmeticException.class, "asymmetric.eigen()", () -> asymmetric.eigen());
+      Test.assertThrows(
+          ArithmeticException.class, "asymmetric.eigenvalues()", () -> asymmetric.eigenvalues());
+      Test.assertThrows(
+          ArithmeticException.class, "rectangular.eigen(1)", () -> rectangular.eigen(1));
+      Test.assertThrows(
+          ArithmeticException.class, "rectangular.eigen(3)", () -> rectangular.eigen(3));
+      Test.assertThrows(IllegalArgumentException.class, "square.eigen(0)", () -> square.eigen(0));
+      Test.assertThrows(IllegalArgumentException.class, "square.eigen(4)", () -> square.eigen(4));
+    } // end of block
+
+    { // svd()，randomizedSvd(int, int, Random)の動作確認
+      Random random = new Random(25);
+      ForkJoinPool pool = new ForkJoinPool(3);
+      // 縦長，横長，正方行列と，QrDecomposition.BLOCKより列数が多い行列
+      int[][] shapes = {{1, 1}, {7, 3}, {3, 7}, {120, 40}, {40, 120}, {50, 50}};
+      for (int[] shape : shapes) {
+        int m = shape[0];
+        int n = shape[1];
+        int r = Math.min(m, n);
+        double[][] g = new double[m][n];
+        for (int i = 0; i < m; i++) {
+          for (int j = 0; j < n; j++) {
+            g[i][j] = random.nextDouble() - 0.5;
+          }
+        }
+        for (DoubleMatrix.Layout layout : DoubleMatrix.Layout.values()) {
+          DoubleMatrix a = DoubleMatrix.from(g, layout);
+          DoubleMatrix[] svd = a.svd();
+          DoubleMatrix u = svd[0];
+          DoubleMatrix values = svd[1];
+          DoubleMatrix v = svd[2];
+          assert u.rows() == m && u.columns() == r && u.layout() == layout;
+          assert values.rows() == r && values.columns() == 1;
+          assert v.rows() == n && v.columns() == r && v.layout() == layout;
+
+          // 特異値は降順で非負，UとVの列は正規直交し，U * Σ * t^Vはaと一致する
+          double[] sigma = new double[r];
+          for (int j = 0; j < r; j++) {
+            sigma[j] = values.get(j, 0);
+            assert sigma[j] >= 0 && (j == 0 || sigma[j - 1] >= sigma[j]);
+          }
+          DoubleMatrix reconstructed =
+              u.times(DoubleMatrix.createDiagonalMatrix(sigma)).times(v.trs());
+          for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+              assert Math.abs(reconstructed.get(i, j) - g[i][j]) < 1e-12 * r;
+            }
+          }
+          for (DoubleMatrix x : new DoubleMatrix[] {u, v}) {
+            DoubleMatrix identity = x.trs().times(x);
+            for (int i = 0; i < r; i++) {
+              for (int j = 0; j < r; j++) {
+                assert Math.abs(identity.get(i, j) - (i == j ? 1 : 0)) < 1e-12 * r;
+              }
+            }
+          }
+
+          // 特異値の2乗はt^a * aの大きい方からr個の固有値と一致する
+          DoubleMatrix eigenvalues = DoubleMatrix.createSymmetricMatrix(
+              a.trs().times(a), DoubleMatrix.Triangle.LOWER).eigenvalues();
+          for (int j = 0; j < r; j++) {
+            assert Math.abs(sigma[j] * sigma[j] - eigenvalues.get(j, 0)) < 1e-12 * n;
+          }
+          DoubleMatrix transposed = a.trsView().svd()[1];
+          for (int j = 0; j < r; j++) {
+            assert Math.abs(transposed.get(j, 0) - sigma[j]) < 1e-12 * r;
+          }
+          assert a.isEqual(DoubleMatrix.from(g));
+          a.close();
+        }
+      }
+
+      // 特異値と特異ベクトルが明らかな行列
+      DoubleMatrix[] diagonal = DoubleMatrix.createDiagonalMatrix(1, -3, 2).svd();
+      assert diagonal[0].isEqual(
+          DoubleMatrix.from(new double[][] {{0, 0, 1}, {-1, 0, 0}, {0, 1, 0}}));
+      assert diagonal[1].isEqual(DoubleMatrix.createColumnVector(3, 2, 1));
+      assert diagonal[2].isEqual(
+          DoubleMatrix.from(new double[][] {{0, 0, 1}, {1, 0, 0}, {0, 1, 0}}));
+      DoubleMatrix[] row = DoubleMatrix.createRowVector(3, 4).svd();
+      assert row[0].isEqual(DoubleMatrix.createColumnVector(1));
+      assert Math.abs(row[1].get(0, 0) - 5) < 1e-15;
+      assert Math.abs(row[2].get(0, 0) - 0.6) < 1e-15 && Math.abs(row[2].get(1, 0) - 0.8) < 1e-15;
+
+      // 階数が列数より小さい行列(階数6)でも，特異値0dに対する特異ベクトルを含めて正規直交する
+      double[][] p = new double[300][6];
+      double[][] q = new double[6][40];
+      for (double[] x : p) {
+        for (int j = 0; j < x.length; j++) {
+          x[j] = random.nextDouble() - 0.5;
+        }
+      }
+      for (double[] x : q) {
+        for (int j = 0; j < x.length; j++) {
+          x[j] = random.nextDouble() - 0.5;
+        }
+      }
+      DoubleMatrix lowRank = DoubleMatrix.from(p).times(DoubleMatrix.from(q));
+      DoubleMatrix[] full = lowRank.svd();
+      for (DoubleMatrix x : new DoubleMatrix[] {full[0], full[2]}) {
+        DoubleMatrix identity = x.trs().times(x);
+        for (int i = 0; i < 40; i++) {
+          for (int j = 0; j < 40; j++) {
+            assert Math.abs(identity.get(i, j) - (i == j ? 1 : 0)) < 1e-12;
+          }
+        }
+      }
+      for (int j = 6; j < 40; j++) {
+        assert full[1].get(j, 0) < 1e-12 * full[1].get(0, 0);
+      }
+      // 零空間が全ての座標に均等に広がる行列(K5のグラフラプラシアン，零空間は(1, 1, 1, 1, 1)方向)
+      double[][] k5 = new double[5][5];
+      for (int i = 0; i < 5; i++) {
+        for (int j = 0; j < 5; j++) {
+          k5[i][j] = (i == j) ? 4 : -1;
+        }
+      }
+      DoubleMatrix laplacian = DoubleMatrix.from(k5);
+      DoubleMatrix[] complete = laplacian.svd();
+      for (int j = 0; j < 4; j++) {
+        assert Math.abs(complete[1].get(j, 0) - 5) < 1e-13;
+      }
+      assert complete[1].get(4, 0) < 1e-13;
+      for (DoubleMatrix x : new DoubleMatrix[] {complete[0], complete[2]}) {
+        DoubleMatrix identity = x.trs().times(x);
+        for (int i = 0; i < 5; i++) {
+          for (int j = 0; j < 5; j++) {
+            assert Math.abs(identity.get(i, j) - (i == j ? 1 : 0)) < 1e-13;
+          }
+        }
+      }
+      for (int i = 0; i < 5; i++) {
+        assert Math.abs(Math.abs(complete[2].get(i, 4)) - Math.sqrt(0.2)) < 1e-13;
+      }
+      DoubleMatrix zero = DoubleMatrix.createZeroMatrix(3, 2);
+      assert zero.svd()[1].isEqual(DoubleMatrix.createZeroMatrix(2, 1));
+
+      // 階数がk以下の行列では，乱択アルゴリズムの結果はsvd()の先頭のk個の特異対と一致する
+      for (DoubleMatrix a : new DoubleMatrix[] {lowRank, lowRank.trs()}) {
+        DoubleMatrix[] exact = a.svd();
+        DoubleMatrix[][] approximations = {
+            a.randomizedSvd(6, 0, new Random(1)),
+            a.randomizedSvd(6, 2, new Random(2), pool),
+            a.randomizedSvd(1, 1, new Random(3))
+        };
+        for (DoubleMatrix[] approximation : approximations) {
+          int k = approximation[1].rows();
+          assert approximation[0].rows() == a.rows() && approximation[0].columns() == k;
+          assert approximation[2].rows() == a.columns() && approximation[2].columns() == k;
+          double scale = exact[1].get(0, 0);
+          for (int j = 0; j < k; j++) {
+            assert Math.abs(approximation[1].get(j, 0) - exact[1].get(j, 0)) < 1e-12 * scale;
+            for (int i = 0; i < a.rows(); i++) {
+              assert Math.abs(approximation[0].get(i, j) - exact[0].get(i, j)) < 1e-9;
+            }
+            for (int i = 0; i < a.columns(); i++) {
+              assert Math.abs(approximation[2].get(i, j) - exact[2].get(i, j)) < 1e-9;
+            }
+          }
+        }
+      }
+
+      // OFF_HEAP形式の行列でも結果は同じ(途中の結果はヒープ上に確保される)
+      try (DoubleMatrix offHeap = DoubleMatrix.copyOf(lowRank, DoubleMatrix.Layout.OFF_HEAP)) {
+        DoubleMatrix[] approximation = offHeap.randomizedSvd(6, 1, new Random(4), pool);
+        assert approximation[0].layout() == DoubleMatrix.Layout.OFF_HEAP;
+        double scale = full[1].get(0, 0);
+        for (int j = 0; j < 6; j++) {
+          assert Math.abs(approximation[1].get(j, 0) - full[1].get(j, 0)) < 1e-12 * scale;
+        }
+        approximation[0].close();
+        approximation[2].close();
+      }
+      pool.shutdown();
+
+      // 特異対の数やべき乗反復の回数が範囲外の場合
+      DoubleMatrix wide = DoubleMatrix.createZeroMatrix(2, 3);
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "wide.randomizedSvd(0, 0, new Random())",
+          () -> wide.randomizedSvd(0, 0, new Random()));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "wide.randomizedSvd(3, 0, new Random())",
+          () -> wide.randomizedSvd(3, 0, new Random()));
+      Test.assertThrows(
+          IllegalArgumentException.class,
+          "wide.randomizedSvd(1, -1, new Random())",
+          () -> wide.randomizedSvd(1, -1, new Random()));
+    } // end of block
+
     System.err.println();
     System.err.println("テスト完了");
   } // end of main()
@@ -0,0 +1,132 @@
+/**
+ * DoubleMatrixの成分を保持する記憶域を表す抽象クラスです。<br>
+ * DoubleMatrixは成分の読み書きを全てこのクラスを介して行います。<br>
+ * <br>
+ * 行単位で連続した配列として成分を保持している記憶域は，hasRowArrays()がtrueを返し，<br>
+ * rowArray(i)とrowOffset(i)によって第i行の先頭位置を公開します。<br>
+ * 行列演算の高速な経路は，この情報を使って配列を直接走査します。
+ */
+abstract class DoubleStorage {
+
+  /** この記憶域の行数を表します。 */
+  final int rows;
+
+  /** この記憶域の列数を表します。 */
+  final int columns;
+
+  /**
+   * 型がrows * columnsの記憶域を初期化します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   */
+  DoubleStorage(int rows, int columns) {
+    this.rows = rows;
+    this.columns = columns;
+  }
+
+  /**
+   * (i, j)成分を取得します。
+   *
+   * @param i i
+   * @param j j
+   * @return (i, j)成分の値
+   * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+   */
+  abstract double get(int i, int j);
+
+  /**
+   * (i, j)成分を指定された値に置き換えます。
+   *
+   * @param i i
+   * @param j j
+   * @param entry 格納される値
+   * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+   */
+  abstract void set(int i, int j, double entry);
+
+  /**
+   * 行の入れ替えを行います。
+   *
+   * @param i1 任意の行番号
+   * @param i2 任意の行番号
+   * @throws ArrayIndexOutOfBoundsException i1またはi2の値が不正な添え字の場合
+   */
+  abstract void swapRows(int i1, int i2);
+
+  /**
+   * この記憶域の完全なコピーを生成します。
+   *
+   * @return コピーされた記憶域
+   */
+  abstract DoubleStorage copy();
+
+  /**
+   * この記憶域と同じ形式で，型がrows * columnsの成分が全て0dの記憶域を生成します。<br>
+   * 演算結果を格納する記憶域の確保に使用されます。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @return 新しい記憶域
+   */
+  abstract DoubleStorage allocate(int rows, int columns);
+
+  /**
+   * この記憶域がビューであれば，実際に成分を保持している元の記憶域を返します。ビューでなければthisを返します。
+   *
+   * @return 成分を保持している記憶域
+   */
+  DoubleStorage unwrap() {
+    return this;
+  }
+
+  /**
+   * この記憶域とotherが成分を保持する領域を共有している可能性があるならtrueを返します。<br>
+   * 結果の格納先と入力が重なっていると正しく計算できない演算で，重なりを検出するために使用します。
+   *
+   * @param other 任意の記憶域
+   * @return 領域を共有している可能性があるならtrue
+   */
+  boolean overlaps(DoubleStorage other) {
+    return (this == other.unwrap());
+  }
+
+  /**
+   * この記憶域の形式を返します。
+   *
+   * @return 記憶域の形式
+   */
+  abstract DoubleMatrix.Layout layout();
+
+  /**
+   * 成分を行単位で連続した配列として保持しているならtrueを返します。
+   *
+   * @return rowArray(i)とrowOffset(i)が使用できるならtrue
+   */
+  boolean hasRowArrays() {
+    return false;
+  }
+
+  /**
+   * 第i行の成分を保持している配列を返します。<br>
+   * 第i行の(i, j)成分は，rowArray(i)[rowOffset(i) + j]に格納されています。
+   *
+   * @param i 行番号
+   * @return 第i行の成分を保持している配列
+   * @throws UnsupportedOperationException 行単位でアクセスできない記憶域の場合
+   */
+  double[] rowArray(int i) {
+    throw (new UnsupportedOperationException());
+  }
+
+  /**
+   * rowArray(i)の中で第i行の先頭成分が格納されている位置を返します。
+   *
+   * @param i 行番号
+   * @return 第i行の先頭成分の位置
+   * @throws UnsupportedOperationException 行単位でアクセスできない記憶域の場合
+   */
+  int rowOffset(int i) {
+    throw (new UnsupportedOperationException());
+  }
+}
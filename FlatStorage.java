@@ -0,0 +1,141 @@
+/**
+ * 1つの連続したdouble型配列に行優先(row-major)で成分を保持する記憶域です。<br>
+ * (i, j)成分はdata[offset + i * stride + j]に格納されます。<br>
+ * 全ての行が1つの配列に隣接して並ぶため，行をまたいで走査する演算でもキャッシュの局所性が保たれます。
+ */
+final class FlatStorage extends DoubleStorage {
+
+  /** 成分を保持する配列です。 */
+  private final double[] data;
+
+  /** 配列の中で(0, 0)成分が格納されている位置です。 */
+  private final int offset;
+
+  /** 配列の中で隣接する行の先頭同士の距離(行ストライド)です。 */
+  private final int stride;
+
+  /**
+   * 既存の配列を記憶域として使用します。
+   *
+   * @param data 成分を保持する配列
+   * @param offset (0, 0)成分の位置
+   * @param stride 行ストライド
+   * @param rows 行数
+   * @param columns 列数
+   */
+  FlatStorage(double[] data, int offset, int stride, int rows, int columns) {
+    super(rows, columns);
+    this.data = data;
+    this.offset = offset;
+    this.stride = stride;
+  }
+
+  /**
+   * 型がrows * columnsで成分の値が全て0dの記憶域を生成します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @throws IllegalArgumentException 成分の数が1つの配列に収まらない場合
+   */
+  FlatStorage(int rows, int columns) {
+    this(new double[checkedLength(rows, columns)], 0, columns, rows, columns);
+  }
+
+  /**
+   * rows * columnsを計算し，1つの配列に収まることを確認します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @return rows * columns
+   * @throws IllegalArgumentException 成分の数が1つの配列に収まらない場合
+   */
+  private static int checkedLength(int rows, int columns) {
+    long length = (long) rows * columns;
+    if (length > Integer.MAX_VALUE) {
+      throw (new IllegalArgumentException(
+          String.format("成分の数が多すぎるため，FLAT形式で保持できません: %d * %d", rows, columns)));
+    }
+    return (int) length;
+  }
+
+  /**
+   * (i, j)が添え字の範囲内にあるかを確認します。
+   *
+   * @param i i
+   * @param j j
+   * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+   */
+  private void checkIndex(int i, int j) {
+    if (i < 0 || i >= this.rows || j < 0 || j >= this.columns) {
+      throw (new ArrayIndexOutOfBoundsException(
+          String.format("添え字が範囲外です: (%d,%d)", i, j)));
+    }
+  }
+
+  @Override
+  double get(int i, int j) {
+    checkIndex(i, j);
+    return this.data[this.offset + i * this.stride + j];
+  }
+
+  @Override
+  void set(int i, int j, double entry) {
+    checkIndex(i, j);
+    this.data[this.offset + i * this.stride + j] = entry;
+  }
+
+  @Override
+  void swapRows(int i1, int i2) {
+    checkIndex(i1, 0);
+    checkIndex(i2, 0);
+
+    int p1 = this.offset + i1 * this.stride;
+    int p2 = this.offset + i2 * this.stride;
+    for (int j = 0; j < this.columns; j++) {
+      double tmp = this.data[p1 + j];
+      this.data[p1 + j] = this.data[p2 + j];
+      this.data[p2 + j] = tmp;
+    }
+  }
+
+  @Override
+  DoubleStorage copy() {
+    FlatStorage result = new FlatStorage(this.rows, this.columns);
+    for (int i = 0; i < this.rows; i++) {
+      System.arraycopy(
+          this.data, this.offset + i * this.stride, result.data, i * this.columns, this.columns);
+    }
+    return result;
+  }
+
+  @Override
+  DoubleStorage allocate(int rows, int columns) {
+    return (new FlatStorage(rows, columns));
+  }
+
+  @Override
+  boolean overlaps(DoubleStorage other) {
+    DoubleStorage storage = other.unwrap();
+    return (storage instanceof FlatStorage && ((FlatStorage) storage).data == this.data);
+  }
+
+  @Override
+  DoubleMatrix.Layout layout() {
+    return DoubleMatrix.Layout.FLAT;
+  }
+
+  @Override
+  boolean hasRowArrays() {
+    return true;
+  }
+
+  @Override
+  double[] rowArray(int i) {
+    return this.data;
+  }
+
+  @Override
+  int rowOffset(int i) {
+    return this.offset + i * this.stride;
+  }
+}
@@ -0,0 +1,509 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 行列積C += alpha * A * Bをキャッシュブロッキングによって計算するカーネルです。<br>
+ * <br>
+ * Aの行ブロック(MC * KC)とBのパネル(KC * NC)をそれぞれ連続した作業領域へ詰め直し(パッキング)，<br>
+ * MR * NRの小行列ごとにCの成分をローカル変数(レジスタ)に保持したまま内積を蓄積します。alphaはAのパッキング時に乗算します。<br>
+ * AまたはBが転置ビューの場合は，元の記憶域を行方向に読み出しながら詰め直すため，転置を実体化する必要はありません。<br>
+ * 作業領域はスレッドごとに保持して再利用するため，2回目以降の呼び出しではヒープへの割り当てが発生しません。<br>
+ * ブロックの大きさはL1/L2/L3キャッシュの容量から決定されます。容量は以下のシステムプロパティで上書きできます(単位はバイト)。
+ *
+ * <ul>
+ *   <li>doublematrix.cache.l1 (既定値 32768)
+ *   <li>doublematrix.cache.l2 (既定値 262144)
+ *   <li>doublematrix.cache.l3 (既定値 8388608)
+ * </ul>
+ *
+ * Cの各成分への加算はkの昇順に行われるため，計算結果は単純な三重ループで計算した場合と一致します。<br>
+ * <br>
+ * multiply(double, DoubleStorage, DoubleStorage, DoubleStorage, ForkJoinPool)は，Cを行ブロックに分割して<br>
+ * 指定されたForkJoinPool上で並列に計算します。各タスクはCの互いに素な行だけを更新するため，同期は不要です。
+ */
+final class Gemm {
+
+  /** マイクロカーネルが一度に計算するCの行数です。 */
+  static final int MR = 4;
+
+  /** マイクロカーネルが一度に計算するCの列数です。 */
+  static final int NR = 4;
+
+  /** Aのブロックとパネルが共有する次元(k方向)の大きさです。MR行とNR列の細長いパネルがL1の半分に収まるように決定されます。 */
+  static final int KC;
+
+  /** Aのブロックの行数です。MC * KCのブロックがL2の半分に収まるように決定されます。 */
+  static final int MC;
+
+  /** Bのパネルの列数です。KC * NCのパネルがL3の半分に収まるように決定されます。 */
+  static final int NC;
+
+  /** m * n * kがこの値未満の行列積は，ブロッキングの準備に見合わないため単純なループで計算します。 */
+  static final long SMALL_THRESHOLD = 32L * 32 * 32;
+
+  /** m * n * kがこの値未満の行列積は，タスクの生成に見合わないため並列化せずに計算します。 */
+  static final long PARALLEL_THRESHOLD = 128L * 128 * 128;
+
+  static {
+    long l1 = Long.getLong("doublematrix.cache.l1", 32L * 1024);
+    long l2 = Long.getLong("doublematrix.cache.l2", 256L * 1024);
+    long l3 = Long.getLong("doublematrix.cache.l3", 8L * 1024 * 1024);
+
+    KC = (int) Math.max(16, Math.min(1024, l1 / 2 / (Double.BYTES * (MR + NR))));
+    MC = (int) Math.max(MR, Math.min(4096, l2 / 2 / (Double.BYTES * KC)) / MR * MR);
+    NC = (int) Math.max(NR, Math.min(16384, l3 / 2 / (Double.BYTES * KC)) / NR * NR);
+  }
+
+  /** スレッドごとに保持するAのブロックのパッキング用の作業領域です。 */
+  private static final ThreadLocal<double[]> PACKED_A =
+      ThreadLocal.withInitial(() -> new double[0]);
+
+  /** スレッドごとに保持するBのパネルのパッキング用の作業領域です。 */
+  private static final ThreadLocal<double[]> PACKED_B =
+      ThreadLocal.withInitial(() -> new double[0]);
+
+  private Gemm() {}
+
+  /**
+   * スレッドごとの作業領域を，少なくともlength個の成分を格納できる大きさで返します。
+   *
+   * @param workspace 作業領域
+   * @param length 必要な成分の数
+   * @return 作業領域
+   */
+  private static double[] workspace(ThreadLocal<double[]> workspace, int length) {
+    double[] result = workspace.get();
+    if (result.length < length) {
+      result = new double[length];
+      workspace.set(result);
+    }
+    return result;
+  }
+
+  /**
+   * ブロッキングを行う価値がある大きさの行列積ならtrueを返します。
+   *
+   * @param m Cの行数
+   * @param n Cの列数
+   * @param k Aの列数(Bの行数)
+   * @return ブロッキングを行うべきならtrue
+   */
+  static boolean isWorthBlocking(int m, int n, int k) {
+    return ((long) m * n * k >= SMALL_THRESHOLD);
+  }
+
+  /**
+   * Cの第i0行から第(i1 - 1)行までについて，C += alpha * A * Bを計算します。<br>
+   * Cは行単位でアクセスできる記憶域でなければなりません。AとBは任意の記憶域で構いません。
+   *
+   * @param alpha A * Bに乗算する値
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   * @param i0 計算する最初の行
+   * @param i1 計算する最後の行の次の行
+   */
+  static void multiply(
+      double alpha, DoubleStorage a, DoubleStorage b, DoubleStorage c, int i0, int i1) {
+    final int n = b.columns;
+    final int k = a.columns;
+    final int mc = Math.min(MC, roundUp(i1 - i0, MR));
+    final int nc = Math.min(NC, roundUp(n, NR));
+    final int kc = Math.min(KC, k);
+
+    double[] packedA = workspace(PACKED_A, mc * kc);
+    double[] packedB = workspace(PACKED_B, kc * nc);
+
+    for (int jc = 0; jc < n; jc += NC) {
+      int nb = Math.min(NC, n - jc);
+      for (int pc = 0; pc < k; pc += KC) {
+        int kb = Math.min(KC, k - pc);
+        packB(b, pc, kb, jc, nb, packedB);
+        for (int ic = i0; ic < i1; ic += MC) {
+          int mb = Math.min(MC, i1 - ic);
+          packA(alpha, a, ic, mb, pc, kb, packedA);
+          macroKernel(mb, nb, kb, packedA, packedB, c, ic, jc);
+        }
+      }
+    }
+  }
+
+  /**
+   * C += alpha * A * Bを，Cを行ブロックに分割して指定されたForkJoinPool上で並列に計算します。<br>
+   * 行列積がPARALLEL_THRESHOLD未満の大きさの場合は，呼び出したスレッドで直列に計算します。<br>
+   * Cは行単位でアクセスできる記憶域でなければなりません。AとBは任意の記憶域で構いません。
+   *
+   * @param alpha A * Bに乗算する値
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   * @param pool 計算に使用するForkJoinPool
+   */
+  static void multiply(
+      double alpha, DoubleStorage a, DoubleStorage b, DoubleStorage c, ForkJoinPool pool) {
+    final int m = a.rows;
+    if ((long) m * b.columns * a.columns < PARALLEL_THRESHOLD || m <= MR) {
+      multiply(alpha, a, b, c, 0, m);
+      return;
+    }
+
+    // 各ワーカーに複数のタスクが行き渡るように分割し，ワークスティーリングで負荷を均す
+    int grain = roundUp(Math.max(MR, m / (pool.getParallelism() * 4)), MR);
+    pool.invoke(new MultiplyTask(alpha, a, b, c, 0, m, grain));
+  }
+
+  /** Cの行ブロックを再帰的に二分割して計算するタスクです。 */
+  private static final class MultiplyTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** A * Bに乗算する値です。 */
+    private final double alpha;
+
+    /** 左辺です。 */
+    private final DoubleStorage a;
+
+    /** 右辺です。 */
+    private final DoubleStorage b;
+
+    /** 結果の格納先です。 */
+    private final DoubleStorage c;
+
+    /** このタスクが計算する最初の行です。 */
+    private final int i0;
+
+    /** このタスクが計算する最後の行の次の行です。 */
+    private final int i1;
+
+    /** これ以下の行数になったら分割をやめて直列に計算します。 */
+    private final int grain;
+
+    MultiplyTask(
+        double alpha,
+        DoubleStorage a,
+        DoubleStorage b,
+        DoubleStorage c,
+        int i0,
+        int i1,
+        int grain) {
+      this.alpha = alpha;
+      this.a = a;
+      this.b = b;
+      this.c = c;
+      this.i0 = i0;
+      this.i1 = i1;
+      this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.i1 - this.i0 <= this.grain) {
+        multiply(this.alpha, this.a, this.b, this.c, this.i0, this.i1);
+        return;
+      }
+
+      // マイクロカーネルの行数の倍数で分割して，端数の小行列が生じる箇所を減らす
+      int mid = this.i0 + roundUp((this.i1 - this.i0) / 2, MR);
+      invokeAll(
+          new MultiplyTask(this.alpha, this.a, this.b, this.c, this.i0, mid, this.grain),
+          new MultiplyTask(this.alpha, this.a, this.b, this.c, mid, this.i1, this.grain));
+    }
+  }
+
+  /**
+   * パッキング済みのブロックとパネルを使ってCのmb * nbの領域を更新します。
+   *
+   * @param mb ブロックの行数
+   * @param nb パネルの列数
+   * @param kb 共有次元の大きさ
+   * @param packedA パッキング済みのAのブロック
+   * @param packedB パッキング済みのBのパネル
+   * @param c 結果の格納先
+   * @param ic 領域の先頭行
+   * @param jc 領域の先頭列
+   */
+  private static void macroKernel(
+      int mb,
+      int nb,
+      int kb,
+      double[] packedA,
+      double[] packedB,
+      DoubleStorage c,
+      int ic,
+      int jc) {
+    for (int jr = 0; jr < nb; jr += NR) {
+      int nr = Math.min(NR, nb - jr);
+      int pb = jr * kb;
+      for (int ir = 0; ir < mb; ir += MR) {
+        int mr = Math.min(MR, mb - ir);
+        int pa = ir * kb;
+        if (mr == MR && nr == NR) {
+          kernel4x4(kb, packedA, pa, packedB, pb, c, ic + ir, jc + jr);
+        } else {
+          kernelEdge(mr, nr, kb, packedA, pa, packedB, pb, c, ic + ir, jc + jr);
+        }
+      }
+    }
+  }
+
+  /**
+   * Cの4 * 4の小行列を16個のローカル変数に保持したまま更新するマイクロカーネルです。<br>
+   * Vector APIが使用でき，4成分のベクトルをハードウェアで直接扱える場合はVectorKernelsのベクトル版を使用します。
+   *
+   * @param kb 共有次元の大きさ
+   * @param pa Aのマイクロパネル
+   * @param ai Aのマイクロパネルの先頭位置
+   * @param pb Bのマイクロパネル
+   * @param bi Bのマイクロパネルの先頭位置
+   * @param c 結果の格納先
+   * @param i 小行列の先頭行
+   * @param j 小行列の先頭列
+   */
+  private static void kernel4x4(
+      int kb, double[] pa, int ai, double[] pb, int bi, DoubleStorage c, int i, int j) {
+    double[] c0 = c.rowArray(i);
+    double[] c1 = c.rowArray(i + 1);
+    double[] c2 = c.rowArray(i + 2);
+    double[] c3 = c.rowArray(i + 3);
+    int o0 = c.rowOffset(i) + j;
+    int o1 = c.rowOffset(i + 1) + j;
+    int o2 = c.rowOffset(i + 2) + j;
+    int o3 = c.rowOffset(i + 3) + j;
+
+    if (RowKernels.VECTORIZED && VectorKernels.HAS_4_LANES) {
+      VectorKernels.kernel4x4(kb, pa, ai, pb, bi, c0, o0, c1, o1, c2, o2, c3, o3);
+      return;
+    }
+
+    double c00 = c0[o0], c01 = c0[o0 + 1], c02 = c0[o0 + 2], c03 = c0[o0 + 3];
+    double c10 = c1[o1], c11 = c1[o1 + 1], c12 = c1[o1 + 2], c13 = c1[o1 + 3];
+    double c20 = c2[o2], c21 = c2[o2 + 1], c22 = c2[o2 + 2], c23 = c2[o2 + 3];
+    double c30 = c3[o3], c31 = c3[o3 + 1], c32 = c3[o3 + 2], c33 = c3[o3 + 3];
+
+    for (int p = 0; p < kb; p++) {
+      double a0 = pa[ai], a1 = pa[ai + 1], a2 = pa[ai + 2], a3 = pa[ai + 3];
+      double b0 = pb[bi], b1 = pb[bi + 1], b2 = pb[bi + 2], b3 = pb[bi + 3];
+      c00 += a0 * b0;
+      c01 += a0 * b1;
+      c02 += a0 * b2;
+      c03 += a0 * b3;
+      c10 += a1 * b0;
+      c11 += a1 * b1;
+      c12 += a1 * b2;
+      c13 += a1 * b3;
+      c20 += a2 * b0;
+      c21 += a2 * b1;
+      c22 += a2 * b2;
+      c23 += a2 * b3;
+      c30 += a3 * b0;
+      c31 += a3 * b1;
+      c32 += a3 * b2;
+      c33 += a3 * b3;
+      ai += MR;
+      bi += NR;
+    }
+
+    c0[o0] = c00;
+    c0[o0 + 1] = c01;
+    c0[o0 + 2] = c02;
+    c0[o0 + 3] = c03;
+    c1[o1] = c10;
+    c1[o1 + 1] = c11;
+    c1[o1 + 2] = c12;
+    c1[o1 + 3] = c13;
+    c2[o2] = c20;
+    c2[o2 + 1] = c21;
+    c2[o2 + 2] = c22;
+    c2[o2 + 3] = c23;
+    c3[o3] = c30;
+    c3[o3 + 1] = c31;
+    c3[o3 + 2] = c32;
+    c3[o3 + 3] = c33;
+  }
+
+  /**
+   * Cの右端や下端に残ったMR * NRに満たない小行列を更新します。
+   *
+   * @param mr 小行列の行数
+   * @param nr 小行列の列数
+   * @param kb 共有次元の大きさ
+   * @param pa Aのマイクロパネル
+   * @param ai Aのマイクロパネルの先頭位置
+   * @param pb Bのマイクロパネル
+   * @param bi Bのマイクロパネルの先頭位置
+   * @param c 結果の格納先
+   * @param i 小行列の先頭行
+   * @param j 小行列の先頭列
+   */
+  private static void kernelEdge(
+      int mr,
+      int nr,
+      int kb,
+      double[] pa,
+      int ai,
+      double[] pb,
+      int bi,
+      DoubleStorage c,
+      int i,
+      int j) {
+    for (int r = 0; r < mr; r++) {
+      double[] cr = c.rowArray(i + r);
+      int co = c.rowOffset(i + r) + j;
+      for (int s = 0; s < nr; s++) {
+        double sum = cr[co + s];
+        for (int p = 0; p < kb; p++) {
+          sum += pa[ai + p * MR + r] * pb[bi + p * NR + s];
+        }
+        cr[co + s] = sum;
+      }
+    }
+  }
+
+  /**
+   * Aの(ic, pc)成分を左上とするmb * kbのブロックを，alpha倍しながらMR行ずつのマイクロパネルに詰め直します。<br>
+   * 各マイクロパネル内では，同じ列のMR個の成分が連続するように並べます。端数の行は0dで埋めます。
+   *
+   * @param alpha 乗算する値
+   * @param a 行列
+   * @param ic ブロックの先頭行
+   * @param mb ブロックの行数
+   * @param pc ブロックの先頭列
+   * @param kb ブロックの列数
+   * @param packed 格納先
+   */
+  private static void packA(
+      double alpha, DoubleStorage a, int ic, int mb, int pc, int kb, double[] packed) {
+    if (TransposedStorage.isTransposedRows(a)) {
+      packTransposedA(alpha, ((TransposedStorage) a).base, ic, mb, pc, kb, packed);
+      return;
+    }
+
+    for (int ir = 0; ir < mb; ir += MR) {
+      int mr = Math.min(MR, mb - ir);
+      int base = ir * kb;
+      for (int r = 0; r < MR; r++) {
+        if (r < mr && a.hasRowArrays()) {
+          double[] ar = a.rowArray(ic + ir + r);
+          int ao = a.rowOffset(ic + ir + r) + pc;
+          for (int p = 0; p < kb; p++) {
+            packed[base + p * MR + r] = alpha * ar[ao + p];
+          }
+        } else if (r < mr) {
+          for (int p = 0; p < kb; p++) {
+            packed[base + p * MR + r] = alpha * a.get(ic + ir + r, pc + p);
+          }
+        } else {
+          for (int p = 0; p < kb; p++) {
+            packed[base + p * MR + r] = 0;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Bの(pc, jc)成分を左上とするkb * nbのパネルを，NR列ずつのマイクロパネルに詰め直します。<br>
+   * 各マイクロパネル内では，同じ行のNR個の成分が連続するように並べます。端数の列は0dで埋めます。
+   *
+   * @param b 行列
+   * @param pc パネルの先頭行
+   * @param kb パネルの行数
+   * @param jc パネルの先頭列
+   * @param nb パネルの列数
+   * @param packed 格納先
+   */
+  private static void packB(DoubleStorage b, int pc, int kb, int jc, int nb, double[] packed) {
+    if (TransposedStorage.isTransposedRows(b)) {
+      packTransposedB(((TransposedStorage) b).base, pc, kb, jc, nb, packed);
+      return;
+    }
+
+    for (int p = 0; p < kb; p++) {
+      double[] br = b.hasRowArrays() ? b.rowArray(pc + p) : null;
+      int bo = b.hasRowArrays() ? b.rowOffset(pc + p) + jc : 0;
+      for (int jr = 0; jr < nb; jr += NR) {
+        int nr = Math.min(NR, nb - jr);
+        int base = jr * kb + p * NR;
+        for (int s = 0; s < NR; s++) {
+          if (s >= nr) {
+            packed[base + s] = 0;
+          } else if (br != null) {
+            packed[base + s] = br[bo + jr + s];
+          } else {
+            packed[base + s] = b.get(pc + p, jc + jr + s);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A = t^tのブロックをpackAと同じ並びに詰め直します。<br>
+   * Aの列はtの行なので，tを行方向に連続して読み出します。
+   *
+   * @param alpha Aに乗算する値
+   * @param t Aを転置した，行単位でアクセスできる記憶域
+   * @param ic ブロックの先頭行
+   * @param mb ブロックの行数
+   * @param pc ブロックの先頭列
+   * @param kb ブロックの列数
+   * @param packed 詰め直した結果の格納先
+   */
+  private static void packTransposedA(
+      double alpha, DoubleStorage t, int ic, int mb, int pc, int kb, double[] packed) {
+    for (int p = 0; p < kb; p++) {
+      double[] tr = t.rowArray(pc + p);
+      int to = t.rowOffset(pc + p) + ic;
+      for (int ir = 0; ir < mb; ir += MR) {
+        int mr = Math.min(MR, mb - ir);
+        int base = ir * kb + p * MR;
+        for (int r = 0; r < MR; r++) {
+          packed[base + r] = (r < mr) ? alpha * tr[to + ir + r] : 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * B = t^tのパネルをpackBと同じ並びに詰め直します。<br>
+   * Bの行はtの列なので，tを行方向に連続して読み出します。
+   *
+   * @param t Bを転置した，行単位でアクセスできる記憶域
+   * @param pc パネルの先頭行
+   * @param kb パネルの行数
+   * @param jc パネルの先頭列
+   * @param nb パネルの列数
+   * @param packed 詰め直した結果の格納先
+   */
+  private static void packTransposedB(
+      DoubleStorage t, int pc, int kb, int jc, int nb, double[] packed) {
+    for (int jr = 0; jr < nb; jr += NR) {
+      int nr = Math.min(NR, nb - jr);
+      int base = jr * kb;
+      for (int s = 0; s < NR; s++) {
+        if (s >= nr) {
+          for (int p = 0; p < kb; p++) {
+            packed[base + p * NR + s] = 0;
+          }
+          continue;
+        }
+        double[] tr = t.rowArray(jc + jr + s);
+        int to = t.rowOffset(jc + jr + s) + pc;
+        for (int p = 0; p < kb; p++) {
+          packed[base + p * NR + s] = tr[to + p];
+        }
+      }
+    }
+  }
+
+  /**
+   * xをmの倍数に切り上げます。
+   *
+   * @param x 値
+   * @param m 正の整数
+   * @return mの倍数に切り上げた値
+   */
+  private static int roundUp(int x, int m) {
+    return ((x + m - 1) / m * m);
+  }
+}
@@ -0,0 +1,77 @@
+/**
+ * double型2次元配列で成分を保持する記憶域です。<br>
+ * 各行は独立した配列なので，行の入れ替えは配列への参照を交換するだけで完了します。
+ */
+final class JaggedStorage extends DoubleStorage {
+
+  /** 行列を表すdouble型2次元配列です。 */
+  private final double[][] matrix;
+
+  /**
+   * 指定されたdouble型2次元配列をそのまま記憶域として使用します。<br>
+   * matrixが行列として解釈できることは呼び出し側で保証する必要があります。
+   *
+   * @param matrix 行列を表すdouble型2次元配列への参照
+   */
+  JaggedStorage(double[][] matrix) {
+    super(matrix.length, matrix[0].length);
+    this.matrix = matrix;
+  }
+
+  @Override
+  double get(int i, int j) {
+    return this.matrix[i][j];
+  }
+
+  @Override
+  void set(int i, int j, double entry) {
+    this.matrix[i][j] = entry;
+  }
+
+  @Override
+  void swapRows(int i1, int i2) {
+    double[] tmp = this.matrix[i1];
+    this.matrix[i1] = this.matrix[i2];
+    this.matrix[i2] = tmp;
+  }
+
+  @Override
+  DoubleStorage copy() {
+    double[][] result = new double[this.rows][];
+    for (int i = 0; i < this.rows; i++) {
+      result[i] = this.matrix[i].clone();
+    }
+    return (new JaggedStorage(result));
+  }
+
+  @Override
+  DoubleStorage allocate(int rows, int columns) {
+    return (new JaggedStorage(new double[rows][columns]));
+  }
+
+  @Override
+  boolean overlaps(DoubleStorage other) {
+    DoubleStorage storage = other.unwrap();
+    return (storage instanceof JaggedStorage && ((JaggedStorage) storage).matrix == this.matrix);
+  }
+
+  @Override
+  DoubleMatrix.Layout layout() {
+    return DoubleMatrix.Layout.JAGGED;
+  }
+
+  @Override
+  boolean hasRowArrays() {
+    return true;
+  }
+
+  @Override
+  double[] rowArray(int i) {
+    return this.matrix[i];
+  }
+
+  @Override
+  int rowOffset(int i) {
+    return 0;
+  }
+}
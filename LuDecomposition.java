@@ -0,0 +1,259 @@
+/**
+ * 正方行列Aを，部分ピボット選択付きのブロック化したLU分解でP * A = L * Uに分解した結果です。<br>
+ * Lは対角成分が1の下三角行列，Uは上三角行列，Pは行の置換を表します。<br>
+ * <br>
+ * 分解は右方向(right-looking)に進みます。BLOCK列ずつのパネルを列ごとの消去で分解した後，<br>
+ * Uの行ブロックを前進代入で求め，残りの部分行列(トレイリング行列)からL21 * U12を引きます。<br>
+ * 計算量の大部分を占めるトレイリング行列の更新は，部分行列のビューに対するGemmで計算されます。<br>
+ * ピボット選択による行の交換は記憶域のswapRowsで行うため，JAGGED形式では行の参照を交換するだけで完了します。<br>
+ * <br>
+ * 分解の途中でピボットが0dになった場合は，その列の消去を省略して分解を続け，特異行列として記録します。
+ */
+final class LuDecomposition {
+
+  /**
+   * パネルの列数(ブロックの大きさ)です。<br>
+   * トレイリング行列の更新はk方向の大きさがBLOCKの行列積なので，小さすぎるとGemmのパッキングの割合が増え，<br>
+   * 大きすぎると列ごとの消去で分解するパネルの計算量が増えます。
+   */
+  static final int BLOCK = 128;
+
+  /**
+   * 次数がこの値以下の行列は，ブロック化せずに行列全体を1つのパネルとして分解します。<br>
+   * 行列全体がキャッシュに収まる大きさでは，行ごとのaxpyで消去する方がGemmの準備の分だけ高速です。
+   */
+  static final int UNBLOCKED_ORDER = 512;
+
+  /** 分解の結果です。下三角部分(対角成分を除く)にL，上三角部分にUを保持します。 */
+  private final DoubleStorage lu;
+
+  /** 分解後の第i行が，元の行列の第pivot[i]行であることを表します。 */
+  private final int[] pivot;
+
+  /** 行の置換の符号です(交換の回数が偶数なら1，奇数なら-1)。 */
+  private int sign = 1;
+
+  /** 分解の途中でピボットが0dになったならtrueです。 */
+  private boolean singular;
+
+  /**
+   * 分解する記憶域を保持します。
+   *
+   * @param lu 分解する記憶域
+   */
+  private LuDecomposition(DoubleStorage lu) {
+    this.lu = lu;
+    this.pivot = new int[lu.rows];
+    for (int i = 0; i < lu.rows; i++) {
+      this.pivot[i] = i;
+    }
+  }
+
+  /**
+   * 行単位でアクセスできる正方行列の記憶域aを，その場でLU分解します。aの成分は分解の結果で上書きされます。
+   *
+   * @param a 正方行列の記憶域
+   * @return 分解の結果
+   */
+  static LuDecomposition factor(DoubleStorage a) {
+    LuDecomposition result = new LuDecomposition(a);
+    final int n = a.rows;
+    final int block = (n <= UNBLOCKED_ORDER) ? n : BLOCK;
+    for (int k0 = 0; k0 < n; k0 += block) {
+      final int k1 = Math.min(k0 + block, n);
+      result.factorPanel(k0, k1);
+      if (k1 < n) {
+        result.solveRowBlock(k0, k1);
+        // A22 -= L21 * U12
+        ScalarKernels.multiply(
+            -1,
+            new SubmatrixStorage(a, k1, k0, n - k1, k1 - k0),
+            new SubmatrixStorage(a, k0, k1, k1 - k0, n - k1),
+            new SubmatrixStorage(a, k1, k1, n - k1, n - k1));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 第k0列から第(k1 - 1)列まで，第k0行以降のパネルを，部分ピボット選択付きの列ごとの消去で分解します。<br>
+   * ピボット選択による行の交換は，Lの部分とトレイリング行列の部分を含む行全体に対して行います。
+   *
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   */
+  private void factorPanel(int k0, int k1) {
+    final DoubleStorage a = this.lu;
+    final int n = a.rows;
+    for (int j = k0; j < k1; j++) {
+      int p = j;
+      double max = Math.abs(a.rowArray(j)[a.rowOffset(j) + j]);
+      for (int i = j + 1; i < n; i++) {
+        double v = Math.abs(a.rowArray(i)[a.rowOffset(i) + j]);
+        if (v > max) {
+          p = i;
+          max = v;
+        }
+      }
+      if (p != j) {
+        a.swapRows(p, j);
+        int tmp = this.pivot[p];
+        this.pivot[p] = this.pivot[j];
+        this.pivot[j] = tmp;
+        this.sign = -this.sign;
+      }
+
+      double[] jr = a.rowArray(j);
+      int jo = a.rowOffset(j);
+      double d = jr[jo + j];
+      if (d == 0) {
+        // この列より下の成分も全て0dなので，消去は不要
+        this.singular = true;
+        continue;
+      }
+      for (int i = j + 1; i < n; i++) {
+        double[] ir = a.rowArray(i);
+        int io = a.rowOffset(i);
+        double l = ir[io + j] / d;
+        ir[io + j] = l;
+        ScalarKernels.axpy(-l, jr, jo + j + 1, ir, io + j + 1, k1 - j - 1);
+      }
+    }
+  }
+
+  /**
+   * 分解したパネルの対角ブロックL11を使って，第k0行から第(k1 - 1)行までの第k1列以降をU12 = L11^-1 * A12で上書きします。
+   *
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   */
+  private void solveRowBlock(int k0, int k1) {
+    final DoubleStorage a = this.lu;
+    final int n = a.rows;
+    for (int i = k0 + 1; i < k1; i++) {
+      double[] ir = a.rowArray(i);
+      int io = a.rowOffset(i);
+      for (int p = k0; p < i; p++) {
+        ScalarKernels.axpy(-ir[io + p], a.rowArray(p), a.rowOffset(p) + k1, ir, io + k1, n - k1);
+      }
+    }
+  }
+
+  /**
+   * 分解の途中でピボットが0dになった(元の行列が特異行列である)ならtrueを返します。
+   *
+   * @return 特異行列ならtrue
+   */
+  boolean isSingular() {
+    return this.singular;
+  }
+
+  /**
+   * 元の行列の行列式を返します。特異行列の場合は0dを返します。<br>
+   * 行列式はUの対角成分の積なので，次数が大きい場合は無限大や0dに丸められることがあります。
+   *
+   * @return 行列式
+   */
+  double determinant() {
+    if (this.singular) {
+      return 0;
+    }
+    double result = this.sign;
+    for (int i = 0; i < this.lu.rows; i++) {
+      result *= this.lu.rowArray(i)[this.lu.rowOffset(i) + i];
+    }
+    return result;
+  }
+
+  /**
+   * bの行を分解時の置換に従って並べ替え，xに格納します。xは行単位でアクセスできる記憶域でなければなりません。
+   *
+   * @param b 右辺
+   * @param x 格納先
+   */
+  void permute(DoubleStorage b, DoubleStorage x) {
+    for (int i = 0; i < x.rows; i++) {
+      double[] xr = x.rowArray(i);
+      int xo = x.rowOffset(i);
+      int p = this.pivot[i];
+      if (b.hasRowArrays()) {
+        System.arraycopy(b.rowArray(p), b.rowOffset(p), xr, xo, x.columns);
+      } else {
+        for (int j = 0; j < x.columns; j++) {
+          xr[xo + j] = b.get(p, j);
+        }
+      }
+    }
+  }
+
+  /**
+   * 単位行列の行を分解時の置換に従って並べ替えた行列(P)を，xに格納します。<br>
+   * xは行単位でアクセスできる，成分が全て0dの記憶域でなければなりません。
+   *
+   * @param x 格納先
+   */
+  void permuteIdentity(DoubleStorage x) {
+    for (int i = 0; i < x.rows; i++) {
+      x.rowArray(i)[x.rowOffset(i) + this.pivot[i]] = 1;
+    }
+  }
+
+  /**
+   * permuteで並べ替えた右辺xについて，L * U * X = xを解き，xをXで上書きします。<br>
+   * 前進代入と後退代入はBLOCK行ずつ行い，ブロックの外側への寄与はGemmで計算します。<br>
+   * 特異行列の場合は呼び出してはいけません。
+   *
+   * @param x 並べ替えた右辺(行単位でアクセスできる記憶域)
+   */
+  void solve(DoubleStorage x) {
+    final int n = this.lu.rows;
+    final int m = x.columns;
+    final DoubleStorage a = this.lu;
+
+    // L * Y = x(Lの対角成分は1)
+    for (int k0 = 0; k0 < n; k0 += BLOCK) {
+      final int k1 = Math.min(k0 + BLOCK, n);
+      for (int i = k0 + 1; i < k1; i++) {
+        double[] ar = a.rowArray(i);
+        int ao = a.rowOffset(i);
+        double[] xr = x.rowArray(i);
+        int xo = x.rowOffset(i);
+        for (int p = k0; p < i; p++) {
+          ScalarKernels.axpy(-ar[ao + p], x.rowArray(p), x.rowOffset(p), xr, xo, m);
+        }
+      }
+      if (k1 < n) {
+        ScalarKernels.multiply(
+            -1,
+            new SubmatrixStorage(a, k1, k0, n - k1, k1 - k0),
+            new SubmatrixStorage(x, k0, 0, k1 - k0, m),
+            new SubmatrixStorage(x, k1, 0, n - k1, m));
+      }
+    }
+
+    // U * X = Y
+    for (int k0 = (n - 1) / BLOCK * BLOCK; k0 >= 0; k0 -= BLOCK) {
+      final int k1 = Math.min(k0 + BLOCK, n);
+      for (int i = k1 - 1; i >= k0; i--) {
+        double[] ar = a.rowArray(i);
+        int ao = a.rowOffset(i);
+        double[] xr = x.rowArray(i);
+        int xo = x.rowOffset(i);
+        for (int p = i + 1; p < k1; p++) {
+          ScalarKernels.axpy(-ar[ao + p], x.rowArray(p), x.rowOffset(p), xr, xo, m);
+        }
+        double d = ar[ao + i];
+        for (int j = 0; j < m; j++) {
+          xr[xo + j] /= d;
+        }
+      }
+      if (k0 > 0) {
+        ScalarKernels.multiply(
+            -1,
+            new SubmatrixStorage(a, 0, k0, k0, k1 - k0),
+            new SubmatrixStorage(x, k0, 0, k1 - k0, m),
+            new SubmatrixStorage(x, 0, 0, k0, m));
+      }
+    }
+  }
+}
@@ -0,0 +1,263 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 行列の文字列表現が書き込まれたファイルをメモリマップし，並列に解析して読み込むローダです。<br>
+ * <br>
+ * ファイルを改行の直後で区切った複数のチャンクに分割し，次の2段階で読み込みます。
+ *
+ * <ol>
+ *   <li>各チャンクの行数を並列に数え，その累積和から各チャンクの先頭の行番号と全体の行数を求めます。
+ *   <li>行数の分だけ確保した行の配列に，各チャンクが解析した行を直接書き込みます。
+ * </ol>
+ *
+ * 各チャンクはFileChannel.map()でマップした領域を，MatrixTextParserで解析します。<br>
+ * 行の解釈とエラーメッセージの形式は，逐次的に読み込む場合と同じです。
+ */
+final class MappedMatrixLoader {
+
+  /** 1つのチャンクの最小のバイト数です。これより小さなファイルは分割しません。 */
+  private static final long MIN_CHUNK = 1L << 20;
+
+  /** 1つのチャンクの最大のバイト数の目安です。1回のFileChannel.map()でマップできる大きさに収めます。 */
+  private static final long MAX_CHUNK = 1L << 30;
+
+  /** チャンクの境界を探すときに一度に読み込むバイト数です。 */
+  private static final int PROBE_SIZE = 4096;
+
+  /** インスタンスは生成しません。 */
+  private MappedMatrixLoader() {}
+
+  /** チャンクごとに行う処理です。 */
+  @FunctionalInterface
+  private interface ChunkAction {
+    /**
+     * 第chunkチャンクに対する処理を行います。
+     *
+     * @param chunk チャンクの番号
+     * @throws IOException 入出力エラーが発生した場合
+     */
+    void run(int chunk) throws IOException;
+  }
+
+  /** チャンクの範囲を二分しながら，各チャンクに対する処理をForkJoinPool上で実行するタスクです。 */
+  private static final class ChunkTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 各チャンクに対する処理です。 */
+    private final transient ChunkAction action;
+
+    /** このタスクが担当する最初のチャンクです。 */
+    private final int lo;
+
+    /** このタスクが担当する最後のチャンクの次のチャンクです。 */
+    private final int hi;
+
+    ChunkTask(ChunkAction action, int lo, int hi) {
+      this.action = action;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.hi - this.lo == 1) {
+        try {
+          this.action.run(this.lo);
+        } catch (IOException ioe) {
+          throw (new UncheckedIOException(ioe));
+        }
+        return;
+      }
+
+      int mid = (this.lo + this.hi) >>> 1;
+      invokeAll(
+          new ChunkTask(this.action, this.lo, mid), new ChunkTask(this.action, mid, this.hi));
+    }
+  }
+
+  /** ByteBufferの内容を先頭から順に読み出すInputStreamです。 */
+  private static final class BufferInputStream extends InputStream {
+
+    /** 読み出す内容です。 */
+    private final ByteBuffer buffer;
+
+    BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return this.buffer.hasRemaining() ? (this.buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!this.buffer.hasRemaining()) {
+        return -1;
+      }
+      len = Math.min(len, this.buffer.remaining());
+      this.buffer.get(b, off, len);
+      return len;
+    }
+  }
+
+  /**
+   * filenameのファイルを，delimで区切られた行列の文字列表現として並列に読み込み，各行の成分を返します。
+   *
+   * @param filename ファイル名
+   * @param delim 区切り文字(MatrixTextParser.isLiteralDelimiter()がtrueを返す文字)
+   * @param pool 解析に使用するForkJoinPool
+   * @return 各行の成分
+   * @throws IOException 入出力エラーが発生した場合，または数値として解釈できない成分があった場合
+   */
+  static double[][] load(String filename, char delim, ForkJoinPool pool) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+      long size = channel.size();
+      long chunks = Math.min(pool.getParallelism() * 4L, size / MIN_CHUNK);
+      chunks = Math.max(Math.max(chunks, (size + MAX_CHUNK - 1) / MAX_CHUNK), 1);
+      long[] bounds = boundaries(channel, size, (int) chunks);
+
+      // 各チャンクの行数を数え，先頭の行番号を求める
+      int[] lines = new int[bounds.length - 1];
+      forEachChunk(pool, lines.length, c -> lines[c] = countLines(map(channel, bounds, c)));
+      int[] firstRows = new int[lines.length];
+      long rows = 0;
+      for (int c = 0; c < lines.length; c++) {
+        firstRows[c] = Math.toIntExact(rows);
+        rows += lines[c];
+      }
+
+      double[][] result = new double[Math.toIntExact(rows)][];
+      forEachChunk(
+          pool,
+          lines.length,
+          c ->
+              new MatrixTextParser(delim)
+                  .read(
+                      new BufferInputStream(map(channel, bounds, c)),
+                      filename,
+                      firstRows[c],
+                      (index, row) -> result[index] = row));
+      return result;
+    }
+  }
+
+  /**
+   * 第chunkチャンクの領域をメモリマップします。
+   *
+   * @param channel ファイル
+   * @param bounds チャンクの境界
+   * @param chunk チャンクの番号
+   * @return マップした領域
+   * @throws IOException 入出力エラーが発生した場合
+   */
+  private static ByteBuffer map(FileChannel channel, long[] bounds, int chunk)
+      throws IOException {
+    long position = bounds[chunk];
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, bounds[chunk + 1] - position);
+  }
+
+  /**
+   * ファイルをchunks個のほぼ等しい大きさのチャンクに分割する境界を求めます。<br>
+   * 各境界はおおよその分割位置より後にある最初の'\n'の直後です。<br>
+   * '\n'を含まない範囲では境界が後ろのチャンクと重なり，空のチャンクが生じることがあります。
+   *
+   * @param channel ファイル
+   * @param size ファイルの大きさ
+   * @param chunks チャンクの数
+   * @return chunks + 1個の境界。最初は0，最後はsizeです。
+   * @throws IOException 入出力エラーが発生した場合
+   */
+  private static long[] boundaries(FileChannel channel, long size, int chunks) throws IOException {
+    long[] bounds = new long[chunks + 1];
+    bounds[chunks] = size;
+
+    ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+    for (int c = 1; c < chunks; c++) {
+      long position = Math.max(size / chunks * c, bounds[c - 1]);
+      bounds[c] = size;
+      while (position < size) {
+        probe.clear();
+        int n = channel.read(probe, position);
+        if (n <= 0) {
+          break;
+        }
+        int i = 0;
+        while (i < n && probe.get(i) != '\n') {
+          i++;
+        }
+        if (i < n) {
+          bounds[c] = position + i + 1;
+          break;
+        }
+        position += n;
+      }
+    }
+    return bounds;
+  }
+
+  /**
+   * chunkに含まれる行数を，MatrixTextParser.read()と同じ規則で数えます。<br>
+   * 行の終わりは'\n'，'\r'，"\r\n"のいずれかで，最後の行は行の終わりがなくても1行と数えます。
+   *
+   * @param chunk チャンクの内容
+   * @return 行数
+   */
+  private static int countLines(ByteBuffer chunk) {
+    byte[] buf = new byte[PROBE_SIZE];
+    int lines = 0;
+    byte last = '\n';
+    boolean pendingCr = false;
+    while (chunk.hasRemaining()) {
+      int n = Math.min(buf.length, chunk.remaining());
+      chunk.get(buf, 0, n);
+      int p = 0;
+      if (pendingCr && buf[0] == '\n') {
+        p = 1;
+      }
+      for (; p < n; p++) {
+        byte b = buf[p];
+        if (b == '\n') {
+          lines++;
+        } else if (b == '\r') {
+          lines++;
+          if (p + 1 < n && buf[p + 1] == '\n') {
+            p++;
+          }
+        }
+      }
+      last = buf[n - 1];
+      pendingCr = (last == '\r');
+    }
+    if (last != '\n' && last != '\r') {
+      lines++;
+    }
+    return lines;
+  }
+
+  /**
+   * 0からchunks - 1までの各チャンクに対してactionを，poolを使用して並列に実行します。
+   *
+   * @param pool 使用するForkJoinPool
+   * @param chunks チャンクの数
+   * @param action 各チャンクに対する処理
+   * @throws IOException いずれかのチャンクで入出力エラーが発生した場合
+   */
+  private static void forEachChunk(ForkJoinPool pool, int chunks, ChunkAction action)
+      throws IOException {
+    try {
+      pool.invoke(new ChunkTask(action, 0, chunks));
+    } catch (UncheckedIOException uioe) {
+      throw uioe.getCause();
+    }
+  }
+}
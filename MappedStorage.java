@@ -0,0 +1,37 @@
+import java.nio.DoubleBuffer;
+
+/**
+ * メモリマップしたファイルの領域に，行優先(row-major)で成分を保持する記憶域です。<br>
+ * 成分はヒープにコピーされず，読み書きはマップした領域に対して直接行われます。<br>
+ * 領域はBufferStorageと同様に行の境界でセグメントに分割されます。<br>
+ * 行の配列を持たずヒープの外の領域を参照するため，形式はOFF_HEAPとして扱います。<br>
+ * 演算結果はヒープ上のFLAT形式の記憶域に格納されます。<br>
+ * ただし，結果の成分の総数がInteger.MAX_VALUEを超える場合は，ヒープ上の配列に収まらないため，OFF_HEAP形式の記憶域に格納されます。
+ */
+final class MappedStorage extends BufferStorage {
+
+  /**
+   * マップした領域を記憶域として使用します。
+   *
+   * @param segments 成分を保持するセグメント
+   * @param rowsPerSegment 1つのセグメントに含まれる行数
+   * @param rows 行数
+   * @param columns 列数
+   */
+  MappedStorage(DoubleBuffer[] segments, int rowsPerSegment, int rows, int columns) {
+    super(segments, rowsPerSegment, rows, columns);
+  }
+
+  @Override
+  DoubleStorage allocate(int rows, int columns) {
+    if ((long) rows * columns > Integer.MAX_VALUE) {
+      return (new OffHeapStorage(rows, columns));
+    }
+    return (new FlatStorage(rows, columns));
+  }
+
+  @Override
+  DoubleMatrix.Layout layout() {
+    return DoubleMatrix.Layout.OFF_HEAP;
+  }
+}
@@ -0,0 +1,424 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 1文字の区切り文字で成分が区切られた行列の文字列表現を，バイト列から直接解析するパーサです。<br>
+ * 正規表現による分割や，成分ごとのString生成を行わずに，読み込んだバッファ上で成分の値を求めます。<br>
+ * <br>
+ * 各行の解釈はString.split()とDouble.parseDouble()の組み合わせと同じです。すなわち，<br>
+ * 行末に連続する区切り文字は無視され，それ以外の空の成分や数値として解釈できない成分はエラーになります。<br>
+ * 各成分の前後の空白文字は無視されます。<br>
+ * <br>
+ * 数値の変換は，仮数部が19桁以下の10進表記をClingerの高速経路またはEisel-Lemireのアルゴリズムで行い，<br>
+ * いずれも正しく丸められた値を得られない場合(非正規化数，丸めの境界に非常に近い値，NaNや16進表記など)だけ<br>
+ * Double.parseDouble()に委ねます。したがって，変換結果は常にDouble.parseDouble()と一致します。
+ */
+final class MatrixTextParser {
+
+  /** 一度に読み込むバイト数の初期値です。行がこれより長い場合はバッファを拡張します。 */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /** Eisel-Lemireのアルゴリズムで扱う10の累乗の指数の最小値です。 */
+  private static final int SMALLEST_POWER = -325;
+
+  /** Eisel-Lemireのアルゴリズムで扱う10の累乗の指数の最大値です。 */
+  private static final int LARGEST_POWER = 308;
+
+  /** 5^qを正規化した128ビットの近似値の上位64ビットです。添え字はq - SMALLEST_POWERです。 */
+  private static final long[] POWER5_HIGH = new long[LARGEST_POWER - SMALLEST_POWER + 1];
+
+  /** 5^qを正規化した128ビットの近似値の下位64ビットです。添え字はq - SMALLEST_POWERです。 */
+  private static final long[] POWER5_LOW = new long[LARGEST_POWER - SMALLEST_POWER + 1];
+
+  /** doubleで正確に表現できる10の累乗です。 */
+  private static final double[] POWER10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+  };
+
+  static {
+    BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+    for (int q = SMALLEST_POWER; q <= LARGEST_POWER; q++) {
+      BigInteger c;
+      if (q >= 0) {
+        // 5^qの最上位ビットが第127ビットに来るようにずらし，128ビットに切り詰める
+        c = BigInteger.valueOf(5).pow(q);
+        c = (c.bitLength() > 128)
+            ? c.shiftRight(c.bitLength() - 128)
+            : c.shiftLeft(128 - c.bitLength());
+      } else {
+        // 2^b / 5^(-q)を切り上げた値を128ビットに切り詰める
+        BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+        int z = power5.bitLength();
+        int b = q >= -27 ? z + 127 : 2 * z + 128;
+        c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+        if (c.compareTo(two128) >= 0) {
+          c = c.shiftRight(c.bitLength() - 128);
+        }
+      }
+      POWER5_HIGH[q - SMALLEST_POWER] = c.shiftRight(64).longValue();
+      POWER5_LOW[q - SMALLEST_POWER] = c.longValue();
+    }
+  }
+
+  /** 解析した行を受け取る処理です。 */
+  @FunctionalInterface
+  interface RowConsumer {
+    /**
+     * 解析した行を受け取ります。
+     *
+     * @param index 行番号(0から数える)
+     * @param row 行の成分
+     */
+    void accept(int index, double[] row);
+  }
+
+  /** 成分の間の区切り文字です。 */
+  private final byte delim;
+
+  /** 解析中の行の成分を一時的に保持する作業領域です。 */
+  private double[] values = new double[16];
+
+  /**
+   * 指定された区切り文字で成分を区切るパーサを生成します。
+   *
+   * @param delim 区切り文字(ASCII文字)
+   */
+  MatrixTextParser(char delim) {
+    this.delim = (byte) delim;
+  }
+
+  /**
+   * 正規表現regexが，正規表現として特別な意味を持たない1文字のASCII文字であるかを判定します。<br>
+   * この場合，regexによる分割はその文字による単純な分割と等しいため，このパーサで解析できます。
+   *
+   * @param regex 正規表現の区切り
+   * @return このパーサで扱える区切り文字ならtrue
+   */
+  static boolean isLiteralDelimiter(String regex) {
+    if (regex.length() != 1) {
+      return false;
+    }
+    char c = regex.charAt(0);
+    return (c < 0x80 && c != '\n' && c != '\r' && ".$|()[{^?*+\\".indexOf(c) < 0);
+  }
+
+  /**
+   * inから行列の文字列表現を最後まで読み込み，各行の成分を返します。<br>
+   * 行の終わりは'\n'，'\r'，"\r\n"のいずれかです(BufferedReader.readLine()と同じ)。
+   *
+   * @param in 入力
+   * @param filename エラーメッセージに含めるファイル名
+   * @return 各行の成分
+   * @throws IOException 入出力エラーが発生した場合，または数値として解釈できない成分があった場合
+   */
+  ArrayList<double[]> read(InputStream in, String filename) throws IOException {
+    ArrayList<double[]> rows = new ArrayList<double[]>();
+    read(in, filename, 0, (index, row) -> rows.add(row));
+    return rows;
+  }
+
+  /**
+   * inから行列の文字列表現を最後まで読み込み，各行の成分を順にconsumerに渡します。<br>
+   * inがファイルの途中から始まる場合は，その位置の行番号をfirstRowに指定します。
+   *
+   * @param in 入力
+   * @param filename エラーメッセージに含めるファイル名
+   * @param firstRow inの最初の行の行番号(0から数える)
+   * @param consumer 解析した行を受け取る処理
+   * @return 読み込んだ行数
+   * @throws IOException 入出力エラーが発生した場合，または数値として解釈できない成分があった場合
+   */
+  int read(InputStream in, String filename, int firstRow, RowConsumer consumer)
+      throws IOException {
+    int row = firstRow;
+    byte[] buf = new byte[BUFFER_SIZE];
+    int start = 0;
+    int scan = 0;
+    int end = 0;
+    boolean eof = false;
+
+    while (true) {
+      while (scan < end && buf[scan] != '\n' && buf[scan] != '\r') {
+        scan++;
+      }
+
+      // '\r'の直後が'\n'かどうかは，次のバイトを読み込むまで判断できない
+      if (scan == end || (buf[scan] == '\r' && scan + 1 == end && !eof)) {
+        if (eof) {
+          if (start < end) {
+            consumer.accept(row, parseRow(buf, start, end, filename, row + 1));
+            row++;
+          }
+          return (row - firstRow);
+        }
+        if (start > 0) {
+          System.arraycopy(buf, start, buf, 0, end - start);
+          scan -= start;
+          end -= start;
+          start = 0;
+        }
+        if (end == buf.length) {
+          buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n = in.read(buf, end, buf.length - end);
+        if (n < 0) {
+          eof = true;
+        } else {
+          end += n;
+        }
+        continue;
+      }
+
+      consumer.accept(row, parseRow(buf, start, scan, filename, row + 1));
+      row++;
+      if (buf[scan] == '\r' && scan + 1 < end && buf[scan + 1] == '\n') {
+        scan++;
+      }
+      start = ++scan;
+    }
+  }
+
+  /**
+   * buf[from]からbuf[to - 1]までの1行を解析し，その行の成分を返します。
+   *
+   * @param buf バッファ
+   * @param from 行の先頭位置
+   * @param to 行の末尾の次の位置
+   * @param filename エラーメッセージに含めるファイル名
+   * @param line エラーメッセージに含める行番号
+   * @return 行の成分
+   * @throws IOException 数値として解釈できない成分があった場合
+   */
+  private double[] parseRow(byte[] buf, int from, int to, String filename, int line)
+      throws IOException {
+    try {
+      return parseRow(buf, from, to);
+    } catch (NumberFormatException nfe) {
+      IOException ioe =
+          new IOException(
+              String.format(
+                  "%s:%d: %s",
+                  filename, line, new String(buf, from, to - from, StandardCharsets.UTF_8)));
+      ioe.initCause(nfe);
+      throw ioe;
+    }
+  }
+
+  /**
+   * buf[from]からbuf[to - 1]までの1行を区切り文字で分割し，各成分を数値に変換した結果を返します。
+   *
+   * @param buf バッファ
+   * @param from 行の先頭位置
+   * @param to 行の末尾の次の位置
+   * @return 行の成分
+   * @throws NumberFormatException 数値として解釈できない成分があった場合
+   */
+  double[] parseRow(byte[] buf, int from, int to) {
+    if (from == to) {
+      throw (new NumberFormatException("empty String"));
+    }
+
+    // 行末に連続する区切り文字は，String.split()と同様に無視する
+    while (to > from && buf[to - 1] == this.delim) {
+      to--;
+    }
+
+    int n = 0;
+    for (int p = from; p < to; ) {
+      int q = p;
+      while (q < to && buf[q] != this.delim) {
+        q++;
+      }
+      if (n == this.values.length) {
+        this.values = Arrays.copyOf(this.values, n * 2);
+      }
+      this.values[n++] = parseDouble(buf, p, q);
+      p = q + 1;
+    }
+    return Arrays.copyOf(this.values, n);
+  }
+
+  /**
+   * buf[from]からbuf[to - 1]までのバイト列を10進表記の数値として解釈し，doubleに変換します。<br>
+   * 変換結果はDouble.parseDouble()と一致します。
+   *
+   * @param buf バッファ
+   * @param from 数値の先頭位置
+   * @param to 数値の末尾の次の位置
+   * @return 変換結果
+   * @throws NumberFormatException 数値として解釈できない場合
+   */
+  static double parseDouble(byte[] buf, int from, int to) {
+    int p = from;
+    int end = to;
+    while (p < end && buf[p] >= 0 && buf[p] <= ' ') {
+      p++;
+    }
+    while (end > p && buf[end - 1] >= 0 && buf[end - 1] <= ' ') {
+      end--;
+    }
+
+    boolean negative = false;
+    if (p < end && (buf[p] == '-' || buf[p] == '+')) {
+      negative = (buf[p] == '-');
+      p++;
+    }
+
+    // 仮数部の上位19桁までをwに蓄積し，それ以降の桁は指数に繰り入れる
+    long w = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean hasDigits = false;
+    boolean truncated = false;
+    for (; p < end && buf[p] >= '0' && buf[p] <= '9'; p++) {
+      int d = buf[p] - '0';
+      hasDigits = true;
+      if (digits < 19) {
+        w = w * 10 + d;
+        digits += (w == 0) ? 0 : 1;
+      } else {
+        exponent++;
+        truncated |= (d != 0);
+      }
+    }
+    if (p < end && buf[p] == '.') {
+      for (p++; p < end && buf[p] >= '0' && buf[p] <= '9'; p++) {
+        int d = buf[p] - '0';
+        hasDigits = true;
+        if (digits < 19) {
+          w = w * 10 + d;
+          digits += (w == 0) ? 0 : 1;
+          exponent--;
+        } else {
+          truncated |= (d != 0);
+        }
+      }
+    }
+    if (hasDigits && p < end && (buf[p] == 'e' || buf[p] == 'E')) {
+      p++;
+      boolean negativeExponent = false;
+      if (p < end && (buf[p] == '-' || buf[p] == '+')) {
+        negativeExponent = (buf[p] == '-');
+        p++;
+      }
+      int e = 0;
+      int start = p;
+      for (; p < end && buf[p] >= '0' && buf[p] <= '9'; p++) {
+        e = Math.min(e * 10 + (buf[p] - '0'), 100_000);
+      }
+      if (p == start) {
+        hasDigits = false;
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+
+    if (!hasDigits || p != end || truncated) {
+      return fallback(buf, from, to);
+    }
+    if (w == 0) {
+      return negative ? -0.0 : 0.0;
+    }
+
+    // 仮数部と10の累乗がどちらもdoubleで正確に表現できれば，1回の乗除算で正しく丸められる
+    if ((w >>> 53) == 0 && exponent >= -22 && exponent <= 22) {
+      double d = (double) w;
+      d = exponent < 0 ? d / POWER10[-exponent] : d * POWER10[exponent];
+      return negative ? -d : d;
+    }
+
+    double d = eiselLemire(w, exponent, negative);
+    return Double.isNaN(d) ? fallback(buf, from, to) : d;
+  }
+
+  /**
+   * w * 10^qをEisel-Lemireのアルゴリズムで正しく丸めたdoubleに変換します。<br>
+   * 128ビットの近似では丸めの方向が確定できない場合や，結果が非正規化数または無限大になる場合はNaNを返します。
+   *
+   * @param w 仮数部(0以外)
+   * @param q 10の累乗の指数
+   * @param negative 負の数ならtrue
+   * @return 変換結果，または変換できない場合はNaN
+   */
+  private static double eiselLemire(long w, int q, boolean negative) {
+    if (q < SMALLEST_POWER || q > LARGEST_POWER) {
+      return Double.NaN;
+    }
+
+    // 10^q = 5^q * 2^qなので，指数部は2^qと，正規化した5^qの指数から求まる
+    long exponent = (((152170L + 65536L) * q) >> 16) + 1023 + 64;
+    int lz = Long.numberOfLeadingZeros(w);
+    long i = w << lz;
+
+    long high = unsignedMultiplyHigh(i, POWER5_HIGH[q - SMALLEST_POWER]);
+    long low = i * POWER5_HIGH[q - SMALLEST_POWER];
+    if ((high & 0x1FF) == 0x1FF && Long.compareUnsigned(low + i, low) < 0) {
+      // 上位64ビットだけでは下位の桁上がりの影響を判断できないため，5^qの下位64ビットも掛ける
+      long lowLow = i * POWER5_LOW[q - SMALLEST_POWER];
+      long lowHigh = unsignedMultiplyHigh(i, POWER5_LOW[q - SMALLEST_POWER]);
+      long middle = low + lowHigh;
+      if (Long.compareUnsigned(middle, low) < 0) {
+        high++;
+      }
+      if (middle + 1 == 0
+          && (high & 0x1FF) == 0x1FF
+          && Long.compareUnsigned(lowLow + i, lowLow) < 0) {
+        return Double.NaN;
+      }
+      low = middle;
+    }
+
+    long upperBit = high >>> 63;
+    long mantissa = high >>> (upperBit + 9);
+    lz += (int) (1 ^ upperBit);
+
+    // 2つのdoubleのちょうど中間にある可能性がある場合は，偶数丸めの判断ができない
+    if ((high & 0x1FF) == 0x1FF || ((high & 0x1FF) == 0 && (mantissa & 3) == 1)) {
+      return Double.NaN;
+    }
+
+    mantissa += 1;
+    mantissa >>>= 1;
+    if (mantissa >= (1L << 53)) {
+      mantissa = (1L << 52);
+      lz--;
+    }
+    mantissa &= ~(1L << 52);
+
+    long realExponent = exponent - lz;
+    if (realExponent < 1 || realExponent > 2046) {
+      return Double.NaN;
+    }
+
+    long bits = mantissa | (realExponent << 52) | (negative ? 1L << 63 : 0L);
+    return Double.longBitsToDouble(bits);
+  }
+
+  /**
+   * 符号なし64ビット整数同士の積の上位64ビットを返します。
+   *
+   * @param x 符号なし64ビット整数
+   * @param y 符号なし64ビット整数
+   * @return x * yの上位64ビット
+   */
+  private static long unsignedMultiplyHigh(long x, long y) {
+    return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+  }
+
+  /**
+   * buf[from]からbuf[to - 1]までのバイト列をDouble.parseDouble()で変換します。
+   *
+   * @param buf バッファ
+   * @param from 数値の先頭位置
+   * @param to 数値の末尾の次の位置
+   * @return 変換結果
+   * @throws NumberFormatException 数値として解釈できない場合
+   */
+  private static double fallback(byte[] buf, int from, int to) {
+    return Double.parseDouble(new String(buf, from, to - from, StandardCharsets.ISO_8859_1));
+  }
+}
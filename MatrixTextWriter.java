@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * 行列の文字列表現を，再利用する文字バッファを介して出力先へ順次書き出します。<br>
+ * 行列全体の文字列表現を一度に生成しないため，大きな行列でも使用するメモリはバッファの大きさに限られます。<br>
+ * 各成分はDoubleFormatterによってバッファへ直接書き込まれます。<br>
+ * 出力先がWriterやStringBuilderの場合は，バッファの内容を中間的な文字列を作らずに書き出します。
+ */
+final class MatrixTextWriter {
+
+  /** 文字バッファの大きさです。 */
+  private static final int BUFFER_SIZE = 1 << 13;
+
+  /** 1つの成分の文字列表現の最大の長さです(例えば"-2.2250738585072014E-308")。 */
+  private static final int MAX_ENTRY_LENGTH = 32;
+
+  /** 成分を10進表記に変換するフォーマッタです。 */
+  private final DoubleFormatter formatter;
+
+  /** 書き出す前の文字を蓄えるバッファです。 */
+  private char[] buffer = new char[BUFFER_SIZE];
+
+  /** バッファに蓄えられている文字数です。 */
+  private int length;
+
+  /** 各成分を，元の値に正確に戻すことができる最短の10進表記で書き出すライタを生成します。 */
+  MatrixTextWriter() {
+    this(DoubleFormatter.SHORTEST);
+  }
+
+  /**
+   * 各成分を，有効桁数がprecisionの10進表記で書き出すライタを生成します。
+   *
+   * @param precision 有効桁数(1以上17以下。17の場合は最短の10進表記)
+   * @throws IllegalArgumentException precisionが範囲外の場合
+   */
+  MatrixTextWriter(int precision) {
+    this.formatter = new DoubleFormatter(precision);
+  }
+
+  /**
+   * storageの文字列表現をoutへ書き出します。<br>
+   * 各成分はdelimで区切られ，各行はSystem.lineSeparator()で区切られます。最後の行の後には改行を出力しません。
+   *
+   * @param storage 記憶域
+   * @param out 出力先
+   * @param delim 各要素間の区切り文字
+   * @throws IOException 出力先への書き込みで入出力エラーが発生した場合
+   */
+  void write(DoubleStorage storage, Appendable out, String delim) throws IOException {
+    String lineSeparator = System.lineSeparator();
+    int reserve = MAX_ENTRY_LENGTH + Math.max(delim.length(), lineSeparator.length());
+    if (this.buffer.length < reserve) {
+      this.buffer = new char[reserve];
+    }
+
+    for (int i = 0; i < storage.rows; i++) {
+      for (int j = 0; j < storage.columns; j++) {
+        if (this.length + reserve > this.buffer.length) {
+          flush(out);
+        }
+        if (j > 0) {
+          append(delim);
+        }
+        this.length = this.formatter.format(storage.get(i, j), this.buffer, this.length);
+      }
+      if (i < storage.rows - 1) {
+        append(lineSeparator);
+      }
+    }
+    flush(out);
+  }
+
+  /**
+   * sをバッファの末尾に追加します。呼び出し側でバッファに十分な空きがあることを保証する必要があります。
+   *
+   * @param s 追加する文字列
+   */
+  private void append(String s) {
+    s.getChars(0, s.length(), this.buffer, this.length);
+    this.length += s.length();
+  }
+
+  /**
+   * バッファの内容をoutへ書き出し，バッファを空にします。
+   *
+   * @param out 出力先
+   * @throws IOException 出力先への書き込みで入出力エラーが発生した場合
+   */
+  private void flush(Appendable out) throws IOException {
+    if (out instanceof Writer) {
+      ((Writer) out).write(this.buffer, 0, this.length);
+    } else if (out instanceof StringBuilder) {
+      ((StringBuilder) out).append(this.buffer, 0, this.length);
+    } else {
+      out.append(CharBuffer.wrap(this.buffer, 0, this.length));
+    }
+    this.length = 0;
+  }
+}
@@ -0,0 +1,176 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * ヒープの外に確保した直接バッファに，行優先(row-major)で成分を保持する記憶域です。<br>
+ * 成分がヒープに置かれないため，巨大な行列でもGCの対象となる領域は増えません。<br>
+ * 領域はBufferStorageと同様に行の境界でセグメントに分割されるため，成分の総数はInteger.MAX_VALUEを超えても構いません。<br>
+ * 演算結果も同じ形式の記憶域に格納されます。<br>
+ * <br>
+ * 確保できる大きさの上限はJVMの-XX:MaxDirectMemorySizeオプションで指定します(既定値は最大ヒープサイズと同じです)。<br>
+ * close()を呼び出すと領域は即座に解放されます。呼び出さなかった場合は，記憶域がGCで回収されたときに解放されます。
+ */
+final class OffHeapStorage extends BufferStorage {
+
+  /**
+   * 直接バッファの領域を即座に解放するsun.misc.Unsafe.invokeCleaner(ByteBuffer)です。<br>
+   * この実行環境で使用できない場合はnullで，その場合の領域の解放はGCに任せます。
+   */
+  private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+  /** 成分を保持する直接バッファです。記憶域を解放した後はnullです。 */
+  private ByteBuffer[] buffers;
+
+  /**
+   * 型がrows * columnsで成分の値が全て0dの記憶域を，ヒープの外に確保します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @throws IllegalArgumentException 1行の成分が1つのセグメントに収まらない場合
+   * @throws OutOfMemoryError 直接バッファの領域を確保できない場合
+   */
+  OffHeapStorage(int rows, int columns) {
+    this(rows, columns, rowsPerSegment(columns));
+  }
+
+  /**
+   * 型がrows * columnsで成分の値が全て0dの記憶域を，1つのセグメントにrowsPerSegment行ずつ収めて確保します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @param rowsPerSegment 1つのセグメントに含まれる行数
+   * @throws IllegalArgumentException 1行の成分が1つのセグメントに収まらない場合
+   * @throws OutOfMemoryError 直接バッファの領域を確保できない場合
+   */
+  OffHeapStorage(int rows, int columns, int rowsPerSegment) {
+    this(allocateBuffers(rows, columns, rowsPerSegment), rowsPerSegment, rows, columns);
+  }
+
+  /**
+   * 確保した直接バッファを記憶域として使用します。
+   *
+   * @param buffers 成分を保持する直接バッファ
+   * @param rowsPerSegment 1つのセグメントに含まれる行数
+   * @param rows 行数
+   * @param columns 列数
+   */
+  private OffHeapStorage(ByteBuffer[] buffers, int rowsPerSegment, int rows, int columns) {
+    super(asDoubleBuffers(buffers), rowsPerSegment, rows, columns);
+    this.buffers = buffers;
+  }
+
+  /**
+   * rows * columnsの成分を保持する直接バッファを，rowsPerSegment行ずつに分けて確保します。<br>
+   * 途中で確保に失敗した場合は，それまでに確保したバッファを解放してから例外をスローします。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @param rowsPerSegment 1つのセグメントに含まれる行数
+   * @return 確保した直接バッファ
+   * @throws IllegalArgumentException 1つのセグメントの大きさが直接バッファの上限を超える場合
+   * @throws OutOfMemoryError 直接バッファの領域を確保できない場合
+   */
+  private static ByteBuffer[] allocateBuffers(int rows, int columns, int rowsPerSegment) {
+    if ((long) rowsPerSegment * columns * Double.BYTES > Integer.MAX_VALUE) {
+      throw (new IllegalArgumentException(
+          String.format("列数が多すぎるため，OFF_HEAP形式で保持できません: %d", columns)));
+    }
+    ByteBuffer[] buffers = new ByteBuffer[segmentCount(rows, rowsPerSegment)];
+    try {
+      for (int s = 0; s < buffers.length; s++) {
+        int segmentRows = Math.min(rowsPerSegment, rows - s * rowsPerSegment);
+        buffers[s] =
+            ByteBuffer.allocateDirect(segmentRows * columns * Double.BYTES)
+                .order(ByteOrder.nativeOrder());
+      }
+    } catch (OutOfMemoryError e) {
+      free(buffers);
+      throw e;
+    }
+    return buffers;
+  }
+
+  /**
+   * 各直接バッファをdoubleの並びとして参照するビューを生成します。
+   *
+   * @param buffers 直接バッファ
+   * @return ビュー
+   */
+  private static DoubleBuffer[] asDoubleBuffers(ByteBuffer[] buffers) {
+    DoubleBuffer[] segments = new DoubleBuffer[buffers.length];
+    for (int s = 0; s < buffers.length; s++) {
+      segments[s] = buffers[s].asDoubleBuffer();
+    }
+    return segments;
+  }
+
+  @Override
+  DoubleStorage allocate(int rows, int columns) {
+    return (new OffHeapStorage(rows, columns));
+  }
+
+  @Override
+  DoubleMatrix.Layout layout() {
+    return DoubleMatrix.Layout.OFF_HEAP;
+  }
+
+  /**
+   * 直接バッファの領域を解放します。以降の成分へのアクセスはIllegalStateExceptionをスローします。<br>
+   * 既に解放されている場合は何もしません。<br>
+   * 領域は即座に解放されるため，他のスレッドやビューが成分を読み書きしている最中に呼び出してはなりません。<br>
+   * 解放と同時に行われたアクセスは，解放済みの領域を読み書きしてJVMを異常終了させることがあります。
+   */
+  void close() {
+    if (this.buffers == null) {
+      return;
+    }
+    release();
+    ByteBuffer[] buffers = this.buffers;
+    this.buffers = null;
+    free(buffers);
+  }
+
+  /**
+   * 直接バッファの領域を即座に解放します。解放する手段がない場合は何もしません。
+   *
+   * @param buffers 直接バッファ(nullの要素は無視します)
+   */
+  private static void free(ByteBuffer[] buffers) {
+    if (INVOKE_CLEANER == null) {
+      return;
+    }
+    for (ByteBuffer buffer : buffers) {
+      if (buffer != null) {
+        try {
+          INVOKE_CLEANER.invokeExact(buffer);
+        } catch (Throwable e) {
+          // 解放できなかった領域はGCによる回収に任せる
+        }
+      }
+    }
+  }
+
+  /**
+   * sun.misc.Unsafe.invokeCleaner(ByteBuffer)をリフレクションで取得します。
+   *
+   * @return invokeCleanerを呼び出すMethodHandle。取得できない場合はnull
+   */
+  private static MethodHandle findInvokeCleaner() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return MethodHandles.lookup()
+          .findVirtual(
+              unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+          .bindTo(field.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+}
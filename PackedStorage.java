@@ -0,0 +1,457 @@
+import java.util.Arrays;
+
+/**
+ * 対称行列または三角行列である正方行列の，一方の三角部分だけを1つの配列に詰めて保持する記憶域です。<br>
+ * 必要な領域はn * (n + 1) / 2成分で，密な記憶域のほぼ半分です。<br>
+ * <br>
+ * 配列には下三角部分が行優先(row-major)で格納されます。(i, j)成分(i &gt;= j)の位置はi * (i + 1) / 2 + jです。<br>
+ * これは上三角部分を列優先(column-major)で格納した配置と同じなので，種類によって次のように解釈します。
+ *
+ * <ul>
+ *   <li>SYMMETRIC: (i, j)成分と(j, i)成分はともに配列の同じ位置を参照します。
+ *   <li>LOWER: 下三角行列です。配列は各行の0列目から対角成分までを保持し，対角より上の成分は0dです。
+ *   <li>UPPER: 上三角行列です。配列は各列の0行目から対角成分までを保持し，対角より下の成分は0dです。
+ * </ul>
+ *
+ * 配列の第k区間(第k行の先頭からの連続したk + 1成分)を順に走査する演算は，配列を先頭から1度だけ読みます。<br>
+ * 行列ベクトル積と小さな行列積はこの順序で計算しますが，各成分への加算は密な行列と同じくkの昇順に行われるため，<br>
+ * 計算結果は密な行列として計算した結果と一致します(ただし，三角行列の0dとの乗算は省略します)。<br>
+ * <br>
+ * 保持していない側の成分が種類と矛盾する値に変更されるか，行の入れ替えが行われると，<br>
+ * その時点でJAGGED形式の密な記憶域に変換され，以降の読み書きは全てそちらに対して行われます。
+ */
+final class PackedStorage extends DoubleStorage {
+
+  /** 記憶域が表す行列の種類です。 */
+  enum Kind {
+    /** 対称行列です。 */
+    SYMMETRIC,
+
+    /** 下三角行列です。 */
+    LOWER,
+
+    /** 上三角行列です。 */
+    UPPER;
+
+    /**
+     * 配列の第k区間が第k行の成分(下三角部分)を表すならtrueを返します。
+     *
+     * @return SYMMETRICまたはLOWERならtrue
+     */
+    boolean hasLower() {
+      return (this != UPPER);
+    }
+
+    /**
+     * 配列の第k区間が第k列の成分(上三角部分)を表すならtrueを返します。
+     *
+     * @return SYMMETRICまたはUPPERならtrue
+     */
+    boolean hasUpper() {
+      return (this != LOWER);
+    }
+  }
+
+  /** 配列に詰めて保持できる行列の次数の上限です。n * (n + 1) / 2がintに収まる最大の値です。 */
+  static final int MAX_ORDER = 65535;
+
+  /** 下三角部分を行優先で詰めた成分です。密な記憶域に変換した後はnullです。 */
+  private double[] packed;
+
+  /** 記憶域が表す行列の種類です。転置によって変化します。 */
+  private Kind kind;
+
+  /** 密な記憶域に変換した後の成分です。変換するまではnullです。 */
+  private DoubleStorage dense;
+
+  /**
+   * 指定された配列をそのまま成分として使用します。
+   *
+   * @param packed 下三角部分を行優先で詰めた成分。長さはn * (n + 1) / 2でなければなりません
+   * @param kind 行列の種類
+   * @param n 行列の次数
+   */
+  PackedStorage(double[] packed, Kind kind, int n) {
+    super(n, n);
+    this.packed = packed;
+    this.kind = kind;
+  }
+
+  /**
+   * 次数がnで成分の値が全て0dの記憶域を生成します。nはMAX_ORDER以下でなければなりません。
+   *
+   * @param kind 行列の種類
+   * @param n 行列の次数
+   */
+  PackedStorage(Kind kind, int n) {
+    this(new double[start(n)], kind, n);
+  }
+
+  /**
+   * storageが密な記憶域に変換されていないPackedStorageならtrueを返します。
+   *
+   * @param storage 任意の記憶域
+   * @return 一方の三角部分だけを保持しているならtrue
+   */
+  static boolean isPacked(DoubleStorage storage) {
+    return (storage instanceof PackedStorage && ((PackedStorage) storage).packed != null);
+  }
+
+  /**
+   * storageが密な記憶域に変換されていない，対称行列を表すPackedStorageならtrueを返します。
+   *
+   * @param storage 任意の記憶域
+   * @return 対称行列の圧縮形式ならtrue
+   */
+  static boolean isSymmetric(DoubleStorage storage) {
+    return (isPacked(storage) && ((PackedStorage) storage).kind == Kind.SYMMETRIC);
+  }
+
+  /**
+   * 行列の種類を返します。isPacked(this)がtrueの場合に限り使用できます。
+   *
+   * @return 行列の種類
+   */
+  Kind kind() {
+    return this.kind;
+  }
+
+  /**
+   * 成分を詰めた配列を返します。isPacked(this)がtrueの場合に限り使用できます。
+   *
+   * @return 下三角部分を行優先で詰めた成分
+   */
+  double[] packed() {
+    return this.packed;
+  }
+
+  /**
+   * 配列の第k区間の先頭位置を返します。
+   *
+   * @param k 区間の番号
+   * @return k * (k + 1) / 2
+   */
+  private static int start(int k) {
+    return (int) ((long) k * (k + 1) / 2);
+  }
+
+  /**
+   * (i, j)成分が配列に保持されていればその位置を，保持されていない(0dである)なら-1を返します。
+   *
+   * @param i i
+   * @param j j
+   * @return 配列の中の位置，または-1
+   */
+  private int indexOf(int i, int j) {
+    if (i >= j) {
+      return (this.kind.hasLower() || i == j ? start(i) + j : -1);
+    }
+    return (this.kind.hasUpper() ? start(j) + i : -1);
+  }
+
+  /**
+   * 配列の成分を書き込んだ密な記憶域に変換し，それを返します。
+   *
+   * @return 変換後の記憶域
+   */
+  private DoubleStorage densify() {
+    double[][] matrix = new double[this.rows][this.columns];
+    for (int i = 0; i < this.rows; i++) {
+      for (int j = 0; j < this.columns; j++) {
+        int index = indexOf(i, j);
+        if (index >= 0) {
+          matrix[i][j] = this.packed[index];
+        }
+      }
+    }
+    this.dense = new JaggedStorage(matrix);
+    this.packed = null;
+    return this.dense;
+  }
+
+  /**
+   * (i, j)が添え字の範囲内にあることを確認します。
+   *
+   * @param i i
+   * @param j j
+   * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+   */
+  private void checkIndex(int i, int j) {
+    if (i < 0 || i >= this.rows || j < 0 || j >= this.columns) {
+      throw (new ArrayIndexOutOfBoundsException(
+          String.format("添え字が範囲外です: (%d,%d)", i, j)));
+    }
+  }
+
+  @Override
+  double get(int i, int j) {
+    if (this.dense != null) {
+      return this.dense.get(i, j);
+    }
+    checkIndex(i, j);
+    int index = indexOf(i, j);
+    return (index >= 0 ? this.packed[index] : 0);
+  }
+
+  @Override
+  void set(int i, int j, double entry) {
+    if (this.dense != null) {
+      this.dense.set(i, j, entry);
+      return;
+    }
+    checkIndex(i, j);
+    int index = indexOf(i, j);
+    if (index >= 0 && (i == j || this.kind != Kind.SYMMETRIC)) {
+      this.packed[index] = entry;
+      return;
+    }
+    // 対称行列の一方だけの変更，または三角行列の反対側への0d以外の格納は，種類と矛盾する
+    double current = (index >= 0 ? this.packed[index] : 0);
+    if (Double.doubleToRawLongBits(entry) != Double.doubleToRawLongBits(current)) {
+      densify().set(i, j, entry);
+    }
+  }
+
+  @Override
+  void swapRows(int i1, int i2) {
+    if (this.dense != null) {
+      this.dense.swapRows(i1, i2);
+      return;
+    }
+    checkIndex(i1, 0);
+    checkIndex(i2, 0);
+    if (i1 != i2) {
+      densify().swapRows(i1, i2);
+    }
+  }
+
+  @Override
+  DoubleStorage copy() {
+    if (this.dense != null) {
+      return this.dense.copy();
+    }
+    return (new PackedStorage(this.packed.clone(), this.kind, this.rows));
+  }
+
+  /**
+   * この記憶域を転置した記憶域を生成します。isPacked(this)がtrueの場合に限り使用できます。<br>
+   * 配列の配置は転置しても変わらないため，成分をコピーして種類を入れ替えるだけです。
+   *
+   * @return 転置した記憶域
+   */
+  PackedStorage transpose() {
+    return (new PackedStorage(this.packed.clone(), transpose(this.kind), this.rows));
+  }
+
+  /**
+   * この記憶域をその場で転置します。isPacked(this)がtrueの場合に限り使用できます。
+   */
+  void transposeInPlace() {
+    this.kind = transpose(this.kind);
+  }
+
+  /**
+   * 転置した行列の種類を返します。
+   *
+   * @param kind 行列の種類
+   * @return 転置した行列の種類
+   */
+  private static Kind transpose(Kind kind) {
+    switch (kind) {
+      case LOWER:
+        return Kind.UPPER;
+      case UPPER:
+        return Kind.LOWER;
+      default:
+        return kind;
+    }
+  }
+
+  @Override
+  DoubleStorage allocate(int rows, int columns) {
+    return (new JaggedStorage(new double[rows][columns]));
+  }
+
+  @Override
+  DoubleMatrix.Layout layout() {
+    return DoubleMatrix.Layout.JAGGED;
+  }
+
+  @Override
+  boolean hasRowArrays() {
+    return (this.dense != null);
+  }
+
+  @Override
+  double[] rowArray(int i) {
+    if (this.dense == null) {
+      throw (new UnsupportedOperationException());
+    }
+    return this.dense.rowArray(i);
+  }
+
+  @Override
+  int rowOffset(int i) {
+    if (this.dense == null) {
+      throw (new UnsupportedOperationException());
+    }
+    return this.dense.rowOffset(i);
+  }
+
+  /**
+   * c += alpha * this * bを計算します。bとcは行単位でアクセスできる記憶域でなければなりません。<br>
+   * cの第i行に，bの第k行の(alpha * this(i, k))倍をkの昇順に加えます。
+   *
+   * @param alpha this * bに乗算する値
+   * @param b 右辺
+   * @param c 結果の格納先
+   */
+  void multiplyLeft(double alpha, DoubleStorage b, DoubleStorage c) {
+    int n = this.rows;
+    for (int i = 0; i < n; i++) {
+      double[] cr = c.rowArray(i);
+      int co = c.rowOffset(i);
+      int k0 = this.kind.hasLower() ? 0 : i;
+      int k1 = this.kind.hasUpper() ? n : i + 1;
+      for (int k = k0; k < k1; k++) {
+        double s = alpha * this.packed[k <= i ? start(i) + k : start(k) + i];
+        RowKernels.axpy(s, b.rowArray(k), b.rowOffset(k), cr, co, b.columns);
+      }
+    }
+  }
+
+  /**
+   * c += alpha * a * thisを計算します。aとcは行単位でアクセスできる記憶域でなければなりません。<br>
+   * cの各行について配列の区間を先頭から順に走査し，第k区間を次のように使用します。
+   *
+   * <ul>
+   *   <li>上三角部分(第k列の0行目から対角まで)との内積を，c(i, k)に加えます。
+   *   <li>下三角部分(第k行の0列目から対角の手前まで，LOWERでは対角まで)のalpha * a(i, k)倍を，cの第i行に加えます。
+   * </ul>
+   *
+   * c(i, j)には，まずk &lt;= jの項が第j区間でまとめて，続いてk &gt; jの項が第k区間で1つずつ加えられるため，<br>
+   * 加算の順序はkの昇順になります。
+   *
+   * @param alpha a * thisに乗算する値
+   * @param a 左辺
+   * @param c 結果の格納先
+   */
+  void multiplyRight(double alpha, DoubleStorage a, DoubleStorage c) {
+    int n = this.rows;
+    boolean upper = this.kind.hasUpper();
+    boolean lower = this.kind.hasLower();
+    for (int i = 0; i < a.rows; i++) {
+      double[] ar = a.rowArray(i);
+      double[] cr = c.rowArray(i);
+      int ao = a.rowOffset(i);
+      int co = c.rowOffset(i);
+      for (int k = 0; k < n; k++) {
+        int base = start(k);
+        if (upper) {
+          double sum = cr[co + k];
+          for (int m = 0; m <= k; m++) {
+            sum += (alpha * ar[ao + m]) * this.packed[base + m];
+          }
+          cr[co + k] = sum;
+        }
+        if (lower) {
+          int length = upper ? k : k + 1;
+          RowKernels.axpy(alpha * ar[ao + k], this.packed, base, cr, co, length);
+        }
+      }
+    }
+  }
+
+  /**
+   * y = this * xを計算します。<br>
+   * 配列の区間を先頭から順に1度だけ走査し，第k区間を次のように使用します。
+   *
+   * <ul>
+   *   <li>下三角部分(第k行の0列目から対角まで)とxの内積を，y[k]に加えます。
+   *   <li>上三角部分(第k列の0行目から対角の手前まで，UPPERでは対角まで)のx[k]倍を，yに加えます。
+   * </ul>
+   *
+   * y[i]への加算の順序はkの昇順になるため，計算結果は密な行列として計算した結果と一致します。
+   *
+   * @param x thisに乗算するベクトル
+   * @param y 結果の格納先
+   */
+  void multiplyVector(double[] x, double[] y) {
+    int n = this.rows;
+    boolean upper = this.kind.hasUpper();
+    boolean lower = this.kind.hasLower();
+    Arrays.fill(y, 0);
+    for (int k = 0; k < n; k++) {
+      int base = start(k);
+      if (lower) {
+        double sum = y[k];
+        for (int m = 0; m <= k; m++) {
+          sum += this.packed[base + m] * x[m];
+        }
+        y[k] = sum;
+      }
+      if (upper) {
+        int length = lower ? k : k + 1;
+        double xk = x[k];
+        for (int m = 0; m < length; m++) {
+          y[m] += this.packed[base + m] * xk;
+        }
+      }
+    }
+  }
+
+  /**
+   * this += alpha * a * t^aの下三角部分を計算します。thisは対称行列でなければなりません。<br>
+   * aは行単位でアクセスできる記憶域でなければなりません。<br>
+   * (i, j)成分にはaの第i行と第j行について(alpha * a(i, k)) * a(j, k)をkの昇順に加えるため，<br>
+   * 計算結果は密な行列積alpha * a * t^aの(i, j)成分(i &gt;= j)と一致します。<br>
+   * 加算の依存関係の連鎖で待たされないように，4つのjについての内積を同時に計算します。
+   *
+   * @param alpha a * t^aに乗算する値
+   * @param a 行列
+   */
+  void rankUpdate(double alpha, DoubleStorage a) {
+    int n = this.rows;
+    int length = a.columns;
+    for (int i = 0; i < n; i++) {
+      double[] ar = a.rowArray(i);
+      int ao = a.rowOffset(i);
+      int base = start(i);
+      int j = 0;
+      for (; j + 3 <= i; j += 4) {
+        double[] b0 = a.rowArray(j);
+        double[] b1 = a.rowArray(j + 1);
+        double[] b2 = a.rowArray(j + 2);
+        double[] b3 = a.rowArray(j + 3);
+        int o0 = a.rowOffset(j);
+        int o1 = a.rowOffset(j + 1);
+        int o2 = a.rowOffset(j + 2);
+        int o3 = a.rowOffset(j + 3);
+        double s0 = this.packed[base + j];
+        double s1 = this.packed[base + j + 1];
+        double s2 = this.packed[base + j + 2];
+        double s3 = this.packed[base + j + 3];
+        for (int k = 0; k < length; k++) {
+          double aik = alpha * ar[ao + k];
+          s0 += aik * b0[o0 + k];
+          s1 += aik * b1[o1 + k];
+          s2 += aik * b2[o2 + k];
+          s3 += aik * b3[o3 + k];
+        }
+        this.packed[base + j] = s0;
+        this.packed[base + j + 1] = s1;
+        this.packed[base + j + 2] = s2;
+        this.packed[base + j + 3] = s3;
+      }
+      for (; j <= i; j++) {
+        double[] br = a.rowArray(j);
+        int bo = a.rowOffset(j);
+        double sum = this.packed[base + j];
+        for (int k = 0; k < length; k++) {
+          sum += (alpha * ar[ao + k]) * br[bo + k];
+        }
+        this.packed[base + j] = sum;
+      }
+    }
+  }
+}
@@ -0,0 +1,507 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 行数が列数以上の行列Aを，ハウスホルダー変換によるブロック化したQR分解でA = Q * Rに分解した結果です。<br>
+ * Qは直交行列で，n個のハウスホルダー変換H(j) = I - tau(j) * v(j) * t^v(j)の積H(0) * H(1) * ... * H(n - 1)として，<br>
+ * 実体化せずに保持します。v(j)は第j成分が1で，それより上の成分は0のベクトルです。<br>
+ * <br>
+ * 分解はBLOCK列ずつのパネルに分けて右方向に進みます。パネルをfactorRecursiveで分解した後，<br>
+ * パネル内の変換をまとめたコンパクトWY表現I - V * T * t^V(Tは上三角行列)を作り，残りの列に<br>
+ * C -= V * (t^T * (t^V * C))として一度に適用します。Vのうちパネルの対角ブロックより下の長方形の部分は<br>
+ * 分解の結果をそのまま部分行列のビューとして使用し，その部分の2つの行列積はGemmで計算されます。<br>
+ * 各パネルのTは分解の結果と一緒に保持し，右辺にt^Qを適用する場合も同じ表現を使うため，Qを行列として生成する必要はありません。<br>
+ * <br>
+ * 分解の結果は1つの記憶域に格納します。上三角部分(対角成分を含む)がR，対角成分より下がv(j)の第(j + 1)成分以降です。<br>
+ * <br>
+ * 行数が列数より十分に大きい行列では，factorTallSkinnyで行のブロックごとに分解します(TSQR)。<br>
+ * 列ごとのハウスホルダー変換は行列全体を列の数だけ走査するため，縦長の行列全体を一度に分解すると<br>
+ * 走査のたびにメインメモリから読み直すことになります。キャッシュに収まる行のブロックごとに分解すれば，<br>
+ * 各ブロックの走査はキャッシュの中で完了します。ForkJoinPoolを指定した場合，各ブロックは並列に分解されます。
+ */
+final class QrDecomposition {
+
+  /** パネルの列数(ブロックの大きさ)です。 */
+  static final int BLOCK = 32;
+
+  /** factorRecursiveで，この列数以下のパネルは列ごとに分解します。 */
+  static final int RECURSIVE_COLUMNS = 4;
+
+  /** TSQRで分解する行のブロックの成分数の目安です(2^15個のdoubleで256KiB)。 */
+  static final int TALL_BLOCK_ENTRIES = 1 << 15;
+
+  /** 分解の結果です。上三角部分にR，対角成分より下にハウスホルダーベクトルを保持します。 */
+  private final DoubleStorage qr;
+
+  /** 各ハウスホルダー変換の係数tau(j)です。 */
+  private final double[] tau;
+
+  /** 各パネルのコンパクトWY表現の上三角行列Tです(第k0列から始まるパネルのTは添え字k0 / BLOCK)。 */
+  private final FlatStorage[] triangular;
+
+  /**
+   * 分解する記憶域を保持します。
+   *
+   * @param qr 分解する記憶域
+   */
+  private QrDecomposition(DoubleStorage qr) {
+    this.qr = qr;
+    this.tau = new double[qr.columns];
+    this.triangular = new FlatStorage[(qr.columns + BLOCK - 1) / BLOCK];
+  }
+
+  /**
+   * 行単位でアクセスできる記憶域a(行数は列数以上)を，その場でQR分解します。aの成分は分解の結果で上書きされます。
+   *
+   * @param a 記憶域
+   * @return 分解の結果
+   */
+  static QrDecomposition factor(DoubleStorage a) {
+    QrDecomposition result = new QrDecomposition(a);
+    final int m = a.rows;
+    final int n = a.columns;
+    for (int k0 = 0; k0 < n; k0 += BLOCK) {
+      final int k1 = Math.min(k0 + BLOCK, n);
+      result.factorRecursive(k0, k1);
+      FlatStorage t = result.triangularFactor(k0, k1);
+      result.triangular[k0 / BLOCK] = t;
+      if (k1 < n) {
+        // A(k0:m, k1:n) = t^(I - V * T * t^V) * A(k0:m, k1:n)
+        result.applyBlock(k0, k1, t, true, new SubmatrixStorage(a, k0, k1, m - k0, n - k1));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * 型がrows * columnsの行列をfactorTallSkinnyで分解する場合の，行のブロックの数を返します。<br>
+   * 各ブロックの成分数がTALL_BLOCK_ENTRIES程度になる数とし，poolを指定した場合は，計算量がGemmの<br>
+   * 並列化の閾値以上であれば並列度以上の数とします。ただし，各ブロックの行数は列数の4倍以上とします。<br>
+   * 1を返した場合は，行のブロックに分けずにfactorで分解します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return ブロックの数
+   */
+  static int tallSkinnyBlocks(int rows, int columns, ForkJoinPool pool) {
+    int blocks = (int) ((long) rows * columns / TALL_BLOCK_ENTRIES);
+    if (pool != null && (long) rows * columns * columns >= Gemm.PARALLEL_THRESHOLD) {
+      blocks = Math.max(blocks, pool.getParallelism());
+    }
+    return Math.max(1, Math.min(blocks, rows / (4 * columns)));
+  }
+
+  /**
+   * 行単位でアクセスできる記憶域a(行数は列数以上)を，行のブロックごとにQR分解し(TSQR)，<br>
+   * 同時に右辺xにt^Qを左から掛けます。aとxの成分は計算の途中の値で上書きされます。<br>
+   * 各ブロックをそれぞれfactorで分解して右辺のブロックにt^Qを掛けた後，各ブロックのRを縦に並べた行列を<br>
+   * もう一度分解します。返される分解のRはaのRと一致し(行の符号を除く)，xの先頭のn行はt^Q * xの先頭のn行になります。<br>
+   * 返される分解のapplyQtとapplyQは，aのQではなく，縦に並べたRの分解のQを表すことに注意してください。
+   *
+   * @param a 記憶域
+   * @param x 右辺(行数はaの行数と等しい，行単位でアクセスできる記憶域)
+   * @param blocks 行のブロックの数(tallSkinnyBlocksで求めた値)
+   * @param pool 計算に使用するForkJoinPool(nullなら呼び出したスレッドで計算します)
+   * @return 縦に並べたRの分解の結果
+   */
+  static QrDecomposition factorTallSkinny(
+      DoubleStorage a, DoubleStorage x, int blocks, ForkJoinPool pool) {
+    final int n = a.columns;
+    final int k = x.columns;
+    final int[] bounds = RowPartition.byRows(a.rows, blocks);
+    final DoubleStorage r = new JaggedStorage(new double[blocks * n][n]);
+    final DoubleStorage y = new FlatStorage(blocks * n, k);
+    RowPartition.RangeAction action = (p0, p1) -> {
+      for (int p = p0; p < p1; p++) {
+        int i0 = bounds[p];
+        int rows = bounds[p + 1] - i0;
+        QrDecomposition block = factor(new SubmatrixStorage(a, i0, 0, rows, n));
+        DoubleStorage xb = new SubmatrixStorage(x, i0, 0, rows, k);
+        block.applyQt(xb);
+        block.copyUpper(new SubmatrixStorage(r, p * n, 0, n, n));
+        for (int i = 0; i < n; i++) {
+          System.arraycopy(
+              xb.rowArray(i), xb.rowOffset(i), y.rowArray(p * n + i), y.rowOffset(p * n + i), k);
+        }
+      }
+    };
+    if (pool == null) {
+      action.run(0, blocks);
+    } else {
+      RowPartition.run(pool, RowPartition.byRows(blocks, blocks), action);
+    }
+
+    QrDecomposition result = factor(r);
+    result.applyQt(y);
+    for (int i = 0; i < n; i++) {
+      System.arraycopy(y.rowArray(i), y.rowOffset(i), x.rowArray(i), x.rowOffset(i), k);
+    }
+    return result;
+  }
+
+  /**
+   * 第k0列から第(k1 - 1)列までのパネルを，列を半分ずつに分けて再帰的に分解します。<br>
+   * 左半分を分解した後，そのコンパクトWY表現を右半分にまとめて適用してから右半分を分解します。<br>
+   * 行数が多い縦長のパネルでは，列ごとの変換をパネル全体に適用するよりも計算の多くが行列積になるため高速です。<br>
+   * 列数がRECURSIVE_COLUMNS以下になったら，factorPanelで列ごとに分解します。
+   *
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   */
+  private void factorRecursive(int k0, int k1) {
+    if (k1 - k0 <= RECURSIVE_COLUMNS) {
+      factorPanel(k0, k1);
+      return;
+    }
+    final DoubleStorage a = this.qr;
+    final int mid = (k0 + k1) >>> 1;
+    factorRecursive(k0, mid);
+    applyBlock(
+        k0,
+        mid,
+        triangularFactor(k0, mid),
+        true,
+        new SubmatrixStorage(a, k0, mid, a.rows - k0, k1 - mid));
+    factorRecursive(mid, k1);
+  }
+
+  /**
+   * 第k0列から第(k1 - 1)列までのパネルを，列ごとのハウスホルダー変換で分解します。<br>
+   * 各変換はパネル内のそれより右の列にだけ適用し，パネルより右の列には呼び出し側でまとめて適用します。<br>
+   * 各列の処理は，v(j)を求めながらw = t^v(j) * Cを累積する走査と，Cを更新しながら次の列のノルムを累積する走査の<br>
+   * 2回の走査で行います。行の参照は先に配列に取り出しておき，走査の中では記憶域のメソッドを呼び出しません。
+   *
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   */
+  private void factorPanel(int k0, int k1) {
+    final DoubleStorage a = this.qr;
+    final int rows = a.rows - k0;
+    final double[][] r = new double[rows][];
+    final int[] o = new int[rows];
+    for (int i = 0; i < rows; i++) {
+      r[i] = a.rowArray(k0 + i);
+      o[i] = a.rowOffset(k0 + i);
+    }
+
+    double[] w = new double[k1 - k0];
+    double sum = sumOfSquares(r, o, 1, k0);
+    for (int j = k0; j < k1; j++) {
+      final int jj = j - k0;
+      final int nc = k1 - j - 1;
+      double[] jr = r[jj];
+      int jo = o[jj];
+
+      // v(j)と係数tau(j)を求め，第j列をbeta * e(j)に変換する
+      double alpha = jr[jo + j];
+      double xnorm = (sum < Double.POSITIVE_INFINITY && sum > Double.MIN_NORMAL)
+          ? Math.sqrt(sum)
+          : columnNorm(r, o, jj + 1, j);
+      if (xnorm == 0) {
+        this.tau[j] = 0;
+        sum = (nc > 0) ? sumOfSquares(r, o, jj + 2, j + 1) : 0;
+        continue;
+      }
+      double beta = -Math.copySign(Math.hypot(alpha, xnorm), alpha);
+      double tj = (beta - alpha) / beta;
+      double scale = 1 / (alpha - beta);
+      jr[jo + j] = beta;
+      this.tau[j] = tj;
+
+      // パネル内の右の列CにH(j) = I - tau(j) * v(j) * t^v(j)を適用する
+      System.arraycopy(jr, jo + j + 1, w, 0, nc);
+      for (int i = jj + 1; i < rows; i++) {
+        double v = r[i][o[i] + j] * scale;
+        r[i][o[i] + j] = v;
+        ScalarKernels.axpy(v, r[i], o[i] + j + 1, w, 0, nc);
+      }
+      if (nc == 0) {
+        continue;
+      }
+      ScalarKernels.axpy(-tj, w, 0, jr, jo + j + 1, nc);
+      sum = 0;
+      for (int i = jj + 1; i < rows; i++) {
+        ScalarKernels.axpy(-tj * r[i][o[i] + j], w, 0, r[i], o[i] + j + 1, nc);
+        if (i > jj + 1) {
+          double x = r[i][o[i] + j + 1];
+          sum += x * x;
+        }
+      }
+    }
+  }
+
+  /**
+   * 第j列の第i0行以降の成分の2乗和を返します(行の添え字はrの添え字です)。
+   *
+   * @param r 行の参照
+   * @param o 各行の先頭位置
+   * @param i0 最初の行
+   * @param j 列
+   * @return 2乗和
+   */
+  private static double sumOfSquares(double[][] r, int[] o, int i0, int j) {
+    double sum = 0;
+    for (int i = i0; i < r.length; i++) {
+      double x = r[i][o[i] + j];
+      sum += x * x;
+    }
+    return sum;
+  }
+
+  /**
+   * 第j列の第i0行以降の成分のユークリッドノルムを，2乗和がオーバーフローやアンダーフローを起こさないように<br>
+   * 最大の絶対値で割ってから計算します(行の添え字はrの添え字です)。
+   *
+   * @param r 行の参照
+   * @param o 各行の先頭位置
+   * @param i0 最初の行
+   * @param j 列
+   * @return ノルム
+   */
+  private static double columnNorm(double[][] r, int[] o, int i0, int j) {
+    double[] column = new double[r.length - i0];
+    for (int i = i0; i < r.length; i++) {
+      column[i - i0] = r[i][o[i] + j];
+    }
+    return ScalarKernels.norm(column, 0, column.length);
+  }
+
+  /**
+   * H(k0) * ... * H(k1 - 1) = I - V * T * t^Vを満たす上三角行列Tを求めます。<br>
+   * Tの第j列は，T(0:j, j) = -tau(j) * T(0:j, 0:j) * (t^V(:, 0:j) * v(j))，T(j, j) = tau(j)です。<br>
+   * t^V * Vのうち，パネルの対角ブロックより下の長方形の部分の寄与はまとめて行列積で求めます。
+   *
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   * @return T
+   */
+  private FlatStorage triangularFactor(int k0, int k1) {
+    final DoubleStorage a = this.qr;
+    final int kb = k1 - k0;
+
+    // g = t^V * V(上三角部分だけを使用する)
+    FlatStorage g = new FlatStorage(kb, kb);
+    for (int i = 0; i < kb; i++) {
+      double[] ar = a.rowArray(k0 + i);
+      int ao = a.rowOffset(k0 + i) + k0;
+      for (int p = 0; p < i; p++) {
+        double[] gr = g.rowArray(p);
+        int go = g.rowOffset(p);
+        ScalarKernels.axpy(ar[ao + p], ar, ao + p + 1, gr, go + p + 1, i - p - 1);
+        gr[go + i] += ar[ao + p];
+      }
+    }
+    if (k1 < a.rows) {
+      DoubleStorage below = new SubmatrixStorage(a, k1, k0, a.rows - k1, kb);
+      multiplyTransposed(1, below, below, g);
+    }
+
+    FlatStorage t = new FlatStorage(kb, kb);
+    double[] z = new double[kb];
+    for (int j = 0; j < kb; j++) {
+      double tj = this.tau[k0 + j];
+      for (int p = 0; p < j; p++) {
+        z[p] = g.get(p, j);
+      }
+      for (int p = 0; p < j; p++) {
+        double sum = 0;
+        for (int q = p; q < j; q++) {
+          sum += t.get(p, q) * z[q];
+        }
+        t.set(p, j, -tj * sum);
+      }
+      t.set(j, j, tj);
+    }
+    return t;
+  }
+
+  /**
+   * 第k0列から第(k1 - 1)列までの(I - V * T * t^V)の転置(transposed == true)またはそれ自身を，cに左から掛けます。<br>
+   * W = t^V * C，W = t^T * W(またはT * W)，C -= V * Wの順に計算します。<br>
+   * Vの対角ブロック(対角成分が1の下三角行列)の部分は行ごとのaxpyで，それより下の部分は行列積で計算します。
+   *
+   * @param k0 パネルの先頭列
+   * @param k1 パネルの最後の列の次の列
+   * @param t triangularFactorで求めたT
+   * @param transposed t^(I - V * T * t^V)を掛けるならtrue
+   * @param c 変換を適用する行列(行数は分解した行列の行数 - k0)
+   */
+  private void applyBlock(int k0, int k1, FlatStorage t, boolean transposed, DoubleStorage c) {
+    final DoubleStorage a = this.qr;
+    final int kb = k1 - k0;
+    final int nc = c.columns;
+    final DoubleStorage below = (k1 < a.rows)
+        ? new SubmatrixStorage(a, k1, k0, a.rows - k1, kb)
+        : null;
+    final DoubleStorage cBelow = (below != null)
+        ? new SubmatrixStorage(c, kb, 0, c.rows - kb, nc)
+        : null;
+
+    // W = t^V * C
+    FlatStorage w = new FlatStorage(kb, nc);
+    for (int i = 0; i < kb; i++) {
+      double[] ar = a.rowArray(k0 + i);
+      int ao = a.rowOffset(k0 + i) + k0;
+      double[] cr = c.rowArray(i);
+      int co = c.rowOffset(i);
+      for (int p = 0; p < i; p++) {
+        ScalarKernels.axpy(ar[ao + p], cr, co, w.rowArray(p), w.rowOffset(p), nc);
+      }
+      ScalarKernels.axpy(1, cr, co, w.rowArray(i), w.rowOffset(i), nc);
+    }
+    if (below != null) {
+      multiplyTransposed(1, below, cBelow, w);
+    }
+
+    // W = t^T * W(下から順に更新すると，参照するWの行はまだ更新されていない)
+    // W = T * W(上から順に更新すると，参照するWの行はまだ更新されていない)
+    double[] row = new double[nc];
+    for (int s = 0; s < kb; s++) {
+      int r = transposed ? kb - 1 - s : s;
+      Arrays.fill(row, 0);
+      int p0 = transposed ? 0 : r;
+      int p1 = transposed ? r + 1 : kb;
+      for (int p = p0; p < p1; p++) {
+        double x = transposed ? t.get(p, r) : t.get(r, p);
+        ScalarKernels.axpy(x, w.rowArray(p), w.rowOffset(p), row, 0, nc);
+      }
+      System.arraycopy(row, 0, w.rowArray(r), w.rowOffset(r), nc);
+    }
+
+    // C -= V * W
+    for (int i = 0; i < kb; i++) {
+      double[] ar = a.rowArray(k0 + i);
+      int ao = a.rowOffset(k0 + i) + k0;
+      double[] cr = c.rowArray(i);
+      int co = c.rowOffset(i);
+      for (int p = 0; p < i; p++) {
+        ScalarKernels.axpy(-ar[ao + p], w.rowArray(p), w.rowOffset(p), cr, co, nc);
+      }
+      ScalarKernels.axpy(-1, w.rowArray(i), w.rowOffset(i), cr, co, nc);
+    }
+    if (below != null) {
+      ScalarKernels.multiply(-1, below, w, cBelow);
+    }
+  }
+
+  /**
+   * xにt^Qを左から掛け，xを上書きします。xの行数は分解した行列の行数と等しくなければなりません。
+   *
+   * @param x 行単位でアクセスできる記憶域
+   */
+  void applyQt(DoubleStorage x) {
+    final int m = this.qr.rows;
+    final int n = this.qr.columns;
+    for (int k0 = 0; k0 < n; k0 += BLOCK) {
+      final int k1 = Math.min(k0 + BLOCK, n);
+      DoubleStorage c = new SubmatrixStorage(x, k0, 0, m - k0, x.columns);
+      applyBlock(k0, k1, this.triangular[k0 / BLOCK], true, c);
+    }
+  }
+
+  /**
+   * xにQを左から掛け，xを上書きします。xの行数は分解した行列の行数と等しくなければなりません。
+   *
+   * @param x 行単位でアクセスできる記憶域
+   */
+  void applyQ(DoubleStorage x) {
+    final int m = this.qr.rows;
+    final int n = this.qr.columns;
+    for (int k0 = (n - 1) / BLOCK * BLOCK; k0 >= 0; k0 -= BLOCK) {
+      final int k1 = Math.min(k0 + BLOCK, n);
+      DoubleStorage c = new SubmatrixStorage(x, k0, 0, m - k0, x.columns);
+      applyBlock(k0, k1, this.triangular[k0 / BLOCK], false, c);
+    }
+  }
+
+  /**
+   * 元の行列の列が数値的に一次従属である(階数が列数より小さい)ならtrueを返します。<br>
+   * 一次従属な列があっても丸め誤差のためRの対角成分はほとんど0dにならないため，<br>
+   * |R(j, j)| &lt;= max(m, n) * ulp(1) * max_i |R(i, i)|となる対角成分があれば一次従属と判定します。<br>
+   * factorTallSkinnyで分解した場合もmは元の行列の行数なので，引数で指定します。
+   *
+   * @param rows 元の行列の行数m
+   * @return 階数が列数より小さいならtrue
+   */
+  boolean isRankDeficient(int rows) {
+    final int n = this.qr.columns;
+    double max = 0;
+    for (int j = 0; j < n; j++) {
+      max = Math.max(max, Math.abs(this.qr.rowArray(j)[this.qr.rowOffset(j) + j]));
+    }
+    double tolerance = Math.max(rows, n) * Math.ulp(1.0) * max;
+    for (int j = 0; j < n; j++) {
+      if (!(Math.abs(this.qr.rowArray(j)[this.qr.rowOffset(j) + j]) > tolerance)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 上三角行列R(n * n)を，cに格納します。cは成分が全て0dの記憶域でなければなりません。
+   *
+   * @param c 格納先
+   */
+  void copyUpper(DoubleStorage c) {
+    for (int i = 0; i < c.rows; i++) {
+      double[] ar = this.qr.rowArray(i);
+      int ao = this.qr.rowOffset(i);
+      for (int j = i; j < c.columns; j++) {
+        c.set(i, j, ar[ao + j]);
+      }
+    }
+  }
+
+  /**
+   * R * X = x(xの先頭のn行)を後退代入で解き，xの先頭のn行をXで上書きします。
+   *
+   * @param x 行単位でアクセスできる記憶域
+   */
+  void solveUpper(DoubleStorage x) {
+    final int n = this.qr.columns;
+    final int k = x.columns;
+    for (int i = n - 1; i >= 0; i--) {
+      double[] ar = this.qr.rowArray(i);
+      int ao = this.qr.rowOffset(i);
+      double[] xr = x.rowArray(i);
+      int xo = x.rowOffset(i);
+      for (int p = i + 1; p < n; p++) {
+        ScalarKernels.axpy(-ar[ao + p], x.rowArray(p), x.rowOffset(p), xr, xo, k);
+      }
+      double d = ar[ao + i];
+      for (int j = 0; j < k; j++) {
+        xr[xo + j] /= d;
+      }
+    }
+  }
+
+  /**
+   * c += alpha * t^a * bを計算します。a，b，cは行単位でアクセスできる記憶域でなければなりません。<br>
+   * ブロッキングに見合う大きさであればaの転置のビューに対するGemmで，そうでなければaとbの行を順に読みながら<br>
+   * cの行に対するaxpyで計算します。
+   *
+   * @param alpha t^a * bに乗算する値
+   * @param a 左辺(転置する前)
+   * @param b 右辺
+   * @param c 結果の格納先
+   */
+  private static void multiplyTransposed(
+      double alpha, DoubleStorage a, DoubleStorage b, DoubleStorage c) {
+    if (Gemm.isWorthBlocking(a.columns, b.columns, a.rows)) {
+      Gemm.multiply(alpha, new TransposedStorage(a), b, c, 0, a.columns);
+      return;
+    }
+
+    for (int k = 0; k < a.rows; k++) {
+      double[] ar = a.rowArray(k);
+      double[] br = b.rowArray(k);
+      int ao = a.rowOffset(k);
+      int bo = b.rowOffset(k);
+      for (int i = 0; i < a.columns; i++) {
+        ScalarKernels.axpy(alpha * ar[ao + i], br, bo, c.rowArray(i), c.rowOffset(i), b.columns);
+      }
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ * 連続した配列上の成分に対する行単位の演算カーネルです。<br>
+ * jdk.incubator.vectorモジュールが読み込まれている場合はVectorKernelsのベクトル版を，<br>
+ * そうでない場合はスカラー版のループを使用します。<br>
+ * <br>
+ * モジュールは実行時に--add-modules jdk.incubator.vectorを指定した場合にのみ読み込まれます。<br>
+ * システムプロパティdoublematrix.vectorにfalseを指定すると，モジュールが読み込まれていてもスカラー版を使用します。
+ *
+ * @see VectorKernels
+ */
+final class RowKernels {
+
+  /** ベクトル版のカーネルを使用するならtrueです。 */
+  static final boolean VECTORIZED = isVectorAvailable();
+
+  private RowKernels() {}
+
+  /**
+   * ベクトル版のカーネルが使用できるかどうかを判定します。
+   *
+   * @return 使用できるならtrue
+   */
+  private static boolean isVectorAvailable() {
+    if (!Boolean.parseBoolean(System.getProperty("doublematrix.vector", "true"))) {
+      return false;
+    }
+
+    if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      return false;
+    }
+
+    try {
+      return (VectorKernels.lanes() > 1);
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * c[co + j] = a[ao + j] + b[bo + j] (0 &lt;= j &lt; n)を計算します。cはaまたはbと同じ範囲でも構いません。
+   *
+   * @param a 左辺
+   * @param ao aの先頭位置
+   * @param b 右辺
+   * @param bo bの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void plus(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+    if (VECTORIZED) {
+      VectorKernels.plus(a, ao, b, bo, c, co, n);
+    } else {
+      scalarPlus(a, ao, b, bo, c, co, n);
+    }
+  }
+
+  /**
+   * c[co + j] = a[ao + j] - b[bo + j] (0 &lt;= j &lt; n)を計算します。cはaまたはbと同じ範囲でも構いません。
+   *
+   * @param a 左辺
+   * @param ao aの先頭位置
+   * @param b 右辺
+   * @param bo bの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void minus(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+    if (VECTORIZED) {
+      VectorKernels.minus(a, ao, b, bo, c, co, n);
+    } else {
+      scalarMinus(a, ao, b, bo, c, co, n);
+    }
+  }
+
+  /**
+   * c[co + j] = k * a[ao + j] (0 &lt;= j &lt; n)を計算します。cはaと同じ範囲でも構いません。
+   *
+   * @param k 乗算する値
+   * @param a 行
+   * @param ao aの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void scale(double k, double[] a, int ao, double[] c, int co, int n) {
+    if (VECTORIZED) {
+      VectorKernels.scale(k, a, ao, c, co, n);
+    } else {
+      scalarScale(k, a, ao, c, co, n);
+    }
+  }
+
+  /**
+   * y[yo + j] += alpha * x[xo + j] (0 &lt;= j &lt; n)を計算します。
+   *
+   * @param alpha 乗算する値
+   * @param x 加算する行
+   * @param xo xの先頭位置
+   * @param y 結果の格納先
+   * @param yo yの先頭位置
+   * @param n 成分の数
+   */
+  static void axpy(double alpha, double[] x, int xo, double[] y, int yo, int n) {
+    if (VECTORIZED) {
+      VectorKernels.axpy(alpha, x, xo, y, yo, n);
+    } else {
+      scalarAxpy(alpha, x, xo, y, yo, n);
+    }
+  }
+
+  /**
+   * plus(double[], int, double[], int, double[], int, int)のスカラー版です。
+   *
+   * @param a 左辺
+   * @param ao aの先頭位置
+   * @param b 右辺
+   * @param bo bの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void scalarPlus(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+    for (int j = 0; j < n; j++) {
+      c[co + j] = a[ao + j] + b[bo + j];
+    }
+  }
+
+  /**
+   * minus(double[], int, double[], int, double[], int, int)のスカラー版です。
+   *
+   * @param a 左辺
+   * @param ao aの先頭位置
+   * @param b 右辺
+   * @param bo bの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void scalarMinus(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+    for (int j = 0; j < n; j++) {
+      c[co + j] = a[ao + j] - b[bo + j];
+    }
+  }
+
+  /**
+   * scale(double, double[], int, double[], int, int)のスカラー版です。
+   *
+   * @param k 乗算する値
+   * @param a 行
+   * @param ao aの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void scalarScale(double k, double[] a, int ao, double[] c, int co, int n) {
+    for (int j = 0; j < n; j++) {
+      c[co + j] = k * a[ao + j];
+    }
+  }
+
+  /**
+   * axpy(double, double[], int, double[], int, int)のスカラー版です。
+   *
+   * @param alpha 乗算する値
+   * @param x 加算する行
+   * @param xo xの先頭位置
+   * @param y 結果の格納先
+   * @param yo yの先頭位置
+   * @param n 成分の数
+   */
+  static void scalarAxpy(double alpha, double[] x, int xo, double[] y, int yo, int n) {
+    for (int j = 0; j < n; j++) {
+      y[yo + j] += alpha * x[xo + j];
+    }
+  }
+}
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 行列の行を，計算量がほぼ等しい連続した範囲に分割し，ForkJoinPool上で並列に処理します。<br>
+ * 各範囲は互いに素な行だけを扱うため，結果を行ごとに書き込む処理であれば同期は不要です。<br>
+ * <br>
+ * 分割は行ごとの計算量の累積和(疎行列であれば行ポインタ)を二分探索して決定します。<br>
+ * 0でない成分の数が行によって大きく異なる疎行列でも，各範囲の計算量はほぼ等しくなります。<br>
+ * ただし，1つの行は分割しないため，極端に重い行を含む範囲はその行の分だけ大きくなります。
+ */
+final class RowPartition {
+
+  /** この計算量(乗算の回数)未満の処理は並列化せずに呼び出したスレッドで行います。 */
+  static final long PARALLEL_THRESHOLD = 1L << 16;
+
+  /** 行の範囲に対する処理です。 */
+  @FunctionalInterface
+  interface RangeAction {
+    /**
+     * 第i0行から第(i1 - 1)行までを処理します。
+     *
+     * @param i0 処理する最初の行
+     * @param i1 処理する最後の行の次の行
+     */
+    void run(int i0, int i1);
+  }
+
+  /** インスタンスは生成しません。 */
+  private RowPartition() {}
+
+  /**
+   * 行ごとの計算量の累積和から，計算量がほぼ等しいparts個以下の範囲の境界を求めます。<br>
+   * 返される配列は狭義単調増加で，最初の要素は0，最後の要素は行数です。
+   *
+   * @param prefix 長さが行数 + 1の配列。prefix[i]は第0行から第(i - 1)行までの計算量の合計です。
+   * @param parts 分割数の上限
+   * @return 各範囲の境界
+   */
+  static int[] byWeight(int[] prefix, int parts) {
+    int rows = prefix.length - 1;
+    long total = prefix[rows] - prefix[0];
+    int[] bounds = new int[parts + 1];
+    int count = 1;
+    for (int t = 1; t < parts; t++) {
+      long target = prefix[0] + total * t / parts;
+      int i = Arrays.binarySearch(prefix, 0, rows + 1, (int) target);
+      if (i < 0) {
+        // 目標の計算量を挟む2つの行境界のうち，近い方を選ぶ
+        i = -i - 1;
+        if (i > 0 && target - prefix[i - 1] < prefix[i] - target) {
+          i--;
+        }
+      }
+      // 同じ値が続く(成分のない行が続く)場合は，その先頭を境界とする
+      while (i > 0 && prefix[i - 1] == target) {
+        i--;
+      }
+      if (i > bounds[count - 1] && i < rows) {
+        bounds[count++] = i;
+      }
+    }
+    bounds[count++] = rows;
+    return Arrays.copyOf(bounds, count);
+  }
+
+  /**
+   * 各行の計算量が等しい場合の，parts個以下の範囲の境界を求めます。
+   *
+   * @param rows 行数
+   * @param parts 分割数の上限
+   * @return 各範囲の境界
+   */
+  static int[] byRows(int rows, int parts) {
+    parts = Math.max(1, Math.min(parts, rows));
+    int[] bounds = new int[parts + 1];
+    for (int t = 1; t <= parts; t++) {
+      bounds[t] = (int) ((long) rows * t / parts);
+    }
+    return bounds;
+  }
+
+  /**
+   * poolの並列度に応じた分割数を返します。各ワーカーに複数の範囲が行き渡るように，並列度の4倍とします。
+   *
+   * @param pool 処理に使用するForkJoinPool
+   * @return 分割数
+   */
+  static int parts(ForkJoinPool pool) {
+    return pool.getParallelism() * 4;
+  }
+
+  /**
+   * boundsで区切られた各範囲についてactionを並列に実行し，全ての範囲の処理が終わるまで待ちます。
+   *
+   * @param pool 処理に使用するForkJoinPool
+   * @param bounds 各範囲の境界
+   * @param action 各範囲に対する処理
+   */
+  static void run(ForkJoinPool pool, int[] bounds, RangeAction action) {
+    if (bounds.length <= 2) {
+      action.run(bounds[0], bounds[bounds.length - 1]);
+      return;
+    }
+    pool.invoke(new RangeTask(bounds, 0, bounds.length - 1, action));
+  }
+
+  /** 範囲の並びを再帰的に二分割して処理するタスクです。 */
+  private static final class RangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 各範囲の境界です。 */
+    private final int[] bounds;
+
+    /** このタスクが処理する最初の範囲です。 */
+    private final int from;
+
+    /** このタスクが処理する最後の範囲の次の範囲です。 */
+    private final int to;
+
+    /** 各範囲に対する処理です。 */
+    private final RangeAction action;
+
+    RangeTask(int[] bounds, int from, int to, RangeAction action) {
+      this.bounds = bounds;
+      this.from = from;
+      this.to = to;
+      this.action = action;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from == 1) {
+        this.action.run(this.bounds[this.from], this.bounds[this.to]);
+        return;
+      }
+
+      int mid = (this.from + this.to) >>> 1;
+      invokeAll(
+          new RangeTask(this.bounds, this.from, mid, this.action),
+          new RangeTask(this.bounds, mid, this.to, this.action));
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/**
+ * 行列の分解で使用する，行単位の配列に対するスカラー版の演算カーネルです。<br>
+ * <br>
+ * RowKernelsと同じ計算を含みますが，分解のループの中で確実にインライン展開されるように，<br>
+ * ベクトル版への分岐を持たない単純なループとしています(インライン展開されないVector APIの呼び出しは非常に低速です)。<br>
+ * 各分解のクラスは，同じ計算を個別に定義せずにこのクラスのメソッドを使用します。
+ *
+ * @see RowKernels
+ * @see LuDecomposition
+ * @see CholeskyDecomposition
+ * @see QrDecomposition
+ * @see SymmetricEigenDecomposition
+ * @see SingularValueDecomposition
+ */
+final class ScalarKernels {
+
+  private ScalarKernels() {}
+
+  /**
+   * y += alpha * xを計算します。
+   *
+   * @param alpha xに乗算する値
+   * @param x 加算する行
+   * @param xo xの先頭位置
+   * @param y 結果の格納先
+   * @param yo yの先頭位置
+   * @param n 成分の数
+   */
+  static void axpy(double alpha, double[] x, int xo, double[] y, int yo, int n) {
+    for (int j = 0; j < n; j++) {
+      y[yo + j] += alpha * x[xo + j];
+    }
+  }
+
+  /**
+   * x[xo]からn個の成分とy[yo]からn個の成分の内積を返します。<br>
+   * 4つの部分和に分けて足し込むため，加算の依存関係による待ちが少なくなります。
+   *
+   * @param x 左辺
+   * @param xo xの先頭位置
+   * @param y 右辺
+   * @param yo yの先頭位置
+   * @param n 成分の数
+   * @return 内積
+   */
+  static double dot(double[] x, int xo, double[] y, int yo, int n) {
+    double s0 = 0;
+    double s1 = 0;
+    double s2 = 0;
+    double s3 = 0;
+    int k = 0;
+    for (; k + 4 <= n; k += 4) {
+      s0 += x[xo + k] * y[yo + k];
+      s1 += x[xo + k + 1] * y[yo + k + 1];
+      s2 += x[xo + k + 2] * y[yo + k + 2];
+      s3 += x[xo + k + 3] * y[yo + k + 3];
+    }
+    for (; k < n; k++) {
+      s0 += x[xo + k] * y[yo + k];
+    }
+    return ((s0 + s1) + (s2 + s3));
+  }
+
+  /**
+   * x[xo]から始まるn個の成分のユークリッドノルムを，2乗和がオーバーフローやアンダーフローを起こさないように<br>
+   * 最大の絶対値で割ってから計算します。
+   *
+   * @param x 配列
+   * @param xo 先頭位置
+   * @param n 成分の数
+   * @return ノルム
+   */
+  static double norm(double[] x, int xo, int n) {
+    double max = 0;
+    for (int j = 0; j < n; j++) {
+      max = Math.max(max, Math.abs(x[xo + j]));
+    }
+    if (max == 0 || !(max < Double.POSITIVE_INFINITY)) {
+      return max;
+    }
+    double sum = 0;
+    for (int j = 0; j < n; j++) {
+      double v = x[xo + j] / max;
+      sum += v * v;
+    }
+    return max * Math.sqrt(sum);
+  }
+
+  /**
+   * 2つの行に回転を適用します(x = c * x - s * y，y = s * x + c * y)。
+   *
+   * @param x 一方の行
+   * @param y もう一方の行(長さはxと等しい)
+   * @param c 余弦
+   * @param s 正弦
+   */
+  static void rotate(double[] x, double[] y, double c, double s) {
+    for (int k = 0; k < x.length; k++) {
+      double h = y[k];
+      y[k] = s * x[k] + c * h;
+      x[k] = c * x[k] - s * h;
+    }
+  }
+
+  /**
+   * vから，x[from]からx[to - 1]までの各ベクトル方向の成分を取り除きます(修正グラム・シュミット法)。
+   *
+   * @param v ベクトル
+   * @param x 正規直交するベクトルの並び(各ベクトルの長さはvと等しい)
+   * @param from 最初の添え字
+   * @param to 最後の添え字の次の添え字
+   */
+  static void orthogonalize(double[] v, double[][] x, int from, int to) {
+    for (int i = from; i < to; i++) {
+      axpy(-dot(x[i], 0, v, 0, v.length), x[i], 0, v, 0, v.length);
+    }
+  }
+
+  /**
+   * c += alpha * a * bを計算します。a，b，cは行単位でアクセスできる記憶域でなければなりません。<br>
+   * ブロッキングに見合う大きさであればGemmで，そうでなければbの行に対するaxpyで計算します。
+   *
+   * @param alpha a * bに乗算する値
+   * @param a 左辺
+   * @param b 右辺
+   * @param c 結果の格納先
+   */
+  static void multiply(double alpha, DoubleStorage a, DoubleStorage b, DoubleStorage c) {
+    if (Gemm.isWorthBlocking(a.rows, b.columns, a.columns)) {
+      Gemm.multiply(alpha, a, b, c, 0, a.rows);
+      return;
+    }
+
+    for (int i = 0; i < a.rows; i++) {
+      double[] ar = a.rowArray(i);
+      double[] cr = c.rowArray(i);
+      int ao = a.rowOffset(i);
+      int co = c.rowOffset(i);
+      for (int k = 0; k < a.columns; k++) {
+        axpy(alpha * ar[ao + k], b.rowArray(k), b.rowOffset(k), cr, co, b.columns);
+      }
+    }
+  }
+}
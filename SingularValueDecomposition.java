@@ -0,0 +1,245 @@
+import java.util.Arrays;
+
+/**
+ * 行数が列数以上の行列A(m * n)の特異値分解A = U * Σ * t^Vを求めます。<br>
+ * Uは列が正規直交する行列(m * n)，Σは特異値を降順に並べた対角行列，Vは直交行列(n * n)です。<br>
+ * <br>
+ * まずAをQR分解し(A = Q * R)，上三角行列Rの転置に片側ヤコビ法を適用します。<br>
+ * 片側ヤコビ法は，t^Rの2つの列(Rの2つの行)が直交するように回転する操作を，全ての列の組が直交するまで繰り返します。<br>
+ * 回転を累積した直交行列をJとすると，t^R * J = W(Wの列は互いに直交)となり，Wの列のノルムが特異値，<br>
+ * 正規化したWの列が右特異ベクトルです。R = J * Σ * t^(Wの正規化)なので，左特異ベクトルはQ * Jの列です。<br>
+ * 回転の計算は行単位の2つの配列の内積と更新だけで，先にQR分解で行数をn行まで減らしておくことで，<br>
+ * 縦長の行列でも各回転の計算量はO(n)です。また，Rの転置から始めると，Aから直接始める場合よりも少ない掃引回数で収束します。<br>
+ * <br>
+ * 特異値が0dの場合(階数が列数より小さい場合)，その右特異ベクトルは，他の右特異ベクトルと直交する単位ベクトルで補います。<br>
+ * 各右特異ベクトルは絶対値が最大の成分(複数ある場合は最初の成分)が正になるように符号を揃え，対応する左特異ベクトルの符号も合わせます。
+ */
+final class SingularValueDecomposition {
+
+  /** 片側ヤコビ法の掃引の最大回数です。 */
+  static final int MAX_SWEEPS = 60;
+
+  /** 計算機イプシロンです。 */
+  private static final double EPS = Math.ulp(1.0);
+
+  /** 元の行列のQR分解です。 */
+  private final QrDecomposition qr;
+
+  /** 降順に並べた特異値です。 */
+  private final double[] values;
+
+  /** 第j行に第j右特異ベクトルを保持します。 */
+  private final double[][] right;
+
+  /** 第j行に，Qを掛ける前の第j左特異ベクトル(回転を累積した直交行列の列)を保持します。 */
+  private final double[][] left;
+
+  /**
+   * 分解の結果を保持します。
+   *
+   * @param qr 元の行列のQR分解
+   * @param values 特異値
+   * @param right 右特異ベクトル
+   * @param left Qを掛ける前の左特異ベクトル
+   */
+  private SingularValueDecomposition(
+      QrDecomposition qr, double[] values, double[][] right, double[][] left) {
+    this.qr = qr;
+    this.values = values;
+    this.right = right;
+    this.left = left;
+  }
+
+  /**
+   * 行単位でアクセスできる記憶域a(行数は列数以上)を特異値分解します。aの成分はQR分解の結果で上書きされます。
+   *
+   * @param a 記憶域
+   * @return 分解の結果
+   * @throws ArithmeticException 片側ヤコビ法が収束しなかった場合
+   */
+  static SingularValueDecomposition factor(DoubleStorage a) {
+    final int n = a.columns;
+    QrDecomposition qr = QrDecomposition.factor(a);
+    // 第j行がt^Rの第j列(Rの第j行)
+    double[][] x = new double[n][n];
+    qr.copyUpper(new JaggedStorage(x));
+    double[][] j = new double[n][n];
+    for (int i = 0; i < n; i++) {
+      j[i][i] = 1;
+    }
+    jacobi(x, j);
+
+    double[] norms = new double[n];
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      norms[i] = ScalarKernels.norm(x[i], 0, n);
+      order[i] = i;
+    }
+    Arrays.sort(order, (p, q) -> Double.compare(norms[q], norms[p]));
+    double[] values = new double[n];
+    double[][] right = new double[n][];
+    double[][] left = new double[n][];
+    int rank = 0;
+    for (int p = 0; p < n; p++) {
+      values[p] = norms[order[p]];
+      right[p] = x[order[p]];
+      left[p] = j[order[p]];
+      if (values[p] > 0) {
+        double inverse = 1 / values[p];
+        for (int i = 0; i < n; i++) {
+          right[p][i] *= inverse;
+        }
+        rank++;
+      }
+    }
+    complete(right, rank);
+
+    for (int p = 0; p < n; p++) {
+      double[] v = right[p];
+      int max = 0;
+      for (int i = 1; i < n; i++) {
+        if (Math.abs(v[i]) > Math.abs(v[max])) {
+          max = i;
+        }
+      }
+      if (v[max] < 0) {
+        negate(v);
+        negate(left[p]);
+      }
+    }
+    return (new SingularValueDecomposition(qr, values, right, left));
+  }
+
+  /**
+   * x[p]とx[q]が直交するように回転する操作を，全ての組(p < q)について繰り返します(片側ヤコビ法)。<br>
+   * 各組について，alpha = |x[p]|^2，beta = |x[q]|^2，gamma = x[p]・x[q]から，回転後の内積が0になる<br>
+   * 絶対値の小さい方のtan(θ)を求めて回転し，同じ回転をz[p]とz[q]にも適用します。<br>
+   * |gamma|がsqrt(alpha * beta)のsqrt(n) * EPS倍以下の組は直交しているとみなし，1回の掃引で1度も回転しなかったら終了します。<br>
+   * 各行の2乗ノルムは掃引の最初に計算し，掃引の途中は回転による変化(alpha -= t * gamma，beta += t * gamma)を反映して使います。
+   *
+   * @param x 直交化する行の並び(上書きされます)
+   * @param z 回転を累積する行の並び(上書きされます)
+   * @throws ArithmeticException MAX_SWEEPS回の掃引で収束しなかった場合
+   */
+  private static void jacobi(double[][] x, double[][] z) {
+    final int n = x.length;
+    final double tolerance = Math.sqrt(n) * EPS;
+    double[] squares = new double[n];
+    for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+      for (int p = 0; p < n; p++) {
+        squares[p] = ScalarKernels.dot(x[p], 0, x[p], 0, n);
+      }
+      boolean rotated = false;
+      for (int p = 0; p < n - 1; p++) {
+        for (int q = p + 1; q < n; q++) {
+          double alpha = squares[p];
+          double beta = squares[q];
+          if (alpha == 0 || beta == 0) {
+            continue;
+          }
+          double gamma = ScalarKernels.dot(x[p], 0, x[q], 0, n);
+          if (Math.abs(gamma) <= tolerance * Math.sqrt(alpha) * Math.sqrt(beta)) {
+            continue;
+          }
+          double zeta = (beta - alpha) / (2 * gamma);
+          double t = Math.copySign(1, zeta) / (Math.abs(zeta) + Math.hypot(1, zeta));
+          double c = 1 / Math.sqrt(1 + t * t);
+          double s = c * t;
+          ScalarKernels.rotate(x[p], x[q], c, s);
+          ScalarKernels.rotate(z[p], z[q], c, s);
+          squares[p] = alpha - t * gamma;
+          squares[q] = beta + t * gamma;
+          rotated = true;
+        }
+      }
+      if (!rotated) {
+        return;
+      }
+    }
+    throw (new ArithmeticException("片側ヤコビ法が収束しなかったため，特異値を計算できません"));
+  }
+
+  /**
+   * 特異値が0dの右特異ベクトルx[rank]以降を，それより前のベクトルと直交する単位ベクトルで補います。<br>
+   * 各ベクトルについて，単位行列の全ての列を修正グラム・シュミット法で2回直交化し，ノルムが最大のものを使用します。<br>
+   * 補うベクトルの数はn - rank個なので，直交補空間の次元は少なくとも1あり，ノルムが最大の列は1 / sqrt(n)以上のノルムを持ちます。
+   *
+   * @param x 右特異ベクトルの並び(x[rank]以降が上書きされます)
+   * @param rank 特異値が0dでないベクトルの数
+   */
+  private static void complete(double[][] x, int rank) {
+    final int n = x.length;
+    for (int p = rank; p < n; p++) {
+      double[] best = null;
+      double bestLength = -1;
+      for (int i = 0; i < n; i++) {
+        double[] w = new double[n];
+        w[i] = 1;
+        ScalarKernels.orthogonalize(w, x, 0, p);
+        ScalarKernels.orthogonalize(w, x, 0, p);
+        double length = ScalarKernels.norm(w, 0, n);
+        if (length > bestLength) {
+          best = w;
+          bestLength = length;
+        }
+      }
+      for (int k = 0; k < n; k++) {
+        best[k] /= bestLength;
+      }
+      x[p] = best;
+    }
+  }
+
+  /**
+   * 降順に並べた特異値を返します。
+   *
+   * @return 特異値
+   */
+  double[] singularValues() {
+    return this.values.clone();
+  }
+
+  /**
+   * 左特異ベクトルを，u(m * n)の各列に格納します。uは行単位でアクセスできる，成分が全て0dの記憶域でなければなりません。
+   *
+   * @param u 格納先
+   */
+  void copyLeft(DoubleStorage u) {
+    store(this.left, u);
+    this.qr.applyQ(u);
+  }
+
+  /**
+   * 右特異ベクトルを，v(n * n)の各列に格納します。
+   *
+   * @param v 格納先
+   */
+  void copyRight(DoubleStorage v) {
+    store(this.right, v);
+  }
+
+  /**
+   * x[j]をcの第j列の先頭に格納します。
+   *
+   * @param x ベクトルの並び
+   * @param c 格納先
+   */
+  private static void store(double[][] x, DoubleStorage c) {
+    for (int i = 0; i < x.length; i++) {
+      for (int j = 0; j < x.length; j++) {
+        c.set(i, j, x[j][i]);
+      }
+    }
+  }
+
+  /**
+   * vの各成分の符号を反転します。
+   *
+   * @param v ベクトル
+   */
+  private static void negate(double[] v) {
+    for (int k = 0; k < v.length; k++) {
+      v[k] = -v[k];
+    }
+  }
+}
@@ -0,0 +1,558 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 成分の大部分が0である行列を，圧縮行格納形式(Compressed Sparse Row, CSR)で保持するクラスです。<br>
+ * 0でない成分だけを，行ごとに列番号の昇順に並べて3つの配列に保持します。<br>
+ * 第i行の成分の列番号と値は，columnIndicesとvaluesの添え字が<br>
+ * rowPointers[i]以上rowPointers[i + 1]未満の範囲に格納されています。<br>
+ * <br>
+ * 成分の値は生成後に変更できません。builder(int, int)で得たBuilderに成分を追加して生成するか，<br>
+ * from(DoubleMatrix)でDoubleMatrixから変換して生成します。<br>
+ * 行列積は0の成分との乗算を省略して計算されます。そのため，無限大やNaNを含む行列では，<br>
+ * 密な行列として計算した結果と異なる場合があります。
+ *
+ * @author mpp
+ * @see DoubleMatrix
+ */
+public class SparseDoubleMatrix {
+
+  /**
+   * 行列の成分を1つずつ追加してSparseDoubleMatrixを生成するビルダーです。<br>
+   * 成分は任意の順序で追加できます。同じ位置に複数回追加した成分は，追加した順に合計されます。<br>
+   * 合計が0になった成分は保持されません。<br>
+   * <br>
+   * 以下は3 * 3の行列を生成する例です。
+   *
+   * <pre>{@code
+   * SparseDoubleMatrix a =
+   *     SparseDoubleMatrix.builder(3, 3).add(0, 0, 1).add(2, 1, 5).add(1, 2, -2).build();
+   * }</pre>
+   */
+  public static final class Builder {
+
+    /** 生成する行列の行数です。 */
+    private final int rows;
+
+    /** 生成する行列の列数です。 */
+    private final int columns;
+
+    /** 追加された成分の行番号です。 */
+    private int[] rowIndices = new int[16];
+
+    /** 追加された成分の列番号です。 */
+    private int[] columnIndices = new int[16];
+
+    /** 追加された成分の値です。 */
+    private double[] values = new double[16];
+
+    /** 追加された成分の数です。 */
+    private int count;
+
+    /**
+     * 型がrows * columnsの行列を生成するビルダーを初期化します。
+     *
+     * @param rows 行数
+     * @param columns 列数
+     */
+    private Builder(int rows, int columns) {
+      this.rows = rows;
+      this.columns = columns;
+    }
+
+    /**
+     * (i, j)成分にvalueを加えます。
+     *
+     * @param i i
+     * @param j j
+     * @param value 加える値
+     * @return このビルダー
+     * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+     */
+    public Builder add(int i, int j, double value) {
+      if (i < 0 || i >= this.rows || j < 0 || j >= this.columns) {
+        throw (new ArrayIndexOutOfBoundsException(
+            String.format("添え字が範囲外です: (%d,%d)", i, j)));
+      }
+
+      if (this.count == this.values.length) {
+        int capacity = this.count * 2;
+        this.rowIndices = Arrays.copyOf(this.rowIndices, capacity);
+        this.columnIndices = Arrays.copyOf(this.columnIndices, capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+      }
+      this.rowIndices[this.count] = i;
+      this.columnIndices[this.count] = j;
+      this.values[this.count] = value;
+      this.count++;
+      return this;
+    }
+
+    /**
+     * 追加された成分から行列を生成します。ビルダーの内容は変更されないため，続けて成分を追加することもできます。
+     *
+     * @return 生成された行列
+     */
+    public SparseDoubleMatrix build() {
+      // 成分を行ごとに振り分け，各行の中では(列番号, 追加した順序)の組を昇順に整列する
+      int[] pointers = new int[this.rows + 1];
+      for (int p = 0; p < this.count; p++) {
+        pointers[this.rowIndices[p] + 1]++;
+      }
+      for (int i = 0; i < this.rows; i++) {
+        pointers[i + 1] += pointers[i];
+      }
+      long[] keys = new long[this.count];
+      int[] next = Arrays.copyOf(pointers, this.rows);
+      for (int p = 0; p < this.count; p++) {
+        keys[next[this.rowIndices[p]]++] = ((long) this.columnIndices[p] << 32) | p;
+      }
+
+      int[] resultColumns = new int[this.count];
+      double[] resultValues = new double[this.count];
+      int nonZeros = 0;
+      for (int i = 0; i < this.rows; i++) {
+        int start = pointers[i];
+        int end = pointers[i + 1];
+        Arrays.sort(keys, start, end);
+        pointers[i] = nonZeros;
+        for (int q = start; q < end; ) {
+          int j = (int) (keys[q] >>> 32);
+          double sum = this.values[(int) keys[q++]];
+          while (q < end && (int) (keys[q] >>> 32) == j) {
+            sum += this.values[(int) keys[q++]];
+          }
+          if (sum != 0) {
+            resultColumns[nonZeros] = j;
+            resultValues[nonZeros] = sum;
+            nonZeros++;
+          }
+        }
+      }
+      pointers[this.rows] = nonZeros;
+
+      return (new SparseDoubleMatrix(
+          this.rows,
+          this.columns,
+          pointers,
+          Arrays.copyOf(resultColumns, nonZeros),
+          Arrays.copyOf(resultValues, nonZeros)));
+    }
+  }
+
+  /**
+   * 型がrows * columnsの行列を生成するビルダーを返します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @return ビルダー
+   * @throws IllegalArgumentException rowsまたはcolumnsが1未満の場合
+   */
+  public static Builder builder(int rows, int columns) {
+    if (rows < 1 || columns < 1) {
+      throw (new IllegalArgumentException(
+          String.format("行数と列数は1以上でなければなりません: (%d,%d)", rows, columns)));
+    }
+    return (new Builder(rows, columns));
+  }
+
+  /**
+   * DoubleMatrixの0でない成分から行列を生成します。
+   *
+   * @param matrix 変換元の行列
+   * @return 変換された行列
+   */
+  public static SparseDoubleMatrix from(DoubleMatrix matrix) {
+    DoubleStorage a = matrix.storage();
+    int[] pointers = new int[a.rows + 1];
+    for (int i = 0; i < a.rows; i++) {
+      int count = 0;
+      for (int j = 0; j < a.columns; j++) {
+        if (a.get(i, j) != 0) {
+          count++;
+        }
+      }
+      pointers[i + 1] = pointers[i] + count;
+    }
+
+    int[] columnIndices = new int[pointers[a.rows]];
+    double[] values = new double[pointers[a.rows]];
+    for (int i = 0, p = 0; i < a.rows; i++) {
+      for (int j = 0; j < a.columns; j++) {
+        double entry = a.get(i, j);
+        if (entry != 0) {
+          columnIndices[p] = j;
+          values[p] = entry;
+          p++;
+        }
+      }
+    }
+    return (new SparseDoubleMatrix(a.rows, a.columns, pointers, columnIndices, values));
+  }
+
+  /** この行列の行数を表します。 */
+  private final int rows;
+
+  /** この行列の列数を表します。 */
+  private final int columns;
+
+  /** 各行の成分が格納されている範囲の先頭です。長さはrows + 1で，最後の要素は0でない成分の数です。 */
+  private final int[] rowPointers;
+
+  /** 0でない成分の列番号です。各行の中では昇順に並んでいます。 */
+  private final int[] columnIndices;
+
+  /** 0でない成分の値です。 */
+  private final double[] values;
+
+  /**
+   * CSR形式の配列をそのまま使用して行列を生成します。
+   *
+   * @param rows 行数
+   * @param columns 列数
+   * @param rowPointers 各行の成分が格納されている範囲の先頭
+   * @param columnIndices 0でない成分の列番号
+   * @param values 0でない成分の値
+   */
+  private SparseDoubleMatrix(
+      int rows, int columns, int[] rowPointers, int[] columnIndices, double[] values) {
+    this.rows = rows;
+    this.columns = columns;
+    this.rowPointers = rowPointers;
+    this.columnIndices = columnIndices;
+    this.values = values;
+  }
+
+  /**
+   * この行列の行数を返します。
+   *
+   * @return 行数
+   */
+  public int rows() {
+    return this.rows;
+  }
+
+  /**
+   * この行列の列数を返します。
+   *
+   * @return 列数
+   */
+  public int columns() {
+    return this.columns;
+  }
+
+  /**
+   * この行列が保持している0でない成分の数を返します。
+   *
+   * @return 0でない成分の数
+   */
+  public int nonZeros() {
+    return this.rowPointers[this.rows];
+  }
+
+  /**
+   * (i, j)成分を取得します。第i行の成分を二分探索するため，計算量はO(log(第i行の0でない成分の数))です。
+   *
+   * @param i i
+   * @param j j
+   * @return (i, j)成分の値
+   * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+   */
+  public double get(int i, int j) {
+    if (i < 0 || i >= this.rows || j < 0 || j >= this.columns) {
+      throw (new ArrayIndexOutOfBoundsException(
+          String.format("添え字が範囲外です: (%d,%d)", i, j)));
+    }
+
+    int p =
+        Arrays.binarySearch(this.columnIndices, this.rowPointers[i], this.rowPointers[i + 1], j);
+    return (p >= 0) ? this.values[p] : 0;
+  }
+
+  /**
+   * thisとthatが等価な行列なら真を返します。
+   *
+   * @param that 任意の行列
+   * @return this = thatならtrue
+   */
+  public boolean isEqual(SparseDoubleMatrix that) {
+    if (this == that) {
+      return true;
+    }
+
+    if (this.rows != that.rows || this.columns != that.columns) {
+      return false;
+    }
+
+    // 0でない成分だけを列番号の昇順に保持しているため，等価な行列は同じ配列で表される
+    if (!Arrays.equals(this.rowPointers, that.rowPointers)
+        || !Arrays.equals(this.columnIndices, that.columnIndices)) {
+      return false;
+    }
+    for (int p = 0; p < this.values.length; p++) {
+      if (this.values[p] != that.values[p]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * この行列をJAGGED形式のDoubleMatrixに変換します。
+   *
+   * @return 変換された行列
+   */
+  public DoubleMatrix toDense() {
+    return toDense(DoubleMatrix.Layout.JAGGED);
+  }
+
+  /**
+   * この行列を，指定された形式の記憶域を使用したDoubleMatrixに変換します。
+   *
+   * @param layout 記憶域の形式
+   * @return 変換された行列
+   * @throws IllegalArgumentException 指定された形式で成分を保持できない場合
+   */
+  public DoubleMatrix toDense(DoubleMatrix.Layout layout) {
+    DoubleMatrix result = DoubleMatrix.createZeroMatrix(this.rows, this.columns, layout);
+    for (int i = 0; i < this.rows; i++) {
+      for (int p = this.rowPointers[i]; p < this.rowPointers[i + 1]; p++) {
+        result.set(i, this.columnIndices[p], this.values[p]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * this * thatを計算し，結果の行列を返します。<br>
+   * 結果の行列はthatと同じ形式で生成されます。計算量はO(thisの0でない成分の数 * thatの列数)です。
+   *
+   * @param that この行列に乗算する行列
+   * @return this * that
+   * @throws ArithmeticException thisの列数とthatの行数が異なり，計算を実行できない場合
+   */
+  public DoubleMatrix times(DoubleMatrix that) {
+    if (this.columns != that.rows()) {
+      throw (new ArithmeticException(
+          String.format("列数と行数が異なるため，計算できません: %d != %d", this.columns, that.rows())));
+    }
+
+    DoubleStorage b = that.storage();
+    DoubleStorage c = b.allocate(this.rows, b.columns);
+    if (b.hasRowArrays() && c.hasRowArrays()) {
+      for (int i = 0; i < this.rows; i++) {
+        double[] cr = c.rowArray(i);
+        int co = c.rowOffset(i);
+        for (int p = this.rowPointers[i]; p < this.rowPointers[i + 1]; p++) {
+          int k = this.columnIndices[p];
+          RowKernels.axpy(this.values[p], b.rowArray(k), b.rowOffset(k), cr, co, b.columns);
+        }
+      }
+    } else {
+      for (int i = 0; i < this.rows; i++) {
+        for (int p = this.rowPointers[i]; p < this.rowPointers[i + 1]; p++) {
+          int k = this.columnIndices[p];
+          for (int j = 0; j < b.columns; j++) {
+            c.set(i, j, c.get(i, j) + this.values[p] * b.get(k, j));
+          }
+        }
+      }
+    }
+
+    return DoubleMatrix.wrap(c);
+  }
+
+  /**
+   * y = this * xを計算し，yを返します。xとyは列ベクトルの成分を並べた配列です。<br>
+   * 結果はyの内容を全て上書きして格納されるため，反復計算では同じ配列を格納先として再利用できます。<br>
+   * 計算量はO(この行列の0でない成分の数)で，ヒープへの割り当ては行いません。
+   *
+   * @param x この行列に乗算するベクトル(長さはこの行列の列数)
+   * @param y 結果の格納先(長さはこの行列の行数)
+   * @return y
+   * @throws ArithmeticException xまたはyの長さが行列の型と合わない場合
+   * @throws IllegalArgumentException xとyが同じ配列の場合
+   */
+  public double[] timesVector(double[] x, double[] y) {
+    checkVectors(x, y);
+    multiplyRows(x, y, 0, this.rows);
+    return y;
+  }
+
+  /**
+   * y = this * xを，指定されたForkJoinPoolを使用して並列に計算し，yを返します。<br>
+   * 行は0でない成分の数がほぼ等しくなるように連続した範囲に分割され，各範囲がpool上のタスクとして計算されます。<br>
+   * 0でない成分が少ない行列は，呼び出したスレッドで直列に計算します。<br>
+   * 各成分の計算順序は分割によらないため，計算結果はtimesVector(double[], double[])の結果と完全に一致します。
+   *
+   * @param x この行列に乗算するベクトル(長さはこの行列の列数)
+   * @param y 結果の格納先(長さはこの行列の行数)
+   * @param pool 計算に使用するForkJoinPool
+   * @return y
+   * @throws ArithmeticException xまたはyの長さが行列の型と合わない場合
+   * @throws IllegalArgumentException xとyが同じ配列の場合
+   * @see #timesVector(double[], double[])
+   */
+  public double[] timesVector(double[] x, double[] y, ForkJoinPool pool) {
+    checkVectors(x, y);
+    if (nonZeros() < RowPartition.PARALLEL_THRESHOLD) {
+      multiplyRows(x, y, 0, this.rows);
+      return y;
+    }
+
+    int[] bounds = RowPartition.byWeight(this.rowPointers, RowPartition.parts(pool));
+    RowPartition.run(pool, bounds, (i0, i1) -> multiplyRows(x, y, i0, i1));
+    return y;
+  }
+
+  /**
+   * y = this * xの計算に使用するベクトルの長さを検証します。
+   *
+   * @param x この行列に乗算するベクトル
+   * @param y 結果の格納先
+   * @throws ArithmeticException xまたはyの長さが行列の型と合わない場合
+   * @throws IllegalArgumentException xとyが同じ配列の場合
+   */
+  private void checkVectors(double[] x, double[] y) {
+    if (x.length != this.columns) {
+      throw (new ArithmeticException(
+          String.format("列数とベクトルの長さが異なるため，計算できません: %d != %d", this.columns, x.length)));
+    }
+    if (y.length != this.rows) {
+      throw (new ArithmeticException(
+          String.format("格納先のベクトルの長さが行数と異なるため，計算できません: %d != %d", this.rows, y.length)));
+    }
+    if (x == y) {
+      throw (new IllegalArgumentException("格納先のベクトルが入力のベクトルと同じ配列です"));
+    }
+  }
+
+  /**
+   * 第i0行から第(i1 - 1)行までについて，y = this * xを計算します。
+   *
+   * @param x この行列に乗算するベクトル
+   * @param y 結果の格納先
+   * @param i0 計算する最初の行
+   * @param i1 計算する最後の行の次の行
+   */
+  private void multiplyRows(double[] x, double[] y, int i0, int i1) {
+    for (int i = i0; i < i1; i++) {
+      double sum = 0;
+      for (int p = this.rowPointers[i]; p < this.rowPointers[i + 1]; p++) {
+        sum += this.values[p] * x[this.columnIndices[p]];
+      }
+      y[i] = sum;
+    }
+  }
+
+  /**
+   * c = a * thisを計算します。cの成分は全て0でなければなりません。<br>
+   * aの各行について，0でない成分a(i, k)ごとにthisの第k行の0でない成分を足し込みます。
+   *
+   * @param a 左辺
+   * @param c 結果の格納先
+   */
+  void multiplyLeft(DoubleStorage a, DoubleStorage c) {
+    if (a.hasRowArrays() && c.hasRowArrays()) {
+      for (int i = 0; i < a.rows; i++) {
+        double[] ar = a.rowArray(i);
+        double[] cr = c.rowArray(i);
+        int ao = a.rowOffset(i);
+        int co = c.rowOffset(i);
+        for (int k = 0; k < a.columns; k++) {
+          double aik = ar[ao + k];
+          if (aik == 0) {
+            continue;
+          }
+          for (int p = this.rowPointers[k]; p < this.rowPointers[k + 1]; p++) {
+            cr[co + this.columnIndices[p]] += aik * this.values[p];
+          }
+        }
+      }
+      return;
+    }
+
+    for (int i = 0; i < a.rows; i++) {
+      for (int k = 0; k < a.columns; k++) {
+        double aik = a.get(i, k);
+        if (aik == 0) {
+          continue;
+        }
+        for (int p = this.rowPointers[k]; p < this.rowPointers[k + 1]; p++) {
+          int j = this.columnIndices[p];
+          c.set(i, j, c.get(i, j) + aik * this.values[p]);
+        }
+      }
+    }
+  }
+
+  /**
+   * this * thatを計算し，結果の行列を返します。<br>
+   * 行ごとに計算するGustavsonの方法を使用します。結果の第i行は，thisの第i行の0でない成分(i, k)ごとに<br>
+   * thatの第k行を足し込んで求めます。足し込みにはthat.columnsの長さの作業領域を使用し，<br>
+   * 各行で値が設定された列だけを整列して取り出すため，計算量は乗算の回数と結果の0でない成分の数に比例します。
+   *
+   * @param that この行列に乗算する行列
+   * @return this * that
+   * @throws ArithmeticException thisの列数とthatの行数が異なり，計算を実行できない場合
+   */
+  public SparseDoubleMatrix times(SparseDoubleMatrix that) {
+    if (this.columns != that.rows) {
+      throw (new ArithmeticException(
+          String.format("列数と行数が異なるため，計算できません: %d != %d", this.columns, that.rows)));
+    }
+
+    int n = that.columns;
+    double[] accumulator = new double[n];
+    int[] marker = new int[n];
+    Arrays.fill(marker, -1);
+    int[] touched = new int[n];
+
+    int[] pointers = new int[this.rows + 1];
+    int capacity = Math.max(16, Math.max(this.nonZeros(), that.nonZeros()));
+    int[] resultColumns = new int[capacity];
+    double[] resultValues = new double[capacity];
+    int nonZeros = 0;
+    for (int i = 0; i < this.rows; i++) {
+      int count = 0;
+      for (int p = this.rowPointers[i]; p < this.rowPointers[i + 1]; p++) {
+        int k = this.columnIndices[p];
+        double aik = this.values[p];
+        for (int q = that.rowPointers[k]; q < that.rowPointers[k + 1]; q++) {
+          int j = that.columnIndices[q];
+          if (marker[j] != i) {
+            marker[j] = i;
+            accumulator[j] = aik * that.values[q];
+            touched[count++] = j;
+          } else {
+            accumulator[j] += aik * that.values[q];
+          }
+        }
+      }
+
+      Arrays.sort(touched, 0, count);
+      if (nonZeros + count > resultValues.length) {
+        int newCapacity = Math.max(resultValues.length * 2, nonZeros + count);
+        resultColumns = Arrays.copyOf(resultColumns, newCapacity);
+        resultValues = Arrays.copyOf(resultValues, newCapacity);
+      }
+      for (int t = 0; t < count; t++) {
+        int j = touched[t];
+        if (accumulator[j] != 0) {
+          resultColumns[nonZeros] = j;
+          resultValues[nonZeros] = accumulator[j];
+          nonZeros++;
+        }
+      }
+      pointers[i + 1] = nonZeros;
+    }
+
+    return (new SparseDoubleMatrix(
+        this.rows,
+        n,
+        pointers,
+        Arrays.copyOf(resultColumns, nonZeros),
+        Arrays.copyOf(resultValues, nonZeros)));
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * 行単位でアクセスできる記憶域の，連続した行と列の範囲を部分行列として見せるビューです。成分のコピーは行いません。<br>
+ * (i, j)成分の読み書きは，元の記憶域の(i0 + i, j0 + j)成分に対して行われます。<br>
+ * <br>
+ * 行の配列は参照のたびに元の記憶域から取得するため，元の記憶域で行を入れ替えた結果もそのまま見えます。<br>
+ * ブロック化した分解で，部分行列同士の積をGemmで計算するために使用します。
+ */
+final class SubmatrixStorage extends DoubleStorage {
+
+  /** 部分行列を切り出す元の記憶域です。 */
+  private final DoubleStorage base;
+
+  /** 部分行列の第0行に対応する元の記憶域の行です。 */
+  private final int i0;
+
+  /** 部分行列の第0列に対応する元の記憶域の列です。 */
+  private final int j0;
+
+  /**
+   * baseの(i0, j0)成分を左上とする，型がrows * columnsの部分行列のビューを生成します。
+   *
+   * @param base 行単位でアクセスできる記憶域
+   * @param i0 先頭行
+   * @param j0 先頭列
+   * @param rows 行数
+   * @param columns 列数
+   */
+  SubmatrixStorage(DoubleStorage base, int i0, int j0, int rows, int columns) {
+    super(rows, columns);
+    this.base = base;
+    this.i0 = i0;
+    this.j0 = j0;
+  }
+
+  /**
+   * (i, j)が添え字の範囲内にあることを確認します。
+   *
+   * @param i i
+   * @param j j
+   * @throws ArrayIndexOutOfBoundsException iまたはjの値が不正な添え字の場合
+   */
+  private void checkIndex(int i, int j) {
+    if (i < 0 || i >= this.rows || j < 0 || j >= this.columns) {
+      throw (new ArrayIndexOutOfBoundsException(
+          String.format("添え字が範囲外です: (%d,%d)", i, j)));
+    }
+  }
+
+  @Override
+  double get(int i, int j) {
+    checkIndex(i, j);
+    return this.base.get(this.i0 + i, this.j0 + j);
+  }
+
+  @Override
+  void set(int i, int j, double entry) {
+    checkIndex(i, j);
+    this.base.set(this.i0 + i, this.j0 + j, entry);
+  }
+
+  @Override
+  void swapRows(int i1, int i2) {
+    checkIndex(i1, 0);
+    checkIndex(i2, 0);
+    double[] r1 = rowArray(i1);
+    double[] r2 = rowArray(i2);
+    int o1 = rowOffset(i1);
+    int o2 = rowOffset(i2);
+    for (int j = 0; j < this.columns; j++) {
+      double tmp = r1[o1 + j];
+      r1[o1 + j] = r2[o2 + j];
+      r2[o2 + j] = tmp;
+    }
+  }
+
+  @Override
+  DoubleStorage copy() {
+    DoubleStorage result = allocate(this.rows, this.columns);
+    for (int i = 0; i < this.rows; i++) {
+      System.arraycopy(
+          rowArray(i), rowOffset(i), result.rowArray(i), result.rowOffset(i), this.columns);
+    }
+    return result;
+  }
+
+  @Override
+  DoubleStorage allocate(int rows, int columns) {
+    return this.base.allocate(rows, columns);
+  }
+
+  @Override
+  DoubleStorage unwrap() {
+    return this.base.unwrap();
+  }
+
+  @Override
+  boolean overlaps(DoubleStorage other) {
+    return this.base.overlaps(other);
+  }
+
+  @Override
+  DoubleMatrix.Layout layout() {
+    return this.base.layout();
+  }
+
+  @Override
+  boolean hasRowArrays() {
+    return true;
+  }
+
+  @Override
+  double[] rowArray(int i) {
+    return this.base.rowArray(this.i0 + i);
+  }
+
+  @Override
+  int rowOffset(int i) {
+    return this.base.rowOffset(this.i0 + i) + this.j0;
+  }
+}
@@ -0,0 +1,576 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 対称行列Aの固有値分解A = Z * Λ * t^Zを求めます(Λは固有値を並べた対角行列，Zの列は正規直交する固有ベクトル)。<br>
+ * <br>
+ * まずハウスホルダー変換でAを三重対角行列Tに変換します(A = Q * T * t^Q)。Qはn - 2個のハウスホルダー変換の積として，<br>
+ * 変換に使ったベクトルを作業用の記憶域に残したまま，実体化せずに保持します。<br>
+ * 全ての固有対を求める場合は，Tに陰的シフト付きのQL法を適用し，回転を累積してTの固有ベクトルを求めてからQを掛けます。<br>
+ * 一部の固有対だけを求める場合は，固有値だけをQL法で求め(回転を累積しないためO(n^2)です)，<br>
+ * 必要な固有値についてだけTに対する逆反復法で固有ベクトルを求めてからQを掛けます。<br>
+ * 計算量の大部分を占めるのは三重対角化(約(4/3)n^3回の演算)で，k個の固有ベクトルを求める計算量はO(n^2 * k)です。<br>
+ * <br>
+ * 行列の成分はすべて行単位で走査します。QL法の回転の累積とQを掛ける計算は，固有ベクトルを行として保持して行います。<br>
+ * 固有値は降順に並べ，各固有ベクトルは絶対値が最大の成分(複数ある場合は最初の成分)が正になるように符号を揃えます。
+ */
+final class SymmetricEigenDecomposition {
+
+  /** QL法で1つの固有値を求めるための反復回数の上限です。 */
+  static final int MAX_ITERATIONS = 60;
+
+  /** backTransformで，ハウスホルダーベクトルをまとめて適用する固有ベクトルの数です。 */
+  static final int BACK_TRANSFORM_GROUP = 32;
+
+  /** 逆反復法の反復回数です。 */
+  static final int INVERSE_ITERATIONS = 3;
+
+  /** 倍精度浮動小数点数の計算機イプシロンです。 */
+  private static final double EPS = Math.ulp(1.0);
+
+  /** 三重対角化に使った作業用の記憶域です。第k行の第(k + 1)列以降に，第k回目の変換のベクトルvを保持します。 */
+  private final DoubleStorage a;
+
+  /** 各ハウスホルダー変換の係数です。 */
+  private final double[] tau;
+
+  /** 三重対角行列Tの対角成分です。 */
+  private final double[] d;
+
+  /** 三重対角行列Tの副対角成分です(e[i]はTの(i + 1, i)成分，e[n - 1]は0d)。 */
+  private final double[] e;
+
+  /**
+   * 三重対角化の結果を保持します。
+   *
+   * @param a 作業用の記憶域
+   * @param tau 各ハウスホルダー変換の係数
+   * @param d 対角成分
+   * @param e 副対角成分
+   */
+  private SymmetricEigenDecomposition(DoubleStorage a, double[] tau, double[] d, double[] e) {
+    this.a = a;
+    this.tau = tau;
+    this.d = d;
+    this.e = e;
+  }
+
+  /**
+   * 行単位でアクセスできる対称行列の記憶域aを，その場でハウスホルダー変換により三重対角化します。<br>
+   * 第k回目の変換H(k) = I - tau(k) * v * t^vについて，p = tau(k) * A22 * v，w = p - (tau(k) / 2) * (t^p * v) * vを求め，<br>
+   * トレイリング行列をA22 -= v * t^w + w * t^vで更新します。計算には下三角部分(対角成分を含む)だけを使用します。<br>
+   * 第k回目の更新と第(k + 1)回目のA22 * vの計算は，先に第(k + 1)列だけを更新してvを求めておくことで，<br>
+   * 下三角部分の各行に対する1回の走査にまとめます(行列全体を読むのは各回1度だけです)。<br>
+   * 各回のvは，使用しない上三角部分(第k行の第(k + 1)列以降)に格納します。
+   *
+   * @param a 対称行列の記憶域(成分は計算の途中の値で上書きされます)
+   * @return 三重対角化の結果
+   */
+  static SymmetricEigenDecomposition factor(DoubleStorage a) {
+    final int n = a.rows;
+    final double[][] r = new double[n][];
+    final int[] o = new int[n];
+    for (int i = 0; i < n; i++) {
+      r[i] = a.rowArray(i);
+      o[i] = a.rowOffset(i);
+    }
+
+    double[] tau = new double[n];
+    double[] d = new double[n];
+    double[] e = new double[n];
+    double[] v = new double[n];
+    double[] w = new double[n];
+    double[] nextV = new double[n];
+    double[] nextW = new double[n];
+    if (n > 2) {
+      tau[0] = reflector(r, o, 0, v, e);
+      if (tau[0] != 0) {
+        for (int i = 1; i < n; i++) {
+          accumulate(r[i], o[i], 1, i, v, w);
+        }
+        finish(tau[0], v, w, 1);
+      }
+    }
+    for (int k = 0; k < n - 2; k++) {
+      final int c0 = k + 1;
+      final boolean active = tau[k] != 0;
+      final boolean next = k + 1 < n - 2;
+
+      // 第(k + 1)列を先に更新し，次の変換のvを求める
+      if (active) {
+        for (int i = c0; i < n; i++) {
+          r[i][o[i] + c0] -= v[i] * w[c0] + w[i] * v[c0];
+        }
+        System.arraycopy(v, c0, r[k], o[k] + c0, n - c0);
+      }
+      boolean nextActive = false;
+      if (next) {
+        tau[k + 1] = reflector(r, o, c0, nextV, e);
+        Arrays.fill(nextW, 0);
+        nextActive = tau[k + 1] != 0;
+      }
+
+      // 残りの列の更新と，次の変換のA22 * vの計算を，行ごとにまとめて行う
+      for (int i = c0 + 1; i < n; i++) {
+        double[] ri = r[i];
+        int oi = o[i];
+        if (active) {
+          ScalarKernels.axpy(-v[i], w, c0 + 1, ri, oi + c0 + 1, i - c0);
+          ScalarKernels.axpy(-w[i], v, c0 + 1, ri, oi + c0 + 1, i - c0);
+        }
+        if (nextActive) {
+          accumulate(ri, oi, c0 + 1, i, nextV, nextW);
+        }
+      }
+      if (nextActive) {
+        finish(tau[k + 1], nextV, nextW, c0 + 1);
+      }
+
+      double[] tmp = v;
+      v = nextV;
+      nextV = tmp;
+      tmp = w;
+      w = nextW;
+      nextW = tmp;
+    }
+    for (int i = 0; i < n; i++) {
+      d[i] = r[i][o[i] + i];
+    }
+    if (n >= 2) {
+      e[n - 2] = r[n - 1][o[n - 1] + n - 2];
+    }
+    return (new SymmetricEigenDecomposition(a, tau, d, e));
+  }
+
+  /**
+   * 第j列の対角成分より下(第(j + 1)行以降)をbeta * e(0)に変換するハウスホルダー変換を求めます。<br>
+   * ベクトルvをx[j + 1]からx[n - 1]に格納し(x[j + 1]は1)，副対角成分e[j]をbetaとして，係数tauを返します。<br>
+   * 変換が不要な(対角成分より2つ以上下の成分が全て0dである)場合は，e[j]をそのままの値として0dを返します。
+   *
+   * @param r 行の参照
+   * @param o 各行の先頭位置
+   * @param j 列
+   * @param x vの格納先
+   * @param e 副対角成分の格納先
+   * @return 係数tau
+   */
+  private static double reflector(double[][] r, int[] o, int j, double[] x, double[] e) {
+    final int n = r.length;
+    for (int i = j + 1; i < n; i++) {
+      x[i] = r[i][o[i] + j];
+    }
+    double alpha = x[j + 1];
+    double xnorm = ScalarKernels.norm(x, j + 2, n - j - 2);
+    if (xnorm == 0) {
+      e[j] = alpha;
+      return 0;
+    }
+    double beta = -Math.copySign(Math.hypot(alpha, xnorm), alpha);
+    double scale = 1 / (alpha - beta);
+    for (int i = j + 2; i < n; i++) {
+      x[i] *= scale;
+    }
+    x[j + 1] = 1;
+    e[j] = beta;
+    return (beta - alpha) / beta;
+  }
+
+  /**
+   * 対称行列の下三角部分の第i行(第s列から対角成分まで)について，y += A * xへの寄与を加えます。<br>
+   * 第i行の成分は，y[i]への内積と，(対角成分を除いて)y[s]からy[i - 1]へのaxpyの両方に使います。
+   *
+   * @param ri 第i行
+   * @param oi 第i行の先頭位置
+   * @param s 最初の列
+   * @param i 行
+   * @param x 掛けるベクトル
+   * @param y 結果の格納先
+   */
+  private static void accumulate(double[] ri, int oi, int s, int i, double[] x, double[] y) {
+    y[i] += ScalarKernels.dot(ri, oi + s, x, s, i - s) + ri[oi + i] * x[i];
+    ScalarKernels.axpy(x[i], ri, oi + s, y, s, i - s);
+  }
+
+  /**
+   * A22 * vが格納されたwを，w = p - (tau / 2) * (t^p * v) * v(p = tau * A22 * v)に変換します。
+   *
+   * @param tau 係数
+   * @param v ハウスホルダーベクトル
+   * @param w A22 * v
+   * @param s 最初の添え字
+   */
+  private static void finish(double tau, double[] v, double[] w, int s) {
+    final int n = v.length;
+    for (int i = s; i < n; i++) {
+      w[i] *= tau;
+    }
+    double half = 0.5 * tau * ScalarKernels.dot(w, s, v, s, n - s);
+    ScalarKernels.axpy(-half, v, s, w, s, n - s);
+  }
+
+  /**
+   * 全ての固有値を降順に並べた配列を返します。QL法で回転を累積せずに求めます。
+   *
+   * @return 固有値
+   * @throws ArithmeticException QL法が収束しなかった場合
+   */
+  double[] eigenvalues() {
+    double[] values = this.d.clone();
+    ql(values, this.e.clone(), null);
+    Arrays.sort(values);
+    reverse(values);
+    return values;
+  }
+
+  /**
+   * 全ての固有対を求め，固有値を降順に並べた配列を返します。<br>
+   * 各固有値に対応する固有ベクトルを，同じ順序でvectors(n * n)の各列に格納します。
+   *
+   * @param vectors 固有ベクトルの格納先
+   * @return 固有値
+   * @throws ArithmeticException QL法が収束しなかった場合
+   */
+  double[] decompose(DoubleStorage vectors) {
+    final int n = this.d.length;
+    double[] values = this.d.clone();
+    // 回転を累積する行列を転置して保持する(第i行がTの第i固有ベクトル)
+    double[][] z = new double[n][n];
+    for (int i = 0; i < n; i++) {
+      z[i][i] = 1;
+    }
+    ql(values, this.e.clone(), z);
+
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (i, j) -> Double.compare(values[j], values[i]));
+    double[] sorted = new double[n];
+    double[][] x = new double[n][];
+    for (int j = 0; j < n; j++) {
+      sorted[j] = values[order[j]];
+      x[j] = z[order[j]];
+    }
+    backTransform(x);
+    store(x, vectors);
+    return sorted;
+  }
+
+  /**
+   * eigenvalues()で求めた固有値の先頭k個(大きい方からk個)に対応する固有ベクトルを，<br>
+   * 三重対角行列に対する逆反復法で求め，vectors(n * k)の各列に格納します。<br>
+   * 互いに近い固有値(差がTのノルムの10^-3倍未満)の固有ベクトルは，反復ごとに互いに直交化します。<br>
+   * 等しい固有値は，Tのノルムに比例するわずかな値だけずらしてから逆反復を行います。
+   *
+   * @param values eigenvalues()で求めた固有値
+   * @param k 固有ベクトルの数
+   * @param vectors 固有ベクトルの格納先
+   */
+  void eigenvectors(double[] values, int k, DoubleStorage vectors) {
+    final int n = this.d.length;
+    double norm = 0;
+    for (int i = 0; i < n; i++) {
+      double off = Math.abs(this.e[i]) + ((i > 0) ? Math.abs(this.e[i - 1]) : 0);
+      norm = Math.max(norm, Math.abs(this.d[i]) + off);
+    }
+    final double tiny = Math.max(EPS * norm, Double.MIN_NORMAL);
+    final double separation = 1e-3 * norm;
+    final double perturbation = 10 * EPS * norm;
+
+    double[][] x = new double[k][];
+    double shift = 0;
+    int cluster = 0;
+    for (int j = 0; j < k; j++) {
+      if (j > 0 && values[j - 1] - values[j] >= separation) {
+        cluster = j;
+      }
+      shift = (j > cluster && shift - values[j] < perturbation) ? shift - perturbation : values[j];
+
+      TridiagonalSolver solver = new TridiagonalSolver(this.d, this.e, shift, tiny);
+      double[] v = new double[n];
+      Random random = new Random(j);
+      for (int i = 0; i < n; i++) {
+        v[i] = random.nextDouble() - 0.5;
+      }
+      for (int iteration = 0; iteration < INVERSE_ITERATIONS; iteration++) {
+        ScalarKernels.orthogonalize(v, x, cluster, j);
+        normalize(v);
+        solver.solve(v);
+      }
+      ScalarKernels.orthogonalize(v, x, cluster, j);
+      normalize(v);
+      x[j] = v;
+    }
+
+    backTransform(x);
+    store(x, vectors);
+  }
+
+  /**
+   * 陰的シフト付きのQL法で三重対角行列の固有値を求め，dを固有値(順序は不定)で上書きします。<br>
+   * zがnullでなければ，回転をzの行に累積します(zの第i行と第(i + 1)行に同じ回転を適用します)。
+   *
+   * @param d 対角成分
+   * @param e 副対角成分(計算の途中の値で上書きされます)
+   * @param z 回転を累積する行列(またはnull)
+   * @throws ArithmeticException 反復回数がMAX_ITERATIONSを超えた場合
+   */
+  private static void ql(double[] d, double[] e, double[][] z) {
+    final int n = d.length;
+    double f = 0;
+    double tst1 = 0;
+    for (int l = 0; l < n; l++) {
+      // 十分に小さい副対角成分を探す(e[n - 1]は0dなので必ず見つかる)
+      tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+      int m = l;
+      while (Math.abs(e[m]) > EPS * tst1) {
+        m++;
+      }
+
+      int iteration = 0;
+      while (m > l) {
+        if (++iteration > MAX_ITERATIONS) {
+          throw (new ArithmeticException("QL法が収束しなかったため，固有値を計算できません"));
+        }
+
+        // 陰的シフトを求める
+        double g = d[l];
+        double p = (d[l + 1] - g) / (2 * e[l]);
+        double r = Math.copySign(Math.hypot(p, 1), p);
+        d[l] = e[l] / (p + r);
+        d[l + 1] = e[l] * (p + r);
+        double dl1 = d[l + 1];
+        double h = g - d[l];
+        for (int i = l + 2; i < n; i++) {
+          d[i] -= h;
+        }
+        f += h;
+
+        // 陰的QL変換
+        p = d[m];
+        double c = 1;
+        double c2 = c;
+        double c3 = c;
+        double el1 = e[l + 1];
+        double s = 0;
+        double s2 = 0;
+        for (int i = m - 1; i >= l; i--) {
+          c3 = c2;
+          c2 = c;
+          s2 = s;
+          g = c * e[i];
+          h = c * p;
+          r = Math.hypot(p, e[i]);
+          e[i + 1] = s * r;
+          s = e[i] / r;
+          c = p / r;
+          p = c * d[i] - s * g;
+          d[i + 1] = h + s * (c * g + s * d[i]);
+          if (z != null) {
+            ScalarKernels.rotate(z[i], z[i + 1], c, s);
+          }
+        }
+        p = -s * s2 * c3 * el1 * e[l] / dl1;
+        e[l] = s * p;
+        d[l] = c * p;
+        if (Math.abs(e[l]) <= EPS * tst1) {
+          break;
+        }
+      }
+      d[l] += f;
+      e[l] = 0;
+    }
+  }
+
+  /**
+   * 三重対角行列の固有ベクトルx[j]のそれぞれにQを左から掛け，元の行列の固有ベクトルに変換します。<br>
+   * Q = H(0) * ... * H(n - 3)なので，H(n - 3)から順に適用します。変換後の符号も揃えます。<br>
+   * 固有ベクトルをBACK_TRANSFORM_GROUP個ずつまとめて，各ハウスホルダーベクトルを読むたびにまとめた全てに適用します。<br>
+   * 固有ベクトルごとに全てのハウスホルダーベクトルを読み直す場合と比べて，ハウスホルダーベクトルを読む回数が減ります。
+   *
+   * @param x 固有ベクトルの並び(上書きされます)
+   */
+  private void backTransform(double[][] x) {
+    final int n = this.d.length;
+    for (int j0 = 0; j0 < x.length; j0 += BACK_TRANSFORM_GROUP) {
+      final int j1 = Math.min(j0 + BACK_TRANSFORM_GROUP, x.length);
+      for (int k = n - 3; k >= 0; k--) {
+        double t = this.tau[k];
+        if (t == 0) {
+          continue;
+        }
+        double[] kr = this.a.rowArray(k);
+        int ko = this.a.rowOffset(k) + k + 1;
+        for (int j = j0; j < j1; j++) {
+          double s = t * ScalarKernels.dot(kr, ko, x[j], k + 1, n - k - 1);
+          ScalarKernels.axpy(-s, kr, ko, x[j], k + 1, n - k - 1);
+        }
+      }
+    }
+
+    for (double[] v : x) {
+      int max = 0;
+      for (int i = 1; i < n; i++) {
+        if (Math.abs(v[i]) > Math.abs(v[max])) {
+          max = i;
+        }
+      }
+      if (v[max] < 0) {
+        for (int i = 0; i < n; i++) {
+          v[i] = -v[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * x[j]をvectorsの第j列に格納します。
+   *
+   * @param x 固有ベクトルの並び
+   * @param vectors 格納先
+   */
+  private static void store(double[][] x, DoubleStorage vectors) {
+    for (int i = 0; i < vectors.rows; i++) {
+      for (int j = 0; j < x.length; j++) {
+        vectors.set(i, j, x[j][i]);
+      }
+    }
+  }
+
+  /**
+   * vをユークリッドノルムが1になるように正規化します。
+   *
+   * @param v ベクトル
+   */
+  private static void normalize(double[] v) {
+    double scale = 0;
+    for (double x : v) {
+      scale = Math.max(scale, Math.abs(x));
+    }
+    if (scale == 0) {
+      v[0] = 1;
+      return;
+    }
+    double sum = 0;
+    for (int i = 0; i < v.length; i++) {
+      v[i] /= scale;
+      sum += v[i] * v[i];
+    }
+    double inverse = 1 / Math.sqrt(sum);
+    for (int i = 0; i < v.length; i++) {
+      v[i] *= inverse;
+    }
+  }
+
+  /**
+   * 配列の要素の順序を逆にします。
+   *
+   * @param values 配列
+   */
+  private static void reverse(double[] values) {
+    for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+      double tmp = values[i];
+      values[i] = values[j];
+      values[j] = tmp;
+    }
+  }
+
+  /** 三重対角行列T - shift * Iを部分ピボット選択付きで分解し，連立一次方程式を解きます。 */
+  private static final class TridiagonalSolver {
+
+    /** 上三角行列Uの対角成分です。 */
+    private final double[] u0;
+
+    /** Uの第1上対角成分です。 */
+    private final double[] u1;
+
+    /** Uの第2上対角成分です(行を交換した場合だけ0dでない値になります)。 */
+    private final double[] u2;
+
+    /** 消去に使った乗数です。 */
+    private final double[] l;
+
+    /** 第i行と第(i + 1)行を交換したならtrueです。 */
+    private final boolean[] swapped;
+
+    /**
+     * T - shift * Iを分解します。ピボットの絶対値がtiny未満になった場合は，tinyに置き換えます。
+     *
+     * @param d Tの対角成分
+     * @param e Tの副対角成分
+     * @param shift シフト
+     * @param tiny ピボットの絶対値の下限
+     */
+    TridiagonalSolver(double[] d, double[] e, double shift, double tiny) {
+      final int n = d.length;
+      this.u0 = new double[n];
+      this.u1 = new double[n];
+      this.u2 = new double[n];
+      this.l = new double[n];
+      this.swapped = new boolean[n];
+      for (int i = 0; i < n; i++) {
+        this.u0[i] = d[i] - shift;
+        this.u1[i] = e[i];
+      }
+      for (int i = 0; i < n - 1; i++) {
+        double sub = e[i];
+        if (Math.abs(this.u0[i]) >= Math.abs(sub)) {
+          this.u0[i] = pivot(this.u0[i], tiny);
+          double m = sub / this.u0[i];
+          this.l[i] = m;
+          this.u0[i + 1] -= m * this.u1[i];
+        } else {
+          double m = this.u0[i] / sub;
+          double next = this.u0[i + 1];
+          double nextUpper = this.u1[i + 1];
+          this.l[i] = m;
+          this.swapped[i] = true;
+          this.u0[i] = sub;
+          this.u0[i + 1] = this.u1[i] - m * next;
+          this.u1[i] = next;
+          this.u2[i] = nextUpper;
+          this.u1[i + 1] = -m * nextUpper;
+        }
+      }
+      this.u0[n - 1] = pivot(this.u0[n - 1], tiny);
+    }
+
+    /**
+     * ピボットの絶対値がtiny未満なら，符号を保ったままtinyに置き換えます。
+     *
+     * @param x ピボット
+     * @param tiny ピボットの絶対値の下限
+     * @return ピボット
+     */
+    private static double pivot(double x, double tiny) {
+      return (Math.abs(x) < tiny) ? Math.copySign(tiny, x) : x;
+    }
+
+    /**
+     * (T - shift * I) * y = xを解き，xをyで上書きします。
+     *
+     * @param x 右辺
+     */
+    void solve(double[] x) {
+      final int n = x.length;
+      for (int i = 0; i < n - 1; i++) {
+        if (this.swapped[i]) {
+          double tmp = x[i];
+          x[i] = x[i + 1];
+          x[i + 1] = tmp;
+        }
+        x[i + 1] -= this.l[i] * x[i];
+      }
+      for (int i = n - 1; i >= 0; i--) {
+        double sum = x[i];
+        if (i + 1 < n) {
+          sum -= this.u1[i] * x[i + 1];
+        }
+        if (i + 2 < n) {
+          sum -= this.u2[i] * x[i + 2];
+        }
+        x[i] = sum / this.u0[i];
+      }
+    }
+  }
+}
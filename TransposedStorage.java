@@ -0,0 +1,83 @@
+/**
+ * 別の記憶域を転置して見せるビューです。成分のコピーは行いません。<br>
+ * (i, j)成分の読み書きは，元の記憶域の(j, i)成分に対して行われます。<br>
+ * <br>
+ * このビューは行単位でアクセスできませんが，元の記憶域が行単位でアクセスできる場合は，<br>
+ * 行列積などの演算がbaseを直接参照して，キャッシュの局所性の高い順序で走査します。
+ */
+final class TransposedStorage extends DoubleStorage {
+
+  /** 転置される元の記憶域です。 */
+  final DoubleStorage base;
+
+  /**
+   * baseを転置して見せるビューを生成します。
+   *
+   * @param base 転置される元の記憶域
+   */
+  TransposedStorage(DoubleStorage base) {
+    super(base.columns, base.rows);
+    this.base = base;
+  }
+
+  @Override
+  double get(int i, int j) {
+    return this.base.get(j, i);
+  }
+
+  @Override
+  void set(int i, int j, double entry) {
+    this.base.set(j, i, entry);
+  }
+
+  @Override
+  void swapRows(int i1, int i2) {
+    for (int k = 0; k < this.base.rows; k++) {
+      double tmp = this.base.get(k, i1);
+      this.base.set(k, i1, this.base.get(k, i2));
+      this.base.set(k, i2, tmp);
+    }
+  }
+
+  @Override
+  DoubleStorage copy() {
+    DoubleStorage result = this.base.allocate(this.rows, this.columns);
+    for (int i = 0; i < this.rows; i++) {
+      for (int j = 0; j < this.columns; j++) {
+        result.set(i, j, this.base.get(j, i));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  DoubleStorage allocate(int rows, int columns) {
+    return this.base.allocate(rows, columns);
+  }
+
+  @Override
+  DoubleStorage unwrap() {
+    return this.base.unwrap();
+  }
+
+  @Override
+  boolean overlaps(DoubleStorage other) {
+    return this.base.overlaps(other);
+  }
+
+  @Override
+  DoubleMatrix.Layout layout() {
+    return this.base.layout();
+  }
+
+  /**
+   * storageが，行単位でアクセスできる記憶域を転置したビューならtrueを返します。
+   *
+   * @param storage 任意の記憶域
+   * @return 行単位でアクセスできる記憶域の転置ビューならtrue
+   */
+  static boolean isTransposedRows(DoubleStorage storage) {
+    return (storage instanceof TransposedStorage
+        && ((TransposedStorage) storage).base.hasRowArrays());
+  }
+}
@@ -0,0 +1,179 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API(jdk.incubator.vector)を使用した行単位の演算カーネルです。<br>
+ * このクラスはjdk.incubator.vectorモジュールが読み込まれている場合にのみ使用できます。<br>
+ * 利用可否の判定とスカラー版への切り替えはRowKernelsが行うので，このクラスを直接呼び出さないでください。<br>
+ * <br>
+ * 各演算はレーンごとの乗算と加算のみで構成されており(FMAは使用しません)，<br>
+ * 計算結果はスカラー版のループで計算した場合と一致します。<br>
+ * <br>
+ * レーン数に満たない末尾の成分はスカラーのループで処理します。<br>
+ * JDK 17のVector APIではマスク付きのロード・ストアが割り当てを伴い，短い行ではスカラー版より遅くなるためです。
+ *
+ * @see RowKernels
+ */
+final class VectorKernels {
+
+  /** 実行環境で最も効率のよいベクトルの形状です。 */
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  /** 4 * 4のマイクロカーネルでBの1行(4成分)を1本のベクトルとして扱うための形状です。 */
+  private static final VectorSpecies<Double> SPECIES_4 = DoubleVector.SPECIES_256;
+
+  /** 4成分のベクトル演算がハードウェアで直接実行できるならtrueです。 */
+  static final boolean HAS_4_LANES = SPECIES.vectorBitSize() >= SPECIES_4.vectorBitSize();
+
+  private VectorKernels() {}
+
+  /**
+   * 実行環境で使用されるベクトルのレーン数を返します。
+   *
+   * @return レーン数
+   */
+  static int lanes() {
+    return SPECIES.length();
+  }
+
+  /**
+   * c[co + j] = a[ao + j] + b[bo + j] (0 &lt;= j &lt; n)を計算します。
+   *
+   * @param a 左辺
+   * @param ao aの先頭位置
+   * @param b 右辺
+   * @param bo bの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void plus(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+    int j = 0;
+    for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+      DoubleVector va = DoubleVector.fromArray(SPECIES, a, ao + j);
+      DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bo + j);
+      va.add(vb).intoArray(c, co + j);
+    }
+    for (; j < n; j++) {
+      c[co + j] = a[ao + j] + b[bo + j];
+    }
+  }
+
+  /**
+   * c[co + j] = a[ao + j] - b[bo + j] (0 &lt;= j &lt; n)を計算します。
+   *
+   * @param a 左辺
+   * @param ao aの先頭位置
+   * @param b 右辺
+   * @param bo bの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void minus(double[] a, int ao, double[] b, int bo, double[] c, int co, int n) {
+    int j = 0;
+    for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+      DoubleVector va = DoubleVector.fromArray(SPECIES, a, ao + j);
+      DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bo + j);
+      va.sub(vb).intoArray(c, co + j);
+    }
+    for (; j < n; j++) {
+      c[co + j] = a[ao + j] - b[bo + j];
+    }
+  }
+
+  /**
+   * c[co + j] = k * a[ao + j] (0 &lt;= j &lt; n)を計算します。
+   *
+   * @param k 乗算する値
+   * @param a 行
+   * @param ao aの先頭位置
+   * @param c 結果の格納先
+   * @param co cの先頭位置
+   * @param n 成分の数
+   */
+  static void scale(double k, double[] a, int ao, double[] c, int co, int n) {
+    int j = 0;
+    for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+      DoubleVector.fromArray(SPECIES, a, ao + j).mul(k).intoArray(c, co + j);
+    }
+    for (; j < n; j++) {
+      c[co + j] = k * a[ao + j];
+    }
+  }
+
+  /**
+   * y[yo + j] += alpha * x[xo + j] (0 &lt;= j &lt; n)を計算します。
+   *
+   * @param alpha 乗算する値
+   * @param x 加算する行
+   * @param xo xの先頭位置
+   * @param y 結果の格納先
+   * @param yo yの先頭位置
+   * @param n 成分の数
+   */
+  static void axpy(double alpha, double[] x, int xo, double[] y, int yo, int n) {
+    int j = 0;
+    for (int bound = SPECIES.loopBound(n); j < bound; j += SPECIES.length()) {
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xo + j);
+      DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yo + j);
+      vy.add(vx.mul(alpha)).intoArray(y, yo + j);
+    }
+    for (; j < n; j++) {
+      y[yo + j] += alpha * x[xo + j];
+    }
+  }
+
+  /**
+   * Gemmの4 * 4マイクロカーネルのベクトル版です。Cの各行を1本のベクトルに保持したまま更新します。<br>
+   * HAS_4_LANESがtrueの場合にのみ使用してください。
+   *
+   * @param kb 共有次元の大きさ
+   * @param pa Aのマイクロパネル
+   * @param ai Aのマイクロパネルの先頭位置
+   * @param pb Bのマイクロパネル
+   * @param bi Bのマイクロパネルの先頭位置
+   * @param c0 Cの第0行
+   * @param o0 c0の先頭位置
+   * @param c1 Cの第1行
+   * @param o1 c1の先頭位置
+   * @param c2 Cの第2行
+   * @param o2 c2の先頭位置
+   * @param c3 Cの第3行
+   * @param o3 c3の先頭位置
+   */
+  static void kernel4x4(
+      int kb,
+      double[] pa,
+      int ai,
+      double[] pb,
+      int bi,
+      double[] c0,
+      int o0,
+      double[] c1,
+      int o1,
+      double[] c2,
+      int o2,
+      double[] c3,
+      int o3) {
+    DoubleVector v0 = DoubleVector.fromArray(SPECIES_4, c0, o0);
+    DoubleVector v1 = DoubleVector.fromArray(SPECIES_4, c1, o1);
+    DoubleVector v2 = DoubleVector.fromArray(SPECIES_4, c2, o2);
+    DoubleVector v3 = DoubleVector.fromArray(SPECIES_4, c3, o3);
+
+    for (int p = 0; p < kb; p++) {
+      DoubleVector vb = DoubleVector.fromArray(SPECIES_4, pb, bi);
+      v0 = v0.add(vb.mul(pa[ai]));
+      v1 = v1.add(vb.mul(pa[ai + 1]));
+      v2 = v2.add(vb.mul(pa[ai + 2]));
+      v3 = v3.add(vb.mul(pa[ai + 3]));
+      ai += 4;
+      bi += 4;
+    }
+
+    v0.intoArray(c0, o0);
+    v1.intoArray(c1, o1);
+    v2.intoArray(c2, o2);
+    v3.intoArray(c3, o3);
+  }
+}
@@ -2,12 +2,14 @@
 PROJECT="JaMaCa"
 CFLAGS="-J-Dfile.encoding=UTF-8"
 JFLAGS="-Dfile.encoding=UTF-8"
+MODULES="--add-modules jdk.incubator.vector"
 CLASSES="classes"
 LIB="lib"
 TMP="tmp"
 DOC="doc"
 TARGET="DoubleMatrix"
 TEST="DoubleMatrixTest"
+BENCH="DoubleMatrixBenchmark"
 FORMATTER="../Lib/google-java-format-1.15.0-all-deps.jar"
 
 usage () {
@@ -21,6 +23,7 @@ usage () {
       -j      create jar
       -d      create doc
       -t      run test
+      -b      run benchmark
 EOF
   exit
 }
@@ -35,7 +38,7 @@ clean () {
 }
 
 make () {
-  find -name '*.java' | xargs javac "$CFLAGS" -d "$CLASSES"
+  find -name '*.java' | xargs javac "$CFLAGS" $MODULES -d "$CLASSES"
 }
 
 makejar () {
@@ -43,11 +46,17 @@ makejar () {
 }
 
 makedoc () {
-  javadoc "$CFLAGS" -d "$DOC" "$TARGET.java"
+  javadoc "$CFLAGS" $MODULES -d "$DOC" "$TARGET.java"
 }
 
 test () {
+  # スカラー版とベクトル版(Vector API)の両方の経路を確認する
   java "$JFLAGS" -cp "$CLASSES" -ea "$TEST"
+  java "$JFLAGS" $MODULES -cp "$CLASSES" -ea "$TEST"
+}
+
+bench () {
+  java "$JFLAGS" $MODULES -cp "$CLASSES" "$BENCH"
 }
 
 
@@ -55,7 +64,7 @@ if [ $# -eq 0 ]; then
   usage
 fi
 
-while getopts 'hfcmjdt' opt; do
+while getopts 'hfcmjdtb' opt; do
   case "$opt" in
     h) usage ;;
     f) format ;;
@@ -64,5 +73,6 @@ while getopts 'hfcmjdt' opt; do
     j) clean && make && makejar ;;
     d) clean && makedoc ;;
     t) format && make && test ;;
+    b) make && bench ;;
   esac
 done